@@ -2,10 +2,19 @@
 create database prod;
 use prod;
 
+/* Catalogue of spot types, the ID is the compact index used by the app for that type */
+create table parking_type(
+ID int PRIMARY KEY,
+NAME varchar(20) NOT NULL UNIQUE,
+RATE_PER_HOUR double NOT NULL
+);
+
 create table parking(
 PARKING_NUMBER int PRIMARY KEY,
 AVAILABLE bool NOT NULL,
-TYPE varchar(10) NOT NULL
+TYPE_ID int NOT NULL,
+FOREIGN KEY (TYPE_ID)
+REFERENCES parking_type(ID)
 );
 
 create table ticket(
@@ -15,24 +24,123 @@ create table ticket(
  PRICE double,
  IN_TIME DATETIME NOT NULL,
  OUT_TIME DATETIME,
+ REQUEST_KEY varchar(64),
+ EXIT_REQUEST_KEY varchar(64),
+ FOREIGN KEY (PARKING_NUMBER)
+ REFERENCES parking(PARKING_NUMBER));
+
+/* Visits of a plate, newest first: covers the history pages, whose keyset is (IN_TIME, ID) */
+create index IDX_TICKET_PLATE on ticket(VEHICLE_REG_NUMBER, IN_TIME, ID, OUT_TIME, PRICE, PARKING_NUMBER);
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME);
+/* Entries since a state snapshot, replayed at startup */
+create index IDX_TICKET_IN_TIME on ticket(IN_TIME);
+/* Open tickets of a spot, read by the consistency reconciler */
+create index IDX_TICKET_SPOT_OPEN on ticket(PARKING_NUMBER, OUT_TIME);
+/* Idempotency keys sent by the gates, a retried request can never create a second ticket */
+create unique index UK_TICKET_REQUEST_KEY on ticket(REQUEST_KEY);
+create unique index UK_TICKET_EXIT_REQUEST_KEY on ticket(EXIT_REQUEST_KEY);
+
+/* Cold tier: closed tickets moved out of ticket by the archival job */
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index IDX_TICKET_ARCHIVE_PLATE on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME, ID, OUT_TIME, PRICE, PARKING_NUMBER);
+
+/* Spots booked for a future time window, the ones not ended yet are loaded at startup */
+create table reservation(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ START_TIME DATETIME NOT NULL,
+ END_TIME DATETIME NOT NULL,
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'BIKE');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'BIKE');
+create index IDX_RESERVATION_END_TIME on reservation(END_TIME);
+
+/* Ranges of spot numbers per type leased by the gate controllers, see LeasedRangeStrategy */
+create table spot_lease(
+ TYPE_ID int NOT NULL,
+ RANGE_START int NOT NULL,
+ RANGE_END int NOT NULL,
+ OWNER varchar(64),
+ EXPIRES_AT DATETIME(3),
+ PRIMARY KEY (TYPE_ID, RANGE_START),
+ FOREIGN KEY (TYPE_ID)
+ REFERENCES parking_type(ID));
+
+create table lease_node(
+ NODE_ID varchar(64) PRIMARY KEY,
+ EXPIRES_AT DATETIME(3) NOT NULL,
+ STARVED_TYPE_ID int);
+
+/* Season passes and blocklist, append-only: the latest row of a plate wins, see AccessListService */
+create table season_pass(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ VALID_UNTIL DATETIME NOT NULL);
+
+create table blocklist(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ VALID_UNTIL DATETIME);
+
+/* Outbox: one row per ticket or spot change, written in the same transaction, streamed by OutboxRelay */
+create table ticket_event(
+ ID bigint PRIMARY KEY AUTO_INCREMENT,
+ EVENT_TYPE varchar(8) NOT NULL,
+ TICKET_ID int,
+ PARKING_NUMBER int NOT NULL,
+ AVAILABLE bool,
+ VEHICLE_REG_NUMBER varchar(10),
+ PRICE double,
+ EVENT_TIME DATETIME(3) NOT NULL);
+
+create table ticket_event_cursor(
+ RELAY varchar(64) PRIMARY KEY,
+ LAST_EVENT_ID bigint NOT NULL);
+
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(1,'CAR',1.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(2,'BIKE',1.0);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(3,'EV',2.0);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(4,'DISABLED',1.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(5,'VAN',2.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(6,'MOTORBIKE',1.0);
+
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(1,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(2,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(3,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(4,true,2);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(5,true,2);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(6,true,3);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(7,true,3);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(8,true,4);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(9,true,5);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(10,true,6);
 commit;
 
 /* Setting up TEST DB */
 create database test;
 use test;
 
+/* Catalogue of spot types, the ID is the compact index used by the app for that type */
+create table parking_type(
+ID int PRIMARY KEY,
+NAME varchar(20) NOT NULL UNIQUE,
+RATE_PER_HOUR double NOT NULL
+);
+
 create table parking(
 PARKING_NUMBER int PRIMARY KEY,
 AVAILABLE bool NOT NULL,
-TYPE varchar(10) NOT NULL
+TYPE_ID int NOT NULL,
+FOREIGN KEY (TYPE_ID)
+REFERENCES parking_type(ID)
 );
 
 create table ticket(
@@ -42,12 +150,97 @@ create table ticket(
  PRICE double,
  IN_TIME DATETIME NOT NULL,
  OUT_TIME DATETIME,
+ REQUEST_KEY varchar(64),
+ EXIT_REQUEST_KEY varchar(64),
+ FOREIGN KEY (PARKING_NUMBER)
+ REFERENCES parking(PARKING_NUMBER));
+
+/* Visits of a plate, newest first: covers the history pages, whose keyset is (IN_TIME, ID) */
+create index IDX_TICKET_PLATE on ticket(VEHICLE_REG_NUMBER, IN_TIME, ID, OUT_TIME, PRICE, PARKING_NUMBER);
+create index IDX_TICKET_OUT_TIME on ticket(OUT_TIME);
+/* Entries since a state snapshot, replayed at startup */
+create index IDX_TICKET_IN_TIME on ticket(IN_TIME);
+/* Open tickets of a spot, read by the consistency reconciler */
+create index IDX_TICKET_SPOT_OPEN on ticket(PARKING_NUMBER, OUT_TIME);
+/* Idempotency keys sent by the gates, a retried request can never create a second ticket */
+create unique index UK_TICKET_REQUEST_KEY on ticket(REQUEST_KEY);
+create unique index UK_TICKET_EXIT_REQUEST_KEY on ticket(EXIT_REQUEST_KEY);
+
+/* Cold tier: closed tickets moved out of ticket by the archival job */
+create table ticket_archive(
+ ID int PRIMARY KEY,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ PRICE double,
+ IN_TIME DATETIME NOT NULL,
+ OUT_TIME DATETIME NOT NULL);
+
+create index IDX_TICKET_ARCHIVE_PLATE on ticket_archive(VEHICLE_REG_NUMBER, IN_TIME, ID, OUT_TIME, PRICE, PARKING_NUMBER);
+
+/* Spots booked for a future time window, the ones not ended yet are loaded at startup */
+create table reservation(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ PARKING_NUMBER int NOT NULL,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ START_TIME DATETIME NOT NULL,
+ END_TIME DATETIME NOT NULL,
  FOREIGN KEY (PARKING_NUMBER)
  REFERENCES parking(PARKING_NUMBER));
 
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(1,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(2,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(3,true,'CAR');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(4,true,'BIKE');
-insert into parking(PARKING_NUMBER,AVAILABLE,TYPE) values(5,true,'BIKE');
+create index IDX_RESERVATION_END_TIME on reservation(END_TIME);
+
+/* Ranges of spot numbers per type leased by the gate controllers, see LeasedRangeStrategy */
+create table spot_lease(
+ TYPE_ID int NOT NULL,
+ RANGE_START int NOT NULL,
+ RANGE_END int NOT NULL,
+ OWNER varchar(64),
+ EXPIRES_AT DATETIME(3),
+ PRIMARY KEY (TYPE_ID, RANGE_START),
+ FOREIGN KEY (TYPE_ID)
+ REFERENCES parking_type(ID));
+
+create table lease_node(
+ NODE_ID varchar(64) PRIMARY KEY,
+ EXPIRES_AT DATETIME(3) NOT NULL,
+ STARVED_TYPE_ID int);
+
+/* Season passes and blocklist, append-only: the latest row of a plate wins, see AccessListService */
+create table season_pass(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ VALID_UNTIL DATETIME NOT NULL);
+
+create table blocklist(
+ ID int PRIMARY KEY AUTO_INCREMENT,
+ VEHICLE_REG_NUMBER varchar(10) NOT NULL,
+ VALID_UNTIL DATETIME);
+
+/* Outbox: one row per ticket or spot change, written in the same transaction, streamed by OutboxRelay */
+create table ticket_event(
+ ID bigint PRIMARY KEY AUTO_INCREMENT,
+ EVENT_TYPE varchar(8) NOT NULL,
+ TICKET_ID int,
+ PARKING_NUMBER int NOT NULL,
+ AVAILABLE bool,
+ VEHICLE_REG_NUMBER varchar(10),
+ PRICE double,
+ EVENT_TIME DATETIME(3) NOT NULL);
+
+create table ticket_event_cursor(
+ RELAY varchar(64) PRIMARY KEY,
+ LAST_EVENT_ID bigint NOT NULL);
+
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(1,'CAR',1.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(2,'BIKE',1.0);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(3,'EV',2.0);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(4,'DISABLED',1.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(5,'VAN',2.5);
+insert into parking_type(ID,NAME,RATE_PER_HOUR) values(6,'MOTORBIKE',1.0);
+
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(1,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(2,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(3,true,1);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(4,true,2);
+insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values(5,true,2);
 commit;
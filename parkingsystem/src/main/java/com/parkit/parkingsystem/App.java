@@ -1,6 +1,10 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.service.InteractiveShell;
+import com.parkit.parkingsystem.service.StartupService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -8,6 +12,17 @@ public class App {
     private static final Logger logger = LogManager.getLogger("App");
     public static void main(String args[]){
         logger.info("Initializing Parking System");
+        if(args.length > 0 && "--warmup-only".equals(args[0])){
+            //training run used to build the class data sharing archive, see the appcds profile
+            DataBaseConfig dataBaseConfig = new DataBaseConfig();
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+            TicketDAO ticketDAO = new TicketDAO();
+            ticketDAO.dataBaseConfig = dataBaseConfig;
+            new StartupService(dataBaseConfig, parkingSpotDAO, ticketDAO).warmUp();
+            dataBaseConfig.shutdown();
+            return;
+        }
         InteractiveShell.loadInterface();
     }
 }
@@ -0,0 +1,253 @@
+package com.parkit.parkingsystem.anpr;
+
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ingestion of ANPR camera feeds, in three stages linked by bounded queues:
+ *
+ * intake: cameras submit batches of {@link PlateRead}, blocking while the intake queue is full so a
+ * burst slows the cameras down instead of growing memory;
+ * dedup: a single thread drains reads in batches and turns them into {@link GateCommand}s with a
+ * {@link PlateReadDeduplicator};
+ * dispatch: a single thread drains commands in batches and runs them on {@link ParkingService},
+ * with their request key so a replayed read never parks or releases a vehicle twice.
+ *
+ * Each stage keeps its own {@link StageMetrics}.
+ */
+public class AnprPipeline {
+
+    private static final Logger logger = LogManager.getLogger("AnprPipeline");
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final ParkingService parkingService;
+    private final PlateReadDeduplicator deduplicator;
+    private final int batchSize;
+    private final BlockingQueue<PlateRead> plateReads;
+    private final BlockingQueue<GateCommand> commands;
+    private final AtomicLong pending = new AtomicLong();
+
+    private final StageMetrics intakeMetrics = new StageMetrics("intake");
+    private final StageMetrics dedupMetrics = new StageMetrics("dedup");
+    private final StageMetrics dispatchMetrics = new StageMetrics("dispatch");
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong exits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private Thread dedupThread;
+    private Thread dispatchThread;
+    private volatile boolean running;
+
+    public AnprPipeline(ParkingService parkingService){
+        this(parkingService, new PlateReadDeduplicator(), DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    public AnprPipeline(ParkingService parkingService, PlateReadDeduplicator deduplicator, int capacity, int batchSize){
+        this.parkingService = parkingService;
+        this.deduplicator = deduplicator;
+        this.batchSize = batchSize;
+        this.plateReads = new ArrayBlockingQueue<>(capacity);
+        this.commands = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+    *queue a batch of reads, waiting while the pipeline is full
+    *
+    *@Param List reads in camera time order
+    */
+    public void submit(List<PlateRead> batch) throws InterruptedException {
+        long start = System.nanoTime();
+        for(PlateRead plateRead : batch){
+            pending.incrementAndGet();
+            plateReads.put(plateRead);
+        }
+        intakeMetrics.record(batch.size(), System.nanoTime() - start);
+    }
+
+    /**
+    *queue a batch of reads, giving up on the rest of the batch once the pipeline stays full for the timeout
+    *
+    *@Param List reads in camera time order
+    *@Param long how long to wait for room, in milliseconds
+    *@Return number of reads queued, the first ones of the batch
+    */
+    public int offer(List<PlateRead> batch, long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int accepted = 0;
+        for(PlateRead plateRead : batch){
+            pending.incrementAndGet();
+            if(!plateReads.offer(plateRead, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)){
+                pending.decrementAndGet();
+                break;
+            }
+            accepted++;
+        }
+        intakeMetrics.record(accepted, System.nanoTime() - start);
+        return accepted;
+    }
+
+    public synchronized void start(){
+        if(running){
+            return;
+        }
+        running = true;
+        dedupThread = new Thread(this::runDedup, "anpr-dedup");
+        dedupThread.setDaemon(true);
+        dedupThread.start();
+        dispatchThread = new Thread(this::runDispatch, "anpr-dispatch");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+
+    /**
+    *stop both stage threads, reads and commands still queued are left there
+    */
+    public synchronized void stop(){
+        running = false;
+        for(Thread thread : Arrays.asList(dedupThread, dispatchThread)){
+            if(thread != null){
+                thread.interrupt();
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        dedupThread = null;
+        dispatchThread = null;
+        logger.info("ANPR pipeline stopped, "+getMetrics());
+    }
+
+    /**
+    *wait until every read submitted so far was dropped or dispatched
+    *
+    *@Param long maximum wait in milliseconds
+    *@Return true if the pipeline is idle
+    */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(pending.get() > 0){
+            if(System.currentTimeMillis() >= deadline){
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private void runDedup(){
+        List<PlateRead> batch = new ArrayList<>(batchSize);
+        while(running){
+            try {
+                batch.add(plateReads.take());
+                plateReads.drainTo(batch, batchSize - 1);
+                long start = System.nanoTime();
+                List<GateCommand> gateCommands = deduplicator.process(batch);
+                dedupMetrics.record(batch.size(), System.nanoTime() - start);
+                pending.addAndGet(gateCommands.size() - batch.size());
+                for(GateCommand gateCommand : gateCommands){
+                    commands.put(gateCommand);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Unable to deduplicate a batch of "+batch.size()+" plate reads",e);
+                pending.addAndGet(-batch.size());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runDispatch(){
+        List<GateCommand> batch = new ArrayList<>(batchSize);
+        while(running){
+            try {
+                batch.add(commands.take());
+                commands.drainTo(batch, batchSize - 1);
+                long start = System.nanoTime();
+                dispatch(batch);
+                dispatchMetrics.record(batch.size(), System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                pending.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+    *run a batch of commands on the parking service, a failing command does not stop the batch
+    *
+    *@Param List commands in camera time order
+    */
+    public void dispatch(List<GateCommand> batch){
+        for(GateCommand gateCommand : batch){
+            PlateRead plateRead = gateCommand.getPlateRead();
+            try {
+                Ticket ticket;
+                if(plateRead.getDirection() == PlateRead.Direction.ENTRY){
+                    ticket = parkingService.enterVehicle(gateCommand.getRequestKey(), plateRead.getParkingType(), plateRead.getVehicleRegNumber());
+                    if(ticket != null){
+                        entries.incrementAndGet();
+                    }
+                }else{
+                    ticket = parkingService.exitVehicle(gateCommand.getRequestKey(), plateRead.getVehicleRegNumber());
+                    if(ticket != null){
+                        exits.incrementAndGet();
+                    }
+                }
+                if(ticket == null){
+                    rejected.incrementAndGet();
+                    logger.info("Gate command "+gateCommand+" was not applied");
+                }
+            } catch (RuntimeException e) {
+                rejected.incrementAndGet();
+                logger.error("Gate command "+gateCommand+" failed",e);
+            }
+        }
+    }
+
+    public List<StageMetrics> getStageMetrics(){
+        return Arrays.asList(intakeMetrics, dedupMetrics, dispatchMetrics);
+    }
+
+    public long getEntries(){
+        return entries.get();
+    }
+
+    public long getExits(){
+        return exits.get();
+    }
+
+    /** commands the parking service refused, e.g. lot full or vehicle not parked */
+    public long getRejected(){
+        return rejected.get();
+    }
+
+    public PlateReadDeduplicator getDeduplicator(){
+        return deduplicator;
+    }
+
+    public String getMetrics(){
+        return getStageMetrics()+", "+entries.get()+" entries, "+exits.get()+" exits, "+rejected.get()+" rejected, "
+                +deduplicator.getDuplicates()+" duplicate and "+deduplicator.getLowConfidence()+" low confidence reads";
+    }
+}
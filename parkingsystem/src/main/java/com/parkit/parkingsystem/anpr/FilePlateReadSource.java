@@ -0,0 +1,80 @@
+package com.parkit.parkingsystem.anpr;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stand-in for the camera feeds: replays plate reads from a CSV file into an {@link AnprPipeline}.
+ *
+ * One read per line: epoch millis, camera id, ENTRY or EXIT, plate, confidence from 0 to 1 and
+ * parking type id, e.g. {@code 1767261600000,gate-1,ENTRY,AB123CD,0.97,1}. Empty lines and lines
+ * starting with # are skipped, malformed lines are logged and skipped.
+ */
+public class FilePlateReadSource {
+
+    private static final Logger logger = LogManager.getLogger("FilePlateReadSource");
+
+    private final Path file;
+    private final int batchSize;
+
+    public FilePlateReadSource(Path file, int batchSize){
+        this.file = file;
+        this.batchSize = batchSize;
+    }
+
+    /**
+    *submit every read of the file, in batches, waiting whenever the pipeline is full
+    *
+    *@Param AnprPipeline pipeline to feed
+    *@Return number of reads submitted
+    */
+    public int replay(AnprPipeline pipeline) throws IOException, InterruptedException {
+        int submitted = 0;
+        List<PlateRead> batch = new ArrayList<>(batchSize);
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null){
+                lineNumber++;
+                if(line.trim().isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                try {
+                    batch.add(parse(line));
+                } catch (IllegalArgumentException e) {
+                    logger.error("Skipping line "+lineNumber+" of "+file+": "+e.getMessage());
+                    continue;
+                }
+                if(batch.size() == batchSize){
+                    pipeline.submit(batch);
+                    submitted += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if(!batch.isEmpty()){
+            pipeline.submit(batch);
+            submitted += batch.size();
+        }
+        logger.info("Replayed "+submitted+" plate reads from "+file);
+        return submitted;
+    }
+
+    static PlateRead parse(String line){
+        String[] fields = line.split(",");
+        if(fields.length != 6){
+            throw new IllegalArgumentException("expected 6 fields, got "+fields.length);
+        }
+        return new PlateRead(Long.parseLong(fields[0].trim()), fields[1].trim(), PlateRead.Direction.valueOf(fields[2].trim()),
+                fields[3].trim(), Double.parseDouble(fields[4].trim()), ParkingType.fromId(Integer.parseInt(fields[5].trim())));
+    }
+}
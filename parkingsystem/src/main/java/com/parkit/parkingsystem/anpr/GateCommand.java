@@ -0,0 +1,30 @@
+package com.parkit.parkingsystem.anpr;
+
+/**
+ * Entry or exit to run on {@link com.parkit.parkingsystem.service.ParkingService}, made from the
+ * first read of a burst of reads of the same plate. Its request key is derived from that read, so a
+ * replayed feed never parks or releases a vehicle twice.
+ */
+public class GateCommand {
+
+    private final PlateRead plateRead;
+    private final String requestKey;
+
+    public GateCommand(PlateRead plateRead){
+        this.plateRead = plateRead;
+        this.requestKey = "anpr-"+plateRead.getDirection()+"-"+plateRead.getVehicleRegNumber()+"-"+plateRead.getTimeMillis();
+    }
+
+    public PlateRead getPlateRead() {
+        return plateRead;
+    }
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    @Override
+    public String toString() {
+        return requestKey;
+    }
+}
@@ -0,0 +1,57 @@
+package com.parkit.parkingsystem.anpr;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+/**
+ * One plate read by an ANPR camera. A camera watches a single lane, so it knows whether the vehicle
+ * is entering or leaving and which type of spot the lane leads to.
+ */
+public class PlateRead {
+
+    public enum Direction { ENTRY, EXIT }
+
+    private final long timeMillis;
+    private final String cameraId;
+    private final Direction direction;
+    private final String vehicleRegNumber;
+    private final double confidence;
+    private final ParkingType parkingType;
+
+    public PlateRead(long timeMillis, String cameraId, Direction direction, String vehicleRegNumber, double confidence, ParkingType parkingType){
+        this.timeMillis = timeMillis;
+        this.cameraId = cameraId;
+        this.direction = direction;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.confidence = confidence;
+        this.parkingType = parkingType;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    @Override
+    public String toString() {
+        return direction+" "+vehicleRegNumber+" by "+cameraId+" at "+timeMillis+" ("+confidence+")";
+    }
+}
@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.anpr;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns raw plate reads into gate commands. Reads below the confidence threshold are dropped, and
+ * reads of a plate in the same direction are coalesced while each comes less than the window after
+ * the previous one: a car waiting at the barrier is read many times but enters once.
+ *
+ * The window slides on the camera timestamps, not on the wall clock, so a replayed feed gives the
+ * same commands. Not thread safe, it is run by the single dedup stage of the {@link AnprPipeline}.
+ */
+public class PlateReadDeduplicator {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 30_000;
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.8;
+
+    private final long windowMillis;
+    private final double minConfidence;
+    //last read time per direction and plate, oldest first
+    private final LinkedHashMap<String, Long> lastSeen = new LinkedHashMap<>();
+    private long latestMillis = Long.MIN_VALUE;
+    private long lowConfidence;
+    private long duplicates;
+
+    public PlateReadDeduplicator(){
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_CONFIDENCE);
+    }
+
+    public PlateReadDeduplicator(long windowMillis, double minConfidence){
+        this.windowMillis = windowMillis;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+    *filter and coalesce a batch of reads
+    *
+    *@Param List reads in camera time order
+    *@Return one command per plate and direction not seen within the window
+    */
+    public List<GateCommand> process(List<PlateRead> plateReads){
+        List<GateCommand> commands = new ArrayList<>();
+        for(PlateRead plateRead : plateReads){
+            if(plateRead.getConfidence() < minConfidence || plateRead.getVehicleRegNumber() == null
+                    || plateRead.getVehicleRegNumber().isEmpty()){
+                lowConfidence++;
+                continue;
+            }
+            latestMillis = Math.max(latestMillis, plateRead.getTimeMillis());
+            expire();
+            String key = plateRead.getDirection()+" "+plateRead.getVehicleRegNumber();
+            Long previous = lastSeen.remove(key);
+            lastSeen.put(key, plateRead.getTimeMillis());
+            if(previous != null && plateRead.getTimeMillis() - previous < windowMillis){
+                duplicates++;
+                continue;
+            }
+            commands.add(new GateCommand(plateRead));
+        }
+        return commands;
+    }
+
+    private void expire(){
+        Iterator<Map.Entry<String, Long>> it = lastSeen.entrySet().iterator();
+        while(it.hasNext()){
+            if(latestMillis - it.next().getValue() < windowMillis){
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    public long getLowConfidence() {
+        return lowConfidence;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /** plates still inside the window */
+    public int size(){
+        return lastSeen.size();
+    }
+}
@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.anpr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Events handled by one stage of the {@link AnprPipeline} and the time it spent on them.
+ */
+public class StageMetrics {
+
+    private final String name;
+    private final LongAdder events = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    public StageMetrics(String name){
+        this.name = name;
+    }
+
+    public void record(int eventCount, long nanos){
+        events.add(eventCount);
+        busyNanos.add(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getEvents(){
+        return events.sum();
+    }
+
+    public long getBusyNanos(){
+        return busyNanos.sum();
+    }
+
+    /** events handled per second of work of the stage, 0 before its first event */
+    public double getThroughputPerSecond(){
+        long nanos = busyNanos.sum();
+        return nanos == 0 ? 0 : events.sum() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return name+": "+getEvents()+" events, "+Math.round(getThroughputPerSecond())+"/s";
+    }
+}
@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Base of the strategies that pick from a sorted set of free parking numbers per type.
+ */
+abstract class FreeSpotStrategy implements SpotAssignmentStrategy {
+
+    private final Map<ParkingType, TreeSet<Integer>> freeSpots = new HashMap<>();
+    private boolean loading;
+
+    @Override
+    public synchronized void load(Collection<ParkingSpot> parkingSpots) {
+        freeSpots.clear();
+        reset();
+        loading = true;
+        for(ParkingSpot parkingSpot : parkingSpots){
+            if(parkingSpot.isAvailable()){
+                release(parkingSpot);
+            }
+        }
+        loading = false;
+    }
+
+    @Override
+    public synchronized int nextSpot(ParkingType parkingType) {
+        NavigableSet<Integer> free = freeSpots.get(parkingType);
+        if(free == null || free.isEmpty()){
+            return 0;
+        }
+        return select(parkingType, free);
+    }
+
+    @Override
+    public synchronized void occupy(ParkingSpot parkingSpot) {
+        if(freeSpots(parkingSpot.getParkingType()).remove(parkingSpot.getId())){
+            occupied(parkingSpot);
+        }
+    }
+
+    @Override
+    public synchronized void release(ParkingSpot parkingSpot) {
+        if(freeSpots(parkingSpot.getParkingType()).add(parkingSpot.getId())){
+            released(parkingSpot);
+        }
+    }
+
+    /** choose a parking number among the non-empty set of free spots of the type */
+    abstract int select(ParkingType parkingType, NavigableSet<Integer> free);
+
+    void reset() {
+    }
+
+    void occupied(ParkingSpot parkingSpot) {
+    }
+
+    void released(ParkingSpot parkingSpot) {
+    }
+
+    /** true while the spots given to load are being registered */
+    boolean isLoading() {
+        return loading;
+    }
+
+    private TreeSet<Integer> freeSpots(ParkingType parkingType){
+        return freeSpots.computeIfAbsent(parkingType, t -> new TreeSet<>());
+    }
+}
@@ -0,0 +1,531 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.SpotLeaseDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotLease;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation for several gate controllers sharing one database. The spots of each type are cut into
+ * ranges of consecutive parking numbers, recorded in the spot_lease table. A node takes time-limited
+ * leases on some ranges and allocates only from them, in memory, so nodes never compete for the same
+ * spot and a gate does not query the database while its ranges have free spots.
+ *
+ * Leases are renewed every third of their duration, and a node only allocates from a range while
+ * more than a third of its lease is left: the margin covers clock skew between nodes and allocations
+ * in flight when a lease is lost. Each renewal also rebalances the ranges. A node keeps about its
+ * share of the ranges of each type among the live nodes. It takes over the ranges of nodes that
+ * stopped renewing and gives up its surplus, full ranges first. It also hands a range with free
+ * spots to a node that ran out of that type, as long as it keeps one for itself.
+ *
+ * When its ranges run out, a node first reads them again, since vehicles parked there may have left
+ * through another node, then leases a range nobody holds.
+ *
+ * Every lease query runs outside the monitor lock and its result is applied under it, so a gate
+ * picking a spot never waits for another gate's or the renewal's round trips. The database stays the
+ * judge of a spot: a free set read before a concurrent allocation may offer a spot already taken,
+ * whose occupation is then refused and the next spot tried.
+ */
+public class LeasedRangeStrategy implements SpotAssignmentStrategy {
+
+    private static final Logger logger = LogManager.getLogger("LeasedRangeStrategy");
+
+    public static final int DEFAULT_RANGE_SIZE = 10;
+    public static final long DEFAULT_LEASE_MILLIS = 30_000;
+
+    private final SpotLeaseDAO spotLeaseDAO;
+    private final String nodeId;
+    private final int rangeSize;
+    private final long leaseMillis;
+    private final Clock clock;
+    //ranges of every type by first parking number, indexed by type id
+    private final List<TreeMap<Integer, Range>> rangesByType = new ArrayList<>();
+    private final Object renewLock = new Object();
+    private volatile ParkingType starvedType;
+    private ScheduledExecutorService scheduler;
+
+    public LeasedRangeStrategy(SpotLeaseDAO spotLeaseDAO, String nodeId){
+        this(spotLeaseDAO, nodeId, DEFAULT_RANGE_SIZE, DEFAULT_LEASE_MILLIS, Clock.systemUTC());
+    }
+
+    public LeasedRangeStrategy(SpotLeaseDAO spotLeaseDAO, String nodeId, int rangeSize, long leaseMillis, Clock clock){
+        this.spotLeaseDAO = spotLeaseDAO;
+        this.nodeId = nodeId;
+        this.rangeSize = rangeSize;
+        this.leaseMillis = leaseMillis;
+        this.clock = clock;
+    }
+
+    private static final class Range {
+        final SpotLease spotLease;
+        final TreeSet<Integer> free = new TreeSet<>();
+        String owner;
+        long expiresAt;
+        //a lease query for the range is in flight on this node
+        boolean acquiring;
+
+        Range(SpotLease spotLease){
+            this.spotLease = spotLease;
+        }
+    }
+
+    /**
+    *cut the spots of each type into ranges, record the new ones and lease this node's share
+    *
+    *@Param Collection every spot of the lot, the same on every node
+    */
+    @Override
+    public void load(Collection<ParkingSpot> parkingSpots) {
+        List<ParkingSpot> sorted = new ArrayList<>(parkingSpots);
+        sorted.sort(Comparator.comparingInt(ParkingSpot::getId));
+        List<List<Integer>> numbersByType = new ArrayList<>();
+        for(ParkingSpot parkingSpot : sorted){
+            int typeId = parkingSpot.getParkingType().getId();
+            while(numbersByType.size() <= typeId){
+                numbersByType.add(new ArrayList<>());
+            }
+            numbersByType.get(typeId).add(parkingSpot.getId());
+        }
+        List<SpotLease> spotLeases = new ArrayList<>();
+        synchronized (this){
+            rangesByType.clear();
+            for(int typeId = 0; typeId < numbersByType.size(); typeId++){
+                List<Integer> numbers = numbersByType.get(typeId);
+                for(int i = 0; i < numbers.size(); i += rangeSize){
+                    SpotLease spotLease = new SpotLease(ParkingType.fromId(typeId), numbers.get(i),
+                            numbers.get(Math.min(i + rangeSize, numbers.size()) - 1));
+                    ranges(spotLease.getParkingType()).put(spotLease.getRangeStart(), new Range(spotLease));
+                    spotLeases.add(spotLease);
+                }
+            }
+        }
+        spotLeaseDAO.createLeases(spotLeases);
+        renew();
+    }
+
+    /**
+    *pick a free spot of the ranges of this node, reading them again or leasing a new one when they
+    *ran out, the queries run outside the monitor lock
+    */
+    @Override
+    public int nextSpot(ParkingType parkingType) {
+        long now = clock.millis();
+        int next;
+        int[] bounds;
+        synchronized (this){
+            next = firstFree(parkingType, now);
+            bounds = next == 0 ? usableBounds(parkingType, now) : null;
+        }
+        if(bounds != null){
+            List<Integer> parkingNumbers = spotLeaseDAO.getAvailableSlots(parkingType, bounds[0], bounds[1]);
+            synchronized (this){
+                if(parkingNumbers != null){
+                    refresh(parkingType, parkingNumbers, now);
+                }
+                next = firstFree(parkingType, now);
+            }
+        }
+        if(next == 0){
+            next = leaseFreeRange(parkingType, now);
+        }
+        if(next == 0){
+            starvedType = parkingType;
+        }else if(starvedType == parkingType){
+            starvedType = null;
+        }
+        return next;
+    }
+
+    @Override
+    public synchronized void occupy(ParkingSpot parkingSpot) {
+        Range range = findRange(parkingSpot);
+        if(range != null){
+            range.free.remove(parkingSpot.getId());
+        }
+    }
+
+    /**
+    *make a spot freed through this node allocatable again, if it is in one of its ranges,
+    *otherwise the node holding the range finds it when it reads the range again
+    */
+    @Override
+    public synchronized void release(ParkingSpot parkingSpot) {
+        Range range = findRange(parkingSpot);
+        if(range != null && isMine(range)){
+            range.free.add(parkingSpot.getId());
+        }
+    }
+
+    /**
+    *renew the leases of this node, then take over expired ranges and give up or hand over surplus ones
+    */
+    public void renew(){
+        //one renewal at a time, gates only wait on the monitor lock, never on the queries
+        synchronized (renewLock){
+            long now = clock.millis();
+            Date expiresAt = new Date(now + leaseMillis);
+            if(spotLeaseDAO.renewLeases(nodeId, expiresAt) < 0){
+                //keep the ranges, they stop being used once their lease is too close to its end
+                return;
+            }
+            List<SpotLease> spotLeases = spotLeaseDAO.getLeases();
+            Map<String, Integer> liveNodes = spotLeaseDAO.getLiveNodes(new Date(now));
+            liveNodes.putIfAbsent(nodeId, 0);
+            List<Range> gained = new ArrayList<>();
+            List<ParkingType> parkingTypes = new ArrayList<>();
+            synchronized (this){
+                for(SpotLease spotLease : spotLeases){
+                    Range range = ranges(spotLease.getParkingType()).get(spotLease.getRangeStart());
+                    //a range being acquired meanwhile gets its owner from that query
+                    if(range == null || range.acquiring){
+                        continue;
+                    }
+                    boolean wasMine = isMine(range);
+                    range.owner = spotLease.getOwner();
+                    range.expiresAt = spotLease.getExpiresAt() == null ? 0 : spotLease.getExpiresAt().getTime();
+                    if(wasMine && !isMine(range)){
+                        logger.info("Lost the lease of "+describe(range)+" to "+range.owner);
+                        range.free.clear();
+                    }else if(!wasMine && isMine(range)){
+                        gained.add(range);
+                    }
+                }
+                for(int typeId = 0; typeId < rangesByType.size(); typeId++){
+                    if(!rangesByType.get(typeId).isEmpty()){
+                        parkingTypes.add(ParkingType.fromId(typeId));
+                    }
+                }
+            }
+            for(Range range : gained){
+                fill(range);
+            }
+            for(ParkingType parkingType : parkingTypes){
+                rebalance(parkingType, liveNodes, now);
+            }
+            //saved last so other nodes do not hand over a range for a shortage this renewal already solved
+            spotLeaseDAO.heartbeat(nodeId, expiresAt, starvedType);
+        }
+    }
+
+    private void rebalance(ParkingType parkingType, Map<String, Integer> liveNodes, long now){
+        List<Range> candidates;
+        int share;
+        int held = 0;
+        synchronized (this){
+            Collection<Range> ranges = ranges(parkingType).values();
+            share = (ranges.size() + liveNodes.size() - 1) / liveNodes.size();
+            candidates = new ArrayList<>(ranges);
+            for(Range range : ranges){
+                if(isMine(range)){
+                    held++;
+                }
+            }
+        }
+        for(Range range : candidates){
+            if(held >= share){
+                break;
+            }
+            if(claim(range, now, false) && acquire(range, now)){
+                held++;
+            }
+        }
+        List<Range> released = new ArrayList<>();
+        synchronized (this){
+            List<Range> mine = new ArrayList<>();
+            for(Range range : ranges(parkingType).values()){
+                if(isMine(range)){
+                    mine.add(range);
+                }
+            }
+            //full ranges first, then the highest ones
+            mine.sort(Comparator.comparing((Range range) -> !range.free.isEmpty())
+                    .thenComparing(range -> -range.spotLease.getRangeStart()));
+            int surplus = mine.size() - share;
+            for(int i = 0; i < surplus; i++){
+                released.add(mine.get(i));
+            }
+            if(isStarvedElsewhere(parkingType, liveNodes)){
+                //hand over the range with the most free spots, if another one with free spots is left
+                Range donated = null;
+                int withFreeSpots = 0;
+                for(Range range : mine.subList(Math.max(0, surplus), mine.size())){
+                    if(!range.free.isEmpty()){
+                        withFreeSpots++;
+                        if(donated == null || range.free.size() > donated.free.size()){
+                            donated = range;
+                        }
+                    }
+                }
+                if(withFreeSpots > 1){
+                    logger.info("Handing over "+describe(donated)+" to a node out of "+parkingType+" spots");
+                    released.add(donated);
+                }
+            }
+            //no spot is allocated from a released range while its lease is given back
+            for(Range range : released){
+                range.owner = null;
+                range.expiresAt = 0;
+                range.free.clear();
+            }
+        }
+        for(Range range : released){
+            spotLeaseDAO.releaseLease(range.spotLease, nodeId);
+        }
+    }
+
+    private boolean isStarvedElsewhere(ParkingType parkingType, Map<String, Integer> liveNodes){
+        for(Map.Entry<String, Integer> node : liveNodes.entrySet()){
+            if(!node.getKey().equals(nodeId) && node.getValue() == parkingType.getId()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int firstFree(ParkingType parkingType, long now){
+        for(Range range : ranges(parkingType).values()){
+            if(isUsable(range, now) && !range.free.isEmpty()){
+                return range.free.first();
+            }
+        }
+        return 0;
+    }
+
+    /** parking numbers spanning the usable ranges of a type, to read their free spots in one query, null if none */
+    private int[] usableBounds(ParkingType parkingType, long now){
+        int from = Integer.MAX_VALUE;
+        int to = Integer.MIN_VALUE;
+        for(Range range : ranges(parkingType).values()){
+            if(isUsable(range, now)){
+                from = Math.min(from, range.spotLease.getRangeStart());
+                to = Math.max(to, range.spotLease.getRangeEnd());
+            }
+        }
+        return from > to ? null : new int[]{from, to};
+    }
+
+    /** replace the free spots of the usable ranges of a type with those just read */
+    private void refresh(ParkingType parkingType, List<Integer> parkingNumbers, long now){
+        TreeMap<Integer, Range> ranges = ranges(parkingType);
+        for(Range range : ranges.values()){
+            if(isUsable(range, now)){
+                range.free.clear();
+            }
+        }
+        for(int parkingNumber : parkingNumbers){
+            Map.Entry<Integer, Range> entry = ranges.floorEntry(parkingNumber);
+            if(entry != null && isUsable(entry.getValue(), now) && parkingNumber <= entry.getValue().spotLease.getRangeEnd()){
+                entry.getValue().free.add(parkingNumber);
+            }
+        }
+    }
+
+    private int leaseFreeRange(ParkingType parkingType, long now){
+        while(true){
+            Range candidate = null;
+            synchronized (this){
+                for(Range range : ranges(parkingType).values()){
+                    if(claim(range, now, true)){
+                        candidate = range;
+                        break;
+                    }
+                }
+            }
+            //a range that could not be taken or had no free spot is no longer a candidate
+            if(candidate == null){
+                return 0;
+            }
+            if(acquire(candidate, now)){
+                synchronized (this){
+                    if(!candidate.free.isEmpty()){
+                        return candidate.free.first();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+    *mark a range as being acquired, so a concurrent allocation or renewal looks for another one
+    *
+    *@Param Range range to acquire
+    *@Param long current time
+    *@Param boolean true to also renew a range of this node whose lease is too close to its end
+    *@Return true if the range was claimed, the caller must then call acquire
+    */
+    private synchronized boolean claim(Range range, long now, boolean evenIfMine){
+        boolean acquirable = isFree(range, now) || evenIfMine && isMine(range) && !isUsable(range, now);
+        if(!acquirable || range.acquiring){
+            return false;
+        }
+        range.acquiring = true;
+        return true;
+    }
+
+    /**
+    *take the lease of a range claimed by this thread and read its free spots, both outside the monitor lock
+    */
+    private boolean acquire(Range range, long now){
+        long expiresAt = now + leaseMillis;
+        boolean acquired = spotLeaseDAO.acquireLease(range.spotLease, nodeId, new Date(expiresAt), new Date(now));
+        List<Integer> parkingNumbers = acquired ? spotLeaseDAO.getAvailableSlots(range.spotLease.getParkingType(),
+                range.spotLease.getRangeStart(), range.spotLease.getRangeEnd()) : null;
+        synchronized (this){
+            range.acquiring = false;
+            range.expiresAt = expiresAt;
+            if(!acquired){
+                //taken by another node meanwhile, the next renewal reads who
+                range.owner = "";
+                return false;
+            }
+            range.owner = nodeId;
+            range.free.clear();
+            if(parkingNumbers != null){
+                range.free.addAll(parkingNumbers);
+            }
+            if(!range.free.isEmpty() && starvedType == range.spotLease.getParkingType()){
+                starvedType = null;
+            }
+            return true;
+        }
+    }
+
+    /**
+    *read the free spots of a range this node just took over, kept only if it still holds the range
+    */
+    private void fill(Range range){
+        List<Integer> parkingNumbers = spotLeaseDAO.getAvailableSlots(range.spotLease.getParkingType(),
+                range.spotLease.getRangeStart(), range.spotLease.getRangeEnd());
+        synchronized (this){
+            if(isMine(range)){
+                range.free.clear();
+                if(parkingNumbers != null){
+                    range.free.addAll(parkingNumbers);
+                }
+            }
+        }
+    }
+
+    private boolean isMine(Range range){
+        return nodeId.equals(range.owner);
+    }
+
+    /** leased by this node with more than a third of the lease left */
+    private boolean isUsable(Range range, long now){
+        return isMine(range) && now < range.expiresAt - leaseMillis / 3;
+    }
+
+    private boolean isFree(Range range, long now){
+        return range.owner == null || !isMine(range) && range.expiresAt < now;
+    }
+
+    private Range findRange(ParkingSpot parkingSpot){
+        Map.Entry<Integer, Range> entry = ranges(parkingSpot.getParkingType()).floorEntry(parkingSpot.getId());
+        return entry == null || parkingSpot.getId() > entry.getValue().spotLease.getRangeEnd() ? null : entry.getValue();
+    }
+
+    private TreeMap<Integer, Range> ranges(ParkingType parkingType){
+        while(rangesByType.size() <= parkingType.getId()){
+            rangesByType.add(new TreeMap<>());
+        }
+        return rangesByType.get(parkingType.getId());
+    }
+
+    private static String describe(Range range){
+        return range.spotLease.getParkingType()+" spots "+range.spotLease.getRangeStart()+"-"+range.spotLease.getRangeEnd();
+    }
+
+    /**
+    *count the ranges of a type this node holds
+    *
+    *@Param ParkingType type of the ranges
+    *@Return ranges leased by this node, usable or not
+    */
+    public synchronized int countLeasedRanges(ParkingType parkingType){
+        int count = 0;
+        for(Range range : ranges(parkingType).values()){
+            if(isMine(range)){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+    *check a spot is in a range this node may allocate from now
+    *
+    *@Param ParkingSpot spot to check
+    *@Return true if the spot is in a usable range of this node
+    */
+    public synchronized boolean isLeased(ParkingSpot parkingSpot){
+        Range range = findRange(parkingSpot);
+        return range != null && isUsable(range, clock.millis());
+    }
+
+    public String getNodeId(){
+        return nodeId;
+    }
+
+    /**
+    *renew the leases every third of their duration in the background
+    */
+    public synchronized void start(){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spot-leases");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMillis = leaseMillis / 3;
+        scheduler.scheduleWithFixedDelay(this::renewSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+    *stop renewing and hand every range back so the other nodes take them at their next renewal
+    */
+    public void stop(){
+        synchronized (renewLock){
+            synchronized (this){
+                if(scheduler != null){
+                    scheduler.shutdownNow();
+                    scheduler = null;
+                }
+                for(TreeMap<Integer, Range> ranges : rangesByType){
+                    for(Range range : ranges.values()){
+                        if(isMine(range)){
+                            range.owner = null;
+                            range.expiresAt = 0;
+                            range.free.clear();
+                        }
+                    }
+                }
+            }
+            spotLeaseDAO.releaseNode(nodeId);
+        }
+    }
+
+    private void renewSafely(){
+        try {
+            renew();
+        } catch (Exception e) {
+            logger.error("Unexpected error while renewing spot leases",e);
+        }
+    }
+}
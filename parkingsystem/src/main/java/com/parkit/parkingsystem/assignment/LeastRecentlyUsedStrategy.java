@@ -0,0 +1,60 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Gives the free spot that was released the longest time ago, spreading wear evenly over the lot.
+ */
+public class LeastRecentlyUsedStrategy extends FreeSpotStrategy {
+
+    private static class SpotUse {
+        private final int parkingNumber;
+        private final long releasedAt;
+
+        SpotUse(int parkingNumber, long releasedAt){
+            this.parkingNumber = parkingNumber;
+            this.releasedAt = releasedAt;
+        }
+    }
+
+    private static final Comparator<SpotUse> OLDEST_FIRST = Comparator.<SpotUse>comparingLong(u -> u.releasedAt).thenComparingInt(u -> u.parkingNumber);
+
+    private final Map<ParkingType, TreeSet<SpotUse>> freeByLastUse = new HashMap<>();
+    private final Map<Integer, SpotUse> uses = new HashMap<>();
+    private long releases;
+
+    @Override
+    int select(ParkingType parkingType, NavigableSet<Integer> free) {
+        return freeByLastUse.get(parkingType).first().parkingNumber;
+    }
+
+    @Override
+    void reset() {
+        freeByLastUse.clear();
+        uses.clear();
+        releases = 0;
+    }
+
+    @Override
+    void occupied(ParkingSpot parkingSpot) {
+        SpotUse use = uses.remove(parkingSpot.getId());
+        if(use != null){
+            freeByLastUse.get(parkingSpot.getParkingType()).remove(use);
+        }
+    }
+
+    @Override
+    void released(ParkingSpot parkingSpot) {
+        //spots free at load time have never been used as far as we know, they go first in number order
+        SpotUse use = new SpotUse(parkingSpot.getId(), isLoading() ? 0 : ++releases);
+        uses.put(use.parkingNumber, use);
+        freeByLastUse.computeIfAbsent(parkingSpot.getParkingType(), t -> new TreeSet<>(OLDEST_FIRST)).add(use);
+    }
+}
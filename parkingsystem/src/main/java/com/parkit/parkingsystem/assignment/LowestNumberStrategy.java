@@ -0,0 +1,16 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.NavigableSet;
+
+/**
+ * Same choice as GET_NEXT_PARKING_SPOT: the free spot with the smallest number.
+ */
+public class LowestNumberStrategy extends FreeSpotStrategy {
+
+    @Override
+    int select(ParkingType parkingType, NavigableSet<Integer> free) {
+        return free.first();
+    }
+}
@@ -0,0 +1,20 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.NavigableSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Gives the first free spot at or after a random number, so concurrent entries rarely target the same spot.
+ */
+public class RandomStartStrategy extends FreeSpotStrategy {
+
+    @Override
+    int select(ParkingType parkingType, NavigableSet<Integer> free) {
+        int first = free.first();
+        int last = free.last();
+        Integer next = free.ceiling(first + ThreadLocalRandom.current().nextInt(last - first + 1));
+        return next != null ? next : first;
+    }
+}
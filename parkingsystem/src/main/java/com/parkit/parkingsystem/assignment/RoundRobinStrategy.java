@@ -0,0 +1,27 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+
+/**
+ * Gives the first free spot after the one assigned last, wrapping around at the end of the lot.
+ */
+public class RoundRobinStrategy extends FreeSpotStrategy {
+
+    private final Map<ParkingType, Integer> lastAssigned = new HashMap<>();
+
+    @Override
+    int select(ParkingType parkingType, NavigableSet<Integer> free) {
+        Integer next = free.higher(lastAssigned.getOrDefault(parkingType, 0));
+        return next != null ? next : free.first();
+    }
+
+    @Override
+    void occupied(ParkingSpot parkingSpot) {
+        lastAssigned.put(parkingSpot.getParkingType(), parkingSpot.getId());
+    }
+}
@@ -0,0 +1,46 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Collection;
+
+/**
+ * Chooses which free spot a new vehicle gets.
+ *
+ * Implementations keep the free spots in memory: {@link #nextSpot(ParkingType)} only picks a
+ * candidate, the spot leaves the free set when the DAO reports it occupied.
+ */
+public interface SpotAssignmentStrategy {
+
+    void load(Collection<ParkingSpot> parkingSpots);
+
+    /**
+    *pick the spot to give to the next vehicle of a type
+    *
+    *@Param ParkingType type of the vehicle
+    *@Return the parking number, or 0 if every spot of that type is taken
+    */
+    int nextSpot(ParkingType parkingType);
+
+    void occupy(ParkingSpot parkingSpot);
+
+    void release(ParkingSpot parkingSpot);
+
+    /**
+    *build a strategy from its configuration name
+    *
+    *@Param String one of lowest, round-robin, random, zone or lru
+    *@Return the matching strategy
+    */
+    static SpotAssignmentStrategy forName(String name){
+        switch(name){
+            case "lowest": return new LowestNumberStrategy();
+            case "round-robin": return new RoundRobinStrategy();
+            case "random": return new RandomStartStrategy();
+            case "zone": return new ZoneAwareStrategy(ZoneAwareStrategy.DEFAULT_ZONE_SIZE);
+            case "lru": return new LeastRecentlyUsedStrategy();
+            default: throw new IllegalArgumentException("Unknown spot assignment strategy "+name);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.assignment;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Splits the lot into zones of consecutive parking numbers and fills the zone with the most free
+ * spots first, which keeps traffic spread over the whole lot instead of piling up near spot 1.
+ */
+public class ZoneAwareStrategy extends FreeSpotStrategy {
+
+    public static final int DEFAULT_ZONE_SIZE = 20;
+
+    private static class Zone {
+        private final int index;
+        private int free;
+
+        Zone(int index){
+            this.index = index;
+        }
+    }
+
+    private static final Comparator<Zone> MOST_FREE_FIRST = Comparator.<Zone>comparingInt(z -> -z.free).thenComparingInt(z -> z.index);
+
+    private final int zoneSize;
+    private final Map<ParkingType, Map<Integer, Zone>> zones = new HashMap<>();
+    private final Map<ParkingType, TreeSet<Zone>> zonesByFreeSpots = new HashMap<>();
+
+    public ZoneAwareStrategy(int zoneSize){
+        if(zoneSize <= 0){
+            throw new IllegalArgumentException("Zone size must be positive");
+        }
+        this.zoneSize = zoneSize;
+    }
+
+    public int getZone(int parkingNumber){
+        return (parkingNumber - 1) / zoneSize;
+    }
+
+    @Override
+    int select(ParkingType parkingType, NavigableSet<Integer> free) {
+        Zone zone = zonesByFreeSpots.get(parkingType).first();
+        return free.ceiling(zone.index * zoneSize + 1);
+    }
+
+    @Override
+    void reset() {
+        zones.clear();
+        zonesByFreeSpots.clear();
+    }
+
+    @Override
+    void occupied(ParkingSpot parkingSpot) {
+        updateFreeSpots(parkingSpot, -1);
+    }
+
+    @Override
+    void released(ParkingSpot parkingSpot) {
+        updateFreeSpots(parkingSpot, 1);
+    }
+
+    private void updateFreeSpots(ParkingSpot parkingSpot, int delta){
+        ParkingType parkingType = parkingSpot.getParkingType();
+        Zone zone = zones.computeIfAbsent(parkingType, t -> new HashMap<>())
+                .computeIfAbsent(getZone(parkingSpot.getId()), Zone::new);
+        TreeSet<Zone> ordered = zonesByFreeSpots.computeIfAbsent(parkingType, t -> new TreeSet<>(MOST_FREE_FIRST));
+        ordered.remove(zone);
+        zone.free += delta;
+        if(zone.free > 0){
+            ordered.add(zone);
+        }
+    }
+}
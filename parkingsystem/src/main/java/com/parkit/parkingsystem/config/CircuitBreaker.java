@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+
+/**
+ * Stops sending requests to the database after a run of consecutive failures. Once open it fails
+ * requests immediately until the open period is over, then lets a single probe through: a success
+ * closes it again, a failure opens it for another period.
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LogManager.getLogger("CircuitBreaker");
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long probeStartedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis){
+        this(failureThreshold, openMillis, Clock.systemUTC());
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis, Clock clock){
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+    *check whether a request may go to the database, moving an expired open circuit to half open
+    *
+    *@Return true if the request may proceed
+    */
+    public synchronized boolean allowRequest(){
+        long now = clock.millis();
+        switch(state){
+            case CLOSED:
+                return true;
+            case OPEN:
+                if(now - openedAt < openMillis){
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                logger.info("Circuit half open, probing the database");
+                return true;
+            default:
+                //a probe that never reported back must not keep the circuit half open forever
+                if(now - probeStartedAt >= openMillis){
+                    probeStartedAt = now;
+                    return true;
+                }
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess(){
+        if(state != State.CLOSED){
+            logger.info("Circuit closed, the database is back");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure(){
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)){
+            logger.error("Circuit open after "+consecutiveFailures+" consecutive database failures");
+            state = State.OPEN;
+            openedAt = clock.millis();
+        }
+    }
+
+    public synchronized State getState(){
+        return state;
+    }
+}
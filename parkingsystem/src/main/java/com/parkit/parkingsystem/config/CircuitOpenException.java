@@ -0,0 +1,15 @@
+package com.parkit.parkingsystem.config;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown instead of opening a connection while the {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends SQLTransientConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String reason){
+        super(reason, "08000");
+    }
+}
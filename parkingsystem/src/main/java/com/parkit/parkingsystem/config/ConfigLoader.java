@@ -0,0 +1,66 @@
+package com.parkit.parkingsystem.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Merges the configuration sources, each one overriding the previous:
+ * parkingsystem.properties on the classpath, the file named by parkit.config / PARKIT_CONFIG,
+ * environment variables (PARKIT_ + key in upper case with dots as underscores) and
+ * system properties (parkit. + key).
+ */
+public class ConfigLoader {
+
+    private static final Logger logger = LogManager.getLogger("ConfigLoader");
+
+    public static final String DEFAULT_RESOURCE = "/parkingsystem.properties";
+    public static final String PREFIX = "parkit.";
+
+    public static Properties load(){
+        return load(System.getenv(), System.getProperties());
+    }
+
+    public static Properties load(Map<String, String> environment, Properties systemProperties){
+        Properties properties = new Properties();
+        try(InputStream in = ConfigLoader.class.getResourceAsStream(DEFAULT_RESOURCE)){
+            if(in != null){
+                properties.load(in);
+            }
+        }catch(IOException e){
+            logger.error("Error reading "+DEFAULT_RESOURCE,e);
+        }
+
+        String file = systemProperties.getProperty(PREFIX+"config", environment.get(toEnvironmentName("config")));
+        if(file != null){
+            try(InputStream in = Files.newInputStream(Paths.get(file))){
+                properties.load(in);
+            }catch(IOException e){
+                logger.error("Error reading configuration file "+file,e);
+            }
+        }
+
+        for(String key : properties.stringPropertyNames()){
+            String value = environment.get(toEnvironmentName(key));
+            if(value != null){
+                properties.setProperty(key, value);
+            }
+        }
+        for(String name : systemProperties.stringPropertyNames()){
+            if(name.startsWith(PREFIX)){
+                properties.setProperty(name.substring(PREFIX.length()), systemProperties.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    static String toEnvironmentName(String key){
+        return "PARKIT_"+key.toUpperCase().replace('.', '_').replace('-', '_');
+    }
+}
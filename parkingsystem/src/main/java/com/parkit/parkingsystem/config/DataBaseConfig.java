@@ -1,28 +1,427 @@
 package com.parkit.parkingsystem.config;
 
+import com.parkit.parkingsystem.monitoring.ConnectionAcquireEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.*;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseConfig");
 
+    private static final Set<String> loadedDrivers = ConcurrentHashMap.newKeySet();
+
+    public static final long DEFAULT_VALIDATE_AFTER_IDLE_MILLIS = 30_000;
+    static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final DataBaseSettings settings;
+    private final int poolSize;
+    private final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>();
+    private final Set<Connection> pooledConnections = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final AtomicInteger openConnections = new AtomicInteger();
+    //when each idle connection went back to the pool, System.nanoTime()
+    private final Map<Connection, Long> idleSince = Collections.synchronizedMap(new IdentityHashMap<>());
+    private volatile long validateAfterIdleMillis = DEFAULT_VALIDATE_AFTER_IDLE_MILLIS;
+
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile DataBaseConfig readReplica;
+    private volatile long replicaLagMillis;
+    private final ConcurrentHashMap<String, Long> recentWrites = new ConcurrentHashMap<>();
+    private final AtomicInteger writesSincePrune = new AtomicInteger();
+    //whether the last failed DAO call of each thread could not reach the database, cleared by a success
+    private final ThreadLocal<Boolean> lastFailureTransient = new ThreadLocal<>();
+
+    public DataBaseConfig(){
+        this(DataBaseSettings.load());
+    }
+
+    public DataBaseConfig(DataBaseSettings settings){
+        this.settings = settings;
+        this.poolSize = settings.getPoolSize();
+        this.circuitBreaker = new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenMillis());
+    }
+
+    public DataBaseSettings getSettings() {
+        return settings;
+    }
+
+    /**
+    *route the read-only queries to a replica
+    *
+    *@Param DataBaseConfig replica data source, null to read from this one again
+    *@Param long how long after a write to a key its reads stay on this data source
+    */
+    public void setReadReplica(DataBaseConfig readReplica, long replicaLagMillis){
+        this.readReplica = readReplica;
+        this.replicaLagMillis = replicaLagMillis;
+    }
+
+    public DataBaseConfig getReadReplica() {
+        return readReplica;
+    }
+
+    /**
+    *get a connection for a read-only query about a key, e.g. a vehicle registration number.
+    *The read goes to the replica unless the key was written here less than the replica lag ago,
+    *so a caller always reads its own writes.
+    *
+    *@Param String key of the data read, null when the read is not tied to one
+    *@Return connection to release with closeConnection
+    */
+    public Connection getReadConnection(String key) throws ClassNotFoundException, SQLException {
+        DataBaseConfig replica = readReplica;
+        if(replica == null || replica.isDegraded()){
+            return getConnection();
+        }
+        if(key != null){
+            Long writtenAt = recentWrites.get(key);
+            if(writtenAt != null){
+                if(System.currentTimeMillis() - writtenAt < replicaLagMillis){
+                    return getConnection();
+                }
+                recentWrites.remove(key, writtenAt);
+            }
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            logger.error("Read replica unavailable, reading from the primary",e);
+            replica.recordFailure(e);
+            return getConnection();
+        }
+    }
+
+    /**
+    *remember that a key was just written so its reads stay on this data source for a while
+    */
+    public void recordWrite(String key){
+        if(readReplica == null || key == null){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        recentWrites.put(key, now);
+        if(writesSincePrune.incrementAndGet() >= 1024){
+            writesSincePrune.set(0);
+            recentWrites.values().removeIf(writtenAt -> now - writtenAt >= replicaLagMillis);
+        }
+    }
+
+    /** number of connections opened ahead of the first request */
+    public int getMinIdle() {
+        return settings.getMinIdle();
+    }
+
     public Connection getConnection() throws ClassNotFoundException, SQLException {
+        if(!circuitBreaker.allowRequest()){
+            throw new CircuitOpenException("Database circuit is open, failing fast");
+        }
+        ConnectionAcquireEvent event = ConnectionAcquireEvent.start(settings.getUrl(), idleConnections.size());
+        boolean acquired = false;
+        int attempt = 0;
+        try {
+            while(true){
+                try {
+                    Connection con = borrowConnection();
+                    acquired = true;
+                    return con;
+                } catch (SQLException e) {
+                    //a full pool has already been waited on, only a failed connect is worth retrying
+                    if(attempt >= settings.getRetryAttempts() || e instanceof SQLTransientConnectionException || !isConnectionFailure(e)){
+                        throw e;
+                    }
+                    attempt++;
+                    event.retried();
+                    logger.error("Unable to open a DB connection, attempt "+attempt+" of "+(settings.getRetryAttempts() + 1),e);
+                    try {
+                        Thread.sleep(settings.getRetryBackoffMillis() * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            event.finish(acquired);
+        }
+    }
+
+    /**
+    *ask the driver to check the connections left idle for longer than this before lending them,
+    *a connection dropped by the server or a firewall is discarded instead of failing the next query
+    *
+    *@Param long idle time in milliseconds, 0 to check every connection taken from the pool
+    */
+    public void setValidateAfterIdleMillis(long validateAfterIdleMillis){
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+    }
+
+    private Connection borrowConnection() throws ClassNotFoundException, SQLException {
+        Connection con = idleConnections.poll();
+        while(con != null){
+            if(isUsable(con)){
+                return con;
+            }
+            discard(con);
+            con = idleConnections.poll();
+        }
+        if(reserveConnectionSlot()){
+            try {
+                return openPooledConnection();
+            } catch (ClassNotFoundException | SQLException e) {
+                openConnections.decrementAndGet();
+                throw e;
+            }
+        }
+        try {
+            con = idleConnections.poll(settings.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(con == null){
+            throw new SQLTransientConnectionException("Timed out waiting for a DB connection, pool size is "+poolSize);
+        }
+        if(!isUsable(con)){
+            //its slot is free again for a new connection
+            discard(con);
+            return borrowConnection();
+        }
+        return con;
+    }
+
+    private boolean isUsable(Connection con){
+        Long returnedAt = idleSince.remove(con);
+        try {
+            if(con.isClosed()){
+                return false;
+            }
+            if(returnedAt != null && System.nanoTime() - returnedAt < TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis)){
+                return true;
+            }
+            if(con.isValid(VALIDATION_TIMEOUT_SECONDS)){
+                return true;
+            }
+            logger.error("Idle DB connection is no longer valid, discarding it");
+            return false;
+        } catch (SQLException e) {
+            logger.error("Error while checking an idle DB connection",e);
+            return false;
+        }
+    }
+
+    /**
+    *prepare a statement that gives up after the given time instead of waiting for the socket timeout
+    *
+    *@Param Connection connection from getConnection
+    *@Param String SQL statement
+    *@Param int query timeout in seconds, 0 for none
+    *@Return the prepared statement
+    */
+    public PreparedStatement prepareStatement(Connection con, String sql, int queryTimeoutSeconds) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        if(queryTimeoutSeconds > 0){
+            ps.setQueryTimeout(queryTimeoutSeconds);
+        }
+        return ps;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+    *tell if the database is considered unhealthy, callers should then avoid it
+    *
+    *@Return true while the circuit breaker is not closed
+    */
+    public boolean isDegraded(){
+        return circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+    *report that a DAO call went through
+    */
+    public void recordSuccess(){
+        lastFailureTransient.remove();
+        circuitBreaker.recordSuccess();
+    }
+
+    /**
+    *report that a DAO call failed, only failures of the database itself count against the circuit breaker
+    *
+    *@Param Exception error caught by the DAO
+    */
+    public void recordFailure(Exception ex){
+        boolean transientFailure = isTransientFailure(ex);
+        lastFailureTransient.set(transientFailure);
+        if(ex instanceof CircuitOpenException){
+            return;
+        }
+        if(transientFailure){
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    /**
+    *tell if the last DAO call of this thread that did not go through failed because the database could
+    *not be reached in time; a write refused for any other reason, e.g. a constraint, would be refused again
+    *
+    *@Return false after a success, a refused write or a DAO returning false without an error
+    */
+    public boolean isLastFailureTransient(){
+        return Boolean.TRUE.equals(lastFailureTransient.get());
+    }
+
+    /**
+    *@Param Exception error caught by a DAO
+    *@Return true for an open circuit, a timeout or a lost connection, the failures worth retrying later
+    */
+    public static boolean isTransientFailure(Exception ex){
+        return ex instanceof SQLTimeoutException || (ex instanceof SQLException && isConnectionFailure((SQLException) ex));
+    }
+
+    private static boolean isConnectionFailure(SQLException e){
+        return e instanceof SQLTransientConnectionException
+                || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLRecoverableException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    /**
+    *load the configured JDBC driver, only the first call for a driver class does the work
+    */
+    public void loadDriver() throws ClassNotFoundException {
+        String driverClass = settings.getDriverClass();
+        if(driverClass != null && !driverClass.isEmpty() && !loadedDrivers.contains(driverClass)){
+            Class.forName(driverClass);
+            loadedDrivers.add(driverClass);
+        }
+    }
+
+    /**
+    *open connections until the pool holds the requested number of idle connections
+    *
+    *@Param int number of connections to open, capped by the pool size
+    *@Return number of idle connections in the pool
+    */
+    public int openPool(int connections) throws ClassNotFoundException, SQLException {
+        while(idleConnections.size() < connections && reserveConnectionSlot()){
+            try {
+                Connection con = openPooledConnection();
+                idleSince.put(con, System.nanoTime());
+                idleConnections.offer(con);
+            } catch (ClassNotFoundException | SQLException e) {
+                openConnections.decrementAndGet();
+                throw e;
+            }
+        }
+        return idleConnections.size();
+    }
+
+    /**
+    *prepare every statement once on each idle connection so the driver statement cache is warm
+    *
+    *@Param List of SQL statements
+    *@Return number of statements prepared
+    */
+    public int prepareStatements(List<String> statements) throws SQLException {
+        int prepared = 0;
+        for(Connection con : idleConnections){
+            for(String sql : statements){
+                PreparedStatement ps = con.prepareStatement(sql);
+                closePreparedStatement(ps);
+                prepared++;
+            }
+        }
+        return prepared;
+    }
+
+    public void shutdown(){
+        if(readReplica != null){
+            readReplica.shutdown();
+        }
+        Connection con = idleConnections.poll();
+        while(con != null){
+            discard(con);
+            con = idleConnections.poll();
+        }
+    }
+
+    protected Connection createConnection() throws ClassNotFoundException, SQLException {
+        return DriverManager.getConnection(settings.getUrl(), settings.getConnectionProperties());
+    }
+
+    private boolean reserveConnectionSlot(){
+        int open = openConnections.get();
+        while(open < poolSize){
+            if(openConnections.compareAndSet(open, open + 1)){
+                return true;
+            }
+            open = openConnections.get();
+        }
+        return false;
+    }
+
+    private Connection openPooledConnection() throws ClassNotFoundException, SQLException {
         logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/prod?serverTimezone=UTC&enabledTLSProtocols=TLSv1.2","root","codio");
+        loadDriver();
+        Connection con = createConnection();
+        pooledConnections.add(con);
+        return con;
+    }
+
+    private void discard(Connection con){
+        pooledConnections.remove(con);
+        idleSince.remove(con);
+        openConnections.decrementAndGet();
+        try {
+            con.close();
+            logger.info("Closing DB connection");
+        } catch (SQLException e) {
+            logger.error("Error while closing connection",e);
+        }
     }
 
     public void closeConnection(Connection con){
         if(con!=null){
+            DataBaseConfig replica = readReplica;
+            if(replica != null && replica.pooledConnections.contains(con)){
+                replica.closeConnection(con);
+                return;
+            }
+            if(!pooledConnections.contains(con)){
+                try {
+                    con.close();
+                    logger.info("Closing DB connection");
+                } catch (SQLException e) {
+                    logger.error("Error while closing connection",e);
+                }
+                return;
+            }
             try {
-                con.close();
-                logger.info("Closing DB connection");
+                if(!con.getAutoCommit()){
+                    con.rollback();
+                    con.setAutoCommit(true);
+                }
+                idleSince.put(con, System.nanoTime());
+                idleConnections.offer(con);
             } catch (SQLException e) {
-                logger.error("Error while closing connection",e);
+                logger.error("Error while returning connection to the pool",e);
+                discard(con);
             }
         }
     }
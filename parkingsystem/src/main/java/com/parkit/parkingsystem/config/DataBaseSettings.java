@@ -0,0 +1,186 @@
+package com.parkit.parkingsystem.config;
+
+import java.util.Properties;
+
+/**
+ * Typed view of the db.* configuration keys used by {@link DataBaseConfig}.
+ */
+public class DataBaseSettings {
+
+    public static final String DRIVER_PREFIX = "driver.";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String driverClass;
+    private final int poolSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final Properties driverProperties;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final int retryAttempts;
+    private final long retryBackoffMillis;
+
+    public DataBaseSettings(String url, String user, String password, String driverClass,
+                            int poolSize, int minIdle, long borrowTimeoutMillis, Properties driverProperties){
+        this(url, user, password, driverClass, poolSize, minIdle, borrowTimeoutMillis, driverProperties, 5, 10000, 2, 50);
+    }
+
+    public DataBaseSettings(String url, String user, String password, String driverClass,
+                            int poolSize, int minIdle, long borrowTimeoutMillis, Properties driverProperties,
+                            int failureThreshold, long openMillis, int retryAttempts, long retryBackoffMillis){
+        if(url == null || url.isEmpty()){
+            throw new IllegalArgumentException("No JDBC URL configured");
+        }
+        if(poolSize <= 0 || minIdle < 0 || minIdle > poolSize){
+            throw new IllegalArgumentException("Invalid pool size "+poolSize+" with "+minIdle+" idle connections");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.driverClass = driverClass;
+        this.poolSize = poolSize;
+        this.minIdle = minIdle;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.driverProperties = driverProperties;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.retryAttempts = retryAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public static DataBaseSettings load(){
+        return fromProperties(ConfigLoader.load(), "db");
+    }
+
+    /**
+    *read the settings found under a key prefix
+    *
+    *@Param Properties merged configuration
+    *@Param String key prefix, e.g. db
+    *@Return the typed settings
+    */
+    public static DataBaseSettings fromProperties(Properties properties, String prefix){
+        String keyPrefix = prefix + ".";
+        Properties driverProperties = new Properties();
+        for(String key : properties.stringPropertyNames()){
+            if(key.startsWith(keyPrefix + DRIVER_PREFIX)){
+                driverProperties.setProperty(key.substring(keyPrefix.length() + DRIVER_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return new DataBaseSettings(
+                properties.getProperty(keyPrefix + "url"),
+                properties.getProperty(keyPrefix + "user"),
+                properties.getProperty(keyPrefix + "password"),
+                properties.getProperty(keyPrefix + "driverClass"),
+                getInt(properties, keyPrefix + "pool.size", 10),
+                getInt(properties, keyPrefix + "pool.minIdle", 0),
+                getInt(properties, keyPrefix + "pool.borrowTimeoutMillis", 5000),
+                driverProperties,
+                getInt(properties, keyPrefix + "breaker.failureThreshold", 5),
+                getInt(properties, keyPrefix + "breaker.openMillis", 10000),
+                getInt(properties, keyPrefix + "retry.attempts", 2),
+                getInt(properties, keyPrefix + "retry.backoffMillis", 50));
+    }
+
+    /**
+    *read the settings found under a key prefix, taking the missing keys from a second prefix,
+    *e.g. a replica that only overrides the URL of the primary
+    *
+    *@Param Properties merged configuration
+    *@Param String key prefix, e.g. db.replica
+    *@Param String fallback key prefix, e.g. db
+    *@Return the typed settings
+    */
+    public static DataBaseSettings fromProperties(Properties properties, String prefix, String fallbackPrefix){
+        Properties merged = new Properties();
+        merged.putAll(properties);
+        for(String key : properties.stringPropertyNames()){
+            if(key.startsWith(fallbackPrefix + ".") && !key.startsWith(prefix + ".")){
+                String overriddenKey = prefix + key.substring(fallbackPrefix.length());
+                if(merged.getProperty(overriddenKey) == null){
+                    merged.setProperty(overriddenKey, properties.getProperty(key));
+                }
+            }
+        }
+        return fromProperties(merged, prefix);
+    }
+
+    public static int getInt(Properties properties, String key, int defaultValue){
+        String value = properties.getProperty(key);
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Configuration key "+key+" must be a number, got '"+value+"'", e);
+        }
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getDriverClass() {
+        return driverClass;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    /** consecutive failures that open the circuit breaker */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /** how long the circuit stays open before a probe request is let through */
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    /** extra attempts to open a connection after a connection failure */
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    /** properties handed to the JDBC driver together with the user and password */
+    public Properties getConnectionProperties() {
+        Properties properties = new Properties();
+        properties.putAll(driverProperties);
+        if(user != null){
+            properties.setProperty("user", user);
+        }
+        if(password != null){
+            properties.setProperty("password", password);
+        }
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "DataBaseSettings{url="+url+", user="+user+", poolSize="+poolSize+", minIdle="+minIdle+", driverProperties="+driverProperties+"}";
+    }
+}
@@ -1,15 +1,71 @@
 package com.parkit.parkingsystem.constants;
 
+import java.util.Collections;
+
 public class DBConstants {
 
-    public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE = ?";
+    //width of the VEHICLE_REG_NUMBER columns, a longer plate is refused before any ticket is built
+    public static final int VEHICLE_REG_NUMBER_MAX_LENGTH = 10;
+
+    public static final String GET_NEXT_PARKING_SPOT = "select min(PARKING_NUMBER) from parking where AVAILABLE = true and TYPE_ID = ?";
     public static final String UPDATE_PARKING_SPOT = "update parking set available = ? where PARKING_NUMBER = ?";
+    public static final String OCCUPY_PARKING_SPOT = "update parking set AVAILABLE = false where PARKING_NUMBER = ? and AVAILABLE = true";
+    public static final String GET_PARKING_SPOTS = "select PARKING_NUMBER, AVAILABLE, TYPE_ID from parking order by PARKING_NUMBER";
+    public static final String GET_SPOT_CHECKS_AFTER = "select p.PARKING_NUMBER, p.AVAILABLE, p.TYPE_ID, exists (select 1 from ticket t where t.PARKING_NUMBER = p.PARKING_NUMBER and t.OUT_TIME IS NULL), (select coalesce(max(t.ID), 0) from ticket t where t.PARKING_NUMBER = p.PARKING_NUMBER) from parking p where p.PARKING_NUMBER > ? order by p.PARKING_NUMBER limit ?";
+    public static final String REPAIR_PARKING_SPOT = "update parking set AVAILABLE = ? where PARKING_NUMBER = ? and AVAILABLE <> ? and (exists (select 1 from ticket t where t.PARKING_NUMBER = ? and t.OUT_TIME IS NULL)) <> ? and (select coalesce(max(t.ID), 0) from ticket t where t.PARKING_NUMBER = ?) = ?";
+    public static final String GET_PARKING_TYPES = "select ID, NAME, RATE_PER_HOUR from parking_type order by ID";
+    public static final String GET_AVAILABLE_PARKING_SPOTS = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE_ID = ? order by PARKING_NUMBER";
+
+    public static final String GET_AVAILABLE_PARKING_SPOTS_IN_RANGE = "select PARKING_NUMBER from parking where AVAILABLE = true and TYPE_ID = ? and PARKING_NUMBER between ? and ? order by PARKING_NUMBER";
+
+    public static final String CREATE_SPOT_LEASE = "insert ignore into spot_lease(TYPE_ID, RANGE_START, RANGE_END) values(?,?,?)";
+    public static final String GET_SPOT_LEASES = "select TYPE_ID, RANGE_START, RANGE_END, OWNER, EXPIRES_AT from spot_lease order by TYPE_ID, RANGE_START";
+    public static final String ACQUIRE_SPOT_LEASE = "update spot_lease set OWNER = ?, EXPIRES_AT = ? where TYPE_ID = ? and RANGE_START = ? and (OWNER is null or OWNER = ? or EXPIRES_AT < ?)";
+    public static final String RENEW_SPOT_LEASES = "update spot_lease set EXPIRES_AT = ? where OWNER = ?";
+    public static final String RELEASE_SPOT_LEASE = "update spot_lease set OWNER = null, EXPIRES_AT = null where TYPE_ID = ? and RANGE_START = ? and OWNER = ?";
+    public static final String RELEASE_SPOT_LEASES = "update spot_lease set OWNER = null, EXPIRES_AT = null where OWNER = ?";
+    public static final String UPDATE_LEASE_NODE = "update lease_node set EXPIRES_AT = ?, STARVED_TYPE_ID = ? where NODE_ID = ?";
+    public static final String SAVE_LEASE_NODE = "insert into lease_node(NODE_ID, EXPIRES_AT, STARVED_TYPE_ID) values(?,?,?)";
+    public static final String GET_LIVE_LEASE_NODES = "select NODE_ID, STARVED_TYPE_ID from lease_node where EXPIRES_AT >= ?";
+    public static final String DELETE_LEASE_NODE = "delete from lease_node where NODE_ID = ?";
+
+    public static final String SAVE_RESERVATION = "insert into reservation(PARKING_NUMBER, VEHICLE_REG_NUMBER, START_TIME, END_TIME) values(?,?,?,?)";
+    public static final String DELETE_RESERVATION = "delete from reservation where ID = ?";
+    public static final String GET_RESERVATIONS_ENDING_AFTER = "select r.ID, r.PARKING_NUMBER, r.VEHICLE_REG_NUMBER, r.START_TIME, r.END_TIME, p.TYPE_ID from reservation r, parking p where p.PARKING_NUMBER = r.PARKING_NUMBER and r.END_TIME > ? order by r.START_TIME";
 
-    public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) values(?,?,?,?,?)";
-    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=? where ID=?";
+    public static final String SAVE_SEASON_PASS = "insert into season_pass(VEHICLE_REG_NUMBER, VALID_UNTIL) values(?,?)";
+    public static final String SAVE_BLOCKLIST_ENTRY = "insert into blocklist(VEHICLE_REG_NUMBER, VALID_UNTIL) values(?,?)";
+    public static final String GET_SEASON_PASSES_AFTER = "select ID, VEHICLE_REG_NUMBER, VALID_UNTIL from season_pass where ID > ? order by ID limit ?";
+    public static final String GET_BLOCKLIST_AFTER = "select ID, VEHICLE_REG_NUMBER, VALID_UNTIL from blocklist where ID > ? order by ID limit ?";
+
+    public static final String SAVE_TICKET_EVENT = "insert into ticket_event(EVENT_TYPE, TICKET_ID, PARKING_NUMBER, AVAILABLE, VEHICLE_REG_NUMBER, PRICE, EVENT_TIME) values(?,?,?,?,?,?,?)";
+    public static final String GET_TICKET_EVENTS_AFTER = "select ID, EVENT_TYPE, TICKET_ID, PARKING_NUMBER, AVAILABLE, VEHICLE_REG_NUMBER, PRICE, EVENT_TIME from ticket_event where ID > ? order by ID limit ?";
+    public static final String PURGE_TICKET_EVENTS = "delete from ticket_event where ID <= ? and EVENT_TIME < ?";
+    public static final String GET_TICKET_EVENT_CURSOR = "select LAST_EVENT_ID from ticket_event_cursor where RELAY = ?";
+    public static final String UPDATE_TICKET_EVENT_CURSOR = "update ticket_event_cursor set LAST_EVENT_ID = ? where RELAY = ?";
+    public static final String SAVE_TICKET_EVENT_CURSOR = "insert into ticket_event_cursor(RELAY, LAST_EVENT_ID) values(?,?)";
+
+    public static final String SAVE_TICKET = "insert into ticket(PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME, REQUEST_KEY) values(?,?,?,?,?,?)";
+    public static final String UPDATE_TICKET = "update ticket set PRICE=?, OUT_TIME=?, EXIT_REQUEST_KEY=? where ID=?";
     public static final String UPDATE_TICKET_INTIME = "update ticket set IN_TIME=? where ID=?";
-    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
-    public static final String GET_NBTICKET = "select COUNT(*) from ticket where VEHICLE_REG_NUMBER = ?";
+    public static final String GET_TICKET = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE_ID from ticket t,parking p where p.parking_number = t.parking_number and t.VEHICLE_REG_NUMBER=? order by t.IN_TIME DESC limit 1";
+    public static final String GET_TICKET_BY_REQUEST_KEY = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE_ID, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.REQUEST_KEY=?";
+    public static final String GET_TICKET_BY_EXIT_REQUEST_KEY = "select t.PARKING_NUMBER, t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, p.TYPE_ID, t.VEHICLE_REG_NUMBER from ticket t,parking p where p.parking_number = t.parking_number and t.EXIT_REQUEST_KEY=?";
+    public static final String GET_NBTICKET = "select (select COUNT(*) from ticket where VEHICLE_REG_NUMBER = ?) + (select COUNT(*) from ticket_archive where VEHICLE_REG_NUMBER = ?)";
 
     public static final String GET_ALREADY_IN_PARKING = "select * from ticket t where t.VEHICLE_REG_NUMBER = ? and t.OUT_TIME IS NULL";
+    public static final String GET_OPEN_TICKETS = "select t.PARKING_NUMBER, t.ID, t.VEHICLE_REG_NUMBER, t.IN_TIME, p.TYPE_ID from ticket t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and t.OUT_TIME IS NULL";
+    //plates checked per query, the unused placeholders are bound to null which matches nothing
+    public static final int OPEN_TICKET_CHECK_BATCH_SIZE = 50;
+    public static final String GET_OPEN_TICKET_IDS_OF_PLATES = "select VEHICLE_REG_NUMBER, ID from ticket where OUT_TIME IS NULL and VEHICLE_REG_NUMBER in ("
+            + String.join(",", Collections.nCopies(OPEN_TICKET_CHECK_BATCH_SIZE, "?")) + ")";
+
+    public static final String GET_ARCHIVABLE_TICKET_IDS = "select ID from ticket where OUT_TIME IS NOT NULL and OUT_TIME < ? order by ID limit ?";
+    public static final String ARCHIVE_TICKETS = "insert into ticket_archive(ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME) select ID, PARKING_NUMBER, VEHICLE_REG_NUMBER, PRICE, IN_TIME, OUT_TIME from ticket where ID <= ? and OUT_TIME IS NOT NULL and OUT_TIME < ?";
+    public static final String DELETE_ARCHIVED_TICKETS = "delete from ticket where ID <= ? and OUT_TIME IS NOT NULL and OUT_TIME < ?";
+
+    public static final String GET_CLOSED_TICKETS_AFTER_ID = "(select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, t.PARKING_NUMBER, p.TYPE_ID from ticket_archive t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and t.ID > ? order by t.ID limit ?) union all (select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, t.PARKING_NUMBER, p.TYPE_ID from ticket t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and t.OUT_TIME IS NOT NULL and t.ID > ? order by t.ID limit ?) order by ID limit ?";
+    public static final String GET_PLATE_HISTORY = "(select t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, t.PARKING_NUMBER, p.TYPE_ID from ticket t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and t.VEHICLE_REG_NUMBER = ? and t.IN_TIME >= ? and t.IN_TIME <= ? and (t.IN_TIME < ? or t.ID < ?) order by t.IN_TIME desc, t.ID desc limit ?) union all (select t.ID, t.PRICE, t.IN_TIME, t.OUT_TIME, t.PARKING_NUMBER, p.TYPE_ID from ticket_archive t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and t.VEHICLE_REG_NUMBER = ? and t.IN_TIME >= ? and t.IN_TIME <= ? and (t.IN_TIME < ? or t.ID < ?) order by t.IN_TIME desc, t.ID desc limit ?) order by IN_TIME desc, ID desc limit ?";
+    public static final String GET_MAX_TICKET_ID = "select max(ID) from ticket";
+    public static final String GET_TICKETS_CHANGED_SINCE = "select t.ID, t.VEHICLE_REG_NUMBER, t.PRICE, t.IN_TIME, t.OUT_TIME, t.PARKING_NUMBER, p.TYPE_ID from ticket t, parking p where p.PARKING_NUMBER = t.PARKING_NUMBER and (t.ID > ? or t.IN_TIME >= ? or t.OUT_TIME >= ?) order by t.ID";
 }
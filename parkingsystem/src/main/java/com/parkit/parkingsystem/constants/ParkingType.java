@@ -1,6 +1,128 @@
 package com.parkit.parkingsystem.constants;
 
-public enum ParkingType {
-    CAR,
-    BIKE
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Kind of parking spot. The catalogue of types is read from the parking_type table at startup,
+ * CAR and BIKE are always known so the app still runs before it is loaded.
+ *
+ * Each type has a compact id, from 1 to {@link #MAX_ID}, that is also its index in the arrays
+ * keeping per type occupancy and metrics, and it carries its own hourly rate. Once a spot or a
+ * ticket holds its type, nothing on the gate path parses a type name or switches on it.
+ */
+public final class ParkingType {
+
+    public static final int MAX_ID = 255;
+
+    public static final ParkingType CAR = new ParkingType(1, "CAR", Fare.CAR_RATE_PER_HOUR);
+    public static final ParkingType BIKE = new ParkingType(2, "BIKE", Fare.BIKE_RATE_PER_HOUR);
+
+    private static volatile ParkingType[] catalogue = {null, CAR, BIKE};
+
+    private final int id;
+    private final String name;
+    private volatile double ratePerHour;
+
+    private ParkingType(int id, String name, double ratePerHour){
+        this.id = id;
+        this.name = name;
+        this.ratePerHour = ratePerHour;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getRatePerHour() {
+        return ratePerHour;
+    }
+
+    /**
+    *add a type to the catalogue, or update the rate of a type already known under that id and name
+    *
+    *@Param int compact id, from 1 to MAX_ID
+    *@Param String unique name, e.g. EV
+    *@Param double price of one hour
+    *@Return the type, the same instance for every call with that id
+    */
+    public static synchronized ParkingType register(int id, String name, double ratePerHour){
+        if(id < 1 || id > MAX_ID){
+            throw new IllegalArgumentException("Parking type id must be between 1 and "+MAX_ID+": "+id);
+        }
+        ParkingType[] types = catalogue;
+        for(ParkingType type : types){
+            if(type != null && type.name.equals(name) && type.id != id){
+                throw new IllegalArgumentException("Parking type "+name+" is already registered with id "+type.id);
+            }
+        }
+        ParkingType known = id < types.length ? types[id] : null;
+        if(known != null){
+            if(!known.name.equals(name)){
+                throw new IllegalArgumentException("Parking type id "+id+" is already used by "+known.name);
+            }
+            known.ratePerHour = ratePerHour;
+            return known;
+        }
+        ParkingType type = new ParkingType(id, name, ratePerHour);
+        ParkingType[] grown = Arrays.copyOf(types, Math.max(types.length, id + 1));
+        grown[id] = type;
+        catalogue = grown;
+        return type;
+    }
+
+    /**
+    *get a type from its id, a plain array lookup
+    *
+    *@Param int id of the type
+    *@Return the type
+    */
+    public static ParkingType fromId(int id){
+        ParkingType[] types = catalogue;
+        if(id < 1 || id >= types.length || types[id] == null){
+            throw new IllegalArgumentException("Unknown parking type id "+id);
+        }
+        return types[id];
+    }
+
+    /**
+    *get a type from its name, for configuration and user input rather than the gate path
+    *
+    *@Param String name of the type
+    *@Return the type
+    */
+    public static ParkingType valueOf(String name){
+        for(ParkingType type : catalogue){
+            if(type != null && type.name.equals(name)){
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parking type "+name);
+    }
+
+    /** every known type, by id */
+    public static ParkingType[] values(){
+        List<ParkingType> types = new ArrayList<>();
+        for(ParkingType type : catalogue){
+            if(type != null){
+                types.add(type);
+            }
+        }
+        return types.toArray(new ParkingType[0]);
+    }
+
+    /** length of an array indexed by the id of every type known so far */
+    public static int getIdBound(){
+        return catalogue.length;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
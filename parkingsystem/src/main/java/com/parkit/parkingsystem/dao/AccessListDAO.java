@@ -0,0 +1,119 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.AccessListEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Season passes and blocklist. Both tables are append-only, so the rows above the highest ID already
+ * read are all the changes since the last read.
+ */
+public class AccessListDAO {
+    private static final Logger logger = LogManager.getLogger("AccessListDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 5;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    /**
+    *give a vehicle a season pass, or end its pass with a past date
+    *
+    *@Param String vehicle identification
+    *@Param Date end of the pass
+    *@Return true if the row was saved
+    */
+    public boolean saveSeasonPass(String vehicleRegNumber, Date validUntil){
+        return saveEntry(DBConstants.SAVE_SEASON_PASS, "season pass", vehicleRegNumber, validUntil);
+    }
+
+    /**
+    *block a vehicle, or unblock it with a past date
+    *
+    *@Param String vehicle identification
+    *@Param Date end of the block, null for no end
+    *@Return true if the row was saved
+    */
+    public boolean saveBlocklistEntry(String vehicleRegNumber, Date validUntil){
+        return saveEntry(DBConstants.SAVE_BLOCKLIST_ENTRY, "blocklist entry", vehicleRegNumber, validUntil);
+    }
+
+    /**
+    *@Param int highest ID already read, 0 for all
+    *@Param int maximum number of rows
+    *@Return the season pass rows by ID, null if the query failed
+    */
+    public List<AccessListEntry> getSeasonPassesAfter(int afterId, int limit){
+        return getEntriesAfter(DBConstants.GET_SEASON_PASSES_AFTER, "season passes", afterId, limit);
+    }
+
+    /**
+    *@Param int highest ID already read, 0 for all
+    *@Param int maximum number of rows
+    *@Return the blocklist rows by ID, null if the query failed
+    */
+    public List<AccessListEntry> getBlocklistAfter(int afterId, int limit){
+        return getEntriesAfter(DBConstants.GET_BLOCKLIST_AFTER, "blocklist", afterId, limit);
+    }
+
+    private boolean saveEntry(String sql, String what, String vehicleRegNumber, Date validUntil){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, sql, queryTimeoutSeconds)){
+                ps.setString(1, vehicleRegNumber);
+                if(validUntil == null){
+                    ps.setNull(2, Types.TIMESTAMP);
+                }else{
+                    ps.setTimestamp(2, new Timestamp(validUntil.getTime()));
+                }
+                ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error saving "+what,ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private List<AccessListEntry> getEntriesAfter(String sql, String what, int afterId, int limit){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            List<AccessListEntry> entries = new ArrayList<>();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, sql, queryTimeoutSeconds)){
+                ps.setInt(1, afterId);
+                ps.setInt(2, limit);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        entries.add(new AccessListEntry(rs.getInt(1), rs.getString(2), rs.getTimestamp(3)));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return entries;
+        }catch (Exception ex){
+            logger.error("Error fetching "+what,ex);
+            dataBaseConfig.recordFailure(ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
@@ -1,59 +1,341 @@
 package com.parkit.parkingsystem.dao;
 
+import com.parkit.parkingsystem.assignment.SpotAssignmentStrategy;
 import com.parkit.parkingsystem.config.DataBaseConfig;
 import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotCheck;
+import com.parkit.parkingsystem.monitoring.DaoCallEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ParkingSpotDAO {
     private static final Logger logger = LogManager.getLogger("ParkingSpotDAO");
 
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 2;
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    private SpotAssignmentStrategy spotAssignmentStrategy;
+    private TicketEventDAO ticketEventDAO;
+
+    /**
+    *choose spots in memory with the given strategy instead of querying min(PARKING_NUMBER)
+    *
+    *@Param SpotAssignmentStrategy strategy already loaded with the current spots, or null for the SQL query
+    */
+    public void setSpotAssignmentStrategy(SpotAssignmentStrategy spotAssignmentStrategy){
+        this.spotAssignmentStrategy = spotAssignmentStrategy;
+    }
+
+    /**
+    *write an outbox event in the same transaction as every change of availability
+    *
+    *@Param TicketEventDAO outbox, null to update the spots alone
+    */
+    public void setTicketEventDAO(TicketEventDAO ticketEventDAO){
+        this.ticketEventDAO = ticketEventDAO;
+    }
+
     public int getNextAvailableSlot(ParkingType parkingType){
+        if(spotAssignmentStrategy != null){
+            return spotAssignmentStrategy.nextSpot(parkingType);
+        }
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "getNextAvailableSlot");
         int result=-1;
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NEXT_PARKING_SPOT);
-            ps.setString(1, parkingType.toString());
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                result = rs.getInt(1);;
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_NEXT_PARKING_SPOT, queryTimeoutSeconds)){
+                ps.setInt(1, parkingType.getId());
+                try(ResultSet rs = ps.executeQuery()){
+                    if(rs.next()){
+                        result = rs.getInt(1);;
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
         }catch (Exception ex){
             logger.error("Error fetching next available slot",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
         }
         return result;
     }
 
+    /**
+    *list the free spots of a type, for callers that cannot take just the lowest one
+    *
+    *@Param ParkingType type of the vehicle
+    *@Return spot numbers in ascending order, empty if none is free or the query failed
+    */
+    public List<Integer> getAvailableSlots(ParkingType parkingType){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "getAvailableSlots");
+        List<Integer> parkingNumbers = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_AVAILABLE_PARKING_SPOTS, queryTimeoutSeconds)){
+                ps.setInt(1, parkingType.getId());
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        parkingNumbers.add(rs.getInt(1));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching available slots",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return parkingNumbers;
+    }
+
     public boolean updateParking(ParkingSpot parkingSpot){
         //update the availability fo that parking slot
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "updateParking");
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_PARKING_SPOT);
-            ps.setBoolean(1, parkingSpot.isAvailable());
-            ps.setInt(2, parkingSpot.getId());
-            int updateRowCount = ps.executeUpdate();
-            dataBaseConfig.closePreparedStatement(ps);
+            if(ticketEventDAO != null){
+                con.setAutoCommit(false);
+            }
+            int updateRowCount;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_PARKING_SPOT, queryTimeoutSeconds)){
+                ps.setBoolean(1, parkingSpot.isAvailable());
+                ps.setInt(2, parkingSpot.getId());
+                updateRowCount = ps.executeUpdate();
+            }
+            if(ticketEventDAO != null){
+                if(updateRowCount == 1){
+                    ticketEventDAO.appendSpot(con, parkingSpot);
+                }
+                con.commit();
+            }
+            dataBaseConfig.recordSuccess();
+            if(updateRowCount == 1 && spotAssignmentStrategy != null){
+                if(parkingSpot.isAvailable()){
+                    spotAssignmentStrategy.release(parkingSpot);
+                }else{
+                    spotAssignmentStrategy.occupy(parkingSpot);
+                }
+            }
             return (updateRowCount == 1);
         }catch (Exception ex){
             logger.error("Error updating parking info",ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            event.failed();
             return false;
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
         }
     }
 
+    /**
+    *mark a spot occupied only if it is still free, so two nodes picking the same spot never both park on it
+    *
+    *@Param ParkingSpot spot picked for an entry
+    *@Return 1 if the spot was taken, 0 if it was no longer free and another one must be picked, -1 if the update failed
+    */
+    public int occupyParkingSpot(ParkingSpot parkingSpot){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "occupyParkingSpot");
+        try {
+            con = dataBaseConfig.getConnection();
+            if(ticketEventDAO != null){
+                con.setAutoCommit(false);
+            }
+            int updateRowCount;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.OCCUPY_PARKING_SPOT, queryTimeoutSeconds)){
+                ps.setInt(1, parkingSpot.getId());
+                updateRowCount = ps.executeUpdate();
+            }
+            if(ticketEventDAO != null){
+                if(updateRowCount == 1){
+                    ticketEventDAO.appendSpot(con, parkingSpot);
+                }
+                con.commit();
+            }
+            dataBaseConfig.recordSuccess();
+            if(spotAssignmentStrategy != null){
+                //taken by this call or by another node, either way not free any more
+                spotAssignmentStrategy.occupy(parkingSpot);
+            }
+            return updateRowCount == 1 ? 1 : 0;
+        }catch (Exception ex){
+            logger.error("Error occupying parking spot "+parkingSpot.getId(),ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            event.failed();
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+    }
+
+    public List<ParkingSpot> getParkingSpots(){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "getParkingSpots");
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_PARKING_SPOTS, queryTimeoutSeconds)){
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        parkingSpots.add(new ParkingSpot(rs.getInt(1), ParkingType.fromId(rs.getInt(3)), rs.getBoolean(2)));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching parking spots",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return parkingSpots;
+    }
+
+    /**
+    *read a chunk of spots along with the presence of an open ticket on each, walking the table by parking number
+    *
+    *@Param int last parking number of the previous chunk, 0 for the first one
+    *@Param int maximum number of spots to read
+    *@Return spots in ascending order, null if the query failed
+    */
+    public List<SpotCheck> getSpotChecksAfter(int afterParkingNumber, int limit){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "getSpotChecksAfter");
+        List<SpotCheck> spotChecks = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_SPOT_CHECKS_AFTER, queryTimeoutSeconds)){
+                ps.setInt(1, afterParkingNumber);
+                ps.setInt(2, limit);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        spotChecks.add(new SpotCheck(new ParkingSpot(rs.getInt(1), ParkingType.fromId(rs.getInt(3)), rs.getBoolean(2)), rs.getBoolean(4), rs.getInt(5)));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return spotChecks;
+        }catch (Exception ex){
+            logger.error("Error checking parking spots",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+    }
+
+    /**
+    *set the availability of spots in one batch to what their open tickets call for, each only if it
+    *still does and no ticket was saved on the spot since it was checked
+    *
+    *@Param List checks of the mismatched spots
+    *@Return the spots actually changed, with their new availability, empty if none was or the batch failed
+    */
+    public List<ParkingSpot> repairParkingSpots(List<SpotCheck> spotChecks){
+        List<ParkingSpot> repaired = new ArrayList<>();
+        if(spotChecks.isEmpty()){
+            return repaired;
+        }
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for(SpotCheck spotCheck : spotChecks){
+            ParkingSpot checked = spotCheck.getParkingSpot();
+            parkingSpots.add(new ParkingSpot(checked.getId(), checked.getParkingType(), !spotCheck.hasOpenTicket()));
+        }
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("ParkingSpotDAO", "repairParkingSpots");
+        try {
+            con = dataBaseConfig.getConnection();
+            if(ticketEventDAO != null){
+                con.setAutoCommit(false);
+            }
+            int[] updateRowCounts;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.REPAIR_PARKING_SPOT, queryTimeoutSeconds)){
+                for(int i = 0; i < parkingSpots.size(); i++){
+                    ParkingSpot parkingSpot = parkingSpots.get(i);
+                    ps.setBoolean(1, parkingSpot.isAvailable());
+                    ps.setInt(2, parkingSpot.getId());
+                    ps.setBoolean(3, parkingSpot.isAvailable());
+                    ps.setInt(4, parkingSpot.getId());
+                    ps.setBoolean(5, parkingSpot.isAvailable());
+                    ps.setInt(6, parkingSpot.getId());
+                    ps.setInt(7, spotChecks.get(i).getLastTicketId());
+                    ps.addBatch();
+                }
+                updateRowCounts = ps.executeBatch();
+            }
+            if(ticketEventDAO != null){
+                for(int i = 0; i < updateRowCounts.length; i++){
+                    if(updateRowCounts[i] == 1){
+                        ticketEventDAO.appendSpot(con, parkingSpots.get(i));
+                    }
+                }
+                con.commit();
+            }
+            dataBaseConfig.recordSuccess();
+            for(int i = 0; i < updateRowCounts.length; i++){
+                if(updateRowCounts[i] == 1){
+                    ParkingSpot parkingSpot = parkingSpots.get(i);
+                    repaired.add(parkingSpot);
+                    if(spotAssignmentStrategy != null){
+                        if(parkingSpot.isAvailable()){
+                            spotAssignmentStrategy.release(parkingSpot);
+                        }else{
+                            spotAssignmentStrategy.occupy(parkingSpot);
+                        }
+                    }
+                }
+            }
+        }catch (Exception ex){
+            logger.error("Error repairing parking spots",ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return repaired;
+    }
+
+    /**
+    *undo the spot update of a failed outbox transaction, nothing to undo without the outbox
+    */
+    private void rollback(Connection con){
+        try {
+            if(con != null && !con.getAutoCommit()){
+                con.rollback();
+            }
+        } catch (SQLException e) {
+            logger.error("Error while rolling back parking update",e);
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ParkingTypeDAO {
+    private static final Logger logger = LogManager.getLogger("ParkingTypeDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 2;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    /**
+    *read the parking_type table and register every row in the ParkingType catalogue
+    *
+    *@Return the types loaded, empty if the table could not be read
+    */
+    public List<ParkingType> loadParkingTypes(){
+        Connection con = null;
+        List<ParkingType> parkingTypes = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_PARKING_TYPES, queryTimeoutSeconds)){
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        try {
+                            parkingTypes.add(ParkingType.register(rs.getInt(1), rs.getString(2), rs.getDouble(3)));
+                        } catch (IllegalArgumentException e) {
+                            logger.error("Skipping parking type "+rs.getString(2),e);
+                        }
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching parking types",ex);
+            dataBaseConfig.recordFailure(ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return parkingTypes;
+    }
+}
@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class ReservationDAO {
+    private static final Logger logger = LogManager.getLogger("ReservationDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 2;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    /**
+    *save a reservation and set its generated id
+    *
+    *@Param Reservation reservation with its spot, vehicle and time window
+    *@Return true if the reservation was saved
+    */
+    public boolean saveReservation(Reservation reservation){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_RESERVATION, Statement.RETURN_GENERATED_KEYS)){
+                ps.setQueryTimeout(queryTimeoutSeconds);
+                ps.setInt(1, reservation.getParkingSpot().getId());
+                ps.setString(2, reservation.getVehicleRegNumber());
+                ps.setTimestamp(3, new Timestamp(reservation.getStartTime().getTime()));
+                ps.setTimestamp(4, new Timestamp(reservation.getEndTime().getTime()));
+                ps.executeUpdate();
+                try(ResultSet rs = ps.getGeneratedKeys()){
+                    if(rs.next()){
+                        reservation.setId(rs.getInt(1));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error saving reservation",ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public boolean deleteReservation(int id){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int deleted;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.DELETE_RESERVATION, queryTimeoutSeconds)){
+                ps.setInt(1, id);
+                deleted = ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return deleted == 1;
+        }catch (Exception ex){
+            logger.error("Error deleting reservation",ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *get every reservation still running or to come, to load the reservation index at startup
+    *
+    *@Param Date reservations ending at or before this time are left out
+    *@Return reservations by start time
+    */
+    public List<Reservation> getReservationsEndingAfter(Date time){
+        Connection con = null;
+        List<Reservation> reservations = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_RESERVATIONS_ENDING_AFTER, queryTimeoutSeconds)){
+                ps.setTimestamp(1, new Timestamp(time.getTime()));
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        Reservation reservation = new Reservation();
+                        reservation.setId(rs.getInt(1));
+                        reservation.setParkingSpot(new ParkingSpot(rs.getInt(2), ParkingType.fromId(rs.getInt(6)), true));
+                        reservation.setVehicleRegNumber(rs.getString(3));
+                        reservation.setStartTime(rs.getTimestamp(4));
+                        reservation.setEndTime(rs.getTimestamp(5));
+                        reservations.add(reservation);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching reservations",ex);
+            dataBaseConfig.recordFailure(ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return reservations;
+    }
+}
@@ -0,0 +1,316 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.SpotLease;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leases of spot ranges and heartbeats of the nodes holding them. Every change of owner is a
+ * conditional update, so two nodes can never both believe they hold the same range.
+ */
+public class SpotLeaseDAO {
+    private static final Logger logger = LogManager.getLogger("SpotLeaseDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 2;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    /**
+    *record the ranges not in the table yet, ranges already there keep their owner
+    *
+    *@Param List ranges computed from the parking spots
+    *@Return true if every range is in the table
+    */
+    public boolean createLeases(List<SpotLease> spotLeases){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.CREATE_SPOT_LEASE, queryTimeoutSeconds)){
+                for(SpotLease spotLease : spotLeases){
+                    ps.setInt(1, spotLease.getParkingType().getId());
+                    ps.setInt(2, spotLease.getRangeStart());
+                    ps.setInt(3, spotLease.getRangeEnd());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error creating spot leases",ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *read every range with its current owner
+    *
+    *@Return ranges by type and first parking number, empty if the query failed
+    */
+    public List<SpotLease> getLeases(){
+        Connection con = null;
+        List<SpotLease> spotLeases = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_SPOT_LEASES, queryTimeoutSeconds)){
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        SpotLease spotLease = new SpotLease(ParkingType.fromId(rs.getInt(1)), rs.getInt(2), rs.getInt(3));
+                        spotLease.setOwner(rs.getString(4));
+                        spotLease.setExpiresAt(rs.getTimestamp(5));
+                        spotLeases.add(spotLease);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching spot leases",ex);
+            dataBaseConfig.recordFailure(ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return spotLeases;
+    }
+
+    /**
+    *take a range that is free, expired or already held by the node
+    *
+    *@Param SpotLease range to take
+    *@Param String node taking it
+    *@Param Date end of the lease
+    *@Param Date current time, a lease expired before it can be taken over
+    *@Return true if the node now holds the range
+    */
+    public boolean acquireLease(SpotLease spotLease, String owner, Date expiresAt, Date now){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int updated;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.ACQUIRE_SPOT_LEASE, queryTimeoutSeconds)){
+                ps.setString(1, owner);
+                ps.setTimestamp(2, new Timestamp(expiresAt.getTime()));
+                ps.setInt(3, spotLease.getParkingType().getId());
+                ps.setInt(4, spotLease.getRangeStart());
+                ps.setString(5, owner);
+                ps.setTimestamp(6, new Timestamp(now.getTime()));
+                updated = ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return updated == 1;
+        }catch (Exception ex){
+            logger.error("Error acquiring spot lease",ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *extend every range the node still holds, ranges taken over by another node are left alone
+    *
+    *@Param String node renewing its leases
+    *@Param Date new end of the leases
+    *@Return number of ranges renewed, -1 if the update failed
+    */
+    public int renewLeases(String owner, Date expiresAt){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int updated;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.RENEW_SPOT_LEASES, queryTimeoutSeconds)){
+                ps.setTimestamp(1, new Timestamp(expiresAt.getTime()));
+                ps.setString(2, owner);
+                updated = ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return updated;
+        }catch (Exception ex){
+            logger.error("Error renewing spot leases",ex);
+            dataBaseConfig.recordFailure(ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public boolean releaseLease(SpotLease spotLease, String owner){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int updated;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.RELEASE_SPOT_LEASE, queryTimeoutSeconds)){
+                ps.setInt(1, spotLease.getParkingType().getId());
+                ps.setInt(2, spotLease.getRangeStart());
+                ps.setString(3, owner);
+                updated = ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return updated == 1;
+        }catch (Exception ex){
+            logger.error("Error releasing spot lease",ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *give up every range of a node and forget the node, on shutdown
+    *
+    *@Param String node leaving
+    *@Return true if the node is gone from both tables
+    */
+    public boolean releaseNode(String owner){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.RELEASE_SPOT_LEASES, queryTimeoutSeconds)){
+                ps.setString(1, owner);
+                ps.executeUpdate();
+            }
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.DELETE_LEASE_NODE, queryTimeoutSeconds)){
+                ps.setString(1, owner);
+                ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error releasing the leases of node "+owner,ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *record that a node is alive until expiresAt, and the type it ran out of spots for
+    *
+    *@Param String node
+    *@Param Date end of the heartbeat
+    *@Param ParkingType type the node could not allocate last, null if none
+    *@Return true if the heartbeat was saved
+    */
+    public boolean heartbeat(String nodeId, Date expiresAt, ParkingType starvedType){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int updated;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_LEASE_NODE, queryTimeoutSeconds)){
+                ps.setTimestamp(1, new Timestamp(expiresAt.getTime()));
+                setType(ps, 2, starvedType);
+                ps.setString(3, nodeId);
+                updated = ps.executeUpdate();
+            }
+            if(updated == 0){
+                try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.SAVE_LEASE_NODE, queryTimeoutSeconds)){
+                    ps.setString(1, nodeId);
+                    ps.setTimestamp(2, new Timestamp(expiresAt.getTime()));
+                    setType(ps, 3, starvedType);
+                    ps.executeUpdate();
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error saving the heartbeat of node "+nodeId,ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private static void setType(PreparedStatement ps, int index, ParkingType parkingType) throws SQLException {
+        if(parkingType == null){
+            ps.setNull(index, Types.INTEGER);
+        }else{
+            ps.setInt(index, parkingType.getId());
+        }
+    }
+
+    /**
+    *get the nodes whose heartbeat has not expired
+    *
+    *@Param Date current time
+    *@Return id of every live node with the id of the type it ran out of, 0 if none, empty if the query failed
+    */
+    public Map<String, Integer> getLiveNodes(Date now){
+        Connection con = null;
+        Map<String, Integer> nodes = new HashMap<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_LIVE_LEASE_NODES, queryTimeoutSeconds)){
+                ps.setTimestamp(1, new Timestamp(now.getTime()));
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        nodes.put(rs.getString(1), rs.getInt(2));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching live nodes",ex);
+            dataBaseConfig.recordFailure(ex);
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return nodes;
+    }
+
+    /**
+    *list the free spots of a type between two parking numbers, to fill a leased range
+    *
+    *@Param ParkingType type of the range
+    *@Param int first parking number
+    *@Param int last parking number, included
+    *@Return spot numbers in ascending order, null if the query failed
+    */
+    public List<Integer> getAvailableSlots(ParkingType parkingType, int rangeStart, int rangeEnd){
+        Connection con = null;
+        List<Integer> parkingNumbers = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_AVAILABLE_PARKING_SPOTS_IN_RANGE, queryTimeoutSeconds)){
+                ps.setInt(1, parkingType.getId());
+                ps.setInt(2, rangeStart);
+                ps.setInt(3, rangeEnd);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        parkingNumbers.add(rs.getInt(1));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching available slots in range",ex);
+            dataBaseConfig.recordFailure(ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+        return parkingNumbers;
+    }
+}
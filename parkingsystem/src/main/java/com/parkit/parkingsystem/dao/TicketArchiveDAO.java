@@ -0,0 +1,94 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+public class TicketArchiveDAO {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 30;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    /**
+    *move one chunk of closed tickets from ticket to ticket_archive in a single short transaction
+    *
+    *@Param Date only tickets closed before this date are moved
+    *@Param int maximum number of tickets moved by this call
+    *@Return number of tickets moved, or -1 if the chunk was rolled back
+    */
+    public int archiveClosedTickets(Date closedBefore, int chunkSize){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            con.setAutoCommit(false);
+            Timestamp cutoff = new Timestamp(closedBefore.getTime());
+
+            int lastId = -1;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_ARCHIVABLE_TICKET_IDS, queryTimeoutSeconds)){
+                ps.setTimestamp(1, cutoff);
+                ps.setInt(2, chunkSize);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        lastId = Math.max(lastId, rs.getInt(1));
+                    }
+                }
+            }
+            if(lastId < 0){
+                con.commit();
+                dataBaseConfig.recordSuccess();
+                return 0;
+            }
+
+            int archived;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.ARCHIVE_TICKETS, queryTimeoutSeconds)){
+                ps.setInt(1, lastId);
+                ps.setTimestamp(2, cutoff);
+                archived = ps.executeUpdate();
+            }
+
+            int deleted;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.DELETE_ARCHIVED_TICKETS, queryTimeoutSeconds)){
+                ps.setInt(1, lastId);
+                ps.setTimestamp(2, cutoff);
+                deleted = ps.executeUpdate();
+            }
+
+            if(archived != deleted){
+                throw new SQLException("Archived "+archived+" tickets but deleted "+deleted);
+            }
+            con.commit();
+            dataBaseConfig.recordSuccess();
+            return archived;
+        }catch (Exception ex){
+            logger.error("Error archiving closed tickets",ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    private void rollback(Connection con){
+        if(con != null){
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                logger.error("Error while rolling back archive chunk",e);
+            }
+        }
+    }
+}
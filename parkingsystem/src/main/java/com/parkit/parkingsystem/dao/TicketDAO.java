@@ -5,141 +5,590 @@ import com.parkit.parkingsystem.constants.DBConstants;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.monitoring.DaoCallEvent;
+import com.parkit.parkingsystem.monitoring.OverstayMonitor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class TicketDAO {
 
     private static final Logger logger = LogManager.getLogger("TicketDAO");
 
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 2;
+    public static final int DEFAULT_REPORT_QUERY_TIMEOUT_SECONDS = 30;
+
     public DataBaseConfig dataBaseConfig = new DataBaseConfig();
 
+    //gate operations give up quickly, the history export may scan a lot of rows
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+    public int reportQueryTimeoutSeconds = DEFAULT_REPORT_QUERY_TIMEOUT_SECONDS;
+
+    //upper bound of an open-ended history range, the last DATETIME MySQL accepts
+    private static final String HISTORY_END = "9999-12-31 23:59:59";
+
+    private OverstayMonitor overstayMonitor;
+    private TicketEventDAO ticketEventDAO;
+
+    /**
+    *arm an overstay timer for every ticket saved open and cancel it when the ticket is closed
+    *
+    *@Param OverstayMonitor monitor already loaded with the open tickets, null for none
+    */
+    public void setOverstayMonitor(OverstayMonitor overstayMonitor){
+        this.overstayMonitor = overstayMonitor;
+    }
+
+    /**
+    *write an outbox event in the same transaction as every ticket saved or closed
+    *
+    *@Param TicketEventDAO outbox, null to write the tickets alone
+    */
+    public void setTicketEventDAO(TicketEventDAO ticketEventDAO){
+        this.ticketEventDAO = ticketEventDAO;
+    }
+
     public boolean saveTicket(Ticket ticket){
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "saveTicket");
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET);
-            ps.setInt(1,ticket.getParkingSpot().getId());
-            ps.setString(2, ticket.getVehicleRegNumber());
-            ps.setDouble(3, ticket.getPrice());
-            ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
-            ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
-            return ps.execute();
+            if(ticketEventDAO != null){
+                con.setAutoCommit(false);
+            }
+            try(PreparedStatement ps = con.prepareStatement(DBConstants.SAVE_TICKET, Statement.RETURN_GENERATED_KEYS)){
+                ps.setQueryTimeout(queryTimeoutSeconds);
+                ps.setInt(1,ticket.getParkingSpot().getId());
+                ps.setString(2, ticket.getVehicleRegNumber());
+                ps.setDouble(3, ticket.getPrice());
+                ps.setTimestamp(4, new Timestamp(ticket.getInTime().getTime()));
+                ps.setTimestamp(5, (ticket.getOutTime() == null)?null: (new Timestamp(ticket.getOutTime().getTime())) );
+                ps.setString(6, ticket.getRequestKey());
+                ps.executeUpdate();
+                try(ResultSet rs = ps.getGeneratedKeys()){
+                    if(rs.next()){
+                        ticket.setId(rs.getInt(1));
+                    }
+                }
+            }
+            if(ticketEventDAO != null){
+                ticketEventDAO.appendEntry(con, ticket);
+                con.commit();
+            }
+            dataBaseConfig.recordWrite(ticket.getVehicleRegNumber());
+            dataBaseConfig.recordSuccess();
+            if(overstayMonitor != null){
+                overstayMonitor.ticketOpened(ticket);
+            }
+            return true;
+        }catch (SQLIntegrityConstraintViolationException ex){
+            if(ticket.getRequestKey() == null){
+                logger.error("Error saving ticket",ex);
+            }else{
+                //a retried request, the caller can fetch the first ticket with getTicketByRequestKey
+                logger.info("Ticket already saved for request key "+ticket.getRequestKey());
+            }
+            rollback(con);
+            dataBaseConfig.recordSuccess();
         }catch (Exception ex){
-            logger.error("Error fetching next available slot",ex);
+            logger.error("Error saving ticket",ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
-            return false;
+            event.finish();
         }
+        return false;
     }
 
     public Ticket getTicket(String vehicleRegNumber) {
+        return getTicket("getTicket", vehicleRegNumber, false);
+    }
+
+    /**
+    *same as getTicket, on the read replica when it is caught up with the writes made here for this
+    *vehicle: for callers that only display the ticket and never update it
+    *
+    *@Param String vehicle identification
+    *@Return the last ticket of the vehicle, or null if it has none or the read failed
+    */
+    public Ticket readTicket(String vehicleRegNumber) {
+        return getTicket("readTicket", vehicleRegNumber, true);
+    }
+
+    private Ticket getTicket(String method, String vehicleRegNumber, boolean read) {
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", method);
         Ticket ticket = null;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_TICKET);
-            ps.setString(1,vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                ticket = new Ticket();
-                ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.valueOf(rs.getString(6)),false);
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setId(rs.getInt(2));
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(rs.getDouble(3));
-                ticket.setInTime(rs.getTimestamp(4));
-                ticket.setOutTime(rs.getTimestamp(5));
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            con = read ? dataBaseConfig.getReadConnection(vehicleRegNumber) : dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKET, queryTimeoutSeconds)){
+                ps.setString(1,vehicleRegNumber);
+                try(ResultSet rs = ps.executeQuery()){
+                    if(rs.next()){
+                        ticket = new Ticket();
+                        ParkingSpot parkingSpot = new ParkingSpot(rs.getInt(1), ParkingType.fromId(rs.getInt(6)),false);
+                        ticket.setParkingSpot(parkingSpot);
+                        ticket.setId(rs.getInt(2));
+                        ticket.setVehicleRegNumber(vehicleRegNumber);
+                        ticket.setPrice(rs.getDouble(3));
+                        ticket.setInTime(rs.getTimestamp(4));
+                        ticket.setOutTime(rs.getTimestamp(5));
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
         }catch (Exception ex){
             logger.error("Error fetching next available slot",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
             return ticket;
         }
     }
 
+    /**
+    *find the ticket created by an entry request
+    *
+    *@Param String idempotency key sent with the entry
+    *@Return the ticket, or null if no ticket was saved with this key
+    */
+    public Ticket getTicketByRequestKey(String requestKey){
+        return getTicketByKey("getTicketByRequestKey", DBConstants.GET_TICKET_BY_REQUEST_KEY, requestKey);
+    }
+
+    /**
+    *find the ticket closed by an exit request
+    *
+    *@Param String idempotency key sent with the exit
+    *@Return the ticket, or null if no ticket was closed with this key
+    */
+    public Ticket getTicketByExitRequestKey(String exitRequestKey){
+        return getTicketByKey("getTicketByExitRequestKey", DBConstants.GET_TICKET_BY_EXIT_REQUEST_KEY, exitRequestKey);
+    }
+
+    private Ticket getTicketByKey(String method, String sql, String key){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", method);
+        Ticket ticket = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, sql, queryTimeoutSeconds)){
+                ps.setString(1, key);
+                try(ResultSet rs = ps.executeQuery()){
+                    if(rs.next()){
+                        ticket = new Ticket();
+                        ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.fromId(rs.getInt(6)), false));
+                        ticket.setId(rs.getInt(2));
+                        ticket.setPrice(rs.getDouble(3));
+                        ticket.setInTime(rs.getTimestamp(4));
+                        ticket.setOutTime(rs.getTimestamp(5));
+                        ticket.setVehicleRegNumber(rs.getString(7));
+                        if(sql.equals(DBConstants.GET_TICKET_BY_REQUEST_KEY)){
+                            ticket.setRequestKey(key);
+                        }else{
+                            ticket.setExitRequestKey(key);
+                        }
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex){
+            logger.error("Error fetching ticket by request key",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return ticket;
+    }
+
     public boolean updateTicket(Ticket ticket) {
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "updateTicket");
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET);
-            ps.setDouble(1, ticket.getPrice());
-            ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
-            ps.setInt(3,ticket.getId());
-            ps.execute();
+            if(ticketEventDAO != null){
+                con.setAutoCommit(false);
+            }
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_TICKET, queryTimeoutSeconds)){
+                ps.setDouble(1, ticket.getPrice());
+                ps.setTimestamp(2, new Timestamp(ticket.getOutTime().getTime()));
+                ps.setString(3, ticket.getExitRequestKey());
+                ps.setInt(4,ticket.getId());
+                ps.execute();
+            }
+            if(ticketEventDAO != null){
+                ticketEventDAO.appendExit(con, ticket);
+                con.commit();
+            }
+            dataBaseConfig.recordWrite(ticket.getVehicleRegNumber());
+            dataBaseConfig.recordSuccess();
+            if(overstayMonitor != null){
+                overstayMonitor.ticketClosed(ticket);
+            }
             return true;
         }catch (Exception ex){
             logger.error("Error saving ticket info",ex);
+            dataBaseConfig.recordFailure(ex);
+            rollback(con);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
         }
         return false;
     }
 
     public boolean updateTicketIntime(Ticket ticket) {
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "updateTicketIntime");
         try {
             con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.UPDATE_TICKET_INTIME);
-            ps.setTimestamp(1, new Timestamp(ticket.getInTime().getTime()));
-            ps.setInt(2,ticket.getId());
-            ps.execute();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_TICKET_INTIME, queryTimeoutSeconds)){
+                ps.setTimestamp(1, new Timestamp(ticket.getInTime().getTime()));
+                ps.setInt(2,ticket.getId());
+                ps.execute();
+            }
+            dataBaseConfig.recordWrite(ticket.getVehicleRegNumber());
+            dataBaseConfig.recordSuccess();
             return true;
         }catch (Exception ex){
             logger.error("Error saving ticket info",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
         }
         return false;
     }
 
+    /**
+    *@Param String vehicle identification
+    *@Return number of tickets of the vehicle in both tiers, -1 if the count could not be read
+    */
     public int getNbTicket(String vehicleRegNumber){
         Connection con = null;
-        int nbTicket = 0;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getNbTicket");
+        int nbTicket = -1;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_NBTICKET);
-            ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()){
-                nbTicket = rs.getInt(1);
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            con = dataBaseConfig.getReadConnection(vehicleRegNumber);
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_NBTICKET, queryTimeoutSeconds)){
+                ps.setString(1, vehicleRegNumber);
+                ps.setString(2, vehicleRegNumber);
+                try(ResultSet rs = ps.executeQuery()){
+                    nbTicket = rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+            dataBaseConfig.recordSuccess();
         }catch (Exception ex) {
             logger.error("Error retrieving number of tickets",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
             return nbTicket;
         }
     }
 
     public boolean isAlreadyInParking(String vehicleRegNumber){
         Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "isAlreadyInParking");
         boolean isInParking = false;
         try {
-            con = dataBaseConfig.getConnection();
-            PreparedStatement ps = con.prepareStatement(DBConstants.GET_ALREADY_IN_PARKING);
-            ps.setString(1, vehicleRegNumber);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()){
-                isInParking = true;
-            }
-            dataBaseConfig.closeResultSet(rs);
-            dataBaseConfig.closePreparedStatement(ps);
+            con = dataBaseConfig.getReadConnection(vehicleRegNumber);
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_ALREADY_IN_PARKING, queryTimeoutSeconds)){
+                ps.setString(1, vehicleRegNumber);
+                try(ResultSet rs = ps.executeQuery()){
+                    if (rs.next()){
+                        isInParking = true;
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
         }catch (Exception ex) {
             logger.error("Error retrieving information if already parked",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
         }finally {
             dataBaseConfig.closeConnection(con);
+            event.finish();
             return isInParking;
         }
     }
+
+    public List<Ticket> getOpenTickets(){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getOpenTickets");
+        List<Ticket> tickets = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_OPEN_TICKETS, queryTimeoutSeconds)){
+                try(ResultSet rs = ps.executeQuery()){
+                    while (rs.next()){
+                        Ticket ticket = new Ticket();
+                        ticket.setParkingSpot(new ParkingSpot(rs.getInt(1), ParkingType.fromId(rs.getInt(5)), false));
+                        ticket.setId(rs.getInt(2));
+                        ticket.setVehicleRegNumber(rs.getString(3));
+                        ticket.setInTime(rs.getTimestamp(4));
+                        tickets.add(ticket);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex) {
+            logger.error("Error fetching open tickets",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return tickets;
+    }
+
+    /**
+    *find which of the given vehicles still have an open ticket, with one query per batch of plates
+    *
+    *@Param Collection vehicle identifications
+    *@Return ID of the open ticket of each vehicle that has one, null if a query failed
+    */
+    public Map<String, Integer> getOpenTicketIds(Collection<String> vehicleRegNumbers){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getOpenTicketIds");
+        Map<String, Integer> openTicketIds = new HashMap<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            List<String> plates = new ArrayList<>(vehicleRegNumbers);
+            for(int from = 0; from < plates.size(); from += DBConstants.OPEN_TICKET_CHECK_BATCH_SIZE){
+                try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_OPEN_TICKET_IDS_OF_PLATES, queryTimeoutSeconds)){
+                    for(int i = 0; i < DBConstants.OPEN_TICKET_CHECK_BATCH_SIZE; i++){
+                        ps.setString(i + 1, from + i < plates.size() ? plates.get(from + i) : null);
+                    }
+                    try(ResultSet rs = ps.executeQuery()){
+                        while (rs.next()){
+                            openTicketIds.put(rs.getString(1), rs.getInt(2));
+                        }
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return openTicketIds;
+        }catch (Exception ex) {
+            logger.error("Error checking the open tickets of "+vehicleRegNumbers.size()+" vehicles",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+    }
+
+    /**
+    *read one page of closed tickets from both the hot and the archive tier, ordered by ID
+    *
+    *@Param int only tickets with an ID greater than this one are returned
+    *@Param int maximum number of tickets returned
+    *@Return the page of closed tickets, empty when there is nothing left to read, null if the read failed
+    */
+    public List<Ticket> getClosedTicketsAfter(int lastId, int batchSize){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getClosedTicketsAfter");
+        List<Ticket> tickets = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getReadConnection(null);
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_CLOSED_TICKETS_AFTER_ID, reportQueryTimeoutSeconds)){
+                ps.setFetchSize(batchSize);
+                ps.setInt(1, lastId);
+                ps.setInt(2, batchSize);
+                ps.setInt(3, lastId);
+                ps.setInt(4, batchSize);
+                ps.setInt(5, batchSize);
+                try(ResultSet rs = ps.executeQuery()){
+                    while (rs.next()){
+                        Ticket ticket = new Ticket();
+                        ticket.setId(rs.getInt(1));
+                        ticket.setVehicleRegNumber(rs.getString(2));
+                        ticket.setPrice(rs.getDouble(3));
+                        ticket.setInTime(rs.getTimestamp(4));
+                        ticket.setOutTime(rs.getTimestamp(5));
+                        ticket.setParkingSpot(new ParkingSpot(rs.getInt(6), ParkingType.fromId(rs.getInt(7)), true));
+                        tickets.add(ticket);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex) {
+            logger.error("Error reading closed tickets",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return tickets;
+    }
+
+    /**
+    *read one page of the visits of a plate from both the hot and the archive tier, newest first
+    *
+    *@Param String vehicle identification
+    *@Param Date only tickets entered at or after this date, null for no lower bound
+    *@Param Date only tickets entered before this date, null for no upper bound
+    *@Param Ticket last ticket of the previous page, null for the first page
+    *@Param int maximum number of tickets returned
+    *@Return the page ordered by IN_TIME then ID descending, empty when there is nothing left to read, null if the query failed
+    */
+    public List<Ticket> getTicketHistory(String vehicleRegNumber, Date from, Date to, Ticket after, int limit){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getTicketHistory");
+        try {
+            con = dataBaseConfig.getReadConnection(vehicleRegNumber);
+            List<Ticket> tickets = new ArrayList<>();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_PLATE_HISTORY, reportQueryTimeoutSeconds)){
+                Timestamp lower = new Timestamp(from == null ? 0 : from.getTime());
+                //the keyset (IN_TIME, ID) of the previous page, the upper date alone on the first page
+                Timestamp upper = after != null ? new Timestamp(after.getInTime().getTime())
+                        : to != null ? new Timestamp(to.getTime()) : Timestamp.valueOf(HISTORY_END);
+                int upperId = after != null ? after.getId() : Integer.MIN_VALUE;
+                for(int branch = 0; branch < 2; branch++){
+                    int offset = branch * 6;
+                    ps.setString(offset + 1, vehicleRegNumber);
+                    ps.setTimestamp(offset + 2, lower);
+                    ps.setTimestamp(offset + 3, upper);
+                    ps.setTimestamp(offset + 4, upper);
+                    ps.setInt(offset + 5, upperId);
+                    ps.setInt(offset + 6, limit);
+                }
+                ps.setInt(13, limit);
+                try(ResultSet rs = ps.executeQuery()){
+                    while (rs.next()){
+                        Ticket ticket = new Ticket();
+                        ticket.setId(rs.getInt(1));
+                        ticket.setVehicleRegNumber(vehicleRegNumber);
+                        ticket.setPrice(rs.getDouble(2));
+                        ticket.setInTime(rs.getTimestamp(3));
+                        ticket.setOutTime(rs.getTimestamp(4));
+                        ticket.setParkingSpot(new ParkingSpot(rs.getInt(5), ParkingType.fromId(rs.getInt(6)), rs.getTimestamp(4) != null));
+                        tickets.add(ticket);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return tickets;
+        }catch (Exception ex) {
+            logger.error("Error reading the ticket history of "+vehicleRegNumber,ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+    }
+
+    /**
+    *highest ticket ID of the hot tier, taken as the high-water mark of a state snapshot
+    *
+    *@Return the ID, 0 if there is no ticket, -1 if the query failed
+    */
+    public int getMaxTicketId(){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getMaxTicketId");
+        int maxId = -1;
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_MAX_TICKET_ID, queryTimeoutSeconds)){
+                try(ResultSet rs = ps.executeQuery()){
+                    maxId = rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+            dataBaseConfig.recordSuccess();
+        }catch (Exception ex) {
+            logger.error("Error reading the highest ticket ID",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+        return maxId;
+    }
+
+    /**
+    *read the tickets created or changed since a state snapshot, ordered by ID
+    *
+    *@Param int high-water ticket ID of the snapshot, tickets above it are returned
+    *@Param Date watermark of the snapshot, tickets entered or closed since are returned too
+    *@Return the tickets, with an out time once closed, or null if the query failed
+    */
+    public List<Ticket> getTicketsChangedSince(int highWaterId, Date watermark){
+        Connection con = null;
+        DaoCallEvent event = DaoCallEvent.start("TicketDAO", "getTicketsChangedSince");
+        List<Ticket> tickets = new ArrayList<>();
+        try {
+            con = dataBaseConfig.getConnection();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKETS_CHANGED_SINCE, reportQueryTimeoutSeconds)){
+                ps.setInt(1, highWaterId);
+                ps.setTimestamp(2, new Timestamp(watermark.getTime()));
+                ps.setTimestamp(3, new Timestamp(watermark.getTime()));
+                try(ResultSet rs = ps.executeQuery()){
+                    while (rs.next()){
+                        Ticket ticket = new Ticket();
+                        ticket.setId(rs.getInt(1));
+                        ticket.setVehicleRegNumber(rs.getString(2));
+                        ticket.setPrice(rs.getDouble(3));
+                        ticket.setInTime(rs.getTimestamp(4));
+                        ticket.setOutTime(rs.getTimestamp(5));
+                        ticket.setParkingSpot(new ParkingSpot(rs.getInt(6), ParkingType.fromId(rs.getInt(7)), ticket.getOutTime() != null));
+                        tickets.add(ticket);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return tickets;
+        }catch (Exception ex) {
+            logger.error("Error reading the tickets changed since the snapshot",ex);
+            dataBaseConfig.recordFailure(ex);
+            event.failed();
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+            event.finish();
+        }
+    }
+
+    /**
+    *undo the ticket write of a failed outbox transaction, nothing to undo without the outbox
+    */
+    private void rollback(Connection con){
+        try {
+            if(con != null && !con.getAutoCommit()){
+                con.rollback();
+            }
+        } catch (SQLException e) {
+            logger.error("Error while rolling back ticket write",e);
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package com.parkit.parkingsystem.dao;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Outbox of the ticket and spot changes. The append methods run on the connection of the write they
+ * describe, inside its transaction, so an event exists if and only if its change was committed. The
+ * relay reads the events by ID above its cursor, saved in ticket_event_cursor.
+ */
+public class TicketEventDAO {
+    private static final Logger logger = LogManager.getLogger("TicketEventDAO");
+
+    public static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 5;
+
+    public DataBaseConfig dataBaseConfig = new DataBaseConfig();
+
+    public int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+
+    public void appendEntry(Connection con, Ticket ticket) throws SQLException {
+        append(con, TicketEvent.Type.ENTRY, ticket.getId(), ticket.getParkingSpot().getId(), false,
+                ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getInTime());
+    }
+
+    public void appendExit(Connection con, Ticket ticket) throws SQLException {
+        append(con, TicketEvent.Type.EXIT, ticket.getId(), ticket.getParkingSpot().getId(), true,
+                ticket.getVehicleRegNumber(), ticket.getPrice(), ticket.getOutTime());
+    }
+
+    public void appendSpot(Connection con, ParkingSpot parkingSpot) throws SQLException {
+        append(con, TicketEvent.Type.SPOT, 0, parkingSpot.getId(), parkingSpot.isAvailable(), null, 0, new Date());
+    }
+
+    private void append(Connection con, TicketEvent.Type type, int ticketId, int parkingNumber, boolean available,
+                        String vehicleRegNumber, double price, Date eventTime) throws SQLException {
+        try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.SAVE_TICKET_EVENT, queryTimeoutSeconds)){
+            ps.setString(1, type.name());
+            if(ticketId == 0){
+                ps.setNull(2, Types.INTEGER);
+            }else{
+                ps.setInt(2, ticketId);
+            }
+            ps.setInt(3, parkingNumber);
+            ps.setBoolean(4, available);
+            ps.setString(5, vehicleRegNumber);
+            ps.setDouble(6, price);
+            ps.setTimestamp(7, new Timestamp(eventTime.getTime()));
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+    *@Param long highest event ID already relayed
+    *@Param int maximum number of events
+    *@Return the next events by ID, null if the query failed
+    */
+    public List<TicketEvent> getEventsAfter(long afterId, int limit){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            List<TicketEvent> events = new ArrayList<>();
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKET_EVENTS_AFTER, queryTimeoutSeconds)){
+                ps.setLong(1, afterId);
+                ps.setInt(2, limit);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        TicketEvent event = new TicketEvent();
+                        event.setId(rs.getLong(1));
+                        event.setType(TicketEvent.Type.valueOf(rs.getString(2)));
+                        event.setTicketId(rs.getInt(3));
+                        event.setParkingNumber(rs.getInt(4));
+                        event.setAvailable(rs.getBoolean(5));
+                        event.setVehicleRegNumber(rs.getString(6));
+                        event.setPrice(rs.getDouble(7));
+                        event.setEventTime(rs.getTimestamp(8));
+                        events.add(event);
+                    }
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return events;
+        }catch (Exception ex){
+            logger.error("Error fetching ticket events",ex);
+            dataBaseConfig.recordFailure(ex);
+            return null;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *@Param String name of the relay
+    *@Return ID of the last event it relayed, 0 if it never did, -1 if the query failed
+    */
+    public long getCursor(String relay){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            long cursor;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.GET_TICKET_EVENT_CURSOR, queryTimeoutSeconds)){
+                ps.setString(1, relay);
+                try(ResultSet rs = ps.executeQuery()){
+                    cursor = rs.next() ? rs.getLong(1) : 0;
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return cursor;
+        }catch (Exception ex){
+            logger.error("Error fetching the cursor of relay "+relay,ex);
+            dataBaseConfig.recordFailure(ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    public boolean saveCursor(String relay, long lastEventId){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int updated;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.UPDATE_TICKET_EVENT_CURSOR, queryTimeoutSeconds)){
+                ps.setLong(1, lastEventId);
+                ps.setString(2, relay);
+                updated = ps.executeUpdate();
+            }
+            if(updated == 0){
+                try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.SAVE_TICKET_EVENT_CURSOR, queryTimeoutSeconds)){
+                    ps.setString(1, relay);
+                    ps.setLong(2, lastEventId);
+                    ps.executeUpdate();
+                }
+            }
+            dataBaseConfig.recordSuccess();
+            return true;
+        }catch (Exception ex){
+            logger.error("Error saving the cursor of relay "+relay,ex);
+            dataBaseConfig.recordFailure(ex);
+            return false;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+
+    /**
+    *delete the relayed events older than a date
+    *
+    *@Return number of events deleted, -1 if the delete failed
+    */
+    public int purgeEvents(long upToId, Date before){
+        Connection con = null;
+        try {
+            con = dataBaseConfig.getConnection();
+            int deleted;
+            try(PreparedStatement ps = dataBaseConfig.prepareStatement(con, DBConstants.PURGE_TICKET_EVENTS, queryTimeoutSeconds)){
+                ps.setLong(1, upToId);
+                ps.setTimestamp(2, new Timestamp(before.getTime()));
+                deleted = ps.executeUpdate();
+            }
+            dataBaseConfig.recordSuccess();
+            return deleted;
+        }catch (Exception ex){
+            logger.error("Error purging ticket events",ex);
+            dataBaseConfig.recordFailure(ex);
+            return -1;
+        }finally {
+            dataBaseConfig.closeConnection(con);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * One row of an access list table. Rows are only ever added: the latest row of a plate says until
+ * when it is on the list, a row with a past end takes it off.
+ */
+public class AccessListEntry {
+    private int id;
+    private String vehicleRegNumber;
+    private Date validUntil;
+
+    public AccessListEntry(int id, String vehicleRegNumber, Date validUntil){
+        this.id = id;
+        this.vehicleRegNumber = vehicleRegNumber;
+        this.validUntil = validUntil;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    /** end of the entry, null if it never ends */
+    public Date getValidUntil() {
+        return validUntil;
+    }
+}
@@ -0,0 +1,39 @@
+package com.parkit.parkingsystem.model;
+
+/**
+ * A spot as stored in the parking table, whether an open ticket refers to it, and the ID of the latest
+ * ticket on it, which changes with every entry on the spot.
+ */
+public class SpotCheck {
+    private ParkingSpot parkingSpot;
+    private boolean openTicket;
+    private int lastTicketId;
+
+    public SpotCheck(ParkingSpot parkingSpot, boolean openTicket) {
+        this(parkingSpot, openTicket, 0);
+    }
+
+    public SpotCheck(ParkingSpot parkingSpot, boolean openTicket, int lastTicketId) {
+        this.parkingSpot = parkingSpot;
+        this.openTicket = openTicket;
+        this.lastTicketId = lastTicketId;
+    }
+
+    public ParkingSpot getParkingSpot() {
+        return parkingSpot;
+    }
+
+    public boolean hasOpenTicket() {
+        return openTicket;
+    }
+
+    /** ID of the latest ticket on the spot, 0 if none */
+    public int getLastTicketId() {
+        return lastTicketId;
+    }
+
+    /** a spot is consistent when it is free exactly when no open ticket refers to it */
+    public boolean isConsistent() {
+        return parkingSpot.isAvailable() != openTicket;
+    }
+}
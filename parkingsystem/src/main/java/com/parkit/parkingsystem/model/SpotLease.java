@@ -0,0 +1,51 @@
+package com.parkit.parkingsystem.model;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.util.Date;
+
+/**
+ * A range of parking numbers of one type, from rangeStart to rangeEnd included, and the node
+ * holding it until expiresAt, if any.
+ */
+public class SpotLease {
+    private ParkingType parkingType;
+    private int rangeStart;
+    private int rangeEnd;
+    private String owner;
+    private Date expiresAt;
+
+    public SpotLease(ParkingType parkingType, int rangeStart, int rangeEnd) {
+        this.parkingType = parkingType;
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public int getRangeStart() {
+        return rangeStart;
+    }
+
+    public int getRangeEnd() {
+        return rangeEnd;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
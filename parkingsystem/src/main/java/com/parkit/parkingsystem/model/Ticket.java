@@ -10,6 +10,8 @@ public class Ticket {
     private double price;
     private Date inTime;
     private Date outTime;
+    private String requestKey;
+    private String exitRequestKey;
 
     public int getId() {
         return id;
@@ -58,4 +60,20 @@ public class Ticket {
     public void setOutTime(Date outTime) {
         this.outTime = outTime;
     }
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public void setRequestKey(String requestKey) {
+        this.requestKey = requestKey;
+    }
+
+    public String getExitRequestKey() {
+        return exitRequestKey;
+    }
+
+    public void setExitRequestKey(String exitRequestKey) {
+        this.exitRequestKey = exitRequestKey;
+    }
 }
@@ -0,0 +1,90 @@
+package com.parkit.parkingsystem.model;
+
+import java.util.Date;
+
+/**
+ * One change of the outbox: a ticket opened or closed, or a spot changing availability.
+ */
+public class TicketEvent {
+
+    public enum Type {
+        ENTRY, EXIT, SPOT
+    }
+
+    private long id;
+    private Type type;
+    private int ticketId;
+    private int parkingNumber;
+    private boolean available;
+    private String vehicleRegNumber;
+    private double price;
+    private Date eventTime;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /** 0 for a spot event */
+    public int getTicketId() {
+        return ticketId;
+    }
+
+    public void setTicketId(int ticketId) {
+        this.ticketId = ticketId;
+    }
+
+    public int getParkingNumber() {
+        return parkingNumber;
+    }
+
+    public void setParkingNumber(int parkingNumber) {
+        this.parkingNumber = parkingNumber;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    /** null for a spot event */
+    public String getVehicleRegNumber() {
+        return vehicleRegNumber;
+    }
+
+    public void setVehicleRegNumber(String vehicleRegNumber) {
+        this.vehicleRegNumber = vehicleRegNumber;
+    }
+
+    /** fare of an exit, 0 otherwise */
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    /** in time of an entry, out time of an exit, time of the update of a spot */
+    public Date getEventTime() {
+        return eventTime;
+    }
+
+    public void setEventTime(Date eventTime) {
+        this.eventTime = eventTime;
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for taking a connection from the pool, connect retries and waits for a
+ * free connection included.
+ */
+@Name(ConnectionAcquireEvent.NAME)
+@Label("Connection Acquisition")
+@Category({"Parkit", "Database"})
+@Description("Connection taken from the pool, opened or waited for")
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+
+    public static final String NAME = "com.parkit.ConnectionAcquire";
+
+    @Label("Operation Id")
+    @Description("Gate operation the connection was taken for, 0 if none")
+    long operationId;
+
+    @Label("Data Source")
+    @Description("JDBC URL without its parameters")
+    String dataSource;
+
+    @Label("Idle Connections")
+    @Description("Connections idle in the pool when the request came")
+    int idleConnections;
+
+    @Label("Retries")
+    int retries;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+    *start timing a connection request on the current thread
+    *
+    *@Param String JDBC URL of the pool
+    *@Param int connections idle in the pool
+    *@Return the running event, to finish once the connection is obtained or given up on
+    */
+    public static ConnectionAcquireEvent start(String url, int idleConnections){
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        if(event.isEnabled()){
+            event.operationId = GateEvent.currentOperationId();
+            String dataSource = url == null ? "" : url;
+            int parameters = dataSource.indexOf('?');
+            event.dataSource = parameters < 0 ? dataSource : dataSource.substring(0, parameters);
+            event.idleConnections = idleConnections;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void retried(){
+        retries++;
+    }
+
+    public void finish(boolean success){
+        if(dataSource != null){
+            this.success = success;
+            commit();
+        }
+    }
+}
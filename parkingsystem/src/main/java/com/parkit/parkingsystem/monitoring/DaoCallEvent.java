@@ -0,0 +1,64 @@
+package com.parkit.parkingsystem.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one DAO method, from the connection request to the connection release.
+ */
+@Name(DaoCallEvent.NAME)
+@Label("DAO Call")
+@Category({"Parkit", "Database"})
+@Description("One DAO method, connection acquisition and release included")
+@StackTrace(false)
+public class DaoCallEvent extends Event {
+
+    public static final String NAME = "com.parkit.DaoCall";
+
+    @Label("Operation Id")
+    @Description("Gate operation the call was made for, 0 if none")
+    long operationId;
+
+    @Label("DAO")
+    String dao;
+
+    @Label("Method")
+    String method;
+
+    @Label("Success")
+    boolean success;
+
+    /**
+    *start timing a DAO method on the current thread
+    *
+    *@Param String DAO class name
+    *@Param String method name
+    *@Return the running event, to finish in the finally block of the method
+    */
+    public static DaoCallEvent start(String dao, String method){
+        DaoCallEvent event = new DaoCallEvent();
+        if(event.isEnabled()){
+            event.operationId = GateEvent.currentOperationId();
+            event.dao = dao;
+            event.method = method;
+            event.success = true;
+            event.begin();
+        }
+        return event;
+    }
+
+    /** mark the call failed, from the catch block of the method */
+    public void failed(){
+        success = false;
+    }
+
+    public void finish(){
+        if(dao != null){
+            commit();
+        }
+    }
+}
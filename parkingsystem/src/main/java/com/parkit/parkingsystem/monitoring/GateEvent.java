@@ -0,0 +1,117 @@
+package com.parkit.parkingsystem.monitoring;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Flight Recorder event for one vehicle entry or exit, from the gate request to the saved ticket.
+ *
+ * While the event runs, the DAO calls and connection acquisitions of its thread carry its operation
+ * id, so a slow gate can be broken down into its database round trips. Nothing is recorded and no
+ * id is drawn unless the event is enabled, see parkit.jfc.
+ */
+@Name(GateEvent.NAME)
+@Label("Gate Operation")
+@Category({"Parkit", "Gate"})
+@Description("Entry or exit of a vehicle, from the gate request to the saved ticket")
+@StackTrace(false)
+public class GateEvent extends Event {
+
+    public static final String NAME = "com.parkit.Gate";
+    public static final String ENTRY = "entry";
+    public static final String EXIT = "exit";
+
+    private static final AtomicLong operationIds = new AtomicLong();
+    private static final ThreadLocal<GateEvent> running = new ThreadLocal<>();
+
+    @Label("Operation Id")
+    @Description("Also set on the DAO calls and connection acquisitions made for this operation")
+    long operationId;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Plate Hash")
+    @Description("Hash of the registration number, to follow a vehicle without recording its plate")
+    int plateHash;
+
+    @Label("Parking Type")
+    String parkingType;
+
+    @Label("Parking Number")
+    int parkingNumber;
+
+    @Label("Fare")
+    double fare;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Degraded")
+    @Description("The database circuit was open, the ticket was queued for later")
+    boolean degraded;
+
+    /**
+    *start timing a gate operation on the current thread
+    *
+    *@Param String ENTRY or EXIT
+    *@Param String vehicle identification, only its hash is recorded
+    *@Param ParkingType type asked for at the entry, null for an exit
+    *@Return the running event, to finish once the operation is over
+    */
+    public static GateEvent start(String direction, String vehicleRegNumber, ParkingType parkingType){
+        GateEvent event = new GateEvent();
+        if(event.isEnabled()){
+            event.operationId = operationIds.incrementAndGet();
+            event.direction = direction;
+            event.plateHash = vehicleRegNumber == null ? 0 : vehicleRegNumber.hashCode();
+            event.parkingType = parkingType == null ? null : parkingType.toString();
+            running.set(event);
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+    *record the outcome and commit the event if it lasted more than its threshold
+    *
+    *@Param Ticket ticket saved or closed by the operation, null if it was refused or failed
+    *@Param boolean true if the database circuit is open
+    */
+    public void finish(Ticket ticket, boolean degraded){
+        if(operationId == 0){
+            //not started, recording was off when the operation began
+            return;
+        }
+        end();
+        running.remove();
+        if(ticket != null){
+            success = true;
+            fare = ticket.getPrice();
+            if(ticket.getParkingSpot() != null){
+                parkingNumber = ticket.getParkingSpot().getId();
+                parkingType = ticket.getParkingSpot().getParkingType().toString();
+            }
+        }
+        this.degraded = degraded;
+        commit();
+    }
+
+    /**
+    *id of the gate operation running on the current thread
+    *
+    *@Return the id, or 0 outside of a recorded gate operation
+    */
+    static long currentOperationId(){
+        GateEvent event = running.get();
+        return event == null ? 0 : event.operationId;
+    }
+}
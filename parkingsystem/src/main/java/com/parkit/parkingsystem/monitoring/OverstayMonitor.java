@@ -0,0 +1,288 @@
+package com.parkit.parkingsystem.monitoring;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.TimerWheel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Watches the open tickets for vehicles staying too long, without ever scanning the ticket table.
+ *
+ * Each open ticket has one timer in a {@link TimerWheel}, armed when the ticket is saved and cancelled
+ * when it is closed, for the next of its stages: overstay, then max stay fee, then abandoned vehicle,
+ * each counted from the entry. When a stage is reached the listeners are told and the timer of the next
+ * stage is armed, so a ticket found already late at startup goes through its stages one tick apart.
+ *
+ * Only exits through this process cancel a timer. When several nodes share the database, the tickets
+ * due at a tick are first checked against it in one batch: those closed elsewhere are dropped instead
+ * of fired, and if the check fails they are all tried again at the next tick.
+ */
+public class OverstayMonitor {
+
+    private static final Logger logger = LogManager.getLogger("OverstayMonitor");
+
+    public static final long DEFAULT_TICK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_OVERSTAY_MILLIS = TimeUnit.HOURS.toMillis(24);
+    public static final long DEFAULT_MAX_STAY_MILLIS = TimeUnit.HOURS.toMillis(72);
+    public static final long DEFAULT_ABANDONED_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    public enum Stage {
+        OVERSTAY, MAX_STAY_FEE, ABANDONED
+    }
+
+    private static class Armed {
+        private final Ticket ticket;
+        private final Stage stage;
+        //timer of the next stage, armed when this one expired
+        private TimerWheel.Timeout<Armed> next;
+
+        Armed(Ticket ticket, Stage stage){
+            this.ticket = ticket;
+            this.stage = stage;
+        }
+    }
+
+    private final long tickMillis;
+    //delay of each stage after the entry, indexed by ordinal
+    private final long[] stageMillis;
+    private final Clock clock;
+    private final TimerWheel<Armed> timerWheel;
+    //one open ticket per vehicle, so the plate is the key of its timer, even before the ticket has an id
+    private final Map<String, TimerWheel.Timeout<Armed>> timers = new HashMap<>();
+    private final List<BiConsumer<Stage, Ticket>> listeners = new CopyOnWriteArrayList<>();
+    private volatile TicketDAO ticketDAO;
+
+    private final LongAdder armed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder closedElsewhere = new LongAdder();
+    private final LongAdder checkFailures = new LongAdder();
+    private final LongAdder[] fired = new LongAdder[Stage.values().length];
+
+    private ScheduledExecutorService scheduler;
+
+    public OverstayMonitor(){
+        this(DEFAULT_TICK_MILLIS, DEFAULT_OVERSTAY_MILLIS, DEFAULT_MAX_STAY_MILLIS, DEFAULT_ABANDONED_MILLIS, Clock.systemDefaultZone());
+    }
+
+    public OverstayMonitor(long tickMillis, long overstayMillis, long maxStayMillis, long abandonedMillis, Clock clock){
+        this.tickMillis = tickMillis;
+        this.stageMillis = new long[]{overstayMillis, maxStayMillis, abandonedMillis};
+        this.clock = clock;
+        this.timerWheel = new TimerWheel<>(tickMillis, clock.millis());
+        for(int i = 0; i < fired.length; i++){
+            fired[i] = new LongAdder();
+        }
+    }
+
+    /**
+    *@Param BiConsumer called with the stage reached and the open ticket, from the monitor thread
+    */
+    public void addListener(BiConsumer<Stage, Ticket> listener){
+        listeners.add(listener);
+    }
+
+    /**
+    *check the tickets due against the database before firing, for vehicles that left through another node
+    *
+    *@Param TicketDAO DAO of the shared database, null when this process runs every gate
+    */
+    public void setTicketDAO(TicketDAO ticketDAO){
+        this.ticketDAO = ticketDAO;
+    }
+
+    /**
+    *arm the timers of the tickets open at startup
+    *
+    *@Param Collection open tickets
+    */
+    public void load(Collection<Ticket> openTickets){
+        for(Ticket ticket : openTickets){
+            ticketOpened(ticket);
+        }
+        logger.info(openTickets.size()+" open tickets watched for overstays");
+    }
+
+    /**
+    *arm the first stage of a ticket just saved, replacing the timer of an earlier ticket of the vehicle
+    */
+    public void ticketOpened(Ticket ticket){
+        if(ticket.getOutTime() != null){
+            return;
+        }
+        synchronized (this){
+            arm(ticket, Stage.OVERSTAY);
+        }
+    }
+
+    /**
+    *cancel the timer of a ticket just closed
+    */
+    public synchronized void ticketClosed(Ticket ticket){
+        TimerWheel.Timeout<Armed> timeout = timers.remove(ticket.getVehicleRegNumber());
+        if(timeout != null && timerWheel.cancel(timeout)){
+            cancelled.increment();
+        }
+    }
+
+    /**
+    *fire the stages reached up to now
+    *
+    *@Return number of stages fired
+    */
+    public int tick(){
+        List<Armed> reached = new ArrayList<>();
+        synchronized (this){
+            for(Armed expired : timerWheel.advance(clock.millis())){
+                timers.remove(expired.ticket.getVehicleRegNumber());
+                reached.add(expired);
+                if(expired.stage.ordinal() + 1 < stageMillis.length){
+                    expired.next = arm(expired.ticket, Stage.values()[expired.stage.ordinal() + 1]);
+                }
+            }
+        }
+        if(ticketDAO != null && !reached.isEmpty()){
+            reached = stillOpen(reached);
+        }
+        for(Armed expired : reached){
+            fired[expired.stage.ordinal()].increment();
+            logger.warn("Vehicle "+expired.ticket.getVehicleRegNumber()+" in spot "+expired.ticket.getParkingSpot().getId()
+                    +" since "+expired.ticket.getInTime()+": "+expired.stage);
+            for(BiConsumer<Stage, Ticket> listener : listeners){
+                try {
+                    listener.accept(expired.stage, expired.ticket);
+                } catch (RuntimeException e) {
+                    logger.error("Overstay listener failed on "+expired.ticket.getVehicleRegNumber(),e);
+                }
+            }
+        }
+        return reached.size();
+    }
+
+    /**
+    *keep the stages reached by tickets still open in the database, the query runs outside the monitor lock
+    */
+    private List<Armed> stillOpen(List<Armed> reached){
+        Set<String> vehicleRegNumbers = new LinkedHashSet<>();
+        for(Armed expired : reached){
+            vehicleRegNumbers.add(expired.ticket.getVehicleRegNumber());
+        }
+        Map<String, Integer> openTicketIds = ticketDAO.getOpenTicketIds(vehicleRegNumbers);
+        List<Armed> open = new ArrayList<>();
+        synchronized (this){
+            for(Armed expired : reached){
+                String vehicleRegNumber = expired.ticket.getVehicleRegNumber();
+                Integer openTicketId = openTicketIds == null ? null : openTicketIds.get(vehicleRegNumber);
+                if(openTicketId != null && expired.ticket.getId() == openTicketId){
+                    open.add(expired);
+                    continue;
+                }
+                //unless the vehicle entered again or left through this process in the meantime
+                boolean current = timers.get(vehicleRegNumber) == expired.next;
+                if(current && expired.next != null){
+                    timers.remove(vehicleRegNumber);
+                    timerWheel.cancel(expired.next);
+                }
+                if(openTicketIds == null){
+                    if(current){
+                        //past its deadline, due again at the next tick
+                        arm(expired.ticket, expired.stage);
+                    }
+                }else{
+                    closedElsewhere.increment();
+                    cancelled.increment();
+                }
+            }
+        }
+        if(openTicketIds == null){
+            checkFailures.increment();
+            logger.error("Unable to check "+reached.size()+" tickets due, retrying at the next tick");
+        }
+        return open;
+    }
+
+    private TimerWheel.Timeout<Armed> arm(Ticket ticket, Stage stage){
+        TimerWheel.Timeout<Armed> timeout = timerWheel.schedule(new Armed(ticket, stage), ticket.getInTime().getTime() + stageMillis[stage.ordinal()]);
+        TimerWheel.Timeout<Armed> previous = timers.put(ticket.getVehicleRegNumber(), timeout);
+        if(previous != null){
+            timerWheel.cancel(previous);
+        }
+        armed.increment();
+        return timeout;
+    }
+
+    /** number of tickets with a pending timer */
+    public synchronized int getWatched(){
+        return timerWheel.size();
+    }
+
+    public long getArmed(){
+        return armed.sum();
+    }
+
+    public long getCancelled(){
+        return cancelled.sum();
+    }
+
+    /** timers dropped at their deadline because the ticket was closed through another node */
+    public long getClosedElsewhere(){
+        return closedElsewhere.sum();
+    }
+
+    public long getCheckFailures(){
+        return checkFailures.sum();
+    }
+
+    public long getFired(Stage stage){
+        return fired[stage.ordinal()].sum();
+    }
+
+    public String getMetrics(){
+        return getWatched()+" watched, "+getArmed()+" timers armed, "+getCancelled()+" cancelled ("+getClosedElsewhere()
+                +" closed elsewhere), "+getCheckFailures()+" failed checks, "
+                +getFired(Stage.OVERSTAY)+" overstays, "+getFired(Stage.MAX_STAY_FEE)+" max stay fees, "
+                +getFired(Stage.ABANDONED)+" abandoned";
+    }
+
+    public synchronized void start(){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "overstay-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tickSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void tickSafely(){
+        try {
+            tick();
+        } catch (Exception e) {
+            logger.error("Unexpected error while checking overstays",e);
+        }
+    }
+}
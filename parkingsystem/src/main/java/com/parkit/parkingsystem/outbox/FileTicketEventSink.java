@@ -0,0 +1,38 @@
+package com.parkit.parkingsystem.outbox;
+
+import com.parkit.parkingsystem.model.TicketEvent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends the events to a CSV file, one line per event: ID, type, ticket ID, parking number,
+ * availability, plate, price and epoch millis, e.g. {@code 42,EXIT,17,3,true,AB123CD,4.5,1767261600000}.
+ * The file is opened for each batch, so it can be rotated between two batches.
+ */
+public class FileTicketEventSink implements TicketEventSink {
+
+    private final Path file;
+
+    public FileTicketEventSink(Path file){
+        this.file = file;
+    }
+
+    @Override
+    public void publish(List<TicketEvent> events) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+            for(TicketEvent event : events){
+                writer.write(event.getId()+","+event.getType()+","+event.getTicketId()+","+event.getParkingNumber()+","
+                        +event.isAvailable()+","+(event.getVehicleRegNumber() == null ? "" : event.getVehicleRegNumber())+","
+                        +event.getPrice()+","+event.getEventTime().getTime());
+                writer.newLine();
+            }
+        }
+    }
+}
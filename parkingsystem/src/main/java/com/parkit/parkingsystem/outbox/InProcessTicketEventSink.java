@@ -0,0 +1,41 @@
+package com.parkit.parkingsystem.outbox;
+
+import com.parkit.parkingsystem.model.TicketEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hands the events to subscribers of the same JVM, on the relay thread. A subscriber that throws is
+ * logged and skipped for that event, it cannot hold the stream back for the others.
+ */
+public class InProcessTicketEventSink implements TicketEventSink {
+
+    private static final Logger logger = LogManager.getLogger("InProcessTicketEventSink");
+
+    private final List<Consumer<TicketEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void subscribe(Consumer<TicketEvent> subscriber){
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<TicketEvent> subscriber){
+        subscribers.remove(subscriber);
+    }
+
+    @Override
+    public void publish(List<TicketEvent> events){
+        for(TicketEvent event : events){
+            for(Consumer<TicketEvent> subscriber : subscribers){
+                try {
+                    subscriber.accept(event);
+                } catch (RuntimeException e) {
+                    logger.error("Subscriber failed on ticket event "+event.getId(),e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.parkit.parkingsystem.outbox;
+
+import com.parkit.parkingsystem.dao.TicketEventDAO;
+import com.parkit.parkingsystem.model.TicketEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams the ticket_event outbox to its sinks, in ID order, from a cursor saved in the database.
+ *
+ * Each pass reads the events above the cursor in batches and moves the cursor only once every sink
+ * took the batch, so a failure or a restart publishes the batch again rather than losing it. Event IDs
+ * are handed out before commit: a hole in the sequence is usually a transaction still running, whose
+ * event would land behind the cursor if it were passed. The relay stops at a hole and only skips it
+ * once it is older than gapTimeoutMillis, as a rolled back transaction leaves a hole forever. Events
+ * already relayed and older than the retention are purged about once a minute.
+ */
+public class OutboxRelay {
+
+    private static final Logger logger = LogManager.getLogger("OutboxRelay");
+
+    public static final String DEFAULT_NAME = "main";
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_GAP_TIMEOUT_MILLIS = 5000;
+    public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(24);
+    public static final long DEFAULT_POLL_MILLIS = 500;
+    static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final TicketEventDAO ticketEventDAO;
+    private final String name;
+    private final List<TicketEventSink> sinks;
+    private final int batchSize;
+    private final long gapTimeoutMillis;
+    private final long retentionMillis;
+    private final Clock clock;
+
+    //passes are serialized on their own lock so stop() never waits for a running pass
+    private final Object passLock = new Object();
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder gapsSkipped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    //-1 until read from the database
+    private volatile long cursor = -1;
+    //first missing ID the relay is waiting on, and since when
+    private long gapId;
+    private long gapSince;
+    private long lastPurge;
+    private ScheduledExecutorService scheduler;
+
+    public OutboxRelay(TicketEventDAO ticketEventDAO, List<TicketEventSink> sinks){
+        this(ticketEventDAO, DEFAULT_NAME, sinks, DEFAULT_BATCH_SIZE, DEFAULT_GAP_TIMEOUT_MILLIS, DEFAULT_RETENTION_MILLIS,
+                Clock.systemDefaultZone());
+    }
+
+    public OutboxRelay(TicketEventDAO ticketEventDAO, String name, List<TicketEventSink> sinks, int batchSize,
+                       long gapTimeoutMillis, long retentionMillis, Clock clock){
+        this.ticketEventDAO = ticketEventDAO;
+        this.name = name;
+        this.sinks = new ArrayList<>(sinks);
+        this.batchSize = batchSize;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+        this.retentionMillis = retentionMillis;
+        this.clock = clock;
+        this.lastPurge = clock.millis();
+    }
+
+    /**
+    *publish the events above the cursor until the outbox is drained or a hole holds the relay
+    *
+    *@Return number of events published during this pass, -1 if it was skipped or stopped by a failure
+    */
+    public int relay(){
+        synchronized (passLock){
+            return relayPass();
+        }
+    }
+
+    private int relayPass(){
+        if(ticketEventDAO.dataBaseConfig.isDegraded()){
+            return -1;
+        }
+        if(cursor < 0){
+            long saved = ticketEventDAO.getCursor(name);
+            if(saved < 0){
+                return -1;
+            }
+            cursor = saved;
+        }
+        int published = 0;
+        while(true){
+            List<TicketEvent> events = ticketEventDAO.getEventsAfter(cursor, batchSize);
+            if(events == null){
+                failures.increment();
+                return -1;
+            }
+            List<TicketEvent> batch = contiguous(events);
+            if(batch.isEmpty()){
+                break;
+            }
+            for(TicketEventSink sink : sinks){
+                try {
+                    sink.publish(batch);
+                } catch (IOException | RuntimeException e) {
+                    failures.increment();
+                    logger.error("Sink "+sink.getClass().getSimpleName()+" failed on ticket events "+batch.get(0).getId()
+                            +" to "+batch.get(batch.size() - 1).getId()+", the batch will be published again",e);
+                    return -1;
+                }
+            }
+            cursor = batch.get(batch.size() - 1).getId();
+            //a cursor that could not be saved only means this batch is published again after a restart
+            ticketEventDAO.saveCursor(name, cursor);
+            published += batch.size();
+            relayed.add(batch.size());
+            batches.increment();
+            if(batch.size() < events.size() || events.size() < batchSize){
+                break;
+            }
+        }
+        purgeIfDue();
+        return published;
+    }
+
+    /**
+    *the leading events that follow the cursor without a hole, or that come after a hole given up on
+    */
+    private List<TicketEvent> contiguous(List<TicketEvent> events){
+        List<TicketEvent> batch = new ArrayList<>();
+        //never relayed: the outbox may have been purged, or enabled on a database with events
+        long expected = cursor == 0 && !events.isEmpty() ? events.get(0).getId() : cursor + 1;
+        for(TicketEvent event : events){
+            if(event.getId() != expected){
+                long now = clock.millis();
+                if(gapId != expected){
+                    gapId = expected;
+                    gapSince = now;
+                }
+                if(now - gapSince < gapTimeoutMillis){
+                    break;
+                }
+                gapsSkipped.increment();
+                logger.warn("Ticket events "+expected+" to "+(event.getId() - 1)+" skipped, missing for "+(now - gapSince)+" ms");
+            }
+            batch.add(event);
+            expected = event.getId() + 1;
+        }
+        return batch;
+    }
+
+    private void purgeIfDue(){
+        long now = clock.millis();
+        if(now - lastPurge < PURGE_INTERVAL_MILLIS){
+            return;
+        }
+        lastPurge = now;
+        int deleted = ticketEventDAO.purgeEvents(cursor, new Date(now - retentionMillis));
+        if(deleted > 0){
+            purged.add(deleted);
+            logger.info("Purged "+deleted+" relayed ticket events");
+        }
+    }
+
+    /** ID of the last event published to every sink, -1 before the first pass */
+    public long getCursor(){
+        return cursor;
+    }
+
+    public long getRelayed(){
+        return relayed.sum();
+    }
+
+    public long getGapsSkipped(){
+        return gapsSkipped.sum();
+    }
+
+    public long getFailures(){
+        return failures.sum();
+    }
+
+    public long getPurged(){
+        return purged.sum();
+    }
+
+    public String getMetrics(){
+        return "cursor "+cursor+", "+getRelayed()+" events relayed in "+batches.sum()+" batches, "+getGapsSkipped()
+                +" gaps skipped, "+getFailures()+" failures, "+getPurged()+" purged";
+    }
+
+    public synchronized void start(long pollMillis){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::relaySafely, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void relaySafely(){
+        try {
+            relay();
+        } catch (Exception e) {
+            logger.error("Unexpected error while relaying ticket events",e);
+        }
+    }
+}
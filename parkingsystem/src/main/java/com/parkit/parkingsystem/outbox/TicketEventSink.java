@@ -0,0 +1,22 @@
+package com.parkit.parkingsystem.outbox;
+
+import com.parkit.parkingsystem.model.TicketEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the events streamed by an {@link OutboxRelay}.
+ *
+ * Delivery is at least once: a batch is published again, whole, if this sink or another one failed
+ * on it, so consumers recognise the events they already saw by their ID.
+ */
+public interface TicketEventSink {
+
+    /**
+    *take a batch of events, in ID order
+    *
+    *@Param List events following the ones of the previous batch, never empty
+    */
+    void publish(List<TicketEvent> events) throws IOException;
+}
@@ -0,0 +1,149 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.model.AccessListEntry;
+import com.parkit.parkingsystem.util.BloomFilter;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory copy of an access list, checked for every plate at the gates.
+ *
+ * Lookups read an immutable view: a Bloom filter in front of the sorted plates with the end of their
+ * entry. Most plates are on no list, the filter turns them away after one hash without touching the
+ * plates; the few it lets through are checked by binary search. Each refresh applies the new rows on
+ * top of the entries and publishes a new view, rebuilt from scratch since a Bloom filter cannot drop
+ * a plate.
+ */
+public class AccessList {
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private static class View {
+        private final BloomFilter bloomFilter;
+        private final String[] plates;
+        private final long[] validUntil;
+
+        View(BloomFilter bloomFilter, String[] plates, long[] validUntil){
+            this.bloomFilter = bloomFilter;
+            this.plates = plates;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private final String name;
+    private final double falsePositiveRate;
+    private final Clock clock;
+    //end of the entry of each plate, only touched by apply
+    private final Map<String, Long> entries = new HashMap<>();
+    private volatile View view;
+    private volatile int highWaterId;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder exactLookups = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public AccessList(String name, double falsePositiveRate, Clock clock){
+        this.name = name;
+        this.falsePositiveRate = falsePositiveRate;
+        this.clock = clock;
+        this.view = build();
+    }
+
+    /**
+    *@Param String vehicle identification
+    *@Return true if the vehicle is on the list now
+    */
+    public boolean contains(String vehicleRegNumber){
+        lookups.increment();
+        View current = view;
+        if(!current.bloomFilter.mightContain(vehicleRegNumber)){
+            return false;
+        }
+        exactLookups.increment();
+        int index = Arrays.binarySearch(current.plates, vehicleRegNumber);
+        if(index < 0){
+            falsePositives.increment();
+            return false;
+        }
+        return current.validUntil[index] > clock.millis();
+    }
+
+    /**
+    *apply rows read from the table, in ID order, then publish the new view
+    *
+    *@Param List rows above the high-water ID
+    *@Return number of plates on the list afterwards
+    */
+    public synchronized int apply(List<AccessListEntry> changes){
+        long now = clock.millis();
+        for(AccessListEntry entry : changes){
+            long end = entry.getValidUntil() == null ? Long.MAX_VALUE : entry.getValidUntil().getTime();
+            if(end > now){
+                entries.put(entry.getVehicleRegNumber(), end);
+            }else{
+                entries.remove(entry.getVehicleRegNumber());
+            }
+            highWaterId = Math.max(highWaterId, entry.getId());
+        }
+        boolean expired = false;
+        for(Iterator<Long> ends = entries.values().iterator(); ends.hasNext();){
+            if(ends.next() <= now){
+                ends.remove();
+                expired = true;
+            }
+        }
+        if(!changes.isEmpty() || expired){
+            view = build();
+        }
+        return entries.size();
+    }
+
+    private View build(){
+        String[] plates = entries.keySet().toArray(new String[0]);
+        Arrays.sort(plates);
+        long[] validUntil = new long[plates.length];
+        BloomFilter bloomFilter = new BloomFilter(plates.length, falsePositiveRate);
+        for(int i = 0; i < plates.length; i++){
+            validUntil[i] = entries.get(plates[i]);
+            bloomFilter.put(plates[i]);
+        }
+        return new View(bloomFilter, plates, validUntil);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    /** highest row ID applied, the next refresh reads the rows above it */
+    public int getHighWaterId(){
+        return highWaterId;
+    }
+
+    public int size(){
+        return view.plates.length;
+    }
+
+    public long getLookups(){
+        return lookups.sum();
+    }
+
+    /** lookups the Bloom filter let through to the plates */
+    public long getExactLookups(){
+        return exactLookups.sum();
+    }
+
+    public long getFalsePositives(){
+        return falsePositives.sum();
+    }
+
+    public String getMetrics(){
+        return name+": "+size()+" plates, "+getLookups()+" lookups, "+getExactLookups()+" past the filter, "
+                +getFalsePositives()+" false positives";
+    }
+}
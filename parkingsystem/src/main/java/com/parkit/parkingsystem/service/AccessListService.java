@@ -0,0 +1,141 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.AccessListDAO;
+import com.parkit.parkingsystem.model.AccessListEntry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Season passes and blocklist of the gates, kept in memory so that checking a plate never costs a
+ * database round trip. The first refresh loads both tables, the next ones only read the rows added
+ * since, page by page.
+ */
+public class AccessListService {
+
+    private static final Logger logger = LogManager.getLogger("AccessListService");
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final long DEFAULT_REFRESH_SECONDS = 30;
+
+    private final AccessListDAO accessListDAO;
+    private final int pageSize;
+    private final AccessList seasonPasses;
+    private final AccessList blocklist;
+    private final Object refreshLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+
+    public AccessListService(AccessListDAO accessListDAO){
+        this(accessListDAO, DEFAULT_PAGE_SIZE, AccessList.DEFAULT_FALSE_POSITIVE_RATE, Clock.systemDefaultZone());
+    }
+
+    public AccessListService(AccessListDAO accessListDAO, int pageSize, double falsePositiveRate, Clock clock){
+        this.accessListDAO = accessListDAO;
+        this.pageSize = pageSize;
+        this.seasonPasses = new AccessList("season passes", falsePositiveRate, clock);
+        this.blocklist = new AccessList("blocklist", falsePositiveRate, clock);
+    }
+
+    /**
+    *@Param String vehicle identification
+    *@Return true if the vehicle holds a season pass valid now, it parks for free
+    */
+    public boolean hasSeasonPass(String vehicleRegNumber){
+        return seasonPasses.contains(vehicleRegNumber);
+    }
+
+    /**
+    *@Param String vehicle identification
+    *@Return true if the vehicle must not be let in
+    */
+    public boolean isBlocked(String vehicleRegNumber){
+        return blocklist.contains(vehicleRegNumber);
+    }
+
+    public AccessList getSeasonPasses(){
+        return seasonPasses;
+    }
+
+    public AccessList getBlocklist(){
+        return blocklist;
+    }
+
+    /**
+    *read the rows added to both tables since the last refresh
+    *
+    *@Return false if a query failed, the rows read before it are applied anyway
+    */
+    public boolean refresh(){
+        synchronized (refreshLock){
+            if(accessListDAO.dataBaseConfig.isDegraded()){
+                logger.info("Access list refresh skipped, the database is in degraded mode");
+                return false;
+            }
+            boolean refreshed = refresh(seasonPasses, accessListDAO::getSeasonPassesAfter);
+            return refresh(blocklist, accessListDAO::getBlocklistAfter) && refreshed;
+        }
+    }
+
+    private boolean refresh(AccessList accessList, BiFunction<Integer, Integer, List<AccessListEntry>> query){
+        List<AccessListEntry> changes = new ArrayList<>();
+        int after = accessList.getHighWaterId();
+        boolean complete = true;
+        while(true){
+            List<AccessListEntry> page = query.apply(after, pageSize);
+            if(page == null){
+                logger.error("Refresh of the "+accessList.getName()+" stopped after "+changes.size()+" rows");
+                complete = false;
+                break;
+            }
+            changes.addAll(page);
+            if(page.size() < pageSize){
+                break;
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+        int size = accessList.apply(changes);
+        if(!changes.isEmpty()){
+            logger.info(changes.size()+" rows applied to the "+accessList.getName()+", "+size+" plates");
+        }
+        return complete;
+    }
+
+    public String getMetrics(){
+        return seasonPasses.getMetrics()+"; "+blocklist.getMetrics();
+    }
+
+    public synchronized void start(long periodSeconds){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "access-list-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void refreshSafely(){
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.error("Unexpected error while refreshing the access lists",e);
+        }
+    }
+}
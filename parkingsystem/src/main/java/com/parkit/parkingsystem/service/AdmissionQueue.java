@@ -0,0 +1,258 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Vehicles waiting for a spot of their type while the lot is full, served first come first served.
+ *
+ * There is one queue per {@link ParkingType}, kept in a list indexed by the type id. An exit takes the
+ * head of the queue of its spot type with {@link #claimNext} and parks that vehicle on the spot it just
+ * released; the waiter learns it through its future, completed with the ticket, or with null once its
+ * timeout is over or if it could not be parked.
+ */
+public class AdmissionQueue {
+
+    private static final Logger logger = LogManager.getLogger("AdmissionQueue");
+
+    public static final int DEFAULT_CAPACITY = 100;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    /**
+    * A vehicle in the queue, with the future its gate waits on.
+    */
+    public static class Waiter {
+        private final ParkingType parkingType;
+        private final String vehicleRegNumber;
+        private final String requestKey;
+        private final long enqueuedAt;
+        private final CompletableFuture<Ticket> ticket = new CompletableFuture<>();
+
+        Waiter(ParkingType parkingType, String vehicleRegNumber, String requestKey, long enqueuedAt){
+            this.parkingType = parkingType;
+            this.vehicleRegNumber = vehicleRegNumber;
+            this.requestKey = requestKey;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        public ParkingType getParkingType() {
+            return parkingType;
+        }
+
+        public String getVehicleRegNumber() {
+            return vehicleRegNumber;
+        }
+
+        public String getRequestKey() {
+            return requestKey;
+        }
+    }
+
+    private final int capacity;
+    private final long timeoutMillis;
+    private final Clock clock;
+    private final List<Deque<Waiter>> queues = new ArrayList<>();
+    private final Map<String, Waiter> waitersByVehicle = new HashMap<>();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder waitMillis = new LongAdder();
+    private final LongAccumulator maxWaitMillis = new LongAccumulator(Math::max, 0);
+
+    public AdmissionQueue(){
+        this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT_MILLIS, Clock.systemDefaultZone());
+    }
+
+    public AdmissionQueue(int capacity, long timeoutMillis, Clock clock){
+        this.capacity = capacity;
+        this.timeoutMillis = timeoutMillis;
+        this.clock = clock;
+        for(int id = 0; id <= ParkingType.MAX_ID; id++){
+            queues.add(null);
+        }
+    }
+
+    /**
+    *put a vehicle at the tail of the queue of its type, or give back the future of its earlier request
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param String vehicle identification
+    *@Param String idempotency key of the entry, null for none
+    *@Return completed with the ticket once a spot was handed to the vehicle, with null if the queue was
+    *full, the wait timed out or the vehicle could not be parked
+    */
+    public CompletableFuture<Ticket> enqueue(ParkingType parkingType, String vehicleRegNumber, String requestKey){
+        Waiter waiter;
+        synchronized (this){
+            Waiter waiting = waitersByVehicle.get(vehicleRegNumber);
+            if(waiting != null && !waiting.ticket.isDone()){
+                return waiting.ticket;
+            }
+            if(waiting != null){
+                //its gate gave up and cancelled the wait, it queues again at the tail
+                queues.get(waiting.parkingType.getId()).remove(waiting);
+            }
+            Deque<Waiter> queue = queue(parkingType);
+            if(queue.size() >= capacity){
+                refused.increment();
+                logger.info("Admission queue of "+parkingType+" is full, "+vehicleRegNumber+" turned away");
+                return CompletableFuture.completedFuture(null);
+            }
+            waiter = new Waiter(parkingType, vehicleRegNumber, requestKey, clock.millis());
+            queue.addLast(waiter);
+            waitersByVehicle.put(vehicleRegNumber, waiter);
+            enqueued.increment();
+        }
+        CompletableFuture.delayedExecutor(timeoutMillis, TimeUnit.MILLISECONDS).execute(() -> expire(waiter));
+        return waiter.ticket;
+    }
+
+    /**
+    *take the vehicle waiting the longest for a spot of a type
+    *
+    *@Param ParkingType type of the released spot
+    *@Return the waiter, to be given a spot and then passed to {@link #complete}, or null if none waits
+    */
+    public synchronized Waiter claimNext(ParkingType parkingType){
+        Deque<Waiter> queue = queues.get(parkingType.getId());
+        while(queue != null && !queue.isEmpty()){
+            Waiter waiter = queue.pollFirst();
+            waitersByVehicle.remove(waiter.vehicleRegNumber);
+            //a gate that gave up cancelled its future
+            if(!waiter.ticket.isDone()){
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    /**
+    *notify a claimed waiter of the outcome
+    *
+    *@Param Waiter waiter returned by claimNext
+    *@Param Ticket ticket of the vehicle on its spot, null if it could not be parked
+    *@Return false if the gate cancelled or the wait timed out since the claim, the ticket then reached no one
+    */
+    public boolean complete(Waiter waiter, Ticket ticket){
+        long waited = clock.millis() - waiter.enqueuedAt;
+        //counted before waking the gate, taken back if the gate no longer listens
+        if(ticket != null){
+            admitted.increment();
+            waitMillis.add(waited);
+        }
+        if(!waiter.ticket.complete(ticket)){
+            if(ticket != null){
+                admitted.decrement();
+                waitMillis.add(-waited);
+            }
+            return false;
+        }
+        if(ticket != null){
+            maxWaitMillis.accumulate(waited);
+        }
+        return true;
+    }
+
+    public synchronized int getQueueLength(ParkingType parkingType){
+        Deque<Waiter> queue = queues.get(parkingType.getId());
+        return queue == null ? 0 : queue.size();
+    }
+
+    public synchronized int getQueueLength(){
+        return waitersByVehicle.size();
+    }
+
+    public long getEnqueued(){
+        return enqueued.sum();
+    }
+
+    public long getAdmitted(){
+        return admitted.sum();
+    }
+
+    public long getTimedOut(){
+        return timedOut.sum();
+    }
+
+    public long getRefused(){
+        return refused.sum();
+    }
+
+    /** mean wait of the admitted vehicles, 0 before the first one */
+    public long getAverageWaitMillis(){
+        long count = admitted.sum();
+        return count == 0 ? 0 : waitMillis.sum() / count;
+    }
+
+    public long getMaxWaitMillis(){
+        return maxWaitMillis.get();
+    }
+
+    public String getMetrics(){
+        return getQueueLength()+" waiting, "+getEnqueued()+" enqueued, "+getAdmitted()+" admitted after "
+                +getAverageWaitMillis()+" ms on average (max "+getMaxWaitMillis()+" ms), "+getTimedOut()+" timed out, "
+                +getRefused()+" refused";
+    }
+
+    /**
+    *turn away every waiting vehicle, when the gates shut down
+    */
+    public void clear(){
+        List<Waiter> waiters;
+        synchronized (this){
+            waiters = new ArrayList<>(waitersByVehicle.values());
+            waitersByVehicle.clear();
+            for(Deque<Waiter> queue : queues){
+                if(queue != null){
+                    queue.clear();
+                }
+            }
+        }
+        for(Waiter waiter : waiters){
+            waiter.ticket.complete(null);
+        }
+    }
+
+    private void expire(Waiter waiter){
+        synchronized (this){
+            Deque<Waiter> queue = queues.get(waiter.parkingType.getId());
+            //a claimed waiter is no longer queued and gets its spot whatever the time
+            if(queue == null || !queue.remove(waiter)){
+                return;
+            }
+            waitersByVehicle.remove(waiter.vehicleRegNumber);
+        }
+        //counted before the gate waiting on the future wakes up
+        if(!waiter.ticket.isDone()){
+            timedOut.increment();
+        }
+        if(waiter.ticket.complete(null)){
+            logger.info(waiter.vehicleRegNumber+" left the admission queue of "+waiter.parkingType+" after "+timeoutMillis+" ms");
+        }
+    }
+
+    private Deque<Waiter> queue(ParkingType parkingType){
+        Deque<Waiter> queue = queues.get(parkingType.getId());
+        if(queue == null){
+            queue = new ArrayDeque<>();
+            queues.set(parkingType.getId(), queue);
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,248 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Entries and exits accepted while the database was unavailable, replayed in arrival order once it
+ * is back. A replayed step the database could not be reached for stays at the head of the queue and
+ * is retried by the next flush; one it refused, e.g. on a constraint, would be refused forever and is
+ * moved to the dead letters instead, so it never holds the writes queued behind it.
+ */
+public class DeferredWriteQueue {
+
+    private static final Logger logger = LogManager.getLogger("DeferredWriteQueue");
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final long DEFAULT_FLUSH_MILLIS = 5000;
+
+    private static final int ENTRY = 0;
+    private static final int EXIT = 1;
+
+    private static final int PERSISTED = 0;
+    private static final int RETRY = 1;
+    private static final int REFUSED = 2;
+
+    private static class DeferredWrite {
+        private final int kind;
+        private final Ticket ticket;
+
+        DeferredWrite(int kind, Ticket ticket){
+            this.kind = kind;
+            this.ticket = ticket;
+        }
+    }
+
+    private final DataBaseConfig dataBaseConfig;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+    private final int capacity;
+    private final Deque<DeferredWrite> writes = new ArrayDeque<>();
+    //the latest refused writes, bounded like the queue
+    private final Deque<Ticket> deadLetters = new ArrayDeque<>();
+    private final LongAdder deadLettered = new LongAdder();
+    //flushes are serialized on their own lock so the gates never wait on a slow replay
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService scheduler;
+
+    public DeferredWriteQueue(DataBaseConfig dataBaseConfig, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(dataBaseConfig, parkingSpotDAO, ticketDAO, DEFAULT_CAPACITY);
+    }
+
+    public DeferredWriteQueue(DataBaseConfig dataBaseConfig, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, int capacity){
+        this.dataBaseConfig = dataBaseConfig;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+        this.capacity = capacity;
+    }
+
+    /**
+    *tell if gate operations must bypass the database: it is failing, or earlier writes are still
+    *queued and a direct write would overtake them
+    */
+    public synchronized boolean isDegraded(){
+        return !writes.isEmpty() || dataBaseConfig.isDegraded();
+    }
+
+    public synchronized int size(){
+        return writes.size();
+    }
+
+    /**
+    *tell if the DAO call that just failed on this thread could not reach the database, the only
+    *failure a deferred write can outlast
+    */
+    public boolean isTransientFailure(){
+        return dataBaseConfig.isLastFailureTransient();
+    }
+
+    /** writes dropped because the database refused them, since the start */
+    public long getDeadLettered(){
+        return deadLettered.sum();
+    }
+
+    /** tickets of the latest writes the database refused, oldest first */
+    public synchronized List<Ticket> getDeadLetters(){
+        return new ArrayList<>(deadLetters);
+    }
+
+    /**
+    *queue the spot update and ticket insert of an entry
+    *
+    *@Param Ticket open ticket of the vehicle
+    *@Return false if the queue is full and the entry must be refused
+    */
+    public boolean deferEntry(Ticket ticket){
+        return offer(new DeferredWrite(ENTRY, ticket));
+    }
+
+    /**
+    *queue the ticket update and spot release of an exit
+    *
+    *@Param Ticket closed ticket with its fare
+    *@Return false if the queue is full
+    */
+    public boolean deferExit(Ticket ticket){
+        return offer(new DeferredWrite(EXIT, ticket));
+    }
+
+    private synchronized boolean offer(DeferredWrite write){
+        if(writes.size() >= capacity){
+            logger.error("Deferred write queue full, "+capacity+" writes waiting for the database");
+            return false;
+        }
+        writes.addLast(write);
+        return true;
+    }
+
+    /**
+    *replay the queued writes in order, stopping at the first one the database cannot take yet and
+    *dead-lettering those it refuses
+    *
+    *@Return number of writes persisted by this call
+    */
+    public int flush(){
+        synchronized (flushLock){
+            int flushed = 0;
+            while(true){
+                DeferredWrite write;
+                synchronized (this){
+                    write = writes.peekFirst();
+                }
+                if(write == null){
+                    break;
+                }
+                int outcome = write.kind == ENTRY ? persistEntry(write.ticket) : persistExit(write.ticket);
+                if(outcome == RETRY){
+                    break;
+                }
+                synchronized (this){
+                    writes.removeFirst();
+                    if(outcome == REFUSED){
+                        if(deadLetters.size() >= capacity){
+                            deadLetters.removeFirst();
+                        }
+                        deadLetters.addLast(write.ticket);
+                    }
+                }
+                if(outcome == REFUSED){
+                    deadLettered.increment();
+                    logger.error("Deferred "+(write.kind == ENTRY ? "entry" : "exit")+" of "+write.ticket.getVehicleRegNumber()
+                            +" on spot "+write.ticket.getParkingSpot().getId()+" refused by the database, dead-lettered");
+                }else{
+                    flushed++;
+                }
+            }
+            if(flushed > 0){
+                logger.info("Persisted "+flushed+" deferred writes, "+size()+" left");
+            }
+            return flushed;
+        }
+    }
+
+    private int persistEntry(Ticket ticket){
+        ParkingSpot parkingSpot = new ParkingSpot(ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(), false);
+        int claimed = parkingSpotDAO.occupyParkingSpot(parkingSpot);
+        if(claimed < 0){
+            return failure();
+        }
+        if(claimed == 0){
+            //the vehicle is on the spot whatever the database says, e.g. the range lease ran out during the outage
+            logger.warn("Spot "+parkingSpot.getId()+" of the deferred entry of "+ticket.getVehicleRegNumber()+" was already occupied");
+        }
+        if(ticketDAO.saveTicket(ticket)){
+            return PERSISTED;
+        }
+        int failure = failure();
+        //the write may have reached the database before it timed out, the request key tells
+        Ticket saved = ticket.getRequestKey() == null ? null : ticketDAO.getTicketByRequestKey(ticket.getRequestKey());
+        if(saved != null){
+            //a deferred exit of the same vehicle updates the ticket by its ID
+            ticket.setId(saved.getId());
+            return PERSISTED;
+        }
+        if(failure == REFUSED){
+            //no ticket will ever hold the spot, a release lost here is left to the reconciler
+            parkingSpot.setAvailable(true);
+            parkingSpotDAO.updateParking(parkingSpot);
+        }
+        return failure;
+    }
+
+    private int persistExit(Ticket ticket){
+        ParkingSpot parkingSpot = new ParkingSpot(ticket.getParkingSpot().getId(), ticket.getParkingSpot().getParkingType(), true);
+        if(!ticketDAO.updateTicket(ticket) || !parkingSpotDAO.updateParking(parkingSpot)){
+            return failure();
+        }
+        return PERSISTED;
+    }
+
+    /**
+    *retry a failed step only if the database could not be reached, whatever else made it fail would again
+    */
+    private int failure(){
+        return isTransientFailure() ? RETRY : REFUSED;
+    }
+
+    public synchronized void start(long periodMillis){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "deferred-writes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushSafely, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void flushSafely(){
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Unexpected error while persisting deferred writes",e);
+        }
+    }
+}
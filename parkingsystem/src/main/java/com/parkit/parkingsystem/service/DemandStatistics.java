@@ -0,0 +1,345 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Rolling demand statistics per {@link ParkingType}, updated one closed ticket at a time, and the
+ * price multiplier they give for each hour of the day.
+ *
+ * For each type it keeps an arrival histogram by hour of day and a dwell-time histogram by whole
+ * hours. Old tickets fade out with a half-life: instead of decaying every cell, a new ticket weighs
+ * 2^(age of the statistics / half-life), which only needs a rescale once the weights grow large.
+ * From both histograms each update forecasts the relative occupancy of every hour of the day,
+ * arrivals of the hours before still parked at that hour, and turns it into a multiplier around 1.
+ * The multipliers of a type are published as one array, so pricing reads a single array slot.
+ */
+public class DemandStatistics {
+
+    private static final Logger logger = LogManager.getLogger("DemandStatistics");
+
+    public static final double DEFAULT_SENSITIVITY = 0.5;
+    public static final double DEFAULT_MIN_MULTIPLIER = 0.8;
+    public static final double DEFAULT_MAX_MULTIPLIER = 1.5;
+    public static final long DEFAULT_HALF_LIFE_MILLIS = TimeUnit.DAYS.toMillis(28);
+    public static final int DEFAULT_MIN_SAMPLES = 100;
+
+    private static final int HOURS = 24;
+    private static final int DWELL_BUCKETS = HOURS + 1;
+    private static final double RESCALE_THRESHOLD = 1e100;
+    private static final int LOAD_BATCH_SIZE = 1000;
+    static final int LOAD_ATTEMPTS = 3;
+    //closed tickets remembered by ID so the replay after a state snapshot does not count them twice
+    static final long RECENT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final double sensitivity;
+    private final double minMultiplier;
+    private final double maxMultiplier;
+    private final long halfLifeMillis;
+    private final int minSamples;
+    private final ZoneId zone;
+
+    private final TypeStatistics[] statistics = new TypeStatistics[ParkingType.MAX_ID + 1];
+    private final AtomicReferenceArray<double[]> multipliers = new AtomicReferenceArray<>(ParkingType.MAX_ID + 1);
+    private long epochMillis = Long.MIN_VALUE;
+    private long newestOutMillis = Long.MIN_VALUE;
+    private final Deque<long[]> recentTickets = new ArrayDeque<>();
+    private final Set<Integer> recentTicketIds = new HashSet<>();
+
+    public DemandStatistics(){
+        this(DEFAULT_SENSITIVITY, DEFAULT_MIN_MULTIPLIER, DEFAULT_MAX_MULTIPLIER, DEFAULT_HALF_LIFE_MILLIS, DEFAULT_MIN_SAMPLES, ZoneId.systemDefault());
+    }
+
+    public DemandStatistics(double sensitivity, double minMultiplier, double maxMultiplier, long halfLifeMillis, int minSamples, ZoneId zone){
+        this.sensitivity = sensitivity;
+        this.minMultiplier = minMultiplier;
+        this.maxMultiplier = maxMultiplier;
+        this.halfLifeMillis = halfLifeMillis;
+        this.minSamples = minSamples;
+        this.zone = zone;
+    }
+
+    private static class TypeStatistics {
+        final double[] arrivals = new double[HOURS];
+        final double[] dwell = new double[DWELL_BUCKETS];
+        double weight;
+        long samples;
+    }
+
+    /**
+    *seed the statistics from the closed tickets of both tiers, read once at startup by ID ranges.
+    *A page that still cannot be read after LOAD_ATTEMPTS tries drops what was seeded: histograms
+    *missing part of the history would skew the prices, the base rate applies until enough tickets close
+    *
+    *@Param TicketDAO dao reading the ticket history
+    *@Return number of tickets read, -1 if the history could not be read
+    */
+    public int load(TicketDAO ticketDAO){
+        int lastId = 0;
+        int loaded = 0;
+        List<Ticket> tickets = readPage(ticketDAO, lastId);
+        while(tickets != null && !tickets.isEmpty()){
+            for(Ticket ticket : tickets){
+                recordClosedTicket(ticket);
+                lastId = ticket.getId();
+            }
+            loaded += tickets.size();
+            tickets = readPage(ticketDAO, lastId);
+        }
+        if(tickets == null){
+            clear();
+            logger.error("Demand statistics not seeded, closed tickets after ID "+lastId+" could not be read; "
+                    +"pricing stays at the base rate until enough tickets close");
+            return -1;
+        }
+        logger.info("Demand statistics seeded with "+loaded+" closed tickets");
+        return loaded;
+    }
+
+    private static List<Ticket> readPage(TicketDAO ticketDAO, int lastId){
+        List<Ticket> tickets = null;
+        for(int attempt = 0; attempt < LOAD_ATTEMPTS && tickets == null; attempt++){
+            tickets = ticketDAO.getClosedTicketsAfter(lastId, LOAD_BATCH_SIZE);
+        }
+        return tickets;
+    }
+
+    private synchronized void clear(){
+        for(int i = 0; i < statistics.length; i++){
+            statistics[i] = null;
+            multipliers.set(i, null);
+        }
+        epochMillis = Long.MIN_VALUE;
+        newestOutMillis = Long.MIN_VALUE;
+        recentTickets.clear();
+        recentTicketIds.clear();
+    }
+
+    /**
+    *add a closed ticket to the histograms of its type and refresh the multipliers of that type
+    *
+    *@Param Ticket ticket with its type, in time and out time
+    */
+    public synchronized void recordClosedTicket(Ticket ticket){
+        if(ticket.getInTime() == null || ticket.getOutTime() == null || ticket.getParkingSpot() == null){
+            return;
+        }
+        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+        TypeStatistics typeStatistics = statistics[parkingType.getId()];
+        if(typeStatistics == null){
+            typeStatistics = new TypeStatistics();
+            statistics[parkingType.getId()] = typeStatistics;
+        }
+        long outMillis = ticket.getOutTime().getTime();
+        if(epochMillis == Long.MIN_VALUE){
+            epochMillis = outMillis;
+        }
+        double weight = Math.pow(2, (double) (outMillis - epochMillis) / halfLifeMillis);
+        if(weight > RESCALE_THRESHOLD){
+            rescale(weight, outMillis);
+            weight = 1;
+        }
+        int hour = hourOfDay(ticket.getInTime());
+        long dwellHours = (outMillis - ticket.getInTime().getTime()) / TimeUnit.HOURS.toMillis(1);
+        typeStatistics.arrivals[hour] += weight;
+        typeStatistics.dwell[(int) Math.max(0, Math.min(HOURS, dwellHours))] += weight;
+        typeStatistics.weight += weight;
+        typeStatistics.samples++;
+        if(typeStatistics.samples >= minSamples){
+            multipliers.set(parkingType.getId(), computeMultipliers(typeStatistics));
+        }
+        rememberRecent(ticket.getId(), outMillis);
+    }
+
+    /**
+    *add a closed ticket read back after a state snapshot, unless the snapshot already counted it
+    *
+    *@Param Ticket closed ticket with its ID
+    *@Return false if the ticket was already counted
+    */
+    synchronized boolean recordReplayedTicket(Ticket ticket){
+        if(recentTicketIds.contains(ticket.getId())){
+            return false;
+        }
+        recordClosedTicket(ticket);
+        return true;
+    }
+
+    private void rememberRecent(int ticketId, long outMillis){
+        newestOutMillis = Math.max(newestOutMillis, outMillis);
+        recentTickets.addLast(new long[]{ticketId, outMillis});
+        recentTicketIds.add(ticketId);
+        while(!recentTickets.isEmpty() && recentTickets.peekFirst()[1] < newestOutMillis - RECENT_WINDOW_MILLIS){
+            recentTicketIds.remove((int) recentTickets.pollFirst()[0]);
+        }
+    }
+
+    /**
+    *write the histograms of every type and the recently counted tickets to a state snapshot
+    */
+    synchronized void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeLong(epochMillis);
+        out.writeLong(newestOutMillis);
+        int types = 0;
+        for(TypeStatistics typeStatistics : statistics){
+            types += typeStatistics == null ? 0 : 1;
+        }
+        out.writeInt(types);
+        for(int id = 0; id < statistics.length; id++){
+            TypeStatistics typeStatistics = statistics[id];
+            if(typeStatistics == null){
+                continue;
+            }
+            out.writeInt(id);
+            out.writeLong(typeStatistics.samples);
+            out.writeDouble(typeStatistics.weight);
+            for(double arrivals : typeStatistics.arrivals){
+                out.writeDouble(arrivals);
+            }
+            for(double dwell : typeStatistics.dwell){
+                out.writeDouble(dwell);
+            }
+        }
+        out.writeInt(recentTickets.size());
+        for(long[] recentTicket : recentTickets){
+            out.writeInt((int) recentTicket[0]);
+            out.writeLong(recentTicket[1]);
+        }
+    }
+
+    /**
+    *replace the statistics by the ones of a state snapshot written by writeSnapshot
+    *
+    *@Throws IllegalArgumentException if the snapshot refers to a type no longer in the catalogue, the statistics are then unchanged
+    */
+    synchronized void readSnapshot(ByteBuffer in){
+        long snapshotEpochMillis = in.getLong();
+        long snapshotNewestOutMillis = in.getLong();
+        TypeStatistics[] snapshotStatistics = new TypeStatistics[statistics.length];
+        int types = in.getInt();
+        for(int i = 0; i < types; i++){
+            int id = ParkingType.fromId(in.getInt()).getId();
+            TypeStatistics typeStatistics = new TypeStatistics();
+            typeStatistics.samples = in.getLong();
+            typeStatistics.weight = in.getDouble();
+            for(int hour = 0; hour < HOURS; hour++){
+                typeStatistics.arrivals[hour] = in.getDouble();
+            }
+            for(int bucket = 0; bucket < DWELL_BUCKETS; bucket++){
+                typeStatistics.dwell[bucket] = in.getDouble();
+            }
+            snapshotStatistics[id] = typeStatistics;
+        }
+        int recent = in.getInt();
+        long[][] snapshotRecent = new long[recent][];
+        for(int i = 0; i < recent; i++){
+            snapshotRecent[i] = new long[]{in.getInt(), in.getLong()};
+        }
+
+        epochMillis = snapshotEpochMillis;
+        newestOutMillis = snapshotNewestOutMillis;
+        recentTickets.clear();
+        recentTicketIds.clear();
+        for(long[] recentTicket : snapshotRecent){
+            recentTickets.addLast(recentTicket);
+            recentTicketIds.add((int) recentTicket[0]);
+        }
+        for(int id = 0; id < statistics.length; id++){
+            statistics[id] = snapshotStatistics[id];
+            multipliers.set(id, snapshotStatistics[id] != null && snapshotStatistics[id].samples >= minSamples
+                    ? computeMultipliers(snapshotStatistics[id]) : null);
+        }
+    }
+
+    /**
+    *price multiplier for a vehicle of a type arrived at a time, 1 until the type has enough history
+    *
+    *@Param ParkingType type of the spot
+    *@Param Date in time of the ticket
+    *@Return multiplier to apply to the hourly rate
+    */
+    public double getMultiplier(ParkingType parkingType, Date inTime){
+        double[] typeMultipliers = multipliers.get(parkingType.getId());
+        return typeMultipliers == null ? 1.0 : typeMultipliers[hourOfDay(inTime)];
+    }
+
+    /**
+    *forecast occupancy of each hour of the day relative to the daily mean
+    *
+    *@Param ParkingType type of the spot
+    *@Return 24 values, 1 being an average hour, null without history
+    */
+    public synchronized double[] getOccupancyForecast(ParkingType parkingType){
+        TypeStatistics typeStatistics = statistics[parkingType.getId()];
+        return typeStatistics == null || typeStatistics.weight == 0 ? null : forecastOccupancy(typeStatistics);
+    }
+
+    private double[] computeMultipliers(TypeStatistics typeStatistics){
+        double[] occupancy = forecastOccupancy(typeStatistics);
+        double[] typeMultipliers = new double[HOURS];
+        for(int hour = 0; hour < HOURS; hour++){
+            double multiplier = 1 + sensitivity * (occupancy[hour] - 1);
+            typeMultipliers[hour] = Math.max(minMultiplier, Math.min(maxMultiplier, multiplier));
+        }
+        return typeMultipliers;
+    }
+
+    private static double[] forecastOccupancy(TypeStatistics typeStatistics){
+        //share of the vehicles still parked k hours after they arrived
+        double[] stillParked = new double[HOURS];
+        double remaining = typeStatistics.weight;
+        for(int k = 0; k < HOURS; k++){
+            stillParked[k] = remaining / typeStatistics.weight;
+            remaining -= typeStatistics.dwell[k];
+        }
+        double[] occupancy = new double[HOURS];
+        double total = 0;
+        for(int hour = 0; hour < HOURS; hour++){
+            for(int k = 0; k < HOURS; k++){
+                occupancy[hour] += typeStatistics.arrivals[(hour - k + HOURS) % HOURS] * stillParked[k];
+            }
+            total += occupancy[hour];
+        }
+        double mean = total / HOURS;
+        for(int hour = 0; hour < HOURS; hour++){
+            occupancy[hour] = mean == 0 ? 1 : occupancy[hour] / mean;
+        }
+        return occupancy;
+    }
+
+    private void rescale(double weight, long newEpochMillis){
+        for(TypeStatistics typeStatistics : statistics){
+            if(typeStatistics != null){
+                for(int i = 0; i < HOURS; i++){
+                    typeStatistics.arrivals[i] /= weight;
+                }
+                for(int i = 0; i < DWELL_BUCKETS; i++){
+                    typeStatistics.dwell[i] /= weight;
+                }
+                typeStatistics.weight /= weight;
+            }
+        }
+        epochMillis = newEpochMillis;
+    }
+
+    private int hourOfDay(Date time){
+        return Instant.ofEpochMilli(time.getTime()).atZone(zone).getHour();
+    }
+}
@@ -1,10 +1,31 @@
 package com.parkit.parkingsystem.service;
 
-import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.model.Ticket;
 
 public class FareCalculatorService {
 
+    private DemandStatistics demandStatistics;
+    private AccessListService accessListService;
+
+    /**
+    *price with the demand multiplier of the hour the vehicle arrived
+    *
+    *@Param DemandStatistics statistics fed with the closed tickets, null for the plain hourly rate
+    */
+    public void setDemandStatistics(DemandStatistics demandStatistics){
+        this.demandStatistics = demandStatistics;
+    }
+
+    /**
+    *let season pass holders park for free
+    *
+    *@Param AccessListService access lists, null if there are no season passes
+    */
+    public void setAccessListService(AccessListService accessListService){
+        this.accessListService = accessListService;
+    }
+
     public void calculateFare(Ticket ticket, boolean discount){
         if( (ticket.getOutTime() == null) || (ticket.getOutTime().before(ticket.getInTime())) ){
             throw new IllegalArgumentException("Out time provided is incorrect:"+ticket.getOutTime().toString());
@@ -15,22 +36,23 @@ public class FareCalculatorService {
 
         float duration = (float)(outHour - inHour)/1000/3600;
         
-        switch (ticket.getParkingSpot().getParkingType()){
-            case CAR: {
-                ticket.setPrice(duration * Fare.CAR_RATE_PER_HOUR);
-                break;
-            }
-            case BIKE: {
-                ticket.setPrice(duration * Fare.BIKE_RATE_PER_HOUR);
-                break;
-            }
-            default: throw new IllegalArgumentException("Unkown Parking Type");
+        //the rate travels with the type, a new type never adds a case here
+        ParkingType parkingType = ticket.getParkingSpot().getParkingType();
+        double ratePerHour = parkingType.getRatePerHour();
+        if(demandStatistics != null){
+            ratePerHour *= demandStatistics.getMultiplier(parkingType, ticket.getInTime());
         }
-        
+        ticket.setPrice(duration * ratePerHour);
+
         if (duration < 0.5){
             ticket.setPrice(0);
         }
 
+        //a pass valid at the exit covers the whole stay
+        if (accessListService != null && accessListService.hasSeasonPass(ticket.getVehicleRegNumber())){
+            ticket.setPrice(0);
+        }
+
         if (discount){
             ticket.setPrice(ticket.getPrice()*0.95);
         }
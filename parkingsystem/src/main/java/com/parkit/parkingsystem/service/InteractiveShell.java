@@ -1,11 +1,39 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.anpr.AnprPipeline;
+import com.parkit.parkingsystem.anpr.FilePlateReadSource;
+import com.parkit.parkingsystem.anpr.PlateReadDeduplicator;
+import com.parkit.parkingsystem.assignment.LeasedRangeStrategy;
+import com.parkit.parkingsystem.assignment.SpotAssignmentStrategy;
+import com.parkit.parkingsystem.config.ConfigLoader;
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.DataBaseSettings;
+import com.parkit.parkingsystem.dao.AccessListDAO;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.SpotLeaseDAO;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketEventDAO;
+import com.parkit.parkingsystem.monitoring.OverstayMonitor;
+import com.parkit.parkingsystem.outbox.FileTicketEventSink;
+import com.parkit.parkingsystem.outbox.InProcessTicketEventSink;
+import com.parkit.parkingsystem.outbox.OutboxRelay;
+import com.parkit.parkingsystem.outbox.TicketEventSink;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
 public class InteractiveShell {
 
     private static final Logger logger = LogManager.getLogger("InteractiveShell");
@@ -16,9 +44,124 @@ public class InteractiveShell {
 
         boolean continueApp = true;
         InputReaderUtil inputReaderUtil = new InputReaderUtil();
+        Properties config = ConfigLoader.load();
+        DataBaseConfig dataBaseConfig = new DataBaseConfig(DataBaseSettings.fromProperties(config, "db"));
+        if(config.getProperty("db.replica.url") != null){
+            dataBaseConfig.setReadReplica(new DataBaseConfig(DataBaseSettings.fromProperties(config, "db.replica", "db")),
+                    DataBaseSettings.getInt(config, "db.replica.maxLagMillis", 5000));
+        }
+        int gateTimeout = DataBaseSettings.getInt(config, "db.queryTimeout.gate", ParkingSpotDAO.DEFAULT_QUERY_TIMEOUT_SECONDS);
         ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.queryTimeoutSeconds = gateTimeout;
         TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseConfig;
+        ticketDAO.queryTimeoutSeconds = gateTimeout;
+        ticketDAO.reportQueryTimeoutSeconds = DataBaseSettings.getInt(config, "db.queryTimeout.report", TicketDAO.DEFAULT_REPORT_QUERY_TIMEOUT_SECONDS);
+        TicketArchiveDAO ticketArchiveDAO = new TicketArchiveDAO();
+        ticketArchiveDAO.dataBaseConfig = dataBaseConfig;
+        ticketArchiveDAO.queryTimeoutSeconds = DataBaseSettings.getInt(config, "db.queryTimeout.archive", TicketArchiveDAO.DEFAULT_QUERY_TIMEOUT_SECONDS);
+        OutboxRelay outboxRelay = createOutboxRelay(config, dataBaseConfig, parkingSpotDAO, ticketDAO);
+
+        DemandStatistics demandStatistics = null;
+        if(Boolean.parseBoolean(config.getProperty("pricing.demand.enabled", "false"))){
+            demandStatistics = new DemandStatistics(
+                    Double.parseDouble(config.getProperty("pricing.demand.sensitivity", String.valueOf(DemandStatistics.DEFAULT_SENSITIVITY))),
+                    Double.parseDouble(config.getProperty("pricing.demand.minMultiplier", String.valueOf(DemandStatistics.DEFAULT_MIN_MULTIPLIER))),
+                    Double.parseDouble(config.getProperty("pricing.demand.maxMultiplier", String.valueOf(DemandStatistics.DEFAULT_MAX_MULTIPLIER))),
+                    TimeUnit.DAYS.toMillis(DataBaseSettings.getInt(config, "pricing.demand.halfLifeDays", 28)),
+                    DataBaseSettings.getInt(config, "pricing.demand.minSamples", DemandStatistics.DEFAULT_MIN_SAMPLES),
+                    ZoneId.systemDefault());
+        }
+        StateSnapshot stateSnapshot = null;
+        if(config.getProperty("snapshot.file") != null){
+            stateSnapshot = new StateSnapshot(Paths.get(config.getProperty("snapshot.file")), ticketDAO,
+                    TimeUnit.HOURS.toMillis(DataBaseSettings.getInt(config, "snapshot.maxAgeHours", (int) TimeUnit.MILLISECONDS.toHours(StateSnapshot.DEFAULT_MAX_AGE_MILLIS))),
+                    Clock.systemDefaultZone());
+        }
+        AccessListDAO accessListDAO = new AccessListDAO();
+        accessListDAO.dataBaseConfig = dataBaseConfig;
+        AccessListService accessListService = new AccessListService(accessListDAO,
+                DataBaseSettings.getInt(config, "access.pageSize", AccessListService.DEFAULT_PAGE_SIZE),
+                Double.parseDouble(config.getProperty("access.falsePositiveRate", String.valueOf(AccessList.DEFAULT_FALSE_POSITIVE_RATE))),
+                Clock.systemDefaultZone());
+        StartupService startupService = new StartupService(dataBaseConfig, parkingSpotDAO, ticketDAO);
+        startupService.setDemandStatistics(demandStatistics);
+        startupService.setStateSnapshot(stateSnapshot);
+        startupService.setAccessListService(accessListService);
+
+        LeasedRangeStrategy leasedRangeStrategy = null;
+        ParkingLotState parkingLotState = startupService.warmUp();
+        if(!parkingLotState.getParkingSpots().isEmpty()){
+            //without the spot list the DAO keeps allocating with the SQL query
+            String strategyName = config.getProperty("spot.strategy", "lowest");
+            SpotAssignmentStrategy spotAssignmentStrategy = "leased".equals(strategyName)
+                    ? createLeasedRangeStrategy(config, dataBaseConfig, gateTimeout) : SpotAssignmentStrategy.forName(strategyName);
+            spotAssignmentStrategy.load(parkingLotState.getParkingSpots());
+            parkingSpotDAO.setSpotAssignmentStrategy(spotAssignmentStrategy);
+            if(spotAssignmentStrategy instanceof LeasedRangeStrategy){
+                leasedRangeStrategy = (LeasedRangeStrategy) spotAssignmentStrategy;
+                leasedRangeStrategy.start();
+            }
+        }
+        OverstayMonitor overstayMonitor = new OverstayMonitor(OverstayMonitor.DEFAULT_TICK_MILLIS,
+                TimeUnit.HOURS.toMillis(DataBaseSettings.getInt(config, "overstay.hours", (int) TimeUnit.MILLISECONDS.toHours(OverstayMonitor.DEFAULT_OVERSTAY_MILLIS))),
+                TimeUnit.HOURS.toMillis(DataBaseSettings.getInt(config, "overstay.maxStayHours", (int) TimeUnit.MILLISECONDS.toHours(OverstayMonitor.DEFAULT_MAX_STAY_MILLIS))),
+                TimeUnit.HOURS.toMillis(DataBaseSettings.getInt(config, "overstay.abandonedHours", (int) TimeUnit.MILLISECONDS.toHours(OverstayMonitor.DEFAULT_ABANDONED_MILLIS))),
+                Clock.systemDefaultZone());
+        overstayMonitor.load(parkingLotState.getOpenTickets());
+        ticketDAO.setOverstayMonitor(overstayMonitor);
+        //other nodes close tickets this one watches
+        overstayMonitor.setTicketDAO(ticketDAO);
+        overstayMonitor.start();
         ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        parkingService.setParkingLotState(parkingLotState);
+        parkingService.setLeasedRangeStrategy(leasedRangeStrategy);
+        DeferredWriteQueue deferredWriteQueue = new DeferredWriteQueue(dataBaseConfig, parkingSpotDAO, ticketDAO,
+                DataBaseSettings.getInt(config, "deferred.capacity", DeferredWriteQueue.DEFAULT_CAPACITY));
+        parkingService.setDeferredWriteQueue(deferredWriteQueue);
+        if(stateSnapshot != null){
+            stateSnapshot.setDeferredWriteQueue(deferredWriteQueue);
+        }
+        ReservationDAO reservationDAO = new ReservationDAO();
+        reservationDAO.dataBaseConfig = dataBaseConfig;
+        reservationDAO.queryTimeoutSeconds = gateTimeout;
+        ReservationService reservationService = new ReservationService(reservationDAO,
+                TimeUnit.MINUTES.toMillis(DataBaseSettings.getInt(config, "reservation.walkInHorizonMinutes", 120)), Clock.systemDefaultZone());
+        reservationService.load(parkingLotState.getParkingSpots());
+        parkingService.setReservationService(reservationService);
+        reservationService.start(DataBaseSettings.getInt(config, "reservation.pruneMinutes", (int) ReservationService.DEFAULT_PRUNE_MINUTES));
+        AdmissionQueue admissionQueue = new AdmissionQueue(
+                DataBaseSettings.getInt(config, "admission.capacity", AdmissionQueue.DEFAULT_CAPACITY),
+                TimeUnit.SECONDS.toMillis(DataBaseSettings.getInt(config, "admission.timeoutSeconds", (int) TimeUnit.MILLISECONDS.toSeconds(AdmissionQueue.DEFAULT_TIMEOUT_MILLIS))),
+                Clock.systemDefaultZone());
+        parkingService.setAdmissionQueue(admissionQueue);
+        parkingService.setAccessListService(accessListService);
+        accessListService.start(DataBaseSettings.getInt(config, "access.refreshSeconds", (int) AccessListService.DEFAULT_REFRESH_SECONDS));
+        if(demandStatistics != null){
+            parkingService.setDemandStatistics(demandStatistics);
+        }
+        deferredWriteQueue.start(DataBaseSettings.getInt(config, "deferred.flushMillis", (int) DeferredWriteQueue.DEFAULT_FLUSH_MILLIS));
+        if(outboxRelay != null){
+            outboxRelay.start(DataBaseSettings.getInt(config, "outbox.pollMillis", (int) OutboxRelay.DEFAULT_POLL_MILLIS));
+        }
+        TicketArchiveService ticketArchiveService = new TicketArchiveService(ticketArchiveDAO);
+        ticketArchiveService.start(TicketArchiveService.DEFAULT_PERIOD_MINUTES);
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO,
+                SpotReconciler.DEFAULT_MIN_CHUNK_SIZE,
+                DataBaseSettings.getInt(config, "reconciler.maxChunkSize", SpotReconciler.DEFAULT_MAX_CHUNK_SIZE),
+                DataBaseSettings.getInt(config, "reconciler.targetLatencyMillis", (int) SpotReconciler.DEFAULT_TARGET_LATENCY_MILLIS),
+                SpotReconciler.DEFAULT_MIN_PAUSE_MILLIS, SpotReconciler.DEFAULT_MAX_PAUSE_MILLIS,
+                TimeUnit.SECONDS.toMillis(DataBaseSettings.getInt(config, "reconciler.graceSeconds", (int) TimeUnit.MILLISECONDS.toSeconds(SpotReconciler.DEFAULT_GRACE_MILLIS))),
+                Clock.systemDefaultZone());
+        spotReconciler.setParkingLotState(parkingLotState);
+        spotReconciler.setDeferredWriteQueue(deferredWriteQueue);
+        spotReconciler.setParkingLocks(parkingService.getParkingLocks());
+        spotReconciler.start(DataBaseSettings.getInt(config, "reconciler.periodSeconds", (int) SpotReconciler.DEFAULT_PERIOD_SECONDS));
+        if(stateSnapshot != null){
+            stateSnapshot.start(DataBaseSettings.getInt(config, "snapshot.periodSeconds", (int) StateSnapshot.DEFAULT_PERIOD_SECONDS), parkingLotState, demandStatistics);
+        }
+        AnprPipeline anprPipeline = startAnprFeed(config, parkingService);
 
         while(continueApp){
             loadMenu();
@@ -34,6 +177,41 @@ public class InteractiveShell {
                 }
                 case 3: {
                     System.out.println("Exiting from the system!");
+                    ticketArchiveService.stop();
+                    reservationService.stop();
+                    spotReconciler.stop();
+                    accessListService.stop();
+                    overstayMonitor.stop();
+                    logger.info("Overstays: "+overstayMonitor.getMetrics());
+                    logger.info("Access lists: "+accessListService.getMetrics());
+                    if(anprPipeline != null){
+                        anprPipeline.stop();
+                    }
+                    parkingService.getParkingLocks().logContention();
+                    admissionQueue.clear();
+                    logger.info("Admission queue: "+admissionQueue.getMetrics());
+                    if(leasedRangeStrategy != null){
+                        leasedRangeStrategy.stop();
+                    }
+                    deferredWriteQueue.stop();
+                    deferredWriteQueue.flush();
+                    if(deferredWriteQueue.getDeadLettered() > 0){
+                        logger.error(deferredWriteQueue.getDeadLettered()+" deferred writes were refused by the database, see the errors logged on replay");
+                    }
+                    if(deferredWriteQueue.size() > 0){
+                        logger.error(deferredWriteQueue.size()+" deferred writes could not be saved");
+                    }else if(stateSnapshot != null){
+                        //queued writes would be missing from the replay, the next start reads the database then
+                        stateSnapshot.stop();
+                        stateSnapshot.write(parkingLotState, demandStatistics);
+                    }
+                    if(outboxRelay != null){
+                        outboxRelay.stop();
+                        //the events of the last flushed writes
+                        outboxRelay.relay();
+                        logger.info("Outbox: "+outboxRelay.getMetrics());
+                    }
+                    dataBaseConfig.shutdown();
                     continueApp = false;
                     break;
                 }
@@ -42,6 +220,89 @@ public class InteractiveShell {
         }
     }
 
+    /**
+    *make the gate DAOs write their changes to the outbox and build the relay streaming it
+    *
+    *@Return the relay, to start once the app is loaded, or null if the outbox is disabled
+    */
+    private static OutboxRelay createOutboxRelay(Properties config, DataBaseConfig dataBaseConfig, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        if(!Boolean.parseBoolean(config.getProperty("outbox.enabled", "false"))){
+            return null;
+        }
+        TicketEventDAO ticketEventDAO = new TicketEventDAO();
+        ticketEventDAO.dataBaseConfig = dataBaseConfig;
+        parkingSpotDAO.setTicketEventDAO(ticketEventDAO);
+        ticketDAO.setTicketEventDAO(ticketEventDAO);
+        List<TicketEventSink> sinks = new ArrayList<>();
+        if(config.getProperty("outbox.file") != null){
+            sinks.add(new FileTicketEventSink(Paths.get(config.getProperty("outbox.file"))));
+        }
+        InProcessTicketEventSink inProcessSink = new InProcessTicketEventSink();
+        inProcessSink.subscribe(event -> logger.debug("Ticket event "+event.getId()+" "+event.getType()+" on spot "+event.getParkingNumber()));
+        sinks.add(inProcessSink);
+        return new OutboxRelay(ticketEventDAO, OutboxRelay.DEFAULT_NAME, sinks,
+                DataBaseSettings.getInt(config, "outbox.batchSize", OutboxRelay.DEFAULT_BATCH_SIZE),
+                OutboxRelay.DEFAULT_GAP_TIMEOUT_MILLIS,
+                TimeUnit.HOURS.toMillis(DataBaseSettings.getInt(config, "outbox.retentionHours", (int) TimeUnit.MILLISECONDS.toHours(OutboxRelay.DEFAULT_RETENTION_MILLIS))),
+                Clock.systemDefaultZone());
+    }
+
+    /**
+    *build the allocation shared with the other gate controllers through leases on spot ranges
+    *
+    *@Return the strategy, to load with the spots of the lot
+    */
+    private static LeasedRangeStrategy createLeasedRangeStrategy(Properties config, DataBaseConfig dataBaseConfig, int gateTimeout){
+        SpotLeaseDAO spotLeaseDAO = new SpotLeaseDAO();
+        spotLeaseDAO.dataBaseConfig = dataBaseConfig;
+        spotLeaseDAO.queryTimeoutSeconds = gateTimeout;
+        String nodeId = config.getProperty("spot.lease.nodeId");
+        if(nodeId == null){
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "localhost";
+            }
+            nodeId = host+"-"+ProcessHandle.current().pid();
+        }
+        logger.info("Allocating from leased spot ranges as node "+nodeId);
+        return new LeasedRangeStrategy(spotLeaseDAO, nodeId,
+                DataBaseSettings.getInt(config, "spot.lease.rangeSize", LeasedRangeStrategy.DEFAULT_RANGE_SIZE),
+                TimeUnit.SECONDS.toMillis(DataBaseSettings.getInt(config, "spot.lease.seconds", (int) TimeUnit.MILLISECONDS.toSeconds(LeasedRangeStrategy.DEFAULT_LEASE_MILLIS))),
+                Clock.systemUTC());
+    }
+
+    /**
+    *replay the plate reads of anpr.file through the ANPR pipeline in the background, if the key is set
+    *
+    *@Return the running pipeline, or null
+    */
+    private static AnprPipeline startAnprFeed(Properties config, ParkingService parkingService){
+        String file = config.getProperty("anpr.file");
+        if(file == null){
+            return null;
+        }
+        int batchSize = DataBaseSettings.getInt(config, "anpr.batchSize", AnprPipeline.DEFAULT_BATCH_SIZE);
+        AnprPipeline anprPipeline = new AnprPipeline(parkingService,
+                new PlateReadDeduplicator(DataBaseSettings.getInt(config, "anpr.dedupWindowMillis", (int) PlateReadDeduplicator.DEFAULT_WINDOW_MILLIS),
+                        Double.parseDouble(config.getProperty("anpr.minConfidence", String.valueOf(PlateReadDeduplicator.DEFAULT_MIN_CONFIDENCE)))),
+                DataBaseSettings.getInt(config, "anpr.capacity", AnprPipeline.DEFAULT_CAPACITY), batchSize);
+        anprPipeline.start();
+        Thread source = new Thread(() -> {
+            try {
+                new FilePlateReadSource(Paths.get(file), batchSize).replay(anprPipeline);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Unable to replay plate reads from "+file,e);
+            }
+        }, "anpr-file-source");
+        source.setDaemon(true);
+        source.start();
+        return anprPipeline;
+    }
+
     private static void loadMenu(){
         System.out.println("Please select an option. Simply enter the number to choose an action");
         System.out.println("1 New Vehicle Entering - Allocate Parking Space");
@@ -0,0 +1,92 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.util.InstrumentedLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Lock stripes used by {@link ParkingService} once it is called by several gates at once.
+ *
+ * Choosing and claiming a spot is guarded by one allocation stripe per {@link ParkingType}, kept in an
+ * array indexed by the type id, so two entries never get the same spot while CAR and BIKE entries
+ * never wait on each other. Occupying or
+ * releasing a spot is guarded by the stripe of its spot range, so exits only contend with operations
+ * on nearby spots. Locks are always taken in that order: allocation, then spot range.
+ */
+public class ParkingLocks {
+
+    private static final Logger logger = LogManager.getLogger("ParkingLocks");
+
+    public static final int DEFAULT_RANGE_SIZE = 50;
+
+    private final int rangeSize;
+    private final AtomicReferenceArray<InstrumentedLock> allocationLocks = new AtomicReferenceArray<>(ParkingType.MAX_ID + 1);
+    private final Map<String, InstrumentedLock> rangeLocks = new ConcurrentHashMap<>();
+
+    public ParkingLocks(){
+        this(DEFAULT_RANGE_SIZE);
+    }
+
+    public ParkingLocks(int rangeSize){
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+    *choose and claim a spot of a type while no other entry of that type can
+    */
+    public <T> T allocate(ParkingType parkingType, Supplier<T> allocation){
+        return allocationLock(parkingType).call(allocation);
+    }
+
+    /**
+    *occupy or release a spot while no other thread changes a spot of the same range
+    */
+    public <T> T updateSpot(ParkingType parkingType, int parkingNumber, Supplier<T> update){
+        return rangeLock(parkingType, parkingNumber).call(update);
+    }
+
+    public InstrumentedLock allocationLock(ParkingType parkingType){
+        InstrumentedLock lock = allocationLocks.get(parkingType.getId());
+        if(lock == null){
+            allocationLocks.compareAndSet(parkingType.getId(), null, new InstrumentedLock("allocation-"+parkingType));
+            lock = allocationLocks.get(parkingType.getId());
+        }
+        return lock;
+    }
+
+    public InstrumentedLock rangeLock(ParkingType parkingType, int parkingNumber){
+        int range = Math.max(0, parkingNumber - 1) / rangeSize;
+        String name = "spots-"+parkingType+"-"+(range * rangeSize + 1)+"-"+((range + 1) * rangeSize);
+        return rangeLocks.computeIfAbsent(name, InstrumentedLock::new);
+    }
+
+    /**
+    *every stripe created so far, most contended first
+    */
+    public List<InstrumentedLock> getStripes(){
+        List<InstrumentedLock> stripes = new ArrayList<>();
+        for(int id = 0; id < allocationLocks.length(); id++){
+            if(allocationLocks.get(id) != null){
+                stripes.add(allocationLocks.get(id));
+            }
+        }
+        stripes.addAll(rangeLocks.values());
+        stripes.sort(Comparator.comparingLong(InstrumentedLock::getWaitNanos).reversed());
+        return stripes;
+    }
+
+    public void logContention(){
+        for(InstrumentedLock stripe : getStripes()){
+            logger.info(stripe);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Predicate;
+
+/**
+ * In-memory view of spot occupancy and open tickets, loaded at startup and kept up to date by
+ * {@link ParkingService} as vehicles enter and exit. The number of free spots of each type is kept in
+ * an array indexed by the type id, so reading it does not walk the spots.
+ */
+public class ParkingLotState {
+
+    private final Map<Integer, ParkingSpot> parkingSpots = new ConcurrentHashMap<>();
+    private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+    private volatile AtomicIntegerArray availableByType = new AtomicIntegerArray(ParkingType.getIdBound());
+
+    public synchronized void load(List<ParkingSpot> parkingSpots, List<Ticket> openTickets){
+        this.parkingSpots.clear();
+        this.openTickets.clear();
+        availableByType = new AtomicIntegerArray(ParkingType.getIdBound());
+        for(ParkingSpot parkingSpot : parkingSpots){
+            this.parkingSpots.put(parkingSpot.getId(), parkingSpot);
+            if(parkingSpot.isAvailable()){
+                countAvailable(parkingSpot.getParkingType(), 1);
+            }
+        }
+        for(Ticket ticket : openTickets){
+            this.openTickets.put(ticket.getVehicleRegNumber(), ticket);
+        }
+    }
+
+    public void vehicleParked(Ticket ticket){
+        setAvailable(ticket.getParkingSpot(), false);
+        openTickets.put(ticket.getVehicleRegNumber(), ticket);
+    }
+
+    public void vehicleExited(Ticket ticket){
+        setAvailable(ticket.getParkingSpot(), true);
+        openTickets.remove(ticket.getVehicleRegNumber());
+    }
+
+    /**
+    *take in a spot whose availability was corrected in the database outside of a gate operation
+    *
+    *@Param ParkingSpot spot with its corrected availability
+    */
+    public void spotRepaired(ParkingSpot parkingSpot){
+        setAvailable(parkingSpot, parkingSpot.isAvailable());
+    }
+
+    public int getAvailableSpots(ParkingType parkingType){
+        AtomicIntegerArray available = availableByType;
+        return parkingType.getId() < available.length() ? available.get(parkingType.getId()) : 0;
+    }
+
+    /**
+    *take the lowest numbered free spot of a type without asking the database, used in degraded mode
+    *
+    *@Param ParkingType type of the vehicle
+    *@Return the spot, now marked occupied, or null if the type is full
+    */
+    public ParkingSpot occupyNextAvailableSpot(ParkingType parkingType){
+        return occupyNextAvailableSpot(parkingType, parkingSpot -> true);
+    }
+
+    /**
+    *take the lowest numbered free spot of a type among those this node may allocate
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param Predicate spots the caller may take, e.g. those of its leased ranges
+    *@Return the spot, now marked occupied, or null if none of them is free
+    */
+    public synchronized ParkingSpot occupyNextAvailableSpot(ParkingType parkingType, Predicate<ParkingSpot> allowed){
+        ParkingSpot next = findNextAvailableSpot(parkingType, allowed);
+        if(next != null){
+            setAvailable(next, false);
+            next.setAvailable(false);
+        }
+        return next;
+    }
+
+    /**
+    *find the lowest numbered free spot of a type without taking it
+    *
+    *@Param ParkingType type of the vehicle
+    *@Return a copy of the spot, or null if the type is full
+    */
+    public ParkingSpot findNextAvailableSpot(ParkingType parkingType){
+        return findNextAvailableSpot(parkingType, parkingSpot -> true);
+    }
+
+    /**
+    *find the lowest numbered free spot of a type among those the caller may allocate, without taking it
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param Predicate spots the caller may take
+    *@Return a copy of the spot, or null if none of them is free
+    */
+    public ParkingSpot findNextAvailableSpot(ParkingType parkingType, Predicate<ParkingSpot> allowed){
+        if(getAvailableSpots(parkingType) == 0){
+            return null;
+        }
+        ParkingSpot next = null;
+        for(ParkingSpot parkingSpot : parkingSpots.values()){
+            if(parkingSpot.getParkingType() == parkingType && parkingSpot.isAvailable()
+                    && (next == null || parkingSpot.getId() < next.getId()) && allowed.test(parkingSpot)){
+                next = parkingSpot;
+            }
+        }
+        return next == null ? null : new ParkingSpot(next.getId(), parkingType, true);
+    }
+
+    public ParkingSpot getParkingSpot(int parkingNumber){
+        return parkingSpots.get(parkingNumber);
+    }
+
+    public Collection<ParkingSpot> getParkingSpots(){
+        return Collections.unmodifiableCollection(parkingSpots.values());
+    }
+
+    public Ticket getOpenTicket(String vehicleRegNumber){
+        return openTickets.get(vehicleRegNumber);
+    }
+
+    public Collection<Ticket> getOpenTickets(){
+        return Collections.unmodifiableCollection(openTickets.values());
+    }
+
+    private synchronized void setAvailable(ParkingSpot parkingSpot, boolean available){
+        ParkingSpot known = parkingSpots.get(parkingSpot.getId());
+        if(known == null){
+            known = new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), available);
+            parkingSpots.put(known.getId(), known);
+            if(available){
+                countAvailable(known.getParkingType(), 1);
+            }
+        }else if(known.isAvailable() != available){
+            known.setAvailable(available);
+            countAvailable(known.getParkingType(), available ? 1 : -1);
+        }
+    }
+
+    private void countAvailable(ParkingType parkingType, int delta){
+        AtomicIntegerArray available = availableByType;
+        if(parkingType.getId() >= available.length()){
+            //a type registered after the last load, grow the array to the current catalogue
+            AtomicIntegerArray grown = new AtomicIntegerArray(ParkingType.getIdBound());
+            for(int i = 0; i < available.length(); i++){
+                grown.set(i, available.get(i));
+            }
+            availableByType = grown;
+            available = grown;
+        }
+        available.addAndGet(parkingType.getId(), delta);
+    }
+}
@@ -1,15 +1,21 @@
 package com.parkit.parkingsystem.service;
 
+import com.parkit.parkingsystem.assignment.LeasedRangeStrategy;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.monitoring.GateEvent;
+import com.parkit.parkingsystem.util.IdempotencyCache;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.time.Clock;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
@@ -17,16 +23,115 @@ public class ParkingService {
 
     private static final Logger logger = LogManager.getLogger("ParkingService");
 
-    private static FareCalculatorService fareCalculatorService = new FareCalculatorService();
+    public static final int DEFAULT_REQUEST_KEY_CAPACITY = 10000;
+    public static final long DEFAULT_REQUEST_KEY_TTL_MILLIS = 10 * 60 * 1000;
+    public static final long DEFAULT_QUOTE_DISCOUNT_TTL_MILLIS = 10 * 60 * 1000;
+    //spots picked in a row for one entry while other nodes take them first
+    static final int MAX_ALLOCATION_ATTEMPTS = 3;
+    //returned by parkVehicle when the spot was occupied in the meantime, never handed out
+    private static final Ticket SPOT_LOST = new Ticket();
+
+    private FareCalculatorService fareCalculatorService = new FareCalculatorService();
 
     private InputReaderUtil inputReaderUtil;
     private ParkingSpotDAO parkingSpotDAO;
     private  TicketDAO ticketDAO;
+    private Clock clock;
+    private ParkingLotState parkingLotState;
+    private DeferredWriteQueue deferredWriteQueue;
+    private ReservationService reservationService;
+    private DemandStatistics demandStatistics;
+    private AdmissionQueue admissionQueue;
+    private AccessListService accessListService;
+    private LeasedRangeStrategy leasedRangeStrategy;
+    private final IdempotencyCache<Ticket> entryRequests;
+    private final IdempotencyCache<Ticket> exitRequests;
+    //loyalty discount of each stay quoted, it cannot change while the ticket is open
+    private final IdempotencyCache<Boolean> quoteDiscounts;
+    private final ParkingLocks parkingLocks = new ParkingLocks();
 
     public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(inputReaderUtil, parkingSpotDAO, ticketDAO, Clock.systemDefaultZone());
+    }
+
+    public ParkingService(InputReaderUtil inputReaderUtil, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, Clock clock){
         this.inputReaderUtil = inputReaderUtil;
         this.parkingSpotDAO = parkingSpotDAO;
         this.ticketDAO = ticketDAO;
+        this.clock = clock;
+        this.entryRequests = new IdempotencyCache<>(DEFAULT_REQUEST_KEY_CAPACITY, DEFAULT_REQUEST_KEY_TTL_MILLIS, clock);
+        this.exitRequests = new IdempotencyCache<>(DEFAULT_REQUEST_KEY_CAPACITY, DEFAULT_REQUEST_KEY_TTL_MILLIS, clock);
+        this.quoteDiscounts = new IdempotencyCache<>(DEFAULT_REQUEST_KEY_CAPACITY, DEFAULT_QUOTE_DISCOUNT_TTL_MILLIS, clock);
+    }
+
+    /**
+    *lock stripes guarding spot allocation and release, with their contention metrics
+    */
+    public ParkingLocks getParkingLocks(){
+        return parkingLocks;
+    }
+
+    public void setParkingLotState(ParkingLotState parkingLotState){
+        this.parkingLotState = parkingLotState;
+    }
+
+    /**
+    *enable the degraded mode: while the database is failing, entries and exits are checked against
+    *the parking lot state and their writes are queued instead of blocking the gate
+    *
+    *@Param DeferredWriteQueue queue replaying the writes once the database is back, needs a parking lot state too
+    */
+    public void setDeferredWriteQueue(DeferredWriteQueue deferredWriteQueue){
+        this.deferredWriteQueue = deferredWriteQueue;
+    }
+
+    /**
+    *make walk-in allocation keep away from reserved spots and give arriving vehicles their reserved spot
+    *
+    *@Param ReservationService reservations loaded with the spots of the lot, null to ignore reservations
+    */
+    public void setReservationService(ReservationService reservationService){
+        this.reservationService = reservationService;
+    }
+
+    /**
+    *price exits with the demand multipliers and feed every closed ticket back to the statistics
+    *
+    *@Param DemandStatistics statistics already seeded from the history, null for fixed rates
+    */
+    public void setDemandStatistics(DemandStatistics demandStatistics){
+        this.demandStatistics = demandStatistics;
+        fareCalculatorService.setDemandStatistics(demandStatistics);
+    }
+
+    /**
+    *let vehicles arriving at a full lot wait for a spot with enterVehicleOrWait, exits hand their spot
+    *to the vehicle waiting the longest for that type
+    *
+    *@Param AdmissionQueue queue of the waiting vehicles, null to turn them away
+    */
+    public void setAdmissionQueue(AdmissionQueue admissionQueue){
+        this.admissionQueue = admissionQueue;
+    }
+
+    /**
+    *keep the fallback allocations, from the database or the in-memory state, inside the ranges this node leased
+    *
+    *@Param LeasedRangeStrategy strategy also set on the ParkingSpotDAO, null when the lot is not shared
+    */
+    public void setLeasedRangeStrategy(LeasedRangeStrategy leasedRangeStrategy){
+        this.leasedRangeStrategy = leasedRangeStrategy;
+    }
+
+    /**
+    *turn blocked vehicles away at the entry and let season pass holders out for free, both checked in
+    *memory without any query
+    *
+    *@Param AccessListService access lists already loaded, null to let every vehicle in at the full rate
+    */
+    public void setAccessListService(AccessListService accessListService){
+        this.accessListService = accessListService;
+        fareCalculatorService.setAccessListService(accessListService);
     }
 
     public void processIncomingVehicle() {
@@ -34,33 +139,262 @@ public class ParkingService {
             ParkingSpot parkingSpot = getNextParkingNumberIfAvailable();
             if(parkingSpot !=null && parkingSpot.getId() > 0){
                 String vehicleRegNumber = getVehichleRegNumber();
-                while(ticketDAO.isAlreadyInParking(vehicleRegNumber)){
+                if(isBlocked(vehicleRegNumber)){
+                    System.out.println("This vehicle is not allowed in the parking");
+                    return;
+                }
+                while(isAlreadyInParking(vehicleRegNumber)){
                     System.out.println("Le véhicule est déjà dans le parking");
                     return;
                 };
-                parkingSpot.setAvailable(false);
-                parkingSpotDAO.updateParking(parkingSpot);//allot this parking space and mark it's availability as false
-
-                Date inTime = new Date();
-                Ticket ticket = new Ticket();
-                ticket.setParkingSpot(parkingSpot);
-                ticket.setVehicleRegNumber(vehicleRegNumber);
-                ticket.setPrice(0);
-                ticket.setInTime(inTime);
-                ticket.setOutTime(null);
-                ticketDAO.saveTicket(ticket);
-                if (isEligibleDiscount(vehicleRegNumber)){
-                    System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5%");
+                Ticket ticket = null;
+                ParkingType parkingType = parkingSpot.getParkingType();
+                GateEvent event = GateEvent.start(GateEvent.ENTRY, vehicleRegNumber, parkingType);
+                try {
+                    //the spot above only told the lot was not full, the gates may have taken it while the plate was typed
+                    ticket = parkingLocks.allocate(parkingType, () -> admitVehicle(null, parkingType, vehicleRegNumber));
+                } finally {
+                    event.finish(ticket, isDegraded());
                 }
-                System.out.println("Generated Ticket and saved in DB");
-                System.out.println("Please park your vehicle in spot number:"+parkingSpot.getId());
-                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+inTime);
+                if(ticket == null){
+                    System.out.println("Unable to record the entry. Please try again later");
+                    return;
+                }
+                if(isDegraded()){
+                    System.out.println("Generated Ticket, it will be saved in DB as soon as the database is back");
+                }else if(hasSeasonPass(vehicleRegNumber)){
+                    System.out.println("Season pass recognized, parking is free");
+                }else{
+                    if (isEligibleDiscount(vehicleRegNumber)){
+                        System.out.println("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5%");
+                    }
+                    System.out.println("Generated Ticket and saved in DB");
+                }
+                System.out.println("Please park your vehicle in spot number:"+ticket.getParkingSpot().getId());
+                System.out.println("Recorded in-time for vehicle number:"+vehicleRegNumber+" is:"+ticket.getInTime());
             }
         }catch(Exception e){
             logger.error("Unable to process incoming vehicle",e);
         }
     }
 
+    /**
+    *park a vehicle without going through the console, used by gate automation and the traffic simulator
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param String vehicle identification
+    *@Return the saved ticket, or null if no spot is available or the vehicle is already parked
+    */
+    public Ticket enterVehicle(ParkingType parkingType, String vehicleRegNumber){
+        return enterVehicle(null, parkingType, vehicleRegNumber);
+    }
+
+    /**
+    *park a vehicle at most once per request key: a gate retrying a request it got no answer for
+    *gets the ticket of the first attempt back, from memory while the key is recent, else from the DB
+    *
+    *@Param String idempotency key chosen by the gate for this entry, null for none
+    *@Param ParkingType type of the vehicle
+    *@Param String vehicle identification
+    *@Return the saved ticket, or null if no spot is available, the vehicle is already parked or blocked
+    */
+    public Ticket enterVehicle(String requestKey, ParkingType parkingType, String vehicleRegNumber){
+        GateEvent event = GateEvent.start(GateEvent.ENTRY, vehicleRegNumber, parkingType);
+        Ticket ticket = null;
+        try {
+            if(!isAdmissible(vehicleRegNumber)){
+                return null;
+            }
+            ticket = entryRequests.execute(requestKey,
+                    () -> parkingLocks.allocate(parkingType, () -> admitVehicle(requestKey, parkingType, vehicleRegNumber)));
+            return ticket;
+        } finally {
+            event.finish(ticket, isDegraded());
+        }
+    }
+
+    /**
+    *park a vehicle, or queue it until an exit releases a spot of its type if the lot is full
+    *
+    *@Param String idempotency key chosen by the gate for this entry, null for none
+    *@Param ParkingType type of the vehicle
+    *@Param String vehicle identification
+    *@Return completed with the saved ticket, at once when a spot is free, or with null if the vehicle is
+    *already parked or blocked, or its wait timed out
+    */
+    public CompletableFuture<Ticket> enterVehicleOrWait(String requestKey, ParkingType parkingType, String vehicleRegNumber){
+        if(admissionQueue == null || !isAdmissible(vehicleRegNumber)){
+            return CompletableFuture.completedFuture(enterVehicle(requestKey, parkingType, vehicleRegNumber));
+        }
+        GateEvent event = GateEvent.start(GateEvent.ENTRY, vehicleRegNumber, parkingType);
+        CompletableFuture<Ticket> ticket = null;
+        try {
+            //queued under the allocation lock, so no exit can release a spot between the full lot and the enqueue
+            ticket = parkingLocks.allocate(parkingType, () -> {
+                Ticket admitted = admitVehicle(requestKey, parkingType, vehicleRegNumber);
+                if(admitted != null || isAlreadyInParking(vehicleRegNumber)){
+                    return CompletableFuture.completedFuture(admitted);
+                }
+                return admissionQueue.enqueue(parkingType, vehicleRegNumber, requestKey);
+            });
+            return ticket;
+        } finally {
+            event.finish(ticket == null ? null : ticket.getNow(null), isDegraded());
+        }
+    }
+
+    private Ticket admitVehicle(String requestKey, ParkingType parkingType, String vehicleRegNumber){
+        if(isDegraded()){
+            return admitVehicleFromState(requestKey, parkingType, vehicleRegNumber);
+        }
+        if(reservationService != null){
+            Ticket ticket = admitReservedVehicle(requestKey, parkingType, vehicleRegNumber);
+            if(ticket != null){
+                return ticket;
+            }
+        }
+        for(int attempt = 0; attempt < MAX_ALLOCATION_ATTEMPTS; attempt++){
+            int parkingNumber = getNextWalkInSlot(parkingType);
+            if(parkingNumber < 0 && canDegrade()){
+                //the query failed, the in-memory state still knows the free spots
+                return admitVehicleFromState(requestKey, parkingType, vehicleRegNumber);
+            }
+            if(parkingNumber <= 0 || ticketDAO.isAlreadyInParking(vehicleRegNumber)){
+                //a retry after the cache forgot the key finds the vehicle parked, or the lot filled by it
+                return requestKey == null ? null : ticketDAO.getTicketByRequestKey(requestKey);
+            }
+            Ticket ticket = parkVehicle(new ParkingSpot(parkingNumber, parkingType, true), vehicleRegNumber, requestKey);
+            if(ticket != SPOT_LOST){
+                return ticket;
+            }
+        }
+        logger.error("No free spot could be taken for "+vehicleRegNumber+" in "+MAX_ALLOCATION_ATTEMPTS+" attempts");
+        return null;
+    }
+
+    private Ticket admitVehicleFromState(String requestKey, ParkingType parkingType, String vehicleRegNumber){
+        Ticket openTicket = parkingLotState.getOpenTicket(vehicleRegNumber);
+        if(openTicket != null){
+            return requestKey != null && requestKey.equals(openTicket.getRequestKey()) ? openTicket : null;
+        }
+        for(int attempt = 0; attempt < MAX_ALLOCATION_ATTEMPTS; attempt++){
+            ParkingSpot parkingSpot = parkingLotState.occupyNextAvailableSpot(parkingType, this::isAllocatable);
+            if(parkingSpot == null){
+                return null;
+            }
+            Ticket ticket = parkVehicle(parkingSpot, vehicleRegNumber, requestKey);
+            if(ticket != SPOT_LOST){
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    private Ticket newTicket(ParkingSpot parkingSpot, String vehicleRegNumber, String requestKey){
+        Date inTime = new Date(clock.millis());
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setPrice(0);
+        ticket.setInTime(inTime);
+        ticket.setOutTime(null);
+        ticket.setRequestKey(requestKey);
+        return ticket;
+    }
+
+    private Ticket parkVehicle(ParkingSpot parkingSpot, String vehicleRegNumber, String requestKey){
+        parkingSpot.setAvailable(false);
+        Ticket ticket = newTicket(parkingSpot, vehicleRegNumber, requestKey);
+
+        boolean persisted = false;
+        if(!isDegraded()){
+            int claimed = occupyParking(parkingSpot);//allot this parking space if it is still free
+            if(claimed == 0){
+                //another node parked there since the spot was picked
+                logger.info("Spot "+parkingSpot.getId()+" was taken in the meantime, picking another one for "+vehicleRegNumber);
+                if(parkingLotState != null){
+                    parkingLotState.spotRepaired(parkingSpot);
+                }
+                return SPOT_LOST;
+            }
+            boolean allotted = claimed > 0;
+            persisted = (allotted || !canDegrade()) && ticketDAO.saveTicket(ticket);
+            //read at once, the next query of this thread resets it
+            boolean transientFailure = !persisted && isTransientFailure();
+            if(!persisted && allotted && requestKey != null){
+                Ticket firstTicket = ticketDAO.getTicketByRequestKey(requestKey);
+                if(firstTicket != null){
+                    //an earlier attempt of this request already parked the vehicle, give back the spot taken twice
+                    parkingSpot.setAvailable(true);
+                    updateParking(parkingSpot);
+                    if(parkingLotState != null){
+                        parkingLotState.vehicleParked(firstTicket);
+                    }
+                    return firstTicket;
+                }
+            }
+            if(!persisted && canDegrade() && !transientFailure){
+                //refused rather than unreachable, a replay would be refused again and hold the queue forever
+                logger.error("Entry of "+vehicleRegNumber+" on spot "+parkingSpot.getId()+" refused by the database");
+                if(allotted){
+                    parkingSpot.setAvailable(true);
+                    updateParking(parkingSpot);
+                }
+                if(parkingLotState != null){
+                    parkingLotState.vehicleExited(ticket);
+                }
+                return null;
+            }
+        }
+        if(!persisted && canDegrade() && !deferredWriteQueue.deferEntry(ticket)){
+            parkingLotState.vehicleExited(ticket);
+            return null;
+        }
+        if(parkingLotState != null){
+            parkingLotState.vehicleParked(ticket);
+        }
+        return ticket;
+    }
+
+    private Ticket admitReservedVehicle(String requestKey, ParkingType parkingType, String vehicleRegNumber){
+        Reservation reservation = reservationService.getReservationForArrival(vehicleRegNumber);
+        if(reservation == null || reservation.getParkingSpot().getParkingType() != parkingType
+                || ticketDAO.isAlreadyInParking(vehicleRegNumber)){
+            return null;
+        }
+        int parkingNumber = reservation.getParkingSpot().getId();
+        if(!isAllocatable(reservation.getParkingSpot())){
+            logger.error("Reserved spot "+parkingNumber+" of "+vehicleRegNumber+" is leased by another node, parking it as a walk-in");
+            return null;
+        }
+        if(!parkingSpotDAO.getAvailableSlots(parkingType).contains(parkingNumber)){
+            logger.error("Reserved spot "+parkingNumber+" of "+vehicleRegNumber+" is still occupied, parking it as a walk-in");
+            return null;
+        }
+        Ticket ticket = parkVehicle(new ParkingSpot(parkingNumber, parkingType, true), vehicleRegNumber, requestKey);
+        return ticket == SPOT_LOST ? null : ticket;
+    }
+
+    /**
+    *find the spot for a vehicle without reservation, skipping the spots reserved soon
+    *
+    *@Param ParkingType type of the vehicle
+    *@Return the parking number, 0 if none is free, -1 if the query failed
+    */
+    private int getNextWalkInSlot(ParkingType parkingType){
+        int parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+        if(parkingNumber <= 0 || reservationService == null || reservationService.isFreeForWalkIn(parkingNumber)){
+            return parkingNumber;
+        }
+        //the lowest free spot is reserved, look further, within the ranges of this node
+        for(int candidate : parkingSpotDAO.getAvailableSlots(parkingType)){
+            if(reservationService.isFreeForWalkIn(candidate) && isAllocatable(new ParkingSpot(candidate, parkingType, true))){
+                return candidate;
+            }
+        }
+        return 0;
+    }
+
     private String getVehichleRegNumber() throws Exception {
         System.out.println("Please type the vehicle registration number and press enter key");
         return inputReaderUtil.readVehicleRegistrationNumber();
@@ -71,7 +405,11 @@ public class ParkingService {
         ParkingSpot parkingSpot = null;
         try{
             ParkingType parkingType = getVehichleType();
-            parkingNumber = parkingSpotDAO.getNextAvailableSlot(parkingType);
+            parkingNumber = isDegraded() ? -1 : getNextWalkInSlot(parkingType);
+            if(parkingNumber < 0 && canDegrade()){
+                ParkingSpot available = parkingLotState.findNextAvailableSpot(parkingType, this::isAllocatable);
+                parkingNumber = available == null ? 0 : available.getId();
+            }
             if(parkingNumber > 0){
                 parkingSpot = new ParkingSpot(parkingNumber,parkingType, true);
             }else{
@@ -87,44 +425,36 @@ public class ParkingService {
 
     private ParkingType getVehichleType(){
         System.out.println("Please select vehicle type from menu");
-        System.out.println("1 CAR");
-        System.out.println("2 BIKE");
+        for(ParkingType parkingType : ParkingType.values()){
+            System.out.println(parkingType.getId()+" "+parkingType);
+        }
         int input = inputReaderUtil.readSelection();
-        switch(input){
-            case 1: {
-                return ParkingType.CAR;
-            }
-            case 2: {
-                return ParkingType.BIKE;
-            }
-            default: {
-                System.out.println("Incorrect input provided");
-                throw new IllegalArgumentException("Entered input is invalid");
-            }
+        try {
+            return ParkingType.fromId(input);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Incorrect input provided");
+            throw new IllegalArgumentException("Entered input is invalid", e);
         }
     }
 
     public void processExitingVehicle() {
         try{
             String vehicleRegNumber = getVehichleRegNumber();
-            while(!ticketDAO.isAlreadyInParking(vehicleRegNumber)){
+            while(!isAlreadyInParking(vehicleRegNumber)){
                 System.out.println("Ce véhicule n'est pas dans le parking");
                 return;
                 };
-            Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
-            Date outTime = new Date();
-            ticket.setOutTime(outTime);
-            if (isEligibleDiscount(vehicleRegNumber)){
-                fareCalculatorService.calculateFare(ticket, true);
-            } else {
-                fareCalculatorService.calculateFare(ticket);
-            }
-            if(ticketDAO.updateTicket(ticket)) {
-                ParkingSpot parkingSpot = ticket.getParkingSpot();
-                parkingSpot.setAvailable(true);
-                parkingSpotDAO.updateParking(parkingSpot);
+            GateEvent event = GateEvent.start(GateEvent.EXIT, vehicleRegNumber, null);
+            Ticket ticket = isDegraded() ? parkingLotState.getOpenTicket(vehicleRegNumber) : ticketDAO.getTicket(vehicleRegNumber);
+            boolean closed = false;
+            try {
+                closed = closeTicket(ticket);
+            } finally {
+                event.finish(closed ? ticket : null, isDegraded());
+            }
+            if(closed) {
                 System.out.println("Please pay the parking fare:" + BigDecimal.valueOf(ticket.getPrice()).setScale(2,RoundingMode.HALF_UP));
-                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + outTime);
+                System.out.println("Recorded out-time for vehicle number:" + ticket.getVehicleRegNumber() + " is:" + ticket.getOutTime());
             }else{
                 System.out.println("Unable to update ticket information. Error occurred");
             }
@@ -133,6 +463,260 @@ public class ParkingService {
         }
     }
 
+    /**
+    *release a vehicle without going through the console, used by gate automation and the traffic simulator
+    *
+    *@Param String vehicle identification
+    *@Return the closed ticket with its fare, or null if the vehicle is not parked or the ticket could not be updated
+    */
+    public Ticket exitVehicle(String vehicleRegNumber){
+        return exitVehicle(null, vehicleRegNumber);
+    }
+
+    /**
+    *release a vehicle at most once per request key, a retried exit gets the ticket closed by the first attempt
+    *
+    *@Param String idempotency key chosen by the gate for this exit, null for none
+    *@Param String vehicle identification
+    *@Return the closed ticket with its fare, or null if the vehicle is not parked or the ticket could not be updated
+    */
+    public Ticket exitVehicle(String requestKey, String vehicleRegNumber){
+        GateEvent event = GateEvent.start(GateEvent.EXIT, vehicleRegNumber, null);
+        Ticket ticket = null;
+        try {
+            ticket = exitRequests.execute(requestKey, () -> releaseVehicle(requestKey, vehicleRegNumber));
+            return ticket;
+        } finally {
+            event.finish(ticket, isDegraded());
+        }
+    }
+
+    /**
+    *price the stay of a parked vehicle as if it left now, for the pay-on-foot kiosks: nothing is written,
+    *the open ticket is read from the parking lot state, and the loyalty count read for a stay is reused
+    *for DEFAULT_QUOTE_DISCOUNT_TTL_MILLIS; a count that could not be read gives no discount and is not kept.
+    *A vehicle missing from the state, e.g. parked through another node, is looked up in the database
+    *unless it is degraded
+    *
+    *@Param String vehicle identification
+    *@Return a copy of the open ticket with the fare so far and the quote time as out time, or null if
+    *the vehicle is not parked
+    */
+    public Ticket quoteFare(String vehicleRegNumber){
+        Ticket openTicket = null;
+        if(parkingLotState != null){
+            openTicket = parkingLotState.getOpenTicket(vehicleRegNumber);
+        }
+        if(openTicket == null && !isDegraded()){
+            openTicket = ticketDAO.readTicket(vehicleRegNumber);
+        }
+        if(openTicket == null || openTicket.getOutTime() != null){
+            return null;
+        }
+        Ticket quote = new Ticket();
+        quote.setId(openTicket.getId());
+        quote.setParkingSpot(openTicket.getParkingSpot());
+        quote.setVehicleRegNumber(vehicleRegNumber);
+        quote.setInTime(openTicket.getInTime());
+        quote.setOutTime(new Date(Math.max(clock.millis(), openTicket.getInTime().getTime())));
+        //same rule as closeTicket: no discount for a pass holder, and none while the count is unavailable
+        boolean discount = !isDegraded() && !hasSeasonPass(vehicleRegNumber)
+                && Boolean.TRUE.equals(quoteDiscounts.execute(vehicleRegNumber+"@"+openTicket.getInTime().getTime(), () -> {
+                    //null is not cached, the next quote reads the count again
+                    int nbTicket = ticketDAO.getNbTicket(vehicleRegNumber);
+                    return nbTicket < 0 ? null : nbTicket > 1;
+                }));
+        fareCalculatorService.calculateFare(quote, discount);
+        return quote;
+    }
+
+    private Ticket releaseVehicle(String requestKey, String vehicleRegNumber){
+        Ticket ticket;
+        if(isDegraded()){
+            ticket = parkingLotState.getOpenTicket(vehicleRegNumber);
+        }else{
+            if(!ticketDAO.isAlreadyInParking(vehicleRegNumber)){
+                return requestKey == null ? null : ticketDAO.getTicketByExitRequestKey(requestKey);
+            }
+            ticket = ticketDAO.getTicket(vehicleRegNumber);
+        }
+        if(ticket == null){
+            return null;
+        }
+        ticket.setExitRequestKey(requestKey);
+        return closeTicket(ticket) ? ticket : null;
+    }
+
+    private boolean closeTicket(Ticket ticket){
+        ticket.setOutTime(new Date(clock.millis()));
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        AdmissionQueue.Waiter waiter = null;
+        if(isDegraded()){
+            //the loyalty count needs the database, no discount while it is unavailable
+            fareCalculatorService.calculateFare(ticket, false);
+            if(!deferredWriteQueue.deferExit(ticket)){
+                ticket.setOutTime(null);
+                return false;
+            }
+        }else{
+            //a pass holder parks for free, no need to count its visits
+            fareCalculatorService.calculateFare(ticket, !hasSeasonPass(ticket.getVehicleRegNumber()) && isEligibleDiscount(ticket.getVehicleRegNumber()));
+            if(!ticketDAO.updateTicket(ticket)){
+                if(!canDegrade() || !isTransientFailure() || !deferredWriteQueue.deferExit(ticket)){
+                    return false;
+                }
+            }else{
+                waiter = releaseSpot(ticket);
+            }
+        }
+        parkingSpot.setAvailable(true);
+        if(parkingLotState != null){
+            parkingLotState.vehicleExited(ticket);
+        }
+        if(demandStatistics != null){
+            demandStatistics.recordClosedTicket(ticket);
+        }
+        if(waiter != null){
+            //under the allocation lock like any entry, the reconciler sees the spot without an open ticket until it is saved
+            AdmissionQueue.Waiter claimed = waiter;
+            Ticket parked = parkingLocks.allocate(parkingSpot.getParkingType(), () -> parkWaitingVehicle(claimed, parkingSpot));
+            if(!admissionQueue.complete(waiter, parked) && parked != null){
+                //the gate gave up or timed out after the claim, nobody drives in on this ticket
+                parkingLocks.allocate(parkingSpot.getParkingType(), () -> abandonTicket(parked));
+            }
+        }
+        return true;
+    }
+
+    /**
+    *hand the spot of a closed ticket to the vehicle waiting the longest for its type, or mark it free
+    *if none waits or the spot is reserved soon
+    *
+    *@Return the waiter to park on the spot, or null if the spot was freed
+    */
+    private AdmissionQueue.Waiter releaseSpot(Ticket ticket){
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        if(admissionQueue == null){
+            freeSpot(ticket);
+            return null;
+        }
+        //under the allocation lock, so no entry can queue between the empty queue and the freed spot
+        return parkingLocks.allocate(parkingSpot.getParkingType(), () -> {
+            AdmissionQueue.Waiter waiter = reservationService != null && !reservationService.isFreeForWalkIn(parkingSpot.getId())
+                    ? null : admissionQueue.claimNext(parkingSpot.getParkingType());
+            if(waiter == null){
+                freeSpot(ticket);
+            }
+            return waiter;
+        });
+    }
+
+    private void freeSpot(Ticket ticket){
+        ParkingSpot parkingSpot = ticket.getParkingSpot();
+        parkingSpot.setAvailable(true);
+        if(!updateParking(parkingSpot) && canDegrade()){
+            if(isTransientFailure()){
+                deferredWriteQueue.deferExit(ticket);
+            }else{
+                //the ticket is closed, the reconciler frees the spot on its next pass
+                logger.error("Release of spot "+parkingSpot.getId()+" refused by the database");
+            }
+        }
+    }
+
+    /**
+    *park a waiting vehicle on the spot just released, which was never marked free in the database
+    *
+    *@Return the saved ticket, or null if it could not be saved and the spot was freed instead
+    */
+    private Ticket parkWaitingVehicle(AdmissionQueue.Waiter waiter, ParkingSpot releasedSpot){
+        ParkingSpot parkingSpot = new ParkingSpot(releasedSpot.getId(), releasedSpot.getParkingType(), false);
+        Ticket ticket = newTicket(parkingSpot, waiter.getVehicleRegNumber(), waiter.getRequestKey());
+        if(!ticketDAO.saveTicket(ticket)){
+            logger.error("Unable to park waiting vehicle "+waiter.getVehicleRegNumber()+", freeing spot "+parkingSpot.getId());
+            parkingSpot.setAvailable(true);
+            updateParking(parkingSpot);
+            return null;
+        }
+        if(parkingLotState != null){
+            parkingLotState.vehicleParked(ticket);
+        }
+        return ticket;
+    }
+
+    /**
+    *close free of charge the ticket saved for a waiter that gave up before it was handed over, and free its spot
+    *
+    *@Return true if the ticket was closed, false if it stays open for the reconciler
+    */
+    private boolean abandonTicket(Ticket ticket){
+        ticket.setOutTime(ticket.getInTime());
+        ticket.setPrice(0);
+        if(!ticketDAO.updateTicket(ticket)){
+            logger.error("Unable to close the ticket of "+ticket.getVehicleRegNumber()+" which stopped waiting, spot "
+                    +ticket.getParkingSpot().getId()+" stays occupied");
+            return false;
+        }
+        if(parkingLotState != null){
+            parkingLotState.vehicleExited(ticket);
+        }
+        freeSpot(ticket);
+        return true;
+    }
+
+    private int occupyParking(ParkingSpot parkingSpot){
+        return parkingLocks.updateSpot(parkingSpot.getParkingType(), parkingSpot.getId(), () -> parkingSpotDAO.occupyParkingSpot(parkingSpot));
+    }
+
+    /**
+    *tell if this node may allocate a spot, always true unless the lot is shared through leased ranges
+    */
+    private boolean isAllocatable(ParkingSpot parkingSpot){
+        return leasedRangeStrategy == null || leasedRangeStrategy.isLeased(parkingSpot);
+    }
+
+    private boolean updateParking(ParkingSpot parkingSpot){
+        return parkingLocks.updateSpot(parkingSpot.getParkingType(), parkingSpot.getId(), () -> parkingSpotDAO.updateParking(parkingSpot));
+    }
+
+    private boolean canDegrade(){
+        return deferredWriteQueue != null && parkingLotState != null;
+    }
+
+    private boolean isDegraded(){
+        return canDegrade() && deferredWriteQueue.isDegraded();
+    }
+
+    /**
+    *tell if the write that just failed on this thread is worth deferring, only an unreachable database is
+    */
+    private boolean isTransientFailure(){
+        return canDegrade() && deferredWriteQueue.isTransientFailure();
+    }
+
+    private boolean isAlreadyInParking(String vehicleRegNumber){
+        if(isDegraded()){
+            return parkingLotState.getOpenTicket(vehicleRegNumber) != null;
+        }
+        return ticketDAO.isAlreadyInParking(vehicleRegNumber);
+    }
+
+    private boolean isAdmissible(String vehicleRegNumber){
+        if(!InputReaderUtil.isValidVehicleRegNumber(vehicleRegNumber)){
+            logger.error("Invalid registration number "+vehicleRegNumber+", entry refused");
+            return false;
+        }
+        return !isBlocked(vehicleRegNumber);
+    }
+
+    private boolean isBlocked(String vehicleRegNumber){
+        return accessListService != null && accessListService.isBlocked(vehicleRegNumber);
+    }
+
+    private boolean hasSeasonPass(String vehicleRegNumber){
+        return accessListService != null && accessListService.hasSeasonPass(vehicleRegNumber);
+    }
+
     /**
     *check if eligible for a discount
     *
@@ -0,0 +1,172 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of the reservations, one interval map per spot.
+ *
+ * The reservations of a spot never overlap, so keyed by start time the only one that can overlap
+ * [from, to) is the last one starting before to: checking a spot is one lowerEntry, O(log k) for k
+ * reservations on that spot. Finding a free spot of a type walks the spots of that type in ascending
+ * order, kept in an array indexed by the type id, and stops at the first free one: O(spots log k) when
+ * the type is nearly booked over the window. An index of the free intervals would answer faster, but it
+ * would have to be split and merged on every booking and cancellation, which is not worth it for lots
+ * of a few hundred spots per type. ReservationService drops the ended reservations, so k stays the
+ * number of upcoming reservations of a spot.
+ */
+public class ReservationIndex {
+
+    private final Map<Integer, TreeMap<Long, Reservation>> reservationsBySpot = new HashMap<>();
+    private final Map<String, TreeMap<Long, Reservation>> reservationsByVehicle = new HashMap<>();
+    private final List<TreeSet<Integer>> spotsByType = new ArrayList<>();
+    private final Map<Integer, ParkingSpot> parkingSpots = new HashMap<>();
+    private int size;
+
+    public synchronized void addSpot(ParkingSpot parkingSpot){
+        if(parkingSpots.putIfAbsent(parkingSpot.getId(), parkingSpot) != null){
+            return;
+        }
+        int typeId = parkingSpot.getParkingType().getId();
+        while(spotsByType.size() <= typeId){
+            spotsByType.add(new TreeSet<>());
+        }
+        spotsByType.get(typeId).add(parkingSpot.getId());
+        reservationsBySpot.put(parkingSpot.getId(), new TreeMap<>());
+    }
+
+    /**
+    *add a reservation unless its spot, or its vehicle, is already reserved during part of its window
+    *
+    *@Param Reservation reservation with its spot and window
+    *@Return true if it was added
+    */
+    public synchronized boolean add(Reservation reservation){
+        addSpot(reservation.getParkingSpot());
+        long from = reservation.getStartTime().getTime();
+        long to = reservation.getEndTime().getTime();
+        if(from >= to || !isFree(reservation.getParkingSpot().getId(), from, to)
+                || getReservation(reservation.getVehicleRegNumber(), from, to) != null){
+            return false;
+        }
+        reservationsBySpot.get(reservation.getParkingSpot().getId()).put(from, reservation);
+        reservationsByVehicle.computeIfAbsent(reservation.getVehicleRegNumber(), plate -> new TreeMap<>()).put(from, reservation);
+        size++;
+        return true;
+    }
+
+    public synchronized boolean remove(Reservation reservation){
+        long from = reservation.getStartTime().getTime();
+        TreeMap<Long, Reservation> spotReservations = reservationsBySpot.get(reservation.getParkingSpot().getId());
+        if(spotReservations == null || spotReservations.get(from) != reservation){
+            return false;
+        }
+        spotReservations.remove(from);
+        TreeMap<Long, Reservation> vehicleReservations = reservationsByVehicle.get(reservation.getVehicleRegNumber());
+        vehicleReservations.remove(from, reservation);
+        if(vehicleReservations.isEmpty()){
+            reservationsByVehicle.remove(reservation.getVehicleRegNumber());
+        }
+        size--;
+        return true;
+    }
+
+    /**
+    *tell if a spot has no reservation overlapping [from, to)
+    *
+    *@Param int parking number
+    *@Param long start of the window, epoch millis
+    *@Param long end of the window, excluded
+    *@Return true if the spot is free over the whole window, or not known at all
+    */
+    public synchronized boolean isFree(int parkingNumber, long from, long to){
+        TreeMap<Long, Reservation> spotReservations = reservationsBySpot.get(parkingNumber);
+        if(spotReservations == null){
+            return true;
+        }
+        Map.Entry<Long, Reservation> last = spotReservations.lowerEntry(to);
+        return last == null || last.getValue().getEndTime().getTime() <= from;
+    }
+
+    /**
+    *find the lowest numbered spot of a type without a reservation overlapping [from, to)
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param long start of the window, epoch millis
+    *@Param long end of the window, excluded
+    *@Return the spot, or null if every spot of the type is reserved during part of the window
+    */
+    public synchronized ParkingSpot findFreeSpot(ParkingType parkingType, long from, long to){
+        if(parkingType.getId() >= spotsByType.size()){
+            return null;
+        }
+        for(int parkingNumber : spotsByType.get(parkingType.getId())){
+            if(isFree(parkingNumber, from, to)){
+                return parkingSpots.get(parkingNumber);
+            }
+        }
+        return null;
+    }
+
+    /**
+    *find the first reservation of a vehicle overlapping [from, to)
+    *
+    *@Param String vehicle registration number
+    *@Param long start of the window, epoch millis
+    *@Param long end of the window, excluded
+    *@Return the reservation, or null
+    */
+    public synchronized Reservation getReservation(String vehicleRegNumber, long from, long to){
+        TreeMap<Long, Reservation> vehicleReservations = reservationsByVehicle.get(vehicleRegNumber);
+        if(vehicleReservations == null){
+            return null;
+        }
+        Map.Entry<Long, Reservation> started = vehicleReservations.floorEntry(from);
+        if(started != null && started.getValue().getEndTime().getTime() > from){
+            return started.getValue();
+        }
+        Map.Entry<Long, Reservation> next = vehicleReservations.higherEntry(from);
+        return next != null && next.getKey() < to ? next.getValue() : null;
+    }
+
+    /**
+    *forget the reservations ended at or before a time
+    *
+    *@Param long epoch millis
+    *@Return number of reservations removed
+    */
+    public synchronized int removeEndedBefore(long time){
+        int removed = 0;
+        for(TreeMap<Long, Reservation> spotReservations : reservationsBySpot.values()){
+            Iterator<Reservation> it = spotReservations.headMap(time, true).values().iterator();
+            while(it.hasNext()){
+                Reservation reservation = it.next();
+                if(reservation.getEndTime().getTime() > time){
+                    break;
+                }
+                it.remove();
+                TreeMap<Long, Reservation> vehicleReservations = reservationsByVehicle.get(reservation.getVehicleRegNumber());
+                vehicleReservations.remove(reservation.getStartTime().getTime(), reservation);
+                if(vehicleReservations.isEmpty()){
+                    reservationsByVehicle.remove(reservation.getVehicleRegNumber());
+                }
+                removed++;
+            }
+        }
+        size -= removed;
+        return removed;
+    }
+
+    public synchronized int size(){
+        return size;
+    }
+}
@@ -0,0 +1,176 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Books spots for a future time window. Reservations are saved in the reservation table and kept in
+ * a {@link ReservationIndex} that {@link ParkingService} asks before handing a spot to a walk-in.
+ *
+ * A walk-in does not say how long it stays, so a spot is only given to one if it has no reservation
+ * starting within the walk-in horizon. A vehicle arriving up to that horizon before its reservation
+ * gets its reserved spot. The reservations that are over are dropped from the index every few minutes,
+ * the table keeps them.
+ */
+public class ReservationService {
+
+    private static final Logger logger = LogManager.getLogger("ReservationService");
+
+    public static final long DEFAULT_WALK_IN_HORIZON_MILLIS = TimeUnit.HOURS.toMillis(2);
+    public static final long DEFAULT_PRUNE_MINUTES = 15;
+
+    private final ReservationDAO reservationDAO;
+    private final ReservationIndex reservationIndex = new ReservationIndex();
+    private final long walkInHorizonMillis;
+    private final Clock clock;
+
+    private ScheduledExecutorService scheduler;
+
+    public ReservationService(ReservationDAO reservationDAO){
+        this(reservationDAO, DEFAULT_WALK_IN_HORIZON_MILLIS, Clock.systemDefaultZone());
+    }
+
+    public ReservationService(ReservationDAO reservationDAO, long walkInHorizonMillis, Clock clock){
+        this.reservationDAO = reservationDAO;
+        this.walkInHorizonMillis = walkInHorizonMillis;
+        this.clock = clock;
+    }
+
+    /**
+    *load the spots and the reservations not ended yet
+    *
+    *@Param Collection every spot of the lot
+    *@Return number of reservations loaded
+    */
+    public int load(Collection<ParkingSpot> parkingSpots){
+        for(ParkingSpot parkingSpot : parkingSpots){
+            reservationIndex.addSpot(new ParkingSpot(parkingSpot.getId(), parkingSpot.getParkingType(), true));
+        }
+        int loaded = 0;
+        for(Reservation reservation : reservationDAO.getReservationsEndingAfter(new Date(clock.millis()))){
+            if(reservationIndex.add(reservation)){
+                loaded++;
+            }else{
+                logger.error("Reservation "+reservation.getId()+" overlaps another one, ignored");
+            }
+        }
+        logger.info("Loaded "+loaded+" reservations");
+        return loaded;
+    }
+
+    /**
+    *reserve the lowest numbered spot of a type free over a time window
+    *
+    *@Param ParkingType type of the vehicle
+    *@Param String vehicle registration number
+    *@Param Date start of the window
+    *@Param Date end of the window, excluded
+    *@Return the saved reservation, or null if no spot is free over the window or it could not be saved
+    */
+    public synchronized Reservation reserve(ParkingType parkingType, String vehicleRegNumber, Date startTime, Date endTime){
+        if(!endTime.after(startTime) || endTime.getTime() <= clock.millis()){
+            throw new IllegalArgumentException("Reservation window is incorrect: "+startTime+" - "+endTime);
+        }
+        ParkingSpot parkingSpot = reservationIndex.findFreeSpot(parkingType, startTime.getTime(), endTime.getTime());
+        if(parkingSpot == null){
+            return null;
+        }
+        Reservation reservation = new Reservation();
+        reservation.setParkingSpot(parkingSpot);
+        reservation.setVehicleRegNumber(vehicleRegNumber);
+        reservation.setStartTime(startTime);
+        reservation.setEndTime(endTime);
+        if(!reservationIndex.add(reservation)){
+            //the vehicle already holds a reservation during that window
+            return null;
+        }
+        if(!reservationDAO.saveReservation(reservation)){
+            reservationIndex.remove(reservation);
+            return null;
+        }
+        return reservation;
+    }
+
+    public synchronized boolean cancel(Reservation reservation){
+        if(!reservationDAO.deleteReservation(reservation.getId())){
+            return false;
+        }
+        return reservationIndex.remove(reservation);
+    }
+
+    /**
+    *tell if a walk-in may take a spot now
+    *
+    *@Param int parking number
+    *@Return true if no reservation of the spot is running or starts within the walk-in horizon
+    */
+    public boolean isFreeForWalkIn(int parkingNumber){
+        long now = clock.millis();
+        return reservationIndex.isFree(parkingNumber, now, now + walkInHorizonMillis);
+    }
+
+    /**
+    *get the reservation a vehicle arriving now may use
+    *
+    *@Param String vehicle registration number
+    *@Return a reservation running now or starting within the walk-in horizon, or null
+    */
+    public Reservation getReservationForArrival(String vehicleRegNumber){
+        long now = clock.millis();
+        return reservationIndex.getReservation(vehicleRegNumber, now, now + walkInHorizonMillis);
+    }
+
+    /**
+    *forget the reservations that are over, the table keeps them
+    *
+    *@Return number of reservations removed from the index
+    */
+    public int removeEnded(){
+        return reservationIndex.removeEndedBefore(clock.millis());
+    }
+
+    public ReservationIndex getReservationIndex(){
+        return reservationIndex;
+    }
+
+    public synchronized void start(long periodMinutes){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "reservation-pruner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::removeEndedSafely, periodMinutes, periodMinutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void removeEndedSafely(){
+        try {
+            int removed = removeEnded();
+            if(removed > 0){
+                logger.info("Removed "+removed+" ended reservations from the index");
+            }
+        } catch (Exception e) {
+            logger.error("Unexpected error while removing ended reservations",e);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotCheck;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background check that parking.AVAILABLE matches the open tickets, since a gate updates the spot and
+ * the ticket in two separate statements and a failure between them leaves the spot wrong.
+ *
+ * The parking table is walked in chunks ordered by parking number, each chunk read with the presence of
+ * an open ticket on each spot. A mismatch is only repaired when the next pass still finds it at least
+ * graceMillis later with the same latest ticket on the spot, so an entry or exit caught between its two
+ * statements is left alone, and the repair itself re-checks both in its update. Repairs also run under
+ * the allocation lock of the spot type, so no entry of this node is in flight on the spot meanwhile.
+ * Chunks shrink and pauses grow while the
+ * chunk query is slower than targetLatencyMillis, and recover once it is fast again.
+ */
+public class SpotReconciler {
+
+    private static final Logger logger = LogManager.getLogger("SpotReconciler");
+
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 10;
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 200;
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 20;
+    public static final long DEFAULT_MIN_PAUSE_MILLIS = 50;
+    public static final long DEFAULT_MAX_PAUSE_MILLIS = 5000;
+    public static final long DEFAULT_GRACE_MILLIS = 10000;
+    public static final long DEFAULT_PERIOD_SECONDS = 60;
+
+    //weight of the last chunk in the latency average
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private static class Suspect {
+        private final boolean available;
+        private final int lastTicketId;
+        private final long firstSeen;
+
+        Suspect(boolean available, int lastTicketId, long firstSeen){
+            this.available = available;
+            this.lastTicketId = lastTicketId;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long targetLatencyNanos;
+    private final long minPauseMillis;
+    private final long maxPauseMillis;
+    private final long graceMillis;
+    private final Clock clock;
+    //mismatches seen by an earlier pass, by parking number, with the availability the spot should have
+    private final Map<Integer, Suspect> suspects = new HashMap<>();
+    //passes are serialized on their own lock so stop() never waits for a running pass
+    private final Object passLock = new Object();
+
+    private final LongAdder passes = new LongAdder();
+    private final LongAdder spotsChecked = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder repairs = new LongAdder();
+    private final LongAdder throttles = new LongAdder();
+
+    private volatile int chunkSize;
+    private volatile long pauseMillis;
+    private volatile double latencyNanos;
+    private ParkingLotState parkingLotState;
+    private DeferredWriteQueue deferredWriteQueue;
+    private ParkingLocks parkingLocks;
+    private ScheduledExecutorService scheduler;
+
+    public SpotReconciler(ParkingSpotDAO parkingSpotDAO){
+        this(parkingSpotDAO, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE, DEFAULT_TARGET_LATENCY_MILLIS,
+                DEFAULT_MIN_PAUSE_MILLIS, DEFAULT_MAX_PAUSE_MILLIS, DEFAULT_GRACE_MILLIS, Clock.systemDefaultZone());
+    }
+
+    public SpotReconciler(ParkingSpotDAO parkingSpotDAO, int minChunkSize, int maxChunkSize, long targetLatencyMillis,
+                          long minPauseMillis, long maxPauseMillis, long graceMillis, Clock clock){
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.minPauseMillis = minPauseMillis;
+        this.maxPauseMillis = maxPauseMillis;
+        this.graceMillis = graceMillis;
+        this.clock = clock;
+        this.chunkSize = maxChunkSize;
+        this.pauseMillis = minPauseMillis;
+    }
+
+    /**
+    *keep the in-memory parking state in line with the repairs
+    */
+    public void setParkingLotState(ParkingLotState parkingLotState){
+        this.parkingLotState = parkingLotState;
+    }
+
+    /**
+    *skip the passes while gate writes are queued, the database is knowingly behind then
+    */
+    public void setDeferredWriteQueue(DeferredWriteQueue deferredWriteQueue){
+        this.deferredWriteQueue = deferredWriteQueue;
+    }
+
+    /**
+    *repair the spots of a type only while no gate of this node allocates that type
+    *
+    *@Param ParkingLocks locks of the ParkingService running the gates
+    */
+    public void setParkingLocks(ParkingLocks parkingLocks){
+        this.parkingLocks = parkingLocks;
+    }
+
+    /**
+    *walk the whole parking table once, repairing the mismatches already seen by an earlier pass
+    *
+    *@Return number of spots repaired during this pass, -1 if it was skipped or stopped by a failure
+    */
+    public int reconcile(){
+        synchronized (passLock){
+            return reconcilePass();
+        }
+    }
+
+    private int reconcilePass(){
+        if(isDegraded()){
+            logger.info("Spot reconciliation skipped, the database is in degraded mode");
+            return -1;
+        }
+        long passMismatches = 0;
+        int passRepairs = 0;
+        int checked = 0;
+        int after = 0;
+        while(true){
+            int limit = chunkSize;
+            long start = System.nanoTime();
+            List<SpotCheck> spotChecks = parkingSpotDAO.getSpotChecksAfter(after, limit);
+            adapt(System.nanoTime() - start);
+            if(spotChecks == null){
+                logger.error("Spot reconciliation stopped after "+checked+" spots");
+                return -1;
+            }
+            checked += spotChecks.size();
+            spotsChecked.add(spotChecks.size());
+            Map<ParkingType, List<SpotCheck>> toRepair = new HashMap<>();
+            long now = clock.millis();
+            for(SpotCheck spotCheck : spotChecks){
+                ParkingSpot parkingSpot = spotCheck.getParkingSpot();
+                if(spotCheck.isConsistent()){
+                    suspects.remove(parkingSpot.getId());
+                    continue;
+                }
+                passMismatches++;
+                boolean available = !spotCheck.hasOpenTicket();
+                Suspect suspect = suspects.get(parkingSpot.getId());
+                //a ticket saved on the spot since makes it another mismatch, caught in flight again
+                if(suspect == null || suspect.available != available || suspect.lastTicketId != spotCheck.getLastTicketId()){
+                    suspects.put(parkingSpot.getId(), new Suspect(available, spotCheck.getLastTicketId(), now));
+                }else if(now - suspect.firstSeen >= graceMillis){
+                    toRepair.computeIfAbsent(parkingSpot.getParkingType(), parkingType -> new ArrayList<>()).add(spotCheck);
+                }
+            }
+            for(Map.Entry<ParkingType, List<SpotCheck>> typeRepairs : toRepair.entrySet()){
+                for(ParkingSpot repaired : repair(typeRepairs.getKey(), typeRepairs.getValue())){
+                    suspects.remove(repaired.getId());
+                    passRepairs++;
+                    logger.warn("Spot "+repaired.getId()+" repaired, now "+(repaired.isAvailable() ? "free" : "occupied"));
+                    if(parkingLotState != null){
+                        parkingLotState.spotRepaired(repaired);
+                    }
+                }
+            }
+            if(spotChecks.size() < limit){
+                break;
+            }
+            after = spotChecks.get(spotChecks.size() - 1).getParkingSpot().getId();
+            //give gate traffic a chance to run between two chunks
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        passes.increment();
+        mismatches.add(passMismatches);
+        repairs.add(passRepairs);
+        logger.info("Reconciled "+checked+" spots: "+passMismatches+" mismatches, "+passRepairs+" repaired, "+getMetrics());
+        return passRepairs;
+    }
+
+    private List<ParkingSpot> repair(ParkingType parkingType, List<SpotCheck> spotChecks){
+        if(parkingLocks == null){
+            return parkingSpotDAO.repairParkingSpots(spotChecks);
+        }
+        return parkingLocks.allocate(parkingType, () -> parkingSpotDAO.repairParkingSpots(spotChecks));
+    }
+
+    /**
+    *halve the chunk and double the pause while the chunk query is slow, then grow the chunk back
+    *step by step and halve the pause once it is fast again
+    */
+    private void adapt(long nanos){
+        latencyNanos = latencyNanos == 0 ? nanos : LATENCY_WEIGHT * nanos + (1 - LATENCY_WEIGHT) * latencyNanos;
+        if(latencyNanos > targetLatencyNanos){
+            throttles.increment();
+            chunkSize = Math.max(minChunkSize, chunkSize / 2);
+            pauseMillis = Math.min(maxPauseMillis, Math.max(1, pauseMillis * 2));
+        }else{
+            chunkSize = Math.min(maxChunkSize, chunkSize + minChunkSize);
+            pauseMillis = Math.max(minPauseMillis, pauseMillis / 2);
+        }
+    }
+
+    private boolean isDegraded(){
+        return deferredWriteQueue != null ? deferredWriteQueue.isDegraded() : parkingSpotDAO.dataBaseConfig.isDegraded();
+    }
+
+    public long getPasses(){
+        return passes.sum();
+    }
+
+    public long getSpotsChecked(){
+        return spotsChecked.sum();
+    }
+
+    public long getMismatches(){
+        return mismatches.sum();
+    }
+
+    public long getRepairs(){
+        return repairs.sum();
+    }
+
+    public long getThrottles(){
+        return throttles.sum();
+    }
+
+    public int getChunkSize(){
+        return chunkSize;
+    }
+
+    public long getPauseMillis(){
+        return pauseMillis;
+    }
+
+    public String getMetrics(){
+        return "chunk "+chunkSize+", pause "+pauseMillis+" ms, latency "+TimeUnit.NANOSECONDS.toMillis((long) latencyNanos)
+                +" ms, totals: "+getSpotsChecked()+" checked, "+getMismatches()+" mismatches, "+getRepairs()+" repaired, "
+                +getThrottles()+" throttled chunks";
+    }
+
+    public synchronized void start(long periodSeconds){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spot-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void runSafely(){
+        try {
+            reconcile();
+        } catch (Exception e) {
+            logger.error("Unexpected error while reconciling spots",e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTypeDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Explicit startup phase run before the first gate is served: loads the driver, opens the pool,
+ * prepares every statement of {@link DBConstants}, loads the parking type catalogue, then the occupancy
+ * and open-ticket state, and the access lists.
+ */
+public class StartupService {
+
+    private static final Logger logger = LogManager.getLogger("StartupService");
+
+    private final DataBaseConfig dataBaseConfig;
+    private final ParkingSpotDAO parkingSpotDAO;
+    private final TicketDAO ticketDAO;
+    private final ParkingTypeDAO parkingTypeDAO;
+    private final Map<String, Long> phaseTimings = new LinkedHashMap<>();
+    private StateSnapshot stateSnapshot;
+    private DemandStatistics demandStatistics;
+    private AccessListService accessListService;
+    private boolean restored;
+
+    public StartupService(DataBaseConfig dataBaseConfig, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO){
+        this(dataBaseConfig, parkingSpotDAO, ticketDAO, new ParkingTypeDAO());
+        parkingTypeDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    public StartupService(DataBaseConfig dataBaseConfig, ParkingSpotDAO parkingSpotDAO, TicketDAO ticketDAO, ParkingTypeDAO parkingTypeDAO){
+        this.dataBaseConfig = dataBaseConfig;
+        this.parkingSpotDAO = parkingSpotDAO;
+        this.ticketDAO = ticketDAO;
+        this.parkingTypeDAO = parkingTypeDAO;
+    }
+
+    /**
+    *restore the state from a snapshot when there is a usable one instead of reading it from the tickets
+    *
+    *@Param StateSnapshot snapshot file, null to always read the database
+    */
+    public void setStateSnapshot(StateSnapshot stateSnapshot){
+        this.stateSnapshot = stateSnapshot;
+    }
+
+    /**
+    *seed the demand statistics during the warm-up, from the snapshot or else from the ticket history
+    *
+    *@Param DemandStatistics statistics to seed, null if demand pricing is off
+    */
+    public void setDemandStatistics(DemandStatistics demandStatistics){
+        this.demandStatistics = demandStatistics;
+    }
+
+    /**
+    *load the season passes and the blocklist during the warm-up
+    *
+    *@Param AccessListService access lists to load, null if the gates do not check them
+    */
+    public void setAccessListService(AccessListService accessListService){
+        this.accessListService = accessListService;
+    }
+
+    /**
+    *run every startup phase, a failing phase is logged and the next one still runs
+    *
+    *@Return the occupancy and open-ticket state read from the DB
+    */
+    public ParkingLotState warmUp(){
+        long start = System.nanoTime();
+        ParkingLotState parkingLotState = new ParkingLotState();
+        phaseTimings.clear();
+
+        runPhase("load driver", dataBaseConfig::loadDriver);
+        runPhase("open connection pool", () -> dataBaseConfig.openPool(dataBaseConfig.getMinIdle()));
+        runPhase("prepare statements", () -> dataBaseConfig.prepareStatements(getStatements()));
+        //spots and tickets refer to their type by id, the catalogue must be known first
+        runPhase("load parking types", () -> logger.info("Parking types "+parkingTypeDAO.loadParkingTypes()));
+        restored = false;
+        if(stateSnapshot != null){
+            runPhase("restore state snapshot", () -> restored = stateSnapshot.restore(parkingLotState, demandStatistics));
+        }
+        if(!restored){
+            runPhase("load parking state", () -> parkingLotState.load(parkingSpotDAO.getParkingSpots(), ticketDAO.getOpenTickets()));
+            if(demandStatistics != null){
+                runPhase("load demand statistics", () -> demandStatistics.load(ticketDAO));
+            }
+        }
+        if(accessListService != null){
+            runPhase("load access lists", accessListService::refresh);
+        }
+
+        phaseTimings.put("total", (System.nanoTime() - start) / 1_000_000);
+        logger.info("Startup completed in "+phaseTimings.get("total")+" ms "+phaseTimings+", "
+                +parkingLotState.getParkingSpots().size()+" spots and "+parkingLotState.getOpenTickets().size()+" open tickets loaded");
+        return parkingLotState;
+    }
+
+    /** true if the last warm-up restored the state from the snapshot */
+    public boolean isRestored(){
+        return restored;
+    }
+
+    /** duration of each startup phase of the last warm-up, in milliseconds */
+    public Map<String, Long> getPhaseTimings(){
+        return Collections.unmodifiableMap(phaseTimings);
+    }
+
+    static List<String> getStatements(){
+        List<String> statements = new ArrayList<>();
+        for(Field field : DBConstants.class.getFields()){
+            if(Modifier.isStatic(field.getModifiers()) && field.getType() == String.class){
+                try {
+                    statements.add((String) field.get(null));
+                } catch (IllegalAccessException e) {
+                    logger.error("Unable to read statement "+field.getName(),e);
+                }
+            }
+        }
+        return statements;
+    }
+
+    private interface Phase {
+        void run() throws Exception;
+    }
+
+    private void runPhase(String name, Phase phase){
+        long start = System.nanoTime();
+        try {
+            phase.run();
+        } catch (Exception e) {
+            logger.error("Startup phase '"+name+"' failed",e);
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        phaseTimings.put(name, elapsed);
+        logger.info("Startup phase '"+name+"' took "+elapsed+" ms");
+    }
+}
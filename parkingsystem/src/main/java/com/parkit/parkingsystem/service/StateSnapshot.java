@@ -0,0 +1,298 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Periodic copy of the in-memory state, spot occupancy, open tickets and demand statistics, to a
+ * memory-mapped file, so a restart maps it instead of reading years of tickets.
+ *
+ * Layout, big-endian: a 40 byte header (magic, layout version, creation time, high-water ticket ID,
+ * watermark, payload length, CRC32 of the payload) then the payload: spots, open tickets, and the
+ * demand statistics if they were enabled. A file with another magic, version or checksum is ignored.
+ * On restore, the tickets above the high-water ID or entered or closed since the watermark are replayed
+ * on top of the snapshot; the watermark is taken a margin before the copy so that tickets written
+ * while it was taken are replayed too, and the demand statistics skip the ones they already counted.
+ */
+public class StateSnapshot {
+
+    private static final Logger logger = LogManager.getLogger("StateSnapshot");
+
+    public static final int MAGIC = 0x504B5354;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 40;
+    public static final long DEFAULT_PERIOD_SECONDS = 300;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+    //shorter than the window in which DemandStatistics remembers the tickets it counted
+    static final long REPLAY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Path file;
+    private final TicketDAO ticketDAO;
+    private final long maxAgeMillis;
+    private final Clock clock;
+
+    private DeferredWriteQueue deferredWriteQueue;
+    private ScheduledExecutorService scheduler;
+
+    public StateSnapshot(Path file, TicketDAO ticketDAO){
+        this(file, ticketDAO, DEFAULT_MAX_AGE_MILLIS, Clock.systemDefaultZone());
+    }
+
+    public StateSnapshot(Path file, TicketDAO ticketDAO, long maxAgeMillis, Clock clock){
+        this.file = file;
+        this.ticketDAO = ticketDAO;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    /**
+    *skip the snapshots taken while writes wait in this queue: the state holds tickets the database
+    *does not have yet, which a restart from the snapshot would never replay
+    *
+    *@Param DeferredWriteQueue queue of the gate writes the database could not take, null if there is none
+    */
+    public void setDeferredWriteQueue(DeferredWriteQueue deferredWriteQueue){
+        this.deferredWriteQueue = deferredWriteQueue;
+    }
+
+    /**
+    *write the state to a new file mapped in memory, then move it over the previous snapshot
+    *
+    *@Param ParkingLotState occupancy and open tickets
+    *@Param DemandStatistics statistics to save as well, null if demand pricing is off
+    *@Return false if writes are deferred, the high-water ID could not be read or the file could not be written
+    */
+    public boolean write(ParkingLotState parkingLotState, DemandStatistics demandStatistics){
+        if(deferredWriteQueue != null && deferredWriteQueue.isDegraded()){
+            logger.warn("State snapshot skipped, "+deferredWriteQueue.size()+" deferred writes are not in the database yet");
+            return false;
+        }
+        long start = System.nanoTime();
+        int highWaterId = ticketDAO.getMaxTicketId();
+        if(highWaterId < 0){
+            logger.error("State snapshot skipped, the highest ticket ID could not be read");
+            return false;
+        }
+        long createdAt = clock.millis();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            List<ParkingSpot> parkingSpots = new ArrayList<>(parkingLotState.getParkingSpots());
+            out.writeInt(parkingSpots.size());
+            for(ParkingSpot parkingSpot : parkingSpots){
+                out.writeInt(parkingSpot.getId());
+                out.writeInt(parkingSpot.getParkingType().getId());
+                out.writeBoolean(parkingSpot.isAvailable());
+            }
+            List<Ticket> openTickets = new ArrayList<>(parkingLotState.getOpenTickets());
+            out.writeInt(openTickets.size());
+            for(Ticket ticket : openTickets){
+                out.writeInt(ticket.getId());
+                out.writeInt(ticket.getParkingSpot().getId());
+                out.writeInt(ticket.getParkingSpot().getParkingType().getId());
+                out.writeLong(ticket.getInTime().getTime());
+                writeString(out, ticket.getVehicleRegNumber());
+                writeString(out, ticket.getRequestKey());
+            }
+            out.writeBoolean(demandStatistics != null);
+            if(demandStatistics != null){
+                demandStatistics.writeSnapshot(out);
+            }
+            out.flush();
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            Path temporary = file.resolveSibling(file.getFileName()+".tmp");
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + payload.length);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putLong(createdAt);
+                buffer.putInt(highWaterId);
+                buffer.putLong(createdAt - REPLAY_MARGIN_MILLIS);
+                buffer.putInt(payload.length);
+                buffer.putLong(crc.getValue());
+                buffer.put(payload);
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("State snapshot written in "+TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)+" ms: "
+                    +parkingSpots.size()+" spots, "+openTickets.size()+" open tickets, high-water ticket "+highWaterId);
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to write the state snapshot "+file,e);
+            return false;
+        }
+    }
+
+    /**
+    *load the state from the snapshot and replay the tickets changed since
+    *
+    *@Param ParkingLotState state to load
+    *@Param DemandStatistics statistics to load, null if demand pricing is off
+    *@Return false if there is no usable snapshot or the replay could not be read, nothing is loaded then
+    */
+    public boolean restore(ParkingLotState parkingLotState, DemandStatistics demandStatistics){
+        if(!Files.isRegularFile(file)){
+            logger.info("No state snapshot at "+file);
+            return false;
+        }
+        long start = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_BYTES){
+                logger.error("State snapshot "+file+" is truncated");
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                logger.error("State snapshot "+file+" has an unknown layout");
+                return false;
+            }
+            long createdAt = buffer.getLong();
+            int highWaterId = buffer.getInt();
+            long watermarkMillis = buffer.getLong();
+            int payloadLength = buffer.getInt();
+            long checksum = buffer.getLong();
+            if(payloadLength < 0 || payloadLength != channel.size() - HEADER_BYTES){
+                logger.error("State snapshot "+file+" is truncated");
+                return false;
+            }
+            ByteBuffer payload = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if(crc.getValue() != checksum){
+                logger.error("State snapshot "+file+" is corrupted, checksum mismatch");
+                return false;
+            }
+            if(clock.millis() - createdAt > maxAgeMillis){
+                logger.info("State snapshot of "+new Date(createdAt)+" is too old, loading the state from the database");
+                return false;
+            }
+
+            List<ParkingSpot> parkingSpots = new ArrayList<>();
+            int spots = payload.getInt();
+            for(int i = 0; i < spots; i++){
+                int parkingNumber = payload.getInt();
+                ParkingType parkingType = ParkingType.fromId(payload.getInt());
+                parkingSpots.add(new ParkingSpot(parkingNumber, parkingType, payload.get() != 0));
+            }
+            List<Ticket> openTickets = new ArrayList<>();
+            int tickets = payload.getInt();
+            for(int i = 0; i < tickets; i++){
+                Ticket ticket = new Ticket();
+                ticket.setId(payload.getInt());
+                int parkingNumber = payload.getInt();
+                ticket.setParkingSpot(new ParkingSpot(parkingNumber, ParkingType.fromId(payload.getInt()), false));
+                ticket.setInTime(new Date(payload.getLong()));
+                ticket.setVehicleRegNumber(readString(payload));
+                ticket.setRequestKey(readString(payload));
+                openTickets.add(ticket);
+            }
+            boolean hasDemandStatistics = payload.get() != 0;
+            if(hasDemandStatistics != (demandStatistics != null)){
+                logger.info("State snapshot "+(hasDemandStatistics ? "has" : "lacks")+" demand statistics, loading the state from the database");
+                return false;
+            }
+            List<Ticket> changed = ticketDAO.getTicketsChangedSince(highWaterId, new Date(watermarkMillis));
+            if(changed == null){
+                return false;
+            }
+
+            if(demandStatistics != null){
+                demandStatistics.readSnapshot(payload);
+            }
+            parkingLotState.load(parkingSpots, openTickets);
+            int counted = 0;
+            for(Ticket ticket : changed){
+                if(ticket.getOutTime() == null){
+                    parkingLotState.vehicleParked(ticket);
+                }else{
+                    parkingLotState.vehicleExited(ticket);
+                    if(demandStatistics != null && demandStatistics.recordReplayedTicket(ticket)){
+                        counted++;
+                    }
+                }
+            }
+            logger.info("State snapshot of "+new Date(createdAt)+" restored in "+TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                    +" ms: "+spots+" spots, "+tickets+" open tickets, "+changed.size()+" tickets replayed, "+counted+" new closed tickets");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            //a type removed from the catalogue or a layout error despite the checksum
+            logger.error("Unable to restore the state snapshot "+file,e);
+            return false;
+        }
+    }
+
+    public synchronized void start(long periodSeconds, ParkingLotState parkingLotState, DemandStatistics demandStatistics){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "state-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> writeSafely(parkingLotState, demandStatistics), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void writeSafely(ParkingLotState parkingLotState, DemandStatistics demandStatistics){
+        try {
+            write(parkingLotState, demandStatistics);
+        } catch (Exception e) {
+            logger.error("Unexpected error while writing the state snapshot",e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in){
+        short length = in.getShort();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TicketArchiveService {
+
+    private static final Logger logger = LogManager.getLogger("TicketArchiveService");
+
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    public static final long DEFAULT_PAUSE_MILLIS = 200;
+    public static final long DEFAULT_PERIOD_MINUTES = 60;
+
+    private final TicketArchiveDAO ticketArchiveDAO;
+    private final int retentionDays;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final Clock clock;
+
+    private ScheduledExecutorService scheduler;
+
+    public TicketArchiveService(TicketArchiveDAO ticketArchiveDAO){
+        this(ticketArchiveDAO, DEFAULT_RETENTION_DAYS, DEFAULT_CHUNK_SIZE, DEFAULT_PAUSE_MILLIS);
+    }
+
+    public TicketArchiveService(TicketArchiveDAO ticketArchiveDAO, int retentionDays, int chunkSize, long pauseMillis){
+        this(ticketArchiveDAO, retentionDays, chunkSize, pauseMillis, Clock.systemDefaultZone());
+    }
+
+    public TicketArchiveService(TicketArchiveDAO ticketArchiveDAO, int retentionDays, int chunkSize, long pauseMillis, Clock clock){
+        this.ticketArchiveDAO = ticketArchiveDAO;
+        this.retentionDays = retentionDays;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.clock = clock;
+    }
+
+    /**
+    *move every ticket closed before the retention window to the archive, one chunk at a time
+    *
+    *@Return number of tickets archived during this run
+    */
+    public int archiveClosedTickets(){
+        Date closedBefore = new Date(clock.millis() - TimeUnit.DAYS.toMillis(retentionDays));
+        int total = 0;
+        while(true){
+            int archived = ticketArchiveDAO.archiveClosedTickets(closedBefore, chunkSize);
+            if(archived < 0){
+                logger.error("Archive run stopped after "+total+" tickets");
+                break;
+            }
+            total += archived;
+            if(archived < chunkSize){
+                break;
+            }
+            //give gate traffic a chance to run between two chunks
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.info("Archived "+total+" tickets closed before "+closedBefore);
+        return total;
+    }
+
+    public synchronized void start(long periodMinutes){
+        if(scheduler != null){
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ticket-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, periodMinutes, periodMinutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop(){
+        if(scheduler != null){
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void runSafely(){
+        try {
+            archiveClosedTickets();
+        } catch (Exception e) {
+            logger.error("Unexpected error while archiving tickets",e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.parkit.parkingsystem.service;
+
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.util.ColumnarTicketReader;
+import com.parkit.parkingsystem.util.ColumnarTicketWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+public class TicketHistoryService {
+
+    private static final Logger logger = LogManager.getLogger("TicketHistoryService");
+
+    public static final int EXPORT_BATCH_SIZE = 1000;
+    public static final int PLATE_HISTORY_PAGE_SIZE = 100;
+
+    private final TicketDAO ticketDAO;
+
+    public TicketHistoryService(TicketDAO ticketDAO){
+        this.ticketDAO = ticketDAO;
+    }
+
+    /**
+    *export every closed ticket of both tiers to a columnar history file, one page of tickets at a time
+    *
+    *@Param Path file to create or replace
+    *@Return number of tickets exported
+    *@Throws IOException if the file could not be written or a page could not be read, the file is deleted
+    */
+    public long exportClosedTickets(Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        long exported;
+        try(OutputStream out = Files.newOutputStream(file);
+            ColumnarTicketWriter writer = new ColumnarTicketWriter(out)){
+            int lastId = 0;
+            List<Ticket> tickets = ticketDAO.getClosedTicketsAfter(lastId, EXPORT_BATCH_SIZE);
+            while(tickets != null && !tickets.isEmpty()){
+                for(Ticket ticket : tickets){
+                    writer.write(ticket);
+                    lastId = ticket.getId();
+                }
+                tickets = ticketDAO.getClosedTicketsAfter(lastId, EXPORT_BATCH_SIZE);
+            }
+            if(tickets == null){
+                throw new IOException("Closed tickets after ID "+lastId+" could not be read, export aborted");
+            }
+            exported = writer.getRowCount();
+        } catch (IOException e) {
+            //a truncated export would pass for a complete one
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        logger.info("Exported "+exported+" tickets to "+file+" in "+(System.currentTimeMillis() - start)+" ms");
+        return exported;
+    }
+
+    /**
+    *hand every visit of a plate to a consumer, newest first, one page of tickets at a time
+    *
+    *@Param String vehicle identification
+    *@Param Date only tickets entered at or after this date, null for no lower bound
+    *@Param Date only tickets entered before this date, null for no upper bound
+    *@Param Consumer called for each ticket
+    *@Return number of tickets read, -1 if a page could not be read, the tickets before it were consumed
+    */
+    public long forEachVisit(String vehicleRegNumber, Date from, Date to, Consumer<Ticket> consumer){
+        long count = 0;
+        Ticket last = null;
+        while(true){
+            List<Ticket> tickets = ticketDAO.getTicketHistory(vehicleRegNumber, from, to, last, PLATE_HISTORY_PAGE_SIZE);
+            if(tickets == null){
+                return -1;
+            }
+            for(Ticket ticket : tickets){
+                consumer.accept(ticket);
+            }
+            count += tickets.size();
+            if(tickets.size() < PLATE_HISTORY_PAGE_SIZE){
+                return count;
+            }
+            last = tickets.get(tickets.size() - 1);
+        }
+    }
+
+    /**
+    *sum the fares of a history file per calendar month (UTC, by IN_TIME) and parking type
+    *
+    *@Param Path history file written by exportClosedTickets
+    *@Return revenue per month and parking type name
+    */
+    public Map<YearMonth, Map<String, Double>> getMonthlyRevenueByType(Path file) throws IOException {
+        Map<YearMonth, Map<String, Long>> centsByMonth = new TreeMap<>();
+        try(InputStream in = Files.newInputStream(file);
+            ColumnarTicketReader reader = new ColumnarTicketReader(in, ColumnarTicketReader.TYPE | ColumnarTicketReader.IN_TIME | ColumnarTicketReader.PRICE)){
+            YearMonth month = null;
+            long monthStart = 0;
+            long monthEnd = 0;
+            long[] monthCents = new long[0];
+            while(reader.nextRowGroup()){
+                String[] types = reader.getTypes();
+                int[] typeIndexes = reader.getTypeIndexes();
+                long[] inTimes = reader.getInTimes();
+                long[] priceCents = reader.getPriceCents();
+                for(int i = 0; i < reader.getRowCount(); i++){
+                    if(month == null || inTimes[i] < monthStart || inTimes[i] >= monthEnd || monthCents.length != types.length){
+                        addTo(centsByMonth, month, monthCents, types);
+                        month = YearMonth.from(Instant.ofEpochSecond(inTimes[i]).atZone(ZoneOffset.UTC));
+                        monthStart = month.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+                        monthEnd = month.plusMonths(1).atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+                        monthCents = new long[types.length];
+                    }
+                    monthCents[typeIndexes[i]] += priceCents[i];
+                }
+                //dictionaries are per row group, flush the running sums before the next one
+                addTo(centsByMonth, month, monthCents, types);
+                monthCents = new long[0];
+            }
+        }
+        Map<YearMonth, Map<String, Double>> revenue = new TreeMap<>();
+        for(Map.Entry<YearMonth, Map<String, Long>> entry : centsByMonth.entrySet()){
+            Map<String, Double> byType = new TreeMap<>();
+            for(Map.Entry<String, Long> cents : entry.getValue().entrySet()){
+                byType.put(cents.getKey(), cents.getValue() / 100.0);
+            }
+            revenue.put(entry.getKey(), byType);
+        }
+        return revenue;
+    }
+
+    /**
+    *count the tickets of one parking type per length-of-stay bucket
+    *
+    *@Param Path history file written by exportClosedTickets
+    *@Param String parking type name
+    *@Param int width of a bucket in minutes
+    *@Param int number of buckets, the last one also counts every longer stay
+    *@Return number of tickets per bucket
+    */
+    public long[] getLengthOfStayHistogram(Path file, String parkingType, int bucketMinutes, int bucketCount) throws IOException {
+        long[] histogram = new long[bucketCount];
+        long bucketSeconds = bucketMinutes * 60L;
+        try(InputStream in = Files.newInputStream(file);
+            ColumnarTicketReader reader = new ColumnarTicketReader(in, ColumnarTicketReader.TYPE | ColumnarTicketReader.STAY)){
+            while(reader.nextRowGroup()){
+                int typeIndex = indexOf(reader.getTypes(), parkingType);
+                if(typeIndex < 0){
+                    continue;
+                }
+                int[] typeIndexes = reader.getTypeIndexes();
+                long[] staySeconds = reader.getStaySeconds();
+                for(int i = 0; i < reader.getRowCount(); i++){
+                    if(typeIndexes[i] == typeIndex){
+                        histogram[(int) Math.min(bucketCount - 1, staySeconds[i] / bucketSeconds)]++;
+                    }
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private static void addTo(Map<YearMonth, Map<String, Long>> centsByMonth, YearMonth month, long[] monthCents, String[] types){
+        if(month == null){
+            return;
+        }
+        Map<String, Long> byType = centsByMonth.computeIfAbsent(month, m -> new HashMap<>());
+        for(int t = 0; t < monthCents.length; t++){
+            if(monthCents[t] != 0){
+                byType.merge(types[t], monthCents[t], Long::sum);
+            }
+        }
+    }
+
+    private static int indexOf(String[] values, String value){
+        for(int i = 0; i < values.length; i++){
+            if(values[i].equals(value)){
+                return i;
+            }
+        }
+        return -1;
+    }
+}
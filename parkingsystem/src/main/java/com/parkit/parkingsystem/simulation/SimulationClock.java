@@ -0,0 +1,53 @@
+package com.parkit.parkingsystem.simulation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock whose time only moves when told to, so days of traffic can be replayed in seconds.
+ */
+public class SimulationClock extends Clock {
+
+    private volatile Instant instant;
+    private final ZoneId zone;
+
+    public SimulationClock(Instant start){
+        this(start, ZoneOffset.UTC);
+    }
+
+    public SimulationClock(Instant start, ZoneId zone){
+        this.instant = start;
+        this.zone = zone;
+    }
+
+    public void advance(Duration duration){
+        instant = instant.plus(duration);
+    }
+
+    public void setInstant(Instant instant){
+        this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new SimulationClock(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+
+    @Override
+    public long millis() {
+        return instant.toEpochMilli();
+    }
+}
@@ -0,0 +1,106 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link TrafficSimulator} run.
+ */
+public class SimulationReport {
+
+    /** occupancy of every parking type at one simulated instant */
+    public static class OccupancySample {
+        private final Instant time;
+        private final Map<ParkingType, Integer> occupancy;
+
+        OccupancySample(Instant time, Map<ParkingType, Integer> occupancy){
+            this.time = time;
+            this.occupancy = occupancy;
+        }
+
+        public Instant getTime() {
+            return time;
+        }
+
+        public Map<ParkingType, Integer> getOccupancy() {
+            return occupancy;
+        }
+    }
+
+    private final Duration simulatedTime;
+    private final long wallTimeNanos;
+    private final int admitted;
+    private final int rejected;
+    private final int exited;
+    private final long[] entryLatencyNanos;
+    private final List<OccupancySample> occupancyCurve;
+
+    SimulationReport(Duration simulatedTime, long wallTimeNanos, int admitted, int rejected, int exited,
+                     long[] entryLatencyNanos, List<OccupancySample> occupancyCurve){
+        this.simulatedTime = simulatedTime;
+        this.wallTimeNanos = wallTimeNanos;
+        this.admitted = admitted;
+        this.rejected = rejected;
+        this.exited = exited;
+        this.entryLatencyNanos = entryLatencyNanos;
+        Arrays.sort(this.entryLatencyNanos);
+        this.occupancyCurve = Collections.unmodifiableList(new ArrayList<>(occupancyCurve));
+    }
+
+    public Duration getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    public int getAdmitted() {
+        return admitted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public int getExited() {
+        return exited;
+    }
+
+    /** gate operations (entries, rejections and exits) processed per second of wall time */
+    public double getThroughput() {
+        return wallTimeNanos == 0 ? 0 : (admitted + rejected + exited) * 1e9 / wallTimeNanos;
+    }
+
+    /**
+    *latency of the entry path, spot allocation included
+    *
+    *@Param double percentile between 0 and 100
+    *@Return latency in nanoseconds
+    */
+    public long getEntryLatencyPercentile(double percentile) {
+        if(entryLatencyNanos.length == 0){
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * entryLatencyNanos.length) - 1;
+        return entryLatencyNanos[Math.max(0, Math.min(entryLatencyNanos.length - 1, index))];
+    }
+
+    public List<OccupancySample> getOccupancyCurve() {
+        return occupancyCurve;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Simulated %s in %d ms: %d admitted, %d rejected, %d exited, %.0f ops/s, entry latency p50=%dus p99=%dus max=%dus",
+                simulatedTime, wallTimeNanos / 1_000_000, admitted, rejected, exited, getThroughput(),
+                getEntryLatencyPercentile(50) / 1000, getEntryLatencyPercentile(99) / 1000, getEntryLatencyPercentile(100) / 1000);
+    }
+}
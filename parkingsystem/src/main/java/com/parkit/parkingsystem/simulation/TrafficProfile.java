@@ -0,0 +1,70 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Arrival rate and length-of-stay mix of one parking type.
+ *
+ * Arrivals follow a Poisson process. The length of stay is drawn from a weighted mix of
+ * exponential distributions, e.g. 70% short visits around 40 minutes and 30% commuters around 9 hours.
+ */
+public class TrafficProfile {
+
+    private final ParkingType parkingType;
+    private final double arrivalsPerHour;
+    private final List<Double> stayWeights = new ArrayList<>();
+    private final List<Duration> stayMeans = new ArrayList<>();
+    private double totalWeight;
+
+    public TrafficProfile(ParkingType parkingType, double arrivalsPerHour){
+        if(arrivalsPerHour <= 0){
+            throw new IllegalArgumentException("Arrival rate must be positive");
+        }
+        this.parkingType = parkingType;
+        this.arrivalsPerHour = arrivalsPerHour;
+    }
+
+    public TrafficProfile addStay(double weight, Duration meanStay){
+        if(weight <= 0 || meanStay.isNegative() || meanStay.isZero()){
+            throw new IllegalArgumentException("Stay weight and mean must be positive");
+        }
+        stayWeights.add(weight);
+        stayMeans.add(meanStay);
+        totalWeight += weight;
+        return this;
+    }
+
+    public ParkingType getParkingType() {
+        return parkingType;
+    }
+
+    public double getArrivalsPerHour() {
+        return arrivalsPerHour;
+    }
+
+    long nextInterArrivalMillis(Random random){
+        return exponentialMillis(random, 3_600_000d / arrivalsPerHour);
+    }
+
+    long nextStayMillis(Random random){
+        if(stayMeans.isEmpty()){
+            throw new IllegalStateException("No length of stay configured for "+parkingType);
+        }
+        double pick = random.nextDouble() * totalWeight;
+        int i = 0;
+        while(i < stayWeights.size() - 1 && pick >= stayWeights.get(i)){
+            pick -= stayWeights.get(i);
+            i++;
+        }
+        return exponentialMillis(random, stayMeans.get(i).toMillis());
+    }
+
+    private static long exponentialMillis(Random random, double meanMillis){
+        return Math.max(1, Math.round(-Math.log(1 - random.nextDouble()) * meanMillis));
+    }
+}
@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.simulation;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Replays generated gate traffic against a {@link ParkingService} at accelerated time.
+ *
+ * The service must have been built with the same {@link SimulationClock}: the simulator jumps the
+ * clock from one arrival or departure to the next, so the tickets get realistic IN_TIME and OUT_TIME
+ * values and fares while the run only takes as long as the gate operations themselves.
+ */
+public class TrafficSimulator {
+
+    private static final Logger logger = LogManager.getLogger("TrafficSimulator");
+
+    private static final int ARRIVAL = 0;
+    private static final int DEPARTURE = 1;
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final int kind;
+        private final TrafficProfile profile;
+        private final String vehicleRegNumber;
+
+        Event(long time, int kind, TrafficProfile profile, String vehicleRegNumber){
+            this.time = time;
+            this.kind = kind;
+            this.profile = profile;
+            this.vehicleRegNumber = vehicleRegNumber;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            return time != other.time ? Long.compare(time, other.time) : Integer.compare(other.kind, kind);
+        }
+    }
+
+    private final ParkingService parkingService;
+    private final SimulationClock clock;
+    private final Random random;
+    private final List<TrafficProfile> profiles = new ArrayList<>();
+    private Duration sampleInterval = Duration.ofMinutes(15);
+
+    public TrafficSimulator(ParkingService parkingService, SimulationClock clock, long seed){
+        this.parkingService = parkingService;
+        this.clock = clock;
+        this.random = new Random(seed);
+    }
+
+    public TrafficSimulator addTraffic(TrafficProfile profile){
+        profiles.add(profile);
+        return this;
+    }
+
+    public TrafficSimulator setSampleInterval(Duration sampleInterval){
+        this.sampleInterval = sampleInterval;
+        return this;
+    }
+
+    /**
+    *simulate traffic from the current clock instant for the given duration
+    *
+    *@Param Duration simulated time to cover
+    *@Return throughput, entry latency and occupancy curve of the run
+    */
+    public SimulationReport run(Duration duration){
+        long start = clock.millis();
+        long end = start + duration.toMillis();
+        PriorityQueue<Event> events = new PriorityQueue<>();
+        for(TrafficProfile profile : profiles){
+            events.add(new Event(start + profile.nextInterArrivalMillis(random), ARRIVAL, profile, null));
+        }
+
+        Map<ParkingType, Integer> occupancy = new HashMap<>();
+        for(TrafficProfile profile : profiles){
+            occupancy.put(profile.getParkingType(), 0);
+        }
+        List<SimulationReport.OccupancySample> occupancyCurve = new ArrayList<>();
+        long nextSample = start;
+        long[] entryLatencies = new long[1024];
+        int entries = 0;
+        int admitted = 0;
+        int rejected = 0;
+        int exited = 0;
+        int vehicleCounter = 0;
+        long wallStart = System.nanoTime();
+
+        while(!events.isEmpty() && events.peek().time < end){
+            Event event = events.poll();
+            while(nextSample <= event.time){
+                clock.setInstant(Instant.ofEpochMilli(nextSample));
+                occupancyCurve.add(new SimulationReport.OccupancySample(clock.instant(), new HashMap<>(occupancy)));
+                nextSample += sampleInterval.toMillis();
+            }
+            clock.setInstant(Instant.ofEpochMilli(event.time));
+            ParkingType parkingType = event.profile.getParkingType();
+
+            if(event.kind == ARRIVAL){
+                events.add(new Event(event.time + event.profile.nextInterArrivalMillis(random), ARRIVAL, event.profile, null));
+                String vehicleRegNumber = String.format("SIM%07d", ++vehicleCounter % 10_000_000);
+                long callStart = System.nanoTime();
+                Ticket ticket = parkingService.enterVehicle(parkingType, vehicleRegNumber);
+                if(entries == entryLatencies.length){
+                    entryLatencies = Arrays.copyOf(entryLatencies, entries * 2);
+                }
+                entryLatencies[entries++] = System.nanoTime() - callStart;
+                if(ticket == null){
+                    rejected++;
+                }else{
+                    admitted++;
+                    occupancy.merge(parkingType, 1, Integer::sum);
+                    events.add(new Event(event.time + event.profile.nextStayMillis(random), DEPARTURE, event.profile, vehicleRegNumber));
+                }
+            }else{
+                if(parkingService.exitVehicle(event.vehicleRegNumber) != null){
+                    exited++;
+                    occupancy.merge(parkingType, -1, Integer::sum);
+                }
+            }
+        }
+        clock.setInstant(Instant.ofEpochMilli(end));
+
+        SimulationReport report = new SimulationReport(duration, System.nanoTime() - wallStart, admitted, rejected, exited,
+                Arrays.copyOf(entryLatencies, entries), occupancyCurve);
+        logger.info(report);
+        return report;
+    }
+}
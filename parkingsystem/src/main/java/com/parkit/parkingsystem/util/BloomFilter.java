@@ -0,0 +1,76 @@
+package com.parkit.parkingsystem.util;
+
+/**
+ * Set membership test without false negatives: mightContain is false for every string never put,
+ * except for about falsePositiveRate of them. The bit count is a power of two and the k positions of
+ * a string are derived from a single 64-bit hash (double hashing), so a test hashes the string once
+ * and reads at most k words. Not safe for a put concurrent with anything else: fill it, then publish it.
+ */
+public class BloomFilter {
+
+    private static final int MIN_BITS = 1024;
+    private static final int MAX_HASHES = 16;
+
+    private final long[] words;
+    private final long mask;
+    private final int hashes;
+
+    /**
+    *@Param int number of strings expected
+    *@Param double wanted rate of false positives once they are all in, between 0 and 1
+    */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate){
+        int n = Math.max(1, expectedInsertions);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(MIN_BITS, Long.highestOneBit(bits - 1) << 1);
+        this.words = new long[(int) (bits >>> 6)];
+        this.mask = bits - 1;
+        this.hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) bits / n * Math.log(2))));
+    }
+
+    public void put(String value){
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for(int i = 0; i < hashes; i++){
+            long bit = (h1 + i * h2) & mask;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String value){
+        long hash = hash(value);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for(int i = 0; i < hashes; i++){
+            long bit = (h1 + i * h2) & mask;
+            if((words[(int) (bit >>> 6)] & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount(){
+        return mask + 1;
+    }
+
+    public int getHashCount(){
+        return hashes;
+    }
+
+    /** FNV-1a over the chars, then the murmur3 finalizer so that close plates spread over the whole filter */
+    private static long hash(String value){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < value.length(); i++){
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,211 @@
+package com.parkit.parkingsystem.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the columnar history format written by {@link ColumnarTicketWriter}, one row group at a time.
+ *
+ * Only the columns requested in the constructor are decoded, the other blocks are skipped
+ * without being parsed. Arrays returned by the getters are reused between row groups.
+ */
+public class ColumnarTicketReader implements Closeable {
+
+    public static final int ID = 1;
+    public static final int TYPE = 2;
+    public static final int PLATE = 4;
+    public static final int IN_TIME = 8;
+    public static final int STAY = 16;
+    public static final int PRICE = 32;
+    public static final int ALL = ID | TYPE | PLATE | IN_TIME | STAY | PRICE;
+
+    private final DataInputStream in;
+    private final int columns;
+
+    private int rowCount;
+    private byte[] block = new byte[0];
+    private int position;
+    private int[] ids = new int[0];
+    private long[] inTimes = new long[0];
+    private long[] staySeconds = new long[0];
+    private long[] priceCents = new long[0];
+    private int[] typeIndexes = new int[0];
+    private int[] plateIndexes = new int[0];
+    private String[] types = new String[0];
+    private String[] plates = new String[0];
+
+    public ColumnarTicketReader(InputStream in, int columns) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.columns = columns;
+        if(this.in.readInt() != ColumnarTicketWriter.MAGIC){
+            throw new IOException("Not a ticket history file");
+        }
+        int version = this.in.readUnsignedByte();
+        if(version != ColumnarTicketWriter.VERSION){
+            throw new IOException("Unsupported ticket history version "+version);
+        }
+    }
+
+    /**
+    *decode the next row group
+    *
+    *@Return false once every row group has been read
+    */
+    public boolean nextRowGroup() throws IOException {
+        rowCount = (int) readVarLong(in);
+        if(rowCount == 0){
+            return false;
+        }
+        if(ids.length < rowCount){
+            ids = new int[rowCount];
+            inTimes = new long[rowCount];
+            staySeconds = new long[rowCount];
+            priceCents = new long[rowCount];
+            typeIndexes = new int[rowCount];
+            plateIndexes = new int[rowCount];
+        }
+
+        if(readBlock(ID)){
+            long previous = 0;
+            for(int i = 0; i < rowCount; i++){
+                previous += unZigZag(readVarLong());
+                ids[i] = (int) previous;
+            }
+        }
+        if(readBlock(TYPE)){
+            types = readDictionary(typeIndexes);
+        }
+        if(readBlock(PLATE)){
+            plates = readDictionary(plateIndexes);
+        }
+        if(readBlock(IN_TIME)){
+            long previous = 0;
+            for(int i = 0; i < rowCount; i++){
+                previous += unZigZag(readVarLong());
+                inTimes[i] = previous;
+            }
+        }
+        if(readBlock(STAY)){
+            for(int i = 0; i < rowCount; i++){
+                staySeconds[i] = readVarLong();
+            }
+        }
+        if(readBlock(PRICE)){
+            for(int i = 0; i < rowCount; i++){
+                priceCents[i] = unZigZag(readVarLong());
+            }
+        }
+        return true;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    /** IN_TIME of each row, in seconds since the epoch */
+    public long[] getInTimes() {
+        return inTimes;
+    }
+
+    public long[] getStaySeconds() {
+        return staySeconds;
+    }
+
+    public long[] getPriceCents() {
+        return priceCents;
+    }
+
+    public int[] getTypeIndexes() {
+        return typeIndexes;
+    }
+
+    public String[] getTypes() {
+        return types;
+    }
+
+    public int[] getPlateIndexes() {
+        return plateIndexes;
+    }
+
+    public String[] getPlates() {
+        return plates;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readBlock(int column) throws IOException {
+        int length = (int) readVarLong(in);
+        if((columns & column) == 0){
+            while(length > 0){
+                int skipped = in.skipBytes(length);
+                if(skipped == 0){
+                    throw new EOFException("Truncated ticket history file");
+                }
+                length -= skipped;
+            }
+            return false;
+        }
+        if(block.length < length){
+            block = new byte[length];
+        }
+        in.readFully(block, 0, length);
+        position = 0;
+        return true;
+    }
+
+    private String[] readDictionary(int[] indexes){
+        String[] values = new String[(int) readVarLong()];
+        for(int i = 0; i < values.length; i++){
+            int length = (int) readVarLong();
+            values[i] = new String(block, position, length, StandardCharsets.UTF_8);
+            position += length;
+        }
+        for(int i = 0; i < rowCount; i++){
+            indexes[i] = (int) readVarLong();
+        }
+        return values;
+    }
+
+    private long readVarLong(){
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = block[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if(b < 0){
+                throw new EOFException("Truncated ticket history file");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long unZigZag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
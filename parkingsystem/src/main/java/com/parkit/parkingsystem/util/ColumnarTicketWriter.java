@@ -0,0 +1,178 @@
+package com.parkit.parkingsystem.util;
+
+import com.parkit.parkingsystem.model.Ticket;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes closed tickets into the columnar history format read by {@link ColumnarTicketReader}.
+ *
+ * The file is a header followed by row groups of at most rowGroupSize tickets, so memory use
+ * does not depend on the number of tickets exported. Inside a row group every column is stored
+ * as a length-prefixed block: IDs and IN_TIME as zigzag varint deltas, plates and types as
+ * indexes into a per-group dictionary, the length of stay in seconds and PRICE as a fixed-point
+ * number of cents.
+ */
+public class ColumnarTicketWriter implements Closeable {
+
+    public static final int MAGIC = 0x504B5448;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_ROW_GROUP_SIZE = 8192;
+
+    private final DataOutputStream out;
+    private final int rowGroupSize;
+
+    private final int[] ids;
+    private final long[] inTimes;
+    private final long[] staySeconds;
+    private final long[] priceCents;
+    private final int[] typeIndexes;
+    private final int[] plateIndexes;
+    private final Map<String, Integer> typeDictionary = new HashMap<>();
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> plateDictionary = new HashMap<>();
+    private final List<String> plates = new ArrayList<>();
+    private final ByteArrayOutputStream column = new ByteArrayOutputStream();
+
+    private int size;
+    private long rowCount;
+
+    public ColumnarTicketWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    public ColumnarTicketWriter(OutputStream out, int rowGroupSize) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.rowGroupSize = rowGroupSize;
+        this.ids = new int[rowGroupSize];
+        this.inTimes = new long[rowGroupSize];
+        this.staySeconds = new long[rowGroupSize];
+        this.priceCents = new long[rowGroupSize];
+        this.typeIndexes = new int[rowGroupSize];
+        this.plateIndexes = new int[rowGroupSize];
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    public void write(Ticket ticket) throws IOException {
+        if(ticket.getOutTime() == null){
+            throw new IllegalArgumentException("Only closed tickets can be exported, ticket "+ticket.getId()+" is still open");
+        }
+        long inSeconds = ticket.getInTime().getTime() / 1000;
+        ids[size] = ticket.getId();
+        inTimes[size] = inSeconds;
+        staySeconds[size] = Math.max(0, ticket.getOutTime().getTime() / 1000 - inSeconds);
+        priceCents[size] = BigDecimal.valueOf(ticket.getPrice()).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        typeIndexes[size] = indexOf(ticket.getParkingSpot().getParkingType().toString(), typeDictionary, types);
+        plateIndexes[size] = indexOf(ticket.getVehicleRegNumber(), plateDictionary, plates);
+        size++;
+        rowCount++;
+        if(size == rowGroupSize){
+            flushRowGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushRowGroup();
+        writeVarLong(out, 0);
+        out.close();
+    }
+
+    private void flushRowGroup() throws IOException {
+        if(size == 0){
+            return;
+        }
+        writeVarLong(out, size);
+
+        long previous = 0;
+        for(int i = 0; i < size; i++){
+            writeVarLong(column, zigZag(ids[i] - previous));
+            previous = ids[i];
+        }
+        flushColumn();
+
+        writeDictionary(types, typeIndexes);
+        writeDictionary(plates, plateIndexes);
+
+        previous = 0;
+        for(int i = 0; i < size; i++){
+            writeVarLong(column, zigZag(inTimes[i] - previous));
+            previous = inTimes[i];
+        }
+        flushColumn();
+
+        for(int i = 0; i < size; i++){
+            writeVarLong(column, staySeconds[i]);
+        }
+        flushColumn();
+
+        for(int i = 0; i < size; i++){
+            writeVarLong(column, zigZag(priceCents[i]));
+        }
+        flushColumn();
+
+        size = 0;
+        typeDictionary.clear();
+        types.clear();
+        plateDictionary.clear();
+        plates.clear();
+    }
+
+    private void writeDictionary(List<String> values, int[] indexes) throws IOException {
+        writeVarLong(column, values.size());
+        for(String value : values){
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(column, bytes.length);
+            column.write(bytes);
+        }
+        for(int i = 0; i < size; i++){
+            writeVarLong(column, indexes[i]);
+        }
+        flushColumn();
+    }
+
+    private void flushColumn() throws IOException {
+        writeVarLong(out, column.size());
+        column.writeTo(out);
+        column.reset();
+    }
+
+    private static int indexOf(String value, Map<String, Integer> dictionary, List<String> values){
+        Integer index = dictionary.get(value);
+        if(index == null){
+            index = values.size();
+            dictionary.put(value, index);
+            values.add(value);
+        }
+        return index;
+    }
+
+    private static long zigZag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0){
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
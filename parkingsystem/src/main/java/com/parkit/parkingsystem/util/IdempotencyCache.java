@@ -0,0 +1,101 @@
+package com.parkit.parkingsystem.util;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of recent requests by idempotency key, for a limited time and up to a
+ * limited number of keys. A request repeated with the same key gets the first result back without
+ * being executed again; if the first one is still running the repeat waits for it.
+ * A null result is not remembered, so a request that did nothing can be retried.
+ */
+public class IdempotencyCache<V> {
+
+    private static class Entry<V> {
+        private final long createdAt;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        Entry(long createdAt){
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+    //insertion order is also age order, the oldest keys are always first
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>();
+    private long hits;
+
+    public IdempotencyCache(int maxEntries, long ttlMillis, Clock clock){
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+    *execute a request unless a request with the same key was executed recently
+    *
+    *@Param String idempotency key, null to always execute
+    *@Param Supplier the request
+    *@Return the result of the request, or of its first execution
+    */
+    public V execute(String key, Supplier<V> request){
+        if(key == null){
+            return request.get();
+        }
+        Entry<V> entry;
+        boolean first = false;
+        synchronized (this){
+            long now = clock.millis();
+            evict(now);
+            entry = entries.get(key);
+            if(entry == null){
+                entry = new Entry<>(now);
+                entries.put(key, entry);
+                first = true;
+            }else{
+                hits++;
+            }
+        }
+        if(!first){
+            return entry.result.join();
+        }
+        V value = null;
+        try {
+            value = request.get();
+        } finally {
+            if(value == null){
+                synchronized (this){
+                    entries.remove(key, entry);
+                }
+            }
+            entry.result.complete(value);
+        }
+        return value;
+    }
+
+    private void evict(long now){
+        Iterator<Map.Entry<String, Entry<V>>> iterator = entries.entrySet().iterator();
+        while(iterator.hasNext()){
+            Entry<V> eldest = iterator.next().getValue();
+            if(entries.size() < maxEntries && now - eldest.createdAt < ttlMillis){
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /** number of requests answered from the cache */
+    public synchronized long getHits(){
+        return hits;
+    }
+}
@@ -1,5 +1,6 @@
 package com.parkit.parkingsystem.util;
 
+import com.parkit.parkingsystem.constants.DBConstants;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -24,7 +25,7 @@ public class InputReaderUtil {
     public String readVehicleRegistrationNumber() throws Exception {
         try {
             String vehicleRegNumber= scan.nextLine();
-            if(vehicleRegNumber == null || vehicleRegNumber.trim().length()==0) {
+            if(!isValidVehicleRegNumber(vehicleRegNumber)) {
                 throw new IllegalArgumentException("Invalid input provided");
             }
             return vehicleRegNumber;
@@ -35,5 +36,16 @@ public class InputReaderUtil {
         }
     }
 
+    /**
+    *check a registration number before any ticket is built for it
+    *
+    *@Param String vehicle identification, typed or read by a camera
+    *@Return false if it is blank or does not fit the VEHICLE_REG_NUMBER columns
+    */
+    public static boolean isValidVehicleRegNumber(String vehicleRegNumber){
+        return vehicleRegNumber != null && vehicleRegNumber.trim().length() > 0
+                && vehicleRegNumber.length() <= DBConstants.VEHICLE_REG_NUMBER_MAX_LENGTH;
+    }
+
 
 }
@@ -0,0 +1,123 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Mutual exclusion lock that measures its own contention: how long callers waited for
+ * it, how long they held it and how many were queued at once.
+ */
+public class InstrumentedLock {
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private long acquiredAt;
+
+    public InstrumentedLock(String name){
+        this.name = name;
+    }
+
+    /**
+    *run an action while holding the lock
+    *
+    *@Param Supplier the action
+    *@Return the result of the action
+    */
+    public <T> T call(Supplier<T> action){
+        lock();
+        try {
+            return action.get();
+        } finally {
+            unlock();
+        }
+    }
+
+    public void lock(){
+        if(lock.tryLock()){
+            acquired(0);
+            return;
+        }
+        int depth = waiting.incrementAndGet();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        long start = System.nanoTime();
+        lock.lock();
+        waiting.decrementAndGet();
+        contendedAcquisitions.increment();
+        acquired(System.nanoTime() - start);
+    }
+
+    private void acquired(long waited){
+        if(lock.getHoldCount() > 1){
+            return;
+        }
+        acquisitions.increment();
+        if(waited > 0){
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+        acquiredAt = System.nanoTime();
+    }
+
+    public void unlock(){
+        if(lock.getHoldCount() == 1){
+            holdNanos.add(System.nanoTime() - acquiredAt);
+        }
+        lock.unlock();
+    }
+
+    public boolean isHeldByCurrentThread(){
+        return lock.isHeldByCurrentThread();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /** acquisitions that had to wait because another thread held the lock */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getHoldNanos() {
+        return holdNanos.sum();
+    }
+
+    /** threads waiting for the lock right now */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = Math.max(1, getAcquisitions());
+        return name+": acquisitions="+getAcquisitions()+", contended="+getContendedAcquisitions()
+                +", avgWaitMicros="+getWaitNanos() / count / 1000+", maxWaitMicros="+getMaxWaitNanos() / 1000
+                +", avgHoldMicros="+getHoldNanos() / count / 1000+", maxQueueDepth="+getMaxQueueDepth();
+    }
+}
@@ -0,0 +1,156 @@
+package com.parkit.parkingsystem.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical hashed timer wheel: LEVELS wheels of SLOTS slots, a slot of level l spanning
+ * SLOTS^l ticks. A timer goes to the lowest level whose span covers its delay; each time the wheel
+ * below completes a turn, the next slot of the level above is emptied into the lower levels. Adding
+ * and cancelling a timer are O(1) list operations, and a tick only touches the slots it reaches.
+ *
+ * Not thread-safe, the owner serializes schedule, cancel and advance.
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    /**
+    * A scheduled timer, linked in the slot it waits in.
+    */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long tick;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long tick){
+            this.payload = payload;
+            this.tick = tick;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        /** true until the timer expires or is cancelled */
+        public boolean isPending() {
+            return next != null;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    //one circular list per slot, headed by a sentinel
+    private final List<List<Timeout<T>>> wheels = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    /**
+    *@Param long duration of a tick, the precision of the timers
+    *@Param long time of tick 0
+    */
+    public TimerWheel(long tickMillis, long startMillis){
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        for(int level = 0; level < LEVELS; level++){
+            List<Timeout<T>> slots = new ArrayList<>(SLOTS);
+            for(int slot = 0; slot < SLOTS; slot++){
+                Timeout<T> sentinel = new Timeout<>(null, -1);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                slots.add(sentinel);
+            }
+            wheels.add(slots);
+        }
+    }
+
+    /**
+    *@Param T value given back by advance once the deadline is reached
+    *@Param long deadline, a past one expires at the next tick
+    *@Return the timer, to cancel it
+    */
+    public Timeout<T> schedule(T payload, long deadlineMillis){
+        long tick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        Timeout<T> timeout = new Timeout<>(payload, Math.max(currentTick + 1, tick));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+    *@Return false if the timer had already expired or was cancelled
+    */
+    public boolean cancel(Timeout<T> timeout){
+        if(!timeout.isPending()){
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+    *move the wheel up to a time and take the timers expired on the way
+    *
+    *@Param long current time
+    *@Return payloads of the expired timers, by deadline
+    */
+    public List<T> advance(long nowMillis){
+        long target = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<T> expired = new ArrayList<>();
+        while(currentTick < target){
+            currentTick++;
+            //a lower wheel completing its turn empties the next slot of the level above
+            for(int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++){
+                Timeout<T> sentinel = wheels.get(level).get((int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                while(sentinel.next != sentinel){
+                    Timeout<T> timeout = sentinel.next;
+                    unlink(timeout);
+                    place(timeout);
+                }
+            }
+            Timeout<T> sentinel = wheels.get(0).get((int) currentTick & SLOT_MASK);
+            while(sentinel.next != sentinel){
+                Timeout<T> timeout = sentinel.next;
+                unlink(timeout);
+                size--;
+                expired.add(timeout.payload);
+            }
+        }
+        return expired;
+    }
+
+    /** number of pending timers */
+    public int size(){
+        return size;
+    }
+
+    private void place(Timeout<T> timeout){
+        long delay = timeout.tick - currentTick;
+        int level = 0;
+        while(level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))){
+            level++;
+        }
+        long slotTick = timeout.tick;
+        if(delay >= 1L << (SLOT_BITS * LEVELS)){
+            //beyond the top wheel: park it in the last slot to be emptied, it is placed again from there
+            slotTick = currentTick + (SLOT_MASK << (SLOT_BITS * level));
+        }
+        Timeout<T> sentinel = wheels.get(level).get((int) (slotTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        timeout.previous = sentinel.previous;
+        timeout.next = sentinel;
+        sentinel.previous.next = timeout;
+        sentinel.previous = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout){
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+        timeout.previous = null;
+        timeout.next = null;
+    }
+}
@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.AccessListDAO;
+import com.parkit.parkingsystem.model.AccessListEntry;
+import com.parkit.parkingsystem.service.AccessList;
+import com.parkit.parkingsystem.service.AccessListService;
+import com.parkit.parkingsystem.util.BloomFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+@ExtendWith(MockitoExtension.class)
+public class AccessListTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Mock
+    private static AccessListDAO accessListDAO;
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Clock clock;
+
+    private static AccessListEntry entry(int id, String vehicleRegNumber, Long validUntil){
+        return new AccessListEntry(id, vehicleRegNumber, validUntil == null ? null : new Date(validUntil));
+    }
+
+    @Test
+    public void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        BloomFilter bloomFilter = new BloomFilter(10000, 0.01);
+        for(int i = 0; i < 10000; i++){
+            bloomFilter.put("PASS-"+i);
+        }
+
+        int falsePositives = 0;
+        for(int i = 0; i < 10000; i++){
+            assertTrue(bloomFilter.mightContain("PASS-"+i));
+            if(bloomFilter.mightContain("VISIT-"+i)){
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 200, falsePositives+" false positives");
+    }
+
+    @Test
+    public void unlistedPlatesAreTurnedAwayByTheFilter() {
+        when(clock.millis()).thenReturn(NOW);
+        AccessList accessList = new AccessList("season passes", 0.01, clock);
+        accessList.apply(Arrays.asList(entry(1, "PASS-1", NOW + 1000), entry(2, "PASS-2", null)));
+
+        assertTrue(accessList.contains("PASS-1"));
+        assertTrue(accessList.contains("PASS-2"));
+        for(int i = 0; i < 100; i++){
+            assertFalse(accessList.contains("VISIT-"+i));
+        }
+
+        assertEquals(102, accessList.getLookups());
+        assertTrue(accessList.getExactLookups() < 10);
+        assertEquals(accessList.getExactLookups() - 2, accessList.getFalsePositives());
+        assertEquals(2, accessList.getHighWaterId());
+    }
+
+    @Test
+    public void theLatestRowOfAPlateWinsAndEntriesExpire() {
+        when(clock.millis()).thenReturn(NOW);
+        AccessList accessList = new AccessList("blocklist", 0.01, clock);
+        accessList.apply(Arrays.asList(entry(1, "BLOCK-1", null), entry(2, "BLOCK-2", NOW + 1000)));
+
+        accessList.apply(Collections.singletonList(entry(3, "BLOCK-1", NOW - 1)));
+
+        assertFalse(accessList.contains("BLOCK-1"));
+        assertTrue(accessList.contains("BLOCK-2"));
+        when(clock.millis()).thenReturn(NOW + 1000);
+        assertFalse(accessList.contains("BLOCK-2"));
+        assertEquals(0, accessList.apply(Collections.emptyList()));
+        assertEquals(0, accessList.size());
+    }
+
+    @Test
+    public void refreshReadsOnlyTheRowsAddedSinceByPage() {
+        accessListDAO.dataBaseConfig = dataBaseConfig;
+        when(clock.millis()).thenReturn(NOW);
+        when(accessListDAO.getSeasonPassesAfter(0, 2)).thenReturn(Arrays.asList(entry(1, "PASS-1", NOW + 1000), entry(2, "PASS-2", NOW + 1000)));
+        when(accessListDAO.getSeasonPassesAfter(2, 2)).thenReturn(Collections.singletonList(entry(3, "PASS-3", NOW + 1000)));
+        when(accessListDAO.getSeasonPassesAfter(3, 2)).thenReturn(Collections.singletonList(entry(4, "PASS-2", NOW - 1)));
+        when(accessListDAO.getBlocklistAfter(0, 2)).thenReturn(Collections.singletonList(entry(1, "BLOCK-1", null)));
+        when(accessListDAO.getBlocklistAfter(1, 2)).thenReturn(null);
+        AccessListService accessListService = new AccessListService(accessListDAO, 2, 0.01, clock);
+
+        assertTrue(accessListService.refresh());
+        assertTrue(accessListService.hasSeasonPass("PASS-2"));
+        assertTrue(accessListService.isBlocked("BLOCK-1"));
+        assertFalse(accessListService.refresh());
+
+        assertFalse(accessListService.hasSeasonPass("PASS-2"));
+        assertTrue(accessListService.hasSeasonPass("PASS-3"));
+        assertFalse(accessListService.isBlocked("PASS-3"));
+        assertTrue(accessListService.isBlocked("BLOCK-1"));
+        verify(accessListDAO).getSeasonPassesAfter(0, 2);
+        verify(accessListDAO).getSeasonPassesAfter(2, 2);
+    }
+
+    @Test
+    public void refreshIsSkippedInDegradedMode() {
+        accessListDAO.dataBaseConfig = dataBaseConfig;
+        when(dataBaseConfig.isDegraded()).thenReturn(true);
+        AccessListService accessListService = new AccessListService(accessListDAO, 2, 0.01, clock);
+
+        assertFalse(accessListService.refresh());
+
+        verify(accessListDAO, never()).getSeasonPassesAfter(anyInt(), anyInt());
+    }
+}
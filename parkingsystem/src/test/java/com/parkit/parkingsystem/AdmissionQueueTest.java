@@ -0,0 +1,91 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.AdmissionQueue;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionQueueTest {
+
+    private static Ticket ticket(String vehicleRegNumber){
+        Ticket ticket = new Ticket();
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        return ticket;
+    }
+
+    @Test
+    public void claimNextServesEachTypeInArrivalOrder() {
+        AdmissionQueue admissionQueue = new AdmissionQueue(10, 60000, Clock.systemDefaultZone());
+        CompletableFuture<Ticket> first = admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null);
+        admissionQueue.enqueue(ParkingType.BIKE, "BIKE-1", null);
+        admissionQueue.enqueue(ParkingType.CAR, "CAR-2", null);
+
+        AdmissionQueue.Waiter waiter = admissionQueue.claimNext(ParkingType.CAR);
+        assertEquals("CAR-1", waiter.getVehicleRegNumber());
+        assertFalse(first.isDone());
+        Ticket ticket = ticket("CAR-1");
+        admissionQueue.complete(waiter, ticket);
+
+        assertSame(ticket, first.getNow(null));
+        assertEquals("CAR-2", admissionQueue.claimNext(ParkingType.CAR).getVehicleRegNumber());
+        assertNull(admissionQueue.claimNext(ParkingType.CAR));
+        assertEquals(1, admissionQueue.getQueueLength(ParkingType.BIKE));
+        assertEquals(1, admissionQueue.getAdmitted());
+    }
+
+    @Test
+    public void enqueueGivesBackTheSameFutureToARetryAndRefusesBeyondCapacity() {
+        AdmissionQueue admissionQueue = new AdmissionQueue(1, 60000, Clock.systemDefaultZone());
+        CompletableFuture<Ticket> waiting = admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null);
+
+        assertSame(waiting, admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null));
+        CompletableFuture<Ticket> refused = admissionQueue.enqueue(ParkingType.CAR, "CAR-2", null);
+
+        assertTrue(refused.isDone());
+        assertNull(refused.getNow(null));
+        assertEquals(1, admissionQueue.getRefused());
+        assertEquals(1, admissionQueue.getQueueLength());
+    }
+
+    @Test
+    public void aWaiterIsTurnedAwayAfterItsTimeout() throws Exception {
+        AdmissionQueue admissionQueue = new AdmissionQueue(10, 50, Clock.systemDefaultZone());
+        CompletableFuture<Ticket> waiting = admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null);
+
+        assertNull(waiting.get(5, TimeUnit.SECONDS));
+
+        assertNull(admissionQueue.claimNext(ParkingType.CAR));
+        assertEquals(1, admissionQueue.getTimedOut());
+        assertEquals(0, admissionQueue.getQueueLength());
+    }
+
+    @Test
+    public void aCancelledWaitIsSkipped() {
+        AdmissionQueue admissionQueue = new AdmissionQueue(10, 60000, Clock.systemDefaultZone());
+        admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null).cancel(false);
+        admissionQueue.enqueue(ParkingType.CAR, "CAR-2", null);
+
+        assertEquals("CAR-2", admissionQueue.claimNext(ParkingType.CAR).getVehicleRegNumber());
+    }
+
+    @Test
+    public void completeReportsAWaiterCancelledAfterItsClaim() {
+        AdmissionQueue admissionQueue = new AdmissionQueue(10, 60000, Clock.systemDefaultZone());
+        CompletableFuture<Ticket> waiting = admissionQueue.enqueue(ParkingType.CAR, "CAR-1", null);
+        AdmissionQueue.Waiter waiter = admissionQueue.claimNext(ParkingType.CAR);
+        waiting.cancel(false);
+
+        assertFalse(admissionQueue.complete(waiter, ticket("CAR-1")));
+        assertEquals(0, admissionQueue.getAdmitted());
+        assertEquals(0, admissionQueue.getAverageWaitMillis());
+        assertEquals(0, admissionQueue.getMaxWaitMillis());
+    }
+}
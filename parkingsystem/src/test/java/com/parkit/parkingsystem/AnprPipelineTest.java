@@ -0,0 +1,139 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.anpr.AnprPipeline;
+import com.parkit.parkingsystem.anpr.FilePlateReadSource;
+import com.parkit.parkingsystem.anpr.GateCommand;
+import com.parkit.parkingsystem.anpr.PlateRead;
+import com.parkit.parkingsystem.anpr.PlateReadDeduplicator;
+import com.parkit.parkingsystem.anpr.StageMetrics;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+public class AnprPipelineTest {
+
+    private static final long T0 = 1_767_261_600_000L;
+
+    @Mock
+    private ParkingService parkingService;
+
+    private static PlateRead entry(long offsetMillis, String plate, double confidence){
+        return new PlateRead(T0 + offsetMillis, "gate-1", PlateRead.Direction.ENTRY, plate, confidence, ParkingType.CAR);
+    }
+
+    private static PlateRead exit(long offsetMillis, String plate){
+        return new PlateRead(T0 + offsetMillis, "gate-2", PlateRead.Direction.EXIT, plate, 0.99, ParkingType.CAR);
+    }
+
+    @Test
+    public void deduplicatorCoalescesBurstsAndDropsLowConfidenceReads() {
+        PlateReadDeduplicator deduplicator = new PlateReadDeduplicator(30_000, 0.8);
+
+        List<GateCommand> commands = deduplicator.process(Arrays.asList(
+                entry(0, "AAA", 0.95), entry(1_000, "AAA", 0.97), entry(2_000, "AA4", 0.4),
+                entry(20_000, "AAA", 0.9), entry(45_000, "AAA", 0.9),
+                exit(46_000, "AAA"), entry(90_000, "AAA", 0.9), entry(91_000, "BBB", 0.9)));
+
+        assertEquals(Arrays.asList("anpr-ENTRY-AAA-"+T0, "anpr-EXIT-AAA-"+(T0 + 46_000),
+                "anpr-ENTRY-AAA-"+(T0 + 90_000), "anpr-ENTRY-BBB-"+(T0 + 91_000)), requestKeys(commands));
+        assertEquals(3, deduplicator.getDuplicates());
+        assertEquals(1, deduplicator.getLowConfidence());
+        //the window is kept across batches, older plates are forgotten
+        assertTrue(deduplicator.process(Arrays.asList(entry(95_000, "BBB", 0.9))).isEmpty());
+        assertEquals(2, deduplicator.size());
+    }
+
+    private static List<String> requestKeys(List<GateCommand> commands){
+        List<String> keys = new ArrayList<>();
+        for(GateCommand command : commands){
+            keys.add(command.getRequestKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void pipelineDrivesTheParkingServiceAndCountsEveryStage() throws Exception {
+        when(parkingService.enterVehicle(anyString(), eq(ParkingType.CAR), anyString())).thenReturn(new Ticket());
+        when(parkingService.exitVehicle(anyString(), eq("AAA"))).thenReturn(new Ticket());
+        AnprPipeline pipeline = new AnprPipeline(parkingService, new PlateReadDeduplicator(30_000, 0.8), 100, 10);
+        pipeline.start();
+        try {
+            List<PlateRead> reads = new ArrayList<>();
+            for(int i = 0; i < 20; i++){
+                reads.add(entry(i * 100, "AAA", 0.9));
+                reads.add(entry(i * 100, "P"+i, 0.9));
+            }
+            reads.add(exit(60_000, "AAA"));
+            reads.add(exit(60_500, "AAA"));
+            pipeline.submit(reads);
+
+            assertTrue(pipeline.awaitIdle(5_000));
+        } finally {
+            pipeline.stop();
+        }
+
+        verify(parkingService).enterVehicle("anpr-ENTRY-AAA-"+T0, ParkingType.CAR, "AAA");
+        verify(parkingService, times(21)).enterVehicle(anyString(), eq(ParkingType.CAR), anyString());
+        verify(parkingService).exitVehicle("anpr-EXIT-AAA-"+(T0 + 60_000), "AAA");
+        assertEquals(21, pipeline.getEntries());
+        assertEquals(1, pipeline.getExits());
+        assertEquals(0, pipeline.getRejected());
+        List<StageMetrics> stages = pipeline.getStageMetrics();
+        assertEquals(42, stages.get(0).getEvents());
+        assertEquals(42, stages.get(1).getEvents());
+        assertEquals(22, stages.get(2).getEvents());
+    }
+
+    @Test
+    public void offerGivesUpOnceTheIntakeStaysFull() throws Exception {
+        AnprPipeline pipeline = new AnprPipeline(parkingService, new PlateReadDeduplicator(), 2, 10);
+
+        int accepted = pipeline.offer(Arrays.asList(entry(0, "AAA", 0.9), entry(0, "BBB", 0.9), entry(0, "CCC", 0.9)), 50);
+
+        assertEquals(2, accepted);
+        assertFalse(pipeline.awaitIdle(10));
+        verifyNoInteractions(parkingService);
+    }
+
+    @Test
+    public void fileSourceReplaysValidLinesInBatches(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("reads.csv");
+        Files.write(file, Arrays.asList(
+                "# time,camera,direction,plate,confidence,type",
+                T0+",gate-1,ENTRY,AAA,0.97,1",
+                T0+",gate-1,ENTRY,BBB,0.91,2",
+                "garbage",
+                T0+",gate-1,SIDEWAYS,CCC,0.9,1",
+                "",
+                (T0 + 5000)+",gate-2,EXIT,AAA,0.99,1"), StandardCharsets.UTF_8);
+        when(parkingService.enterVehicle(anyString(), any(ParkingType.class), anyString())).thenReturn(new Ticket());
+        when(parkingService.exitVehicle(anyString(), anyString())).thenReturn(new Ticket());
+        AnprPipeline pipeline = new AnprPipeline(parkingService, new PlateReadDeduplicator(), 100, 2);
+        pipeline.start();
+        try {
+            assertEquals(3, new FilePlateReadSource(file, 2).replay(pipeline));
+            assertTrue(pipeline.awaitIdle(5_000));
+        } finally {
+            pipeline.stop();
+        }
+
+        verify(parkingService).enterVehicle("anpr-ENTRY-BBB-"+T0, ParkingType.BIKE, "BBB");
+        verify(parkingService).exitVehicle("anpr-EXIT-AAA-"+(T0 + 5000), "AAA");
+    }
+}
@@ -0,0 +1,71 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.CircuitBreaker;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class CircuitBreakerTest {
+
+    private SimulationClock clock;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        clock = new SimulationClock(Instant.parse("2023-06-01T08:00:00Z"));
+        circuitBreaker = new CircuitBreaker(3, 10_000, clock);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailuresOnly() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterTheOpenPeriod() {
+        for(int i = 0; i < 3; i++){
+            circuitBreaker.recordFailure();
+        }
+        clock.advance(Duration.ofSeconds(10));
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void failedProbeOpensTheCircuitAgain() {
+        for(int i = 0; i < 3; i++){
+            circuitBreaker.recordFailure();
+        }
+        clock.advance(Duration.ofSeconds(10));
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        clock.advance(Duration.ofSeconds(9));
+        assertFalse(circuitBreaker.allowRequest());
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(circuitBreaker.allowRequest());
+    }
+}
@@ -0,0 +1,61 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.DataBaseSettings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Properties;
+
+public class DataBaseConfigTest {
+
+    private static Connection connection(boolean valid) throws SQLException {
+        Connection con = mock(Connection.class);
+        when(con.getAutoCommit()).thenReturn(true);
+        lenient().when(con.isValid(anyInt())).thenReturn(valid);
+        return con;
+    }
+
+    private static DataBaseConfig dataBaseConfig(Connection... connections){
+        Deque<Connection> created = new ArrayDeque<>(Arrays.asList(connections));
+        return new DataBaseConfig(new DataBaseSettings("jdbc:h2:mem:DataBaseConfigTest", "sa", "", "org.h2.Driver",
+                2, 0, 100, new Properties())){
+            @Override
+            protected Connection createConnection(){
+                return created.poll();
+            }
+        };
+    }
+
+    @Test
+    public void anIdleConnectionThatIsNoLongerValidIsReplaced() throws Exception {
+        Connection dropped = connection(false);
+        Connection fresh = connection(true);
+        DataBaseConfig dataBaseConfig = dataBaseConfig(dropped, fresh);
+        dataBaseConfig.setValidateAfterIdleMillis(0);
+        dataBaseConfig.closeConnection(dataBaseConfig.getConnection());
+
+        Connection con = dataBaseConfig.getConnection();
+
+        assertSame(fresh, con);
+        verify(dropped).close();
+    }
+
+    @Test
+    public void aConnectionReturnedRecentlyIsLentWithoutCheck() throws Exception {
+        Connection pooled = connection(true);
+        DataBaseConfig dataBaseConfig = dataBaseConfig(pooled);
+        dataBaseConfig.closeConnection(dataBaseConfig.getConnection());
+
+        assertSame(pooled, dataBaseConfig.getConnection());
+        verify(pooled, never()).isValid(anyInt());
+    }
+}
@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.ConfigLoader;
+import com.parkit.parkingsystem.config.DataBaseSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+public class DataBaseSettingsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void defaultsComeFromTheClasspathFile() {
+        DataBaseSettings settings = DataBaseSettings.fromProperties(ConfigLoader.load(Collections.emptyMap(), new Properties()), "db");
+
+        assertEquals("jdbc:mysql://localhost:3306/prod", settings.getUrl());
+        assertEquals(10, settings.getPoolSize());
+        assertEquals(5, settings.getMinIdle());
+        Properties connectionProperties = settings.getConnectionProperties();
+        assertEquals("true", connectionProperties.getProperty("rewriteBatchedStatements"));
+        assertEquals("true", connectionProperties.getProperty("tcpKeepAlive"));
+        assertEquals("root", connectionProperties.getProperty("user"));
+        assertEquals("codio", connectionProperties.getProperty("password"));
+    }
+
+    @Test
+    public void fileThenEnvironmentThenSystemPropertiesOverrideTheDefaults() throws Exception {
+        Path file = tempDir.resolve("site.properties");
+        Files.write(file, "db.url=jdbc:mysql://db-host:3306/prod\ndb.pool.size=20\ndb.driver.socketTimeout=30000\n".getBytes());
+        Map<String, String> environment = new HashMap<>();
+        environment.put("PARKIT_CONFIG", file.toString());
+        environment.put("PARKIT_DB_PASSWORD", "secret");
+        environment.put("PARKIT_DB_POOL_SIZE", "30");
+        Properties systemProperties = new Properties();
+        systemProperties.setProperty("parkit.db.pool.size", "40");
+        systemProperties.setProperty("parkit.db.driver.useServerPrepStmts", "true");
+
+        DataBaseSettings settings = DataBaseSettings.fromProperties(ConfigLoader.load(environment, systemProperties), "db");
+
+        assertEquals("jdbc:mysql://db-host:3306/prod", settings.getUrl());
+        assertEquals("secret", settings.getPassword());
+        assertEquals(40, settings.getPoolSize());
+        assertEquals("30000", settings.getConnectionProperties().getProperty("socketTimeout"));
+        assertEquals("true", settings.getConnectionProperties().getProperty("useServerPrepStmts"));
+    }
+
+    @Test
+    public void invalidPoolSizeIsRejected() {
+        Properties properties = new Properties();
+        properties.setProperty("db.url", "jdbc:h2:mem:x");
+        properties.setProperty("db.pool.size", "ten");
+
+        assertThrows(IllegalArgumentException.class, () -> DataBaseSettings.fromProperties(properties, "db"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.DemandStatistics;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class DemandStatisticsTest {
+
+    private static final ZonedDateTime DAY = ZonedDateTime.of(2026, 3, 2, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static Ticket closedTicket(int id, ParkingType parkingType, int day, int hour, int dwellHours){
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setParkingSpot(new ParkingSpot(1, parkingType, true));
+        ZonedDateTime inTime = DAY.plusDays(day).plusHours(hour);
+        ticket.setInTime(Date.from(inTime.toInstant()));
+        ticket.setOutTime(Date.from(inTime.plusHours(dwellHours).plusMinutes(10).toInstant()));
+        return ticket;
+    }
+
+    private static Date at(int hour){
+        return Date.from(DAY.plusDays(30).plusHours(hour).toInstant());
+    }
+
+    private static DemandStatistics morningPeak(DemandStatistics demandStatistics, int days){
+        int id = 0;
+        for(int day = 0; day < days; day++){
+            for(int i = 0; i < 8; i++){
+                demandStatistics.recordClosedTicket(closedTicket(++id, ParkingType.CAR, day, 8, 1));
+            }
+            demandStatistics.recordClosedTicket(closedTicket(++id, ParkingType.CAR, day, 20, 1));
+        }
+        return demandStatistics;
+    }
+
+    @Test
+    public void busyHoursCostMoreThanQuietHoursWithinBounds() {
+        DemandStatistics demandStatistics = morningPeak(new DemandStatistics(0.5, 0.8, 1.5,
+                TimeUnit.DAYS.toMillis(28), 10, ZoneOffset.UTC), 20);
+
+        double peak = demandStatistics.getMultiplier(ParkingType.CAR, at(8));
+        double evening = demandStatistics.getMultiplier(ParkingType.CAR, at(20));
+        double night = demandStatistics.getMultiplier(ParkingType.CAR, at(3));
+        assertEquals(1.5, peak, 0.0001);
+        assertTrue(evening > night);
+        assertEquals(0.8, night, 0.0001);
+        assertEquals(1.0, demandStatistics.getMultiplier(ParkingType.BIKE, at(8)));
+
+        double[] forecast = demandStatistics.getOccupancyForecast(ParkingType.CAR);
+        //the morning vehicles stay a bit more than an hour
+        assertEquals(forecast[8], forecast[9], 0.0001);
+        assertEquals(0, forecast[10], 0.0001);
+        assertEquals(0, forecast[3], 0.0001);
+    }
+
+    @Test
+    public void multiplierStaysNeutralUntilEnoughSamples() {
+        DemandStatistics demandStatistics = morningPeak(new DemandStatistics(0.5, 0.8, 1.5,
+                TimeUnit.DAYS.toMillis(28), 1000, ZoneOffset.UTC), 20);
+
+        assertEquals(1.0, demandStatistics.getMultiplier(ParkingType.CAR, at(8)));
+        assertNotNull(demandStatistics.getOccupancyForecast(ParkingType.CAR));
+    }
+
+    @Test
+    public void recentTicketsOutweighOldOnes() {
+        DemandStatistics demandStatistics = new DemandStatistics(1, 0, 10, TimeUnit.DAYS.toMillis(1), 1, ZoneOffset.UTC);
+        int id = 0;
+        for(int i = 0; i < 50; i++){
+            demandStatistics.recordClosedTicket(closedTicket(++id, ParkingType.CAR, 0, 8, 0));
+        }
+        for(int i = 0; i < 50; i++){
+            demandStatistics.recordClosedTicket(closedTicket(++id, ParkingType.CAR, 10, 18, 0));
+        }
+
+        assertTrue(demandStatistics.getMultiplier(ParkingType.CAR, at(18)) > 20 * demandStatistics.getMultiplier(ParkingType.CAR, at(8)));
+    }
+
+    @Test
+    public void fareUsesTheMultiplierOfTheArrivalHour() {
+        DemandStatistics demandStatistics = morningPeak(new DemandStatistics(0.5, 0.8, 1.5,
+                TimeUnit.DAYS.toMillis(28), 10, ZoneOffset.UTC), 20);
+        FareCalculatorService fareCalculatorService = new FareCalculatorService();
+        fareCalculatorService.setDemandStatistics(demandStatistics);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setInTime(at(8));
+        ticket.setOutTime(new Date(at(8).getTime() + TimeUnit.HOURS.toMillis(2)));
+
+        fareCalculatorService.calculateFare(ticket);
+
+        assertEquals(2 * ParkingType.CAR.getRatePerHour() * 1.5, ticket.getPrice(), 0.001);
+    }
+
+    @Test
+    public void loadReadsTheHistoryByIdRanges() {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        List<Ticket> firstBatch = new ArrayList<>();
+        for(int id = 1; id <= 3; id++){
+            firstBatch.add(closedTicket(id, ParkingType.CAR, 0, 8, 1));
+        }
+        when(ticketDAO.getClosedTicketsAfter(eq(0), anyInt())).thenReturn(firstBatch);
+        when(ticketDAO.getClosedTicketsAfter(eq(3), anyInt())).thenReturn(Collections.singletonList(closedTicket(7, ParkingType.BIKE, 0, 9, 1)));
+        when(ticketDAO.getClosedTicketsAfter(eq(7), anyInt())).thenReturn(Collections.emptyList());
+        DemandStatistics demandStatistics = new DemandStatistics(0.5, 0.8, 1.5, TimeUnit.DAYS.toMillis(28), 1, ZoneOffset.UTC);
+
+        assertEquals(4, demandStatistics.load(ticketDAO));
+        assertNotNull(demandStatistics.getOccupancyForecast(ParkingType.BIKE));
+    }
+
+    @Test
+    public void loadRetriesAPageThatFailedOnce() {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.getClosedTicketsAfter(eq(0), anyInt())).thenReturn(Collections.singletonList(closedTicket(1, ParkingType.CAR, 0, 8, 1)));
+        when(ticketDAO.getClosedTicketsAfter(eq(1), anyInt())).thenReturn(null)
+                .thenReturn(Collections.singletonList(closedTicket(2, ParkingType.BIKE, 0, 9, 1)));
+        when(ticketDAO.getClosedTicketsAfter(eq(2), anyInt())).thenReturn(Collections.emptyList());
+        DemandStatistics demandStatistics = new DemandStatistics(0.5, 0.8, 1.5, TimeUnit.DAYS.toMillis(28), 1, ZoneOffset.UTC);
+
+        assertEquals(2, demandStatistics.load(ticketDAO));
+        assertNotNull(demandStatistics.getOccupancyForecast(ParkingType.BIKE));
+    }
+
+    @Test
+    public void loadDropsAPartialHistory() {
+        TicketDAO ticketDAO = mock(TicketDAO.class);
+        when(ticketDAO.getClosedTicketsAfter(eq(0), anyInt())).thenReturn(Collections.singletonList(closedTicket(1, ParkingType.CAR, 0, 8, 1)));
+        when(ticketDAO.getClosedTicketsAfter(eq(1), anyInt())).thenReturn(null);
+        DemandStatistics demandStatistics = new DemandStatistics(0.5, 0.8, 1.5, TimeUnit.DAYS.toMillis(28), 1, ZoneOffset.UTC);
+
+        assertEquals(-1, demandStatistics.load(ticketDAO));
+        assertNull(demandStatistics.getOccupancyForecast(ParkingType.CAR));
+        assertEquals(1.0, demandStatistics.getMultiplier(ParkingType.CAR, at(8)));
+        verify(ticketDAO, times(3)).getClosedTicketsAfter(eq(1), anyInt());
+    }
+}
@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import com.parkit.parkingsystem.util.IdempotencyCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IdempotencyCacheTest {
+
+    private SimulationClock clock;
+    private IdempotencyCache<String> cache;
+    private AtomicInteger executions;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        clock = new SimulationClock(Instant.parse("2023-06-01T08:00:00Z"));
+        cache = new IdempotencyCache<>(3, 60_000, clock);
+        executions = new AtomicInteger();
+    }
+
+    private String request(String result){
+        executions.incrementAndGet();
+        return result;
+    }
+
+    @Test
+    public void repeatedKeyIsExecutedOnceUntilItExpires() {
+        assertEquals("first", cache.execute("K1", () -> request("first")));
+        clock.advance(Duration.ofSeconds(59));
+        assertEquals("first", cache.execute("K1", () -> request("second")));
+        assertEquals(1, executions.get());
+        assertEquals(1, cache.getHits());
+
+        clock.advance(Duration.ofSeconds(1));
+
+        assertEquals("third", cache.execute("K1", () -> request("third")));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void oldestKeysAreDroppedBeyondTheCapacity() {
+        for(String key : new String[]{"K1", "K2", "K3", "K4"}){
+            cache.execute(key, () -> request(key));
+        }
+
+        assertEquals(3, cache.size());
+        assertEquals("again", cache.execute("K1", () -> request("again")));
+        assertEquals("K4", cache.execute("K4", () -> request("again")));
+    }
+
+    @Test
+    public void nullResultsAndNullKeysAreNotRemembered() {
+        assertNull(cache.execute("K1", () -> request(null)));
+        assertEquals("done", cache.execute("K1", () -> request("done")));
+        cache.execute(null, () -> request("x"));
+        cache.execute(null, () -> request("x"));
+
+        assertEquals(4, executions.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void concurrentRetriesWaitForTheFirstExecution() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.execute("K1", () -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return request("first");
+            })));
+            running.await();
+            for(int i = 0; i < 7; i++){
+                results.add(executor.submit(() -> cache.execute("K1", () -> request("retry"))));
+            }
+            release.countDown();
+
+            for(Future<String> result : results){
+                assertEquals("first", result.get());
+            }
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.dao.TicketEventDAO;
+import com.parkit.parkingsystem.model.TicketEvent;
+import com.parkit.parkingsystem.outbox.OutboxRelay;
+import com.parkit.parkingsystem.outbox.TicketEventSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxRelayTest {
+
+    @Mock
+    private static TicketEventDAO ticketEventDAO;
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static TicketEventSink sink;
+    @Mock
+    private static Clock clock;
+
+    private final AtomicLong now = new AtomicLong();
+
+    @BeforeEach
+    private void setUpPerTest() {
+        ticketEventDAO.dataBaseConfig = dataBaseConfig;
+        lenient().when(clock.millis()).thenAnswer(invocation -> now.get());
+    }
+
+    private OutboxRelay relay(int batchSize){
+        return new OutboxRelay(ticketEventDAO, "test", Collections.singletonList(sink), batchSize, 5000, 1000, clock);
+    }
+
+    private static List<TicketEvent> events(long... ids){
+        List<TicketEvent> events = new ArrayList<>();
+        for(long id : ids){
+            TicketEvent event = new TicketEvent();
+            event.setId(id);
+            event.setType(TicketEvent.Type.SPOT);
+            event.setEventTime(new Date());
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Test
+    public void relayWaitsOnAGapUntilItTimesOut() throws Exception {
+        when(ticketEventDAO.getCursor("test")).thenReturn(0L);
+        when(ticketEventDAO.getEventsAfter(0, 10)).thenReturn(events(1, 2, 4));
+        when(ticketEventDAO.getEventsAfter(2, 10)).thenReturn(events(4));
+        OutboxRelay outboxRelay = relay(10);
+
+        assertEquals(2, outboxRelay.relay());
+        now.set(1000);
+        assertEquals(0, outboxRelay.relay());
+        now.set(6000);
+        assertEquals(1, outboxRelay.relay());
+
+        verify(sink).publish(argThat(batch -> batch.size() == 2 && batch.get(1).getId() == 2));
+        verify(sink).publish(argThat(batch -> batch.size() == 1 && batch.get(0).getId() == 4));
+        verify(ticketEventDAO).saveCursor("test", 2);
+        verify(ticketEventDAO).saveCursor("test", 4);
+        assertEquals(4, outboxRelay.getCursor());
+        assertEquals(1, outboxRelay.getGapsSkipped());
+    }
+
+    @Test
+    public void aBatchASinkRefusedIsPublishedAgain() throws Exception {
+        when(ticketEventDAO.getCursor("test")).thenReturn(0L);
+        when(ticketEventDAO.getEventsAfter(0, 10)).thenReturn(events(1));
+        doThrow(new IOException("disk full")).doNothing().when(sink).publish(anyList());
+        OutboxRelay outboxRelay = relay(10);
+
+        assertEquals(-1, outboxRelay.relay());
+        verify(ticketEventDAO, never()).saveCursor(anyString(), anyLong());
+        assertEquals(1, outboxRelay.relay());
+
+        verify(sink, times(2)).publish(anyList());
+        verify(ticketEventDAO).saveCursor("test", 1);
+        assertEquals(1, outboxRelay.getFailures());
+    }
+
+    @Test
+    public void relayResumesFromTheSavedCursorAndPurgesWhatItRelayed() throws Exception {
+        when(ticketEventDAO.getCursor("test")).thenReturn(40L);
+        when(ticketEventDAO.getEventsAfter(40, 2)).thenReturn(events(41, 42));
+        when(ticketEventDAO.getEventsAfter(42, 2)).thenReturn(events(43));
+        OutboxRelay outboxRelay = relay(2);
+        now.set(60000);
+
+        assertEquals(3, outboxRelay.relay());
+
+        verify(ticketEventDAO).saveCursor("test", 42);
+        verify(ticketEventDAO).saveCursor("test", 43);
+        verify(ticketEventDAO).purgeEvents(43, new Date(59000));
+    }
+
+    @Test
+    public void relayIsSkippedInDegradedMode() {
+        when(dataBaseConfig.isDegraded()).thenReturn(true);
+
+        assertEquals(-1, relay(10).relay());
+
+        verify(ticketEventDAO, never()).getEventsAfter(anyLong(), anyInt());
+    }
+}
@@ -0,0 +1,170 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.monitoring.OverstayMonitor;
+import com.parkit.parkingsystem.util.TimerWheel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+@ExtendWith(MockitoExtension.class)
+public class OverstayMonitorTest {
+
+    private static final long HOUR = 3_600_000L;
+
+    @Mock
+    private static Clock clock;
+
+    @Mock
+    private static TicketDAO ticketDAO;
+
+    private static Ticket openTicket(String vehicleRegNumber, long inTime){
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(inTime));
+        return ticket;
+    }
+
+    @Test
+    public void timersExpireAtTheirTickWhateverTheirLevel() {
+        TimerWheel<Long> timerWheel = new TimerWheel<>(1, 0);
+        Random random = new Random(47);
+        List<TimerWheel.Timeout<Long>> timeouts = new ArrayList<>();
+        for(int i = 0; i < 200_000; i++){
+            long deadline = 1 + (long) (random.nextDouble() * random.nextDouble() * 2_000_000);
+            timeouts.add(timerWheel.schedule(deadline, deadline));
+        }
+        int pending = 0;
+        for(int i = 0; i < timeouts.size(); i++){
+            if(i % 2 == 0){
+                assertTrue(timerWheel.cancel(timeouts.get(i)));
+            }else{
+                pending++;
+            }
+        }
+        assertEquals(pending, timerWheel.size());
+
+        long now = 0;
+        int expired = 0;
+        while(now < 2_000_000){
+            long previous = now;
+            now += 1 + random.nextInt(5000);
+            for(long deadline : timerWheel.advance(now)){
+                assertTrue(deadline > previous && deadline <= now, deadline+" expired between "+previous+" and "+now);
+                expired++;
+            }
+        }
+
+        assertEquals(pending, expired);
+        assertEquals(0, timerWheel.size());
+        assertFalse(timerWheel.cancel(timeouts.get(1)));
+    }
+
+    @Test
+    public void aTimerBeyondTheTopWheelStillExpiresOnTime() {
+        TimerWheel<String> timerWheel = new TimerWheel<>(1, 0);
+        timerWheel.schedule("far", 20_000_000);
+        timerWheel.schedule("past", -5);
+
+        assertEquals(Collections.singletonList("past"), timerWheel.advance(1));
+        assertTrue(timerWheel.advance(19_999_999).isEmpty());
+        assertEquals(Collections.singletonList("far"), timerWheel.advance(20_000_000));
+    }
+
+    @Test
+    public void stagesFireInOrderUntilTheTicketIsClosed() {
+        when(clock.millis()).thenReturn(0L);
+        OverstayMonitor overstayMonitor = new OverstayMonitor(60_000, 24 * HOUR, 72 * HOUR, 168 * HOUR, clock);
+        List<String> events = new ArrayList<>();
+        overstayMonitor.addListener((stage, ticket) -> events.add(ticket.getVehicleRegNumber()+" "+stage));
+        Ticket staying = openTicket("STAY-1", 0);
+        Ticket leaving = openTicket("LEAVE-1", 0);
+        overstayMonitor.ticketOpened(staying);
+        overstayMonitor.ticketOpened(leaving);
+
+        when(clock.millis()).thenReturn(24 * HOUR);
+        assertEquals(2, overstayMonitor.tick());
+        leaving.setOutTime(new Date(25 * HOUR));
+        overstayMonitor.ticketClosed(leaving);
+        when(clock.millis()).thenReturn(200 * HOUR);
+        assertEquals(1, overstayMonitor.tick());
+        //armed once the wheel was already past its deadline, due at the next tick
+        when(clock.millis()).thenReturn(200 * HOUR + 60_000);
+        assertEquals(1, overstayMonitor.tick());
+
+        assertEquals(Arrays.asList("STAY-1 OVERSTAY", "LEAVE-1 OVERSTAY", "STAY-1 MAX_STAY_FEE", "STAY-1 ABANDONED"), events);
+        assertEquals(0, overstayMonitor.getWatched());
+        assertEquals(1, overstayMonitor.getCancelled());
+        assertEquals(1, overstayMonitor.getFired(OverstayMonitor.Stage.ABANDONED));
+    }
+
+    @Test
+    public void aTicketClosedThroughAnotherNodeIsDroppedInsteadOfFired() {
+        when(clock.millis()).thenReturn(0L);
+        OverstayMonitor overstayMonitor = new OverstayMonitor(60_000, 24 * HOUR, 72 * HOUR, 168 * HOUR, clock);
+        overstayMonitor.setTicketDAO(ticketDAO);
+        List<String> events = new ArrayList<>();
+        overstayMonitor.addListener((stage, ticket) -> events.add(ticket.getVehicleRegNumber()+" "+stage));
+        Ticket closedElsewhere = openTicket("GONE-1", 0);
+        closedElsewhere.setId(11);
+        Ticket reentered = openTicket("BACK-1", 0);
+        reentered.setId(12);
+        Ticket staying = openTicket("STAY-1", 0);
+        staying.setId(13);
+        overstayMonitor.load(Arrays.asList(closedElsewhere, reentered, staying));
+        Map<String, Integer> openTicketIds = new HashMap<>();
+        openTicketIds.put("BACK-1", 40);
+        openTicketIds.put("STAY-1", 13);
+        //the second check fails, the database is unreachable
+        when(ticketDAO.getOpenTicketIds(anyCollection())).thenReturn(openTicketIds).thenReturn(null).thenReturn(openTicketIds);
+
+        when(clock.millis()).thenReturn(24 * HOUR);
+        assertEquals(1, overstayMonitor.tick());
+        when(clock.millis()).thenReturn(72 * HOUR);
+        assertEquals(0, overstayMonitor.tick());
+        when(clock.millis()).thenReturn(72 * HOUR + 60_000);
+        assertEquals(1, overstayMonitor.tick());
+
+        assertEquals(Arrays.asList("STAY-1 OVERSTAY", "STAY-1 MAX_STAY_FEE"), events);
+        assertEquals(2, overstayMonitor.getClosedElsewhere());
+        assertEquals(1, overstayMonitor.getCheckFailures());
+        assertEquals(1, overstayMonitor.getFired(OverstayMonitor.Stage.OVERSTAY));
+        assertEquals(1, overstayMonitor.getWatched());
+        verify(ticketDAO, times(3)).getOpenTicketIds(anyCollection());
+    }
+
+    @Test
+    public void aTicketLateAtStartupGoesThroughItsStagesOneTickApart() {
+        when(clock.millis()).thenReturn(100 * HOUR);
+        OverstayMonitor overstayMonitor = new OverstayMonitor(60_000, 24 * HOUR, 72 * HOUR, 168 * HOUR, clock);
+        overstayMonitor.load(Collections.singletonList(openTicket("LATE-1", 0)));
+
+        when(clock.millis()).thenReturn(100 * HOUR + 60_000);
+        assertEquals(1, overstayMonitor.tick());
+        when(clock.millis()).thenReturn(100 * HOUR + 120_000);
+        assertEquals(1, overstayMonitor.tick());
+        assertEquals(0, overstayMonitor.tick());
+
+        assertEquals(1, overstayMonitor.getFired(OverstayMonitor.Stage.MAX_STAY_FEE));
+        assertEquals(0, overstayMonitor.getFired(OverstayMonitor.Stage.ABANDONED));
+        assertEquals(1, overstayMonitor.getWatched());
+    }
+}
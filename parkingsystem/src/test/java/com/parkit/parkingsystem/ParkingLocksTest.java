@@ -0,0 +1,205 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingLocks;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.util.InstrumentedLock;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress tests in the spirit of jcstress and JMH: many threads hammer the gates against in-memory
+ * DAOs that widen the race windows with a short pause, then the invariants and timings are checked.
+ */
+public class ParkingLocksTest {
+
+    private static final int SPOTS_PER_TYPE = 100;
+    private static final int OPERATIONS_PER_THREAD = 20;
+
+    private static void pause(){
+        try {
+            TimeUnit.MICROSECONDS.sleep(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** lowest free spot like the SQL query, with no locking of its own */
+    private static class RacyParkingSpotDAO extends ParkingSpotDAO {
+        private final Map<Integer, ParkingSpot> spots = new ConcurrentHashMap<>();
+        private final AtomicInteger doubleAllocations = new AtomicInteger();
+
+        RacyParkingSpotDAO(){
+            for(int i = 1; i <= SPOTS_PER_TYPE * 2; i++){
+                spots.put(i, new ParkingSpot(i, i <= SPOTS_PER_TYPE ? ParkingType.CAR : ParkingType.BIKE, true));
+            }
+        }
+
+        @Override
+        public int getNextAvailableSlot(ParkingType parkingType){
+            int next = 0;
+            for(ParkingSpot spot : spots.values()){
+                if(spot.getParkingType() == parkingType && spot.isAvailable() && (next == 0 || spot.getId() < next)){
+                    next = spot.getId();
+                }
+            }
+            pause();
+            return next;
+        }
+
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot){
+            ParkingSpot spot = spots.get(parkingSpot.getId());
+            if(!parkingSpot.isAvailable() && !spot.isAvailable()){
+                doubleAllocations.incrementAndGet();
+            }
+            spot.setAvailable(parkingSpot.isAvailable());
+            return true;
+        }
+
+        //unconditional like the update the locks were written for, so a double allocation shows
+        @Override
+        public int occupyParkingSpot(ParkingSpot parkingSpot){
+            return updateParking(parkingSpot) ? 1 : -1;
+        }
+
+        int available(){
+            int available = 0;
+            for(ParkingSpot spot : spots.values()){
+                if(spot.isAvailable()){
+                    available++;
+                }
+            }
+            return available;
+        }
+    }
+
+    private static class InMemoryTicketDAO extends TicketDAO {
+        private final Map<String, Ticket> openTickets = new ConcurrentHashMap<>();
+        private final AtomicInteger saved = new AtomicInteger();
+
+        @Override
+        public boolean saveTicket(Ticket ticket){
+            ticket.setId(saved.incrementAndGet());
+            openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            return true;
+        }
+
+        @Override
+        public Ticket getTicket(String vehicleRegNumber){
+            return openTickets.get(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean updateTicket(Ticket ticket){
+            return openTickets.remove(ticket.getVehicleRegNumber()) != null;
+        }
+
+        @Override
+        public int getNbTicket(String vehicleRegNumber){
+            return 0;
+        }
+
+        @Override
+        public boolean isAlreadyInParking(String vehicleRegNumber){
+            return openTickets.containsKey(vehicleRegNumber);
+        }
+    }
+
+    private static void hammer(ParkingService parkingService, int threads, boolean mixedTypes) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for(int t = 0; t < threads; t++){
+                ParkingType parkingType = mixedTypes && t % 2 == 1 ? ParkingType.BIKE : ParkingType.CAR;
+                String gate = "T"+t+"-";
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int parked = 0;
+                    for(int i = 0; i < OPERATIONS_PER_THREAD; i++){
+                        if(parkingService.enterVehicle(parkingType, gate+i) != null){
+                            parked++;
+                        }
+                        if(i > 0){
+                            parkingService.exitVehicle(gate+(i - 1));
+                        }
+                    }
+                    return parked;
+                }));
+            }
+            start.countDown();
+            for(Future<Integer> result : results){
+                assertEquals(OPERATIONS_PER_THREAD, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void thirtyTwoGatesNeverGetTheSameSpot() throws Exception {
+        RacyParkingSpotDAO parkingSpotDAO = new RacyParkingSpotDAO();
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO();
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+
+        hammer(parkingService, 32, true);
+
+        assertEquals(0, parkingSpotDAO.doubleAllocations.get());
+        assertEquals(32 * OPERATIONS_PER_THREAD, ticketDAO.saved.get());
+        assertEquals(32, ticketDAO.openTickets.size());
+        assertEquals(SPOTS_PER_TYPE * 2 - ticketDAO.openTickets.size(), parkingSpotDAO.available());
+    }
+
+    @Test
+    public void carAndBikeTrafficDoNotContend() throws Exception {
+        ParkingService carsOnly = new ParkingService(null, new RacyParkingSpotDAO(), new InMemoryTicketDAO());
+        hammer(carsOnly, 32, false);
+        ParkingService mixed = new ParkingService(null, new RacyParkingSpotDAO(), new InMemoryTicketDAO());
+        hammer(mixed, 32, true);
+
+        //each type allocates under its own stripe only, so car entries never queue behind bike entries
+        ParkingLocks carsOnlyLocks = carsOnly.getParkingLocks();
+        assertEquals(32 * OPERATIONS_PER_THREAD, carsOnlyLocks.allocationLock(ParkingType.CAR).getAcquisitions());
+        assertEquals(0, carsOnlyLocks.allocationLock(ParkingType.BIKE).getAcquisitions());
+        ParkingLocks locks = mixed.getParkingLocks();
+        assertNotSame(locks.allocationLock(ParkingType.CAR), locks.allocationLock(ParkingType.BIKE));
+        assertEquals(16 * OPERATIONS_PER_THREAD, locks.allocationLock(ParkingType.CAR).getAcquisitions());
+        assertEquals(16 * OPERATIONS_PER_THREAD, locks.allocationLock(ParkingType.BIKE).getAcquisitions());
+        assertEquals(0, locks.allocationLock(ParkingType.CAR).getQueueDepth());
+        assertEquals(0, locks.allocationLock(ParkingType.BIKE).getQueueDepth());
+    }
+
+    @Test
+    public void stripesReportTheirContention() throws Exception {
+        ParkingService parkingService = new ParkingService(null, new RacyParkingSpotDAO(), new InMemoryTicketDAO());
+
+        hammer(parkingService, 32, false);
+
+        ParkingLocks locks = parkingService.getParkingLocks();
+        InstrumentedLock allocation = locks.allocationLock(ParkingType.CAR);
+        assertEquals(32 * OPERATIONS_PER_THREAD, allocation.getAcquisitions());
+        assertTrue(allocation.getContendedAcquisitions() > 0);
+        assertTrue(allocation.getMaxQueueDepth() >= 1);
+        assertEquals(0, allocation.getQueueDepth());
+        assertSame(locks.rangeLock(ParkingType.CAR, 1), locks.rangeLock(ParkingType.CAR, 50));
+        assertNotSame(locks.rangeLock(ParkingType.CAR, 50), locks.rangeLock(ParkingType.CAR, 51));
+        assertEquals(allocation, locks.getStripes().get(0));
+    }
+}
@@ -1,11 +1,14 @@
 package com.parkit.parkingsystem;
 
+import com.parkit.parkingsystem.assignment.LeasedRangeStrategy;
 import com.parkit.parkingsystem.constants.ParkingType;
 import com.parkit.parkingsystem.constants.Fare;
 import com.parkit.parkingsystem.dao.ParkingSpotDAO;
 import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.model.ParkingSpot;
 import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.DeferredWriteQueue;
+import com.parkit.parkingsystem.service.ParkingLotState;
 import com.parkit.parkingsystem.service.ParkingService;
 import com.parkit.parkingsystem.service.FareCalculatorService;
 import com.parkit.parkingsystem.util.InputReaderUtil;
@@ -13,6 +16,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.ResourceLock;
+import org.junit.jupiter.api.parallel.Resources;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -23,7 +28,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.io.PrintStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
@@ -32,6 +43,7 @@ import java.math.RoundingMode;
 
 
 @ExtendWith(MockitoExtension.class)
+@ResourceLock(Resources.SYSTEM_OUT)
 public class ParkingServiceTest {
 
     private static ParkingService parkingService;
@@ -62,6 +74,7 @@ public class ParkingServiceTest {
             lenient().when(ticketDAO.updateTicket(any(Ticket.class))).thenReturn(true);
 
             lenient().when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(true);
+            lenient().when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(1);
 
             parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
         } catch (Exception e) {
@@ -142,6 +155,25 @@ public class ParkingServiceTest {
         assertTrue(outputStreamCaptor.toString().trim().contains("Unable to update ticket information. Error occurred"));
     }
 
+    @Test
+    public void processExitingVehicleUsesInjectedClock() throws Exception {
+        Instant now = Instant.parse("2023-06-01T12:00:00Z");
+        Ticket ticket = new Ticket();
+        ticket.setInTime(Date.from(now.minusSeconds(3*60*60)));
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR,false));
+        ticket.setVehicleRegNumber("ABCDEF");
+        when(ticketDAO.getTicket("ABCDEF")).thenReturn(ticket);
+        when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(true);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
+        parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, Clock.fixed(now, ZoneOffset.UTC));
+
+        parkingService.processExitingVehicle();
+
+        verify(ticketDAO, Mockito.times(1)).updateTicket(ticketCaptor.capture());
+        assertEquals(Date.from(now), ticketCaptor.getValue().getOutTime());
+        assertEquals(3 * Fare.CAR_RATE_PER_HOUR, ticketCaptor.getValue().getPrice(), 0.001);
+    }
+
     @Test
     public void processExitingIfVehicleIsNotParked() throws Exception {
         when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(false);
@@ -164,17 +196,18 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
         when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(false);
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(-1);
         when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
 
         parkingService.processIncomingVehicle();
 
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
-        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.CAR);
+        //picked again under the allocation lock, once the plate is known
+        verify(parkingSpotDAO, Mockito.times(2)).getNextAvailableSlot(ParkingType.CAR);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO,Mockito.times(1)).isAlreadyInParking("ABCDEF");
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO,Mockito.times(2)).isAlreadyInParking("ABCDEF");
+        verify(parkingSpotDAO, Mockito.times(1)).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO).saveTicket(ticketCaptor.capture());
 
         Ticket ticketCaptorValue = ticketCaptor.getValue();
@@ -191,17 +224,18 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(1);
         when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
         when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(false);
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(-1);
         when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(5);
 
         parkingService.processIncomingVehicle();
 
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
-        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.CAR);
+        //picked again under the allocation lock, once the plate is known
+        verify(parkingSpotDAO, Mockito.times(2)).getNextAvailableSlot(ParkingType.CAR);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO,Mockito.times(1)).isAlreadyInParking("ABCDEF");
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO,Mockito.times(2)).isAlreadyInParking("ABCDEF");
+        verify(parkingSpotDAO, Mockito.times(1)).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO).saveTicket(ticketCaptor.capture());
 
         Ticket ticketCaptorValue = ticketCaptor.getValue();
@@ -218,17 +252,18 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(2);
         when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
         when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(false);
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(-1);
         when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(0);
 
         parkingService.processIncomingVehicle();
 
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
-        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.BIKE);
+        //picked again under the allocation lock, once the plate is known
+        verify(parkingSpotDAO, Mockito.times(2)).getNextAvailableSlot(ParkingType.BIKE);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO,Mockito.times(1)).isAlreadyInParking("ABCDEF");
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO,Mockito.times(2)).isAlreadyInParking("ABCDEF");
+        verify(parkingSpotDAO, Mockito.times(1)).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO).saveTicket(ticketCaptor.capture());
 
         Ticket ticketCaptorValue = ticketCaptor.getValue();
@@ -245,17 +280,18 @@ public class ParkingServiceTest {
         when(inputReaderUtil.readSelection()).thenReturn(2);
         when(parkingSpotDAO.getNextAvailableSlot(any(ParkingType.class))).thenReturn(1);
         when(ticketDAO.isAlreadyInParking(anyString())).thenReturn(false);
-        when(parkingSpotDAO.updateParking(any(ParkingSpot.class))).thenReturn(false);
+        when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(-1);
         when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
         when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(5);
 
         parkingService.processIncomingVehicle();
 
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
-        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.BIKE);
+        //picked again under the allocation lock, once the plate is known
+        verify(parkingSpotDAO, Mockito.times(2)).getNextAvailableSlot(ParkingType.BIKE);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(ticketDAO,Mockito.times(1)).isAlreadyInParking("ABCDEF");
-        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+        verify(ticketDAO,Mockito.times(2)).isAlreadyInParking("ABCDEF");
+        verify(parkingSpotDAO, Mockito.times(1)).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO).saveTicket(ticketCaptor.capture());
 
         Ticket ticketCaptorValue = ticketCaptor.getValue();
@@ -267,6 +303,20 @@ public class ParkingServiceTest {
         assertTrue(outputStreamCaptor.toString().trim().contains("Heureux de vous revoir ! En tant qu’utilisateur régulier de notre parking, vous allez obtenir une remise de 5%"));
     }
 
+    @Test
+    public void testProcessIncomingParksOnTheSpotFreeOnceThePlateIsTyped() throws Exception {
+        when(inputReaderUtil.readSelection()).thenReturn(1);
+        //a gate took spot 1 while the plate was typed
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1).thenReturn(2);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+
+        parkingService.processIncomingVehicle();
+
+        verify(ticketDAO).saveTicket(ticketCaptor.capture());
+        assertEquals(2, ticketCaptor.getValue().getParkingSpot().getId());
+        assertTrue(outputStreamCaptor.toString().contains("Please park your vehicle in spot number:2"));
+    }
+
     @Test
     public void testProcessIncomingIfCarIsAlreadyInParking() throws Exception {
         when(inputReaderUtil.readSelection()).thenReturn(1);
@@ -278,7 +328,7 @@ public class ParkingServiceTest {
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
         verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.CAR);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(parkingSpotDAO, Mockito.never()).updateParking(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.never()).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
 
         assertTrue(outputStreamCaptor.toString().trim().contains("Le véhicule est déjà dans le parking"));
@@ -295,7 +345,7 @@ public class ParkingServiceTest {
         verify(inputReaderUtil, Mockito.times(1)).readSelection();
         verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.BIKE);
         verify(inputReaderUtil, Mockito.times(1)).readVehicleRegistrationNumber();
-        verify(parkingSpotDAO, Mockito.never()).updateParking(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.never()).occupyParkingSpot(any(ParkingSpot.class));
         verify(ticketDAO, Mockito.never()).saveTicket(any(Ticket.class));
 
         assertTrue(outputStreamCaptor.toString().trim().contains("Le véhicule est déjà dans le parking"));
@@ -339,4 +389,141 @@ public class ParkingServiceTest {
 
         assertNull(result);
     }
+
+    @Test
+    public void enterVehicleWithTheSameRequestKeyParksOnce() {
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+
+        Ticket first = parkingService.enterVehicle("gate-1-0001", ParkingType.CAR, "ABCDEF");
+        Ticket retry = parkingService.enterVehicle("gate-1-0001", ParkingType.CAR, "ABCDEF");
+
+        assertSame(first, retry);
+        assertEquals("gate-1-0001", first.getRequestKey());
+        verify(parkingSpotDAO, Mockito.times(1)).getNextAvailableSlot(ParkingType.CAR);
+        verify(ticketDAO, Mockito.times(1)).isAlreadyInParking("ABCDEF");
+        verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void enterVehicleRetriedAfterTheKeyWasForgottenReturnsTheSavedTicket() {
+        Ticket saved = new Ticket();
+        saved.setId(7);
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(2);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(false);
+        when(ticketDAO.getTicketByRequestKey("gate-1-0001")).thenReturn(saved);
+
+        Ticket result = parkingService.enterVehicle("gate-1-0001", ParkingType.CAR, "ABCDEF");
+
+        assertSame(saved, result);
+        ArgumentCaptor<ParkingSpot> spotCaptor = ArgumentCaptor.forClass(ParkingSpot.class);
+        verify(parkingSpotDAO, Mockito.times(1)).occupyParkingSpot(any(ParkingSpot.class));
+        verify(parkingSpotDAO, Mockito.times(1)).updateParking(spotCaptor.capture());
+        assertTrue(spotCaptor.getValue().isAvailable());
+    }
+
+    @Test
+    public void enterVehiclePicksAnotherSpotWhenTheFirstWasTakenInTheMeantime() {
+        when(parkingSpotDAO.getNextAvailableSlot(ParkingType.CAR)).thenReturn(2).thenReturn(3);
+        when(parkingSpotDAO.occupyParkingSpot(any(ParkingSpot.class))).thenReturn(0).thenReturn(1);
+        when(ticketDAO.saveTicket(any(Ticket.class))).thenReturn(true);
+
+        Ticket ticket = parkingService.enterVehicle(ParkingType.CAR, "ABCDEF");
+
+        assertEquals(3, ticket.getParkingSpot().getId());
+        verify(parkingSpotDAO, Mockito.times(2)).occupyParkingSpot(any(ParkingSpot.class));
+        verify(ticketDAO, Mockito.times(1)).saveTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void degradedEntryOnlyTakesSpotsOfTheLeasedRanges() {
+        LeasedRangeStrategy leasedRangeStrategy = Mockito.mock(LeasedRangeStrategy.class);
+        when(leasedRangeStrategy.isLeased(any(ParkingSpot.class))).thenAnswer(invocation -> invocation.<ParkingSpot>getArgument(0).getId() >= 3);
+        ParkingLotState parkingLotState = new ParkingLotState();
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for(int i = 1; i <= 4; i++){
+            parkingSpots.add(new ParkingSpot(i, ParkingType.CAR, true));
+        }
+        parkingLotState.load(parkingSpots, Collections.emptyList());
+        DeferredWriteQueue deferredWriteQueue = Mockito.mock(DeferredWriteQueue.class);
+        when(deferredWriteQueue.isDegraded()).thenReturn(true);
+        when(deferredWriteQueue.deferEntry(any(Ticket.class))).thenReturn(true);
+        parkingService.setParkingLotState(parkingLotState);
+        parkingService.setDeferredWriteQueue(deferredWriteQueue);
+        parkingService.setLeasedRangeStrategy(leasedRangeStrategy);
+
+        Ticket ticket = parkingService.enterVehicle(ParkingType.CAR, "ABCDEF");
+
+        assertEquals(3, ticket.getParkingSpot().getId());
+        assertTrue(parkingLotState.getParkingSpot(1).isAvailable());
+        verify(parkingSpotDAO, never()).occupyParkingSpot(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void exitVehicleWithTheSameRequestKeyClosesTheTicketOnce() {
+        when(ticketDAO.isAlreadyInParking("ABCDEF")).thenReturn(true);
+
+        Ticket first = parkingService.exitVehicle("gate-2-0001", "ABCDEF");
+        Ticket retry = parkingService.exitVehicle("gate-2-0001", "ABCDEF");
+
+        assertSame(first, retry);
+        assertEquals("gate-2-0001", first.getExitRequestKey());
+        verify(ticketDAO, Mockito.times(1)).updateTicket(any(Ticket.class));
+        verify(parkingSpotDAO, Mockito.times(1)).updateParking(any(ParkingSpot.class));
+    }
+
+    //Tests for quoteFare
+
+    @Test
+    public void quoteFarePricesTheOpenTicketWithoutWritingIt() {
+        Ticket openTicket = ticketDAO.getTicket("ABCDEF");
+        ParkingLotState parkingLotState = new ParkingLotState();
+        parkingLotState.vehicleParked(openTicket);
+        parkingService.setParkingLotState(parkingLotState);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(2);
+
+        Ticket first = parkingService.quoteFare("ABCDEF");
+        Ticket second = parkingService.quoteFare("ABCDEF");
+
+        assertEquals(Fare.CAR_RATE_PER_HOUR * 0.95, first.getPrice(), 0.01);
+        assertNotNull(second.getOutTime());
+        assertNull(openTicket.getOutTime());
+        assertEquals(0, openTicket.getPrice());
+        assertNull(parkingService.quoteFare("GHIJKL"));
+        verify(ticketDAO, Mockito.times(1)).getNbTicket("ABCDEF");
+        verify(ticketDAO, never()).updateTicket(any(Ticket.class));
+        verify(parkingSpotDAO, never()).updateParking(any(ParkingSpot.class));
+    }
+
+    @Test
+    public void quoteFareReadsTheDatabaseWhenTheVehicleIsNotInTheState() {
+        Ticket openTicket = ticketDAO.getTicket("ABCDEF");
+        parkingService.setParkingLotState(new ParkingLotState());
+        when(ticketDAO.readTicket("ABCDEF")).thenReturn(openTicket);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(1);
+
+        Ticket quote = parkingService.quoteFare("ABCDEF");
+
+        assertEquals(Fare.CAR_RATE_PER_HOUR, quote.getPrice(), 0.01);
+        assertNull(parkingService.quoteFare("GHIJKL"));
+        verify(ticketDAO, Mockito.times(1)).readTicket("GHIJKL");
+        verify(ticketDAO, never()).updateTicket(any(Ticket.class));
+    }
+
+    @Test
+    public void quoteFareDoesNotKeepALoyaltyCountThatCouldNotBeRead() {
+        ParkingLotState parkingLotState = new ParkingLotState();
+        parkingLotState.vehicleParked(ticketDAO.getTicket("ABCDEF"));
+        parkingService.setParkingLotState(parkingLotState);
+        when(ticketDAO.getNbTicket("ABCDEF")).thenReturn(-1).thenReturn(2);
+
+        Ticket failed = parkingService.quoteFare("ABCDEF");
+        Ticket retried = parkingService.quoteFare("ABCDEF");
+        Ticket cached = parkingService.quoteFare("ABCDEF");
+
+        assertEquals(Fare.CAR_RATE_PER_HOUR, failed.getPrice(), 0.01);
+        assertEquals(Fare.CAR_RATE_PER_HOUR * 0.95, retried.getPrice(), 0.01);
+        assertEquals(Fare.CAR_RATE_PER_HOUR * 0.95, cached.getPrice(), 0.01);
+        verify(ticketDAO, Mockito.times(2)).getNbTicket("ABCDEF");
+    }
 }
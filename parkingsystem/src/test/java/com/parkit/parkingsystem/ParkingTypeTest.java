@@ -0,0 +1,58 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.Fare;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.FareCalculatorService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Date;
+
+public class ParkingTypeTest {
+
+    @Test
+    public void builtInTypesAreKnownBeforeTheCatalogueIsLoaded(){
+        assertSame(ParkingType.CAR, ParkingType.fromId(1));
+        assertSame(ParkingType.BIKE, ParkingType.fromId(2));
+        assertSame(ParkingType.CAR, ParkingType.valueOf("CAR"));
+        assertEquals(Fare.CAR_RATE_PER_HOUR, ParkingType.CAR.getRatePerHour());
+        assertEquals("BIKE", ParkingType.BIKE.toString());
+    }
+
+    @Test
+    public void registeredTypeIsFoundByIdAndNameAndPricedAtItsRate(){
+        ParkingType truck = ParkingType.register(200, "TRUCK", 4.0);
+
+        assertSame(truck, ParkingType.fromId(200));
+        assertSame(truck, ParkingType.valueOf("TRUCK"));
+        assertSame(truck, ParkingType.register(200, "TRUCK", 4.0));
+        assertTrue(ParkingType.getIdBound() > 200);
+        assertTrue(Arrays.asList(ParkingType.values()).contains(truck));
+
+        Ticket ticket = new Ticket();
+        ticket.setInTime(new Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        ticket.setOutTime(new Date());
+        ticket.setParkingSpot(new ParkingSpot(1, truck, false));
+        new FareCalculatorService().calculateFare(ticket);
+        assertEquals(4.0, ticket.getPrice(), 0.001);
+    }
+
+    @Test
+    public void registerRejectsConflictingIdsAndNames(){
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.register(1, "LORRY", 3.0));
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.register(201, "CAR", 3.0));
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.register(0, "ZERO", 3.0));
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.register(ParkingType.MAX_ID + 1, "TOO_FAR", 3.0));
+    }
+
+    @Test
+    public void unknownIdOrNameIsRejected(){
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.fromId(0));
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.fromId(ParkingType.MAX_ID));
+        assertThrows(IllegalArgumentException.class, () -> ParkingType.valueOf("HOVERCRAFT"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Reservation;
+import com.parkit.parkingsystem.service.ReservationIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class ReservationIndexTest {
+
+    private static final Logger logger = LogManager.getLogger("ReservationIndexTest");
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long T0 = 1_700_000_000_000L;
+
+    private ReservationIndex reservationIndex;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        reservationIndex = new ReservationIndex();
+        reservationIndex.addSpot(new ParkingSpot(1, ParkingType.CAR, true));
+        reservationIndex.addSpot(new ParkingSpot(2, ParkingType.CAR, true));
+        reservationIndex.addSpot(new ParkingSpot(4, ParkingType.BIKE, true));
+    }
+
+    private static Reservation reservation(int parkingNumber, ParkingType parkingType, String vehicleRegNumber, long from, long to){
+        Reservation reservation = new Reservation();
+        reservation.setParkingSpot(new ParkingSpot(parkingNumber, parkingType, true));
+        reservation.setVehicleRegNumber(vehicleRegNumber);
+        reservation.setStartTime(new Date(from));
+        reservation.setEndTime(new Date(to));
+        return reservation;
+    }
+
+    @Test
+    public void overlappingReservationOfASpotIsRefusedAndAdjacentOneAccepted() {
+        assertTrue(reservationIndex.add(reservation(1, ParkingType.CAR, "AAA", T0, T0 + 2 * HOUR)));
+
+        assertFalse(reservationIndex.add(reservation(1, ParkingType.CAR, "BBB", T0 + HOUR, T0 + 3 * HOUR)));
+        assertFalse(reservationIndex.add(reservation(1, ParkingType.CAR, "BBB", T0 - HOUR, T0 + 1)));
+        assertTrue(reservationIndex.add(reservation(1, ParkingType.CAR, "BBB", T0 + 2 * HOUR, T0 + 3 * HOUR)));
+        assertTrue(reservationIndex.add(reservation(1, ParkingType.CAR, "CCC", T0 - HOUR, T0)));
+        assertEquals(3, reservationIndex.size());
+        assertFalse(reservationIndex.isFree(1, T0 + 2 * HOUR - 1, T0 + 2 * HOUR));
+        assertTrue(reservationIndex.isFree(1, T0 + 3 * HOUR, T0 + 4 * HOUR));
+    }
+
+    @Test
+    public void findFreeSpotSkipsReservedSpotsOfTheType() {
+        reservationIndex.add(reservation(1, ParkingType.CAR, "AAA", T0, T0 + 2 * HOUR));
+
+        assertEquals(2, reservationIndex.findFreeSpot(ParkingType.CAR, T0 + HOUR, T0 + 4 * HOUR).getId());
+        assertEquals(1, reservationIndex.findFreeSpot(ParkingType.CAR, T0 + 2 * HOUR, T0 + 4 * HOUR).getId());
+        assertEquals(4, reservationIndex.findFreeSpot(ParkingType.BIKE, T0, T0 + HOUR).getId());
+
+        reservationIndex.add(reservation(2, ParkingType.CAR, "BBB", T0, T0 + 2 * HOUR));
+        assertNull(reservationIndex.findFreeSpot(ParkingType.CAR, T0 + HOUR, T0 + 4 * HOUR));
+    }
+
+    @Test
+    public void vehicleCannotHoldTwoOverlappingReservations() {
+        Reservation first = reservation(1, ParkingType.CAR, "AAA", T0, T0 + 2 * HOUR);
+        reservationIndex.add(first);
+
+        assertFalse(reservationIndex.add(reservation(2, ParkingType.CAR, "AAA", T0 + HOUR, T0 + 3 * HOUR)));
+        assertSame(first, reservationIndex.getReservation("AAA", T0 + HOUR, T0 + HOUR + 1));
+        assertSame(first, reservationIndex.getReservation("AAA", T0 - HOUR, T0 + 1));
+        assertNull(reservationIndex.getReservation("AAA", T0 - HOUR, T0));
+        assertNull(reservationIndex.getReservation("BBB", T0, T0 + HOUR));
+    }
+
+    @Test
+    public void removedAndEndedReservationsFreeTheirSpot() {
+        Reservation first = reservation(1, ParkingType.CAR, "AAA", T0, T0 + HOUR);
+        Reservation second = reservation(1, ParkingType.CAR, "BBB", T0 + HOUR, T0 + 2 * HOUR);
+        Reservation third = reservation(2, ParkingType.CAR, "CCC", T0, T0 + 3 * HOUR);
+        reservationIndex.add(first);
+        reservationIndex.add(second);
+        reservationIndex.add(third);
+
+        assertTrue(reservationIndex.remove(second));
+        assertFalse(reservationIndex.remove(second));
+        assertTrue(reservationIndex.isFree(1, T0 + HOUR, T0 + 2 * HOUR));
+
+        assertEquals(1, reservationIndex.removeEndedBefore(T0 + 2 * HOUR));
+        assertEquals(1, reservationIndex.size());
+        assertNull(reservationIndex.getReservation("AAA", T0, T0 + HOUR));
+        assertFalse(reservationIndex.isFree(2, T0 + 2 * HOUR, T0 + 3 * HOUR));
+    }
+
+    @Test
+    public void answersOverOneHundredThousandReservationsLikeAFullScan() {
+        int spots = 1000;
+        int perSpot = 100;
+        Random random = new Random(42);
+        ReservationIndex bigIndex = new ReservationIndex();
+        List<List<long[]>> windows = new ArrayList<>();
+        for(int spot = 1; spot <= spots; spot++){
+            bigIndex.addSpot(new ParkingSpot(spot, ParkingType.CAR, true));
+            List<long[]> spotWindows = new ArrayList<>();
+            long time = T0 + random.nextInt(4) * HOUR;
+            for(int i = 0; i < perSpot; i++){
+                long from = time;
+                long to = from + (1 + random.nextInt(3)) * HOUR;
+                assertTrue(bigIndex.add(reservation(spot, ParkingType.CAR, "V"+spot+"-"+i, from, to)));
+                spotWindows.add(new long[]{from, to});
+                time = to + random.nextInt(6) * HOUR;
+            }
+            windows.add(spotWindows);
+        }
+        assertEquals(spots * perSpot, bigIndex.size());
+
+        int queries = 20_000;
+        long[][] queryWindows = new long[queries][];
+        for(int q = 0; q < queries; q++){
+            long from = T0 + (long) (random.nextDouble() * perSpot * 5 * HOUR);
+            queryWindows[q] = new long[]{from, from + (1 + random.nextInt(4)) * HOUR};
+        }
+        long start = System.nanoTime();
+        int[] found = new int[queries];
+        for(int q = 0; q < queries; q++){
+            ParkingSpot spot = bigIndex.findFreeSpot(ParkingType.CAR, queryWindows[q][0], queryWindows[q][1]);
+            found[q] = spot == null ? 0 : spot.getId();
+        }
+        long elapsed = System.nanoTime() - start;
+        logger.info(queries+" free spot queries over "+bigIndex.size()+" reservations took "
+                +TimeUnit.NANOSECONDS.toMillis(elapsed)+" ms, "+(elapsed / queries)+" ns per query");
+
+        for(int q = 0; q < queries; q += 97){
+            assertEquals(scanForFreeSpot(windows, queryWindows[q][0], queryWindows[q][1]), found[q]);
+        }
+    }
+
+    private static int scanForFreeSpot(List<List<long[]>> windows, long from, long to){
+        for(int spot = 1; spot <= windows.size(); spot++){
+            boolean free = true;
+            for(long[] window : windows.get(spot - 1)){
+                if(window[0] < to && from < window[1]){
+                    free = false;
+                    break;
+                }
+            }
+            if(free){
+                return spot;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,128 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.assignment.LeastRecentlyUsedStrategy;
+import com.parkit.parkingsystem.assignment.LowestNumberStrategy;
+import com.parkit.parkingsystem.assignment.RandomStartStrategy;
+import com.parkit.parkingsystem.assignment.RoundRobinStrategy;
+import com.parkit.parkingsystem.assignment.SpotAssignmentStrategy;
+import com.parkit.parkingsystem.assignment.ZoneAwareStrategy;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SpotAssignmentStrategyTest {
+
+    private static List<ParkingSpot> lot(int cars, int bikes){
+        List<ParkingSpot> parkingSpots = new ArrayList<>();
+        for(int i = 1; i <= cars + bikes; i++){
+            parkingSpots.add(new ParkingSpot(i, i <= cars ? ParkingType.CAR : ParkingType.BIKE, true));
+        }
+        return parkingSpots;
+    }
+
+    private static int park(SpotAssignmentStrategy strategy, ParkingType parkingType){
+        int parkingNumber = strategy.nextSpot(parkingType);
+        if(parkingNumber > 0){
+            strategy.occupy(new ParkingSpot(parkingNumber, parkingType, false));
+        }
+        return parkingNumber;
+    }
+
+    private static void leave(SpotAssignmentStrategy strategy, int parkingNumber, ParkingType parkingType){
+        strategy.release(new ParkingSpot(parkingNumber, parkingType, true));
+    }
+
+    @Test
+    public void lowestNumberStrategyMatchesSqlQuery() {
+        SpotAssignmentStrategy strategy = new LowestNumberStrategy();
+        List<ParkingSpot> parkingSpots = lot(3, 2);
+        parkingSpots.get(0).setAvailable(false);
+        strategy.load(parkingSpots);
+
+        assertEquals(2, park(strategy, ParkingType.CAR));
+        assertEquals(4, park(strategy, ParkingType.BIKE));
+        leave(strategy, 1, ParkingType.CAR);
+        assertEquals(1, park(strategy, ParkingType.CAR));
+        assertEquals(3, park(strategy, ParkingType.CAR));
+        assertEquals(0, park(strategy, ParkingType.CAR));
+    }
+
+    @Test
+    public void nextSpotDoesNotReserveUntilOccupied() {
+        SpotAssignmentStrategy strategy = new LowestNumberStrategy();
+        strategy.load(lot(3, 0));
+
+        assertEquals(1, strategy.nextSpot(ParkingType.CAR));
+        assertEquals(1, strategy.nextSpot(ParkingType.CAR));
+    }
+
+    @Test
+    public void roundRobinStrategyWrapsAroundTheLot() {
+        SpotAssignmentStrategy strategy = new RoundRobinStrategy();
+        strategy.load(lot(3, 0));
+
+        assertEquals(1, park(strategy, ParkingType.CAR));
+        leave(strategy, 1, ParkingType.CAR);
+        assertEquals(2, park(strategy, ParkingType.CAR));
+        leave(strategy, 2, ParkingType.CAR);
+        assertEquals(3, park(strategy, ParkingType.CAR));
+        leave(strategy, 3, ParkingType.CAR);
+        assertEquals(1, park(strategy, ParkingType.CAR));
+    }
+
+    @Test
+    public void randomStartStrategyOnlyGivesFreeSpotsOfTheType() {
+        SpotAssignmentStrategy strategy = new RandomStartStrategy();
+        strategy.load(lot(50, 10));
+        Set<Integer> given = new HashSet<>();
+
+        for(int i = 0; i < 50; i++){
+            int parkingNumber = park(strategy, ParkingType.CAR);
+            assertTrue(parkingNumber >= 1 && parkingNumber <= 50);
+            assertTrue(given.add(parkingNumber));
+        }
+        assertEquals(0, park(strategy, ParkingType.CAR));
+        assertTrue(park(strategy, ParkingType.BIKE) > 50);
+    }
+
+    @Test
+    public void zoneAwareStrategyFillsTheEmptiestZone() {
+        ZoneAwareStrategy strategy = new ZoneAwareStrategy(10);
+        strategy.load(lot(30, 0));
+
+        assertEquals(1, park(strategy, ParkingType.CAR));
+        assertEquals(11, park(strategy, ParkingType.CAR));
+        assertEquals(21, park(strategy, ParkingType.CAR));
+        assertEquals(2, park(strategy, ParkingType.CAR));
+        leave(strategy, 11, ParkingType.CAR);
+        assertEquals(11, park(strategy, ParkingType.CAR));
+        assertEquals(12, park(strategy, ParkingType.CAR));
+    }
+
+    @Test
+    public void leastRecentlyUsedStrategyGivesTheLongestIdleSpot() {
+        SpotAssignmentStrategy strategy = new LeastRecentlyUsedStrategy();
+        strategy.load(lot(3, 0));
+
+        assertEquals(1, park(strategy, ParkingType.CAR));
+        assertEquals(2, park(strategy, ParkingType.CAR));
+        leave(strategy, 2, ParkingType.CAR);
+        leave(strategy, 1, ParkingType.CAR);
+        assertEquals(3, park(strategy, ParkingType.CAR));
+        assertEquals(2, park(strategy, ParkingType.CAR));
+        assertEquals(1, park(strategy, ParkingType.CAR));
+    }
+
+    @Test
+    public void forNameRejectsUnknownStrategy() {
+        assertTrue(SpotAssignmentStrategy.forName("lru") instanceof LeastRecentlyUsedStrategy);
+        assertThrows(IllegalArgumentException.class, () -> SpotAssignmentStrategy.forName("closest"));
+    }
+}
@@ -0,0 +1,164 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotCheck;
+import com.parkit.parkingsystem.service.ParkingLocks;
+import com.parkit.parkingsystem.service.SpotReconciler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+public class SpotReconcilerTest {
+
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static Clock clock;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotDAO.dataBaseConfig = dataBaseConfig;
+    }
+
+    private static List<SpotCheck> chunk(int from, int count){
+        List<SpotCheck> spotChecks = new ArrayList<>();
+        for(int parkingNumber = from; parkingNumber < from + count; parkingNumber++){
+            spotChecks.add(new SpotCheck(new ParkingSpot(parkingNumber, ParkingType.CAR, true), false));
+        }
+        return spotChecks;
+    }
+
+    @Test
+    public void reconcileRepairsAMismatchOnlyOnceItOutlivesTheGracePeriod() {
+        SpotCheck leftOccupied = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false);
+        SpotCheck consistent = new SpotCheck(new ParkingSpot(2, ParkingType.CAR, false), true);
+        when(parkingSpotDAO.getSpotChecksAfter(0, 100)).thenReturn(Arrays.asList(leftOccupied, consistent));
+        when(clock.millis()).thenReturn(0L).thenReturn(5000L).thenReturn(10000L);
+        when(parkingSpotDAO.repairParkingSpots(anyList()))
+                .thenReturn(Collections.singletonList(new ParkingSpot(1, ParkingType.CAR, true)));
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 1000, 0, 0, 10000, clock);
+
+        assertEquals(0, spotReconciler.reconcile());
+        assertEquals(0, spotReconciler.reconcile());
+        assertEquals(1, spotReconciler.reconcile());
+
+        verify(parkingSpotDAO).repairParkingSpots(argThat(spotChecks -> spotChecks.size() == 1
+                && spotChecks.get(0).getParkingSpot().getId() == 1 && !spotChecks.get(0).hasOpenTicket()));
+        assertEquals(3, spotReconciler.getMismatches());
+        assertEquals(1, spotReconciler.getRepairs());
+        assertEquals(6, spotReconciler.getSpotsChecked());
+    }
+
+    @Test
+    public void reconcileForgetsAMismatchThatResolvedItself() {
+        SpotCheck inFlight = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false);
+        SpotCheck parked = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), true);
+        when(parkingSpotDAO.getSpotChecksAfter(0, 100)).thenReturn(Collections.singletonList(inFlight))
+                .thenReturn(Collections.singletonList(parked)).thenReturn(Collections.singletonList(inFlight));
+        when(clock.millis()).thenReturn(0L).thenReturn(20000L).thenReturn(40000L);
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 1000, 0, 0, 10000, clock);
+
+        spotReconciler.reconcile();
+        spotReconciler.reconcile();
+        spotReconciler.reconcile();
+
+        verify(parkingSpotDAO, never()).repairParkingSpots(argThat(spots -> !spots.isEmpty()));
+        assertEquals(0, spotReconciler.getRepairs());
+    }
+
+    @Test
+    public void reconcileStartsTheGracePeriodAgainWhenATicketWasSavedOnTheSpot() {
+        SpotCheck firstEntry = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false, 7);
+        //an earlier vehicle left and the next one is caught between its two statements
+        SpotCheck nextEntry = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false, 8);
+        when(parkingSpotDAO.getSpotChecksAfter(0, 100)).thenReturn(Collections.singletonList(firstEntry))
+                .thenReturn(Collections.singletonList(nextEntry));
+        when(clock.millis()).thenReturn(0L).thenReturn(20000L);
+        ParkingLocks parkingLocks = new ParkingLocks();
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 1000, 0, 0, 10000, clock);
+        spotReconciler.setParkingLocks(parkingLocks);
+
+        spotReconciler.reconcile();
+        spotReconciler.reconcile();
+
+        verify(parkingSpotDAO, never()).repairParkingSpots(argThat(spotChecks -> !spotChecks.isEmpty()));
+        assertEquals(2, spotReconciler.getMismatches());
+    }
+
+    @Test
+    public void repairsWaitForTheAllocationLockOfTheirType() throws Exception {
+        SpotCheck leftOccupied = new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false, 7);
+        when(parkingSpotDAO.getSpotChecksAfter(0, 100)).thenReturn(Collections.singletonList(leftOccupied));
+        when(clock.millis()).thenReturn(0L).thenReturn(10000L);
+        ParkingLocks parkingLocks = new ParkingLocks();
+        when(parkingSpotDAO.repairParkingSpots(anyList())).thenAnswer(invocation -> {
+            assertTrue(parkingLocks.allocationLock(ParkingType.CAR).isHeldByCurrentThread());
+            return Collections.singletonList(new ParkingSpot(1, ParkingType.CAR, true));
+        });
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 1000, 0, 0, 10000, clock);
+        spotReconciler.setParkingLocks(parkingLocks);
+
+        spotReconciler.reconcile();
+
+        assertEquals(1, spotReconciler.reconcile());
+    }
+
+    @Test
+    public void slowChunksShrinkTheChunkAndLengthenThePause() {
+        when(parkingSpotDAO.getSpotChecksAfter(anyInt(), anyInt()))
+                .thenAnswer(invocation -> chunk((int) invocation.getArgument(0) + 1, (int) invocation.getArgument(1)))
+                .thenAnswer(invocation -> chunk((int) invocation.getArgument(0) + 1, (int) invocation.getArgument(1)))
+                .thenReturn(Collections.emptyList());
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 0, 1, 4, 10000, clock);
+
+        spotReconciler.reconcile();
+
+        verify(parkingSpotDAO).getSpotChecksAfter(0, 100);
+        verify(parkingSpotDAO).getSpotChecksAfter(100, 50);
+        verify(parkingSpotDAO).getSpotChecksAfter(150, 25);
+        assertEquals(12, spotReconciler.getChunkSize());
+        assertEquals(4, spotReconciler.getPauseMillis());
+        assertEquals(3, spotReconciler.getThrottles());
+    }
+
+    @Test
+    public void fastChunksKeepTheLargestChunk() {
+        when(parkingSpotDAO.getSpotChecksAfter(anyInt(), anyInt()))
+                .thenAnswer(invocation -> chunk((int) invocation.getArgument(0) + 1, (int) invocation.getArgument(1)))
+                .thenReturn(Collections.emptyList());
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 60000, 0, 4, 10000, clock);
+
+        spotReconciler.reconcile();
+
+        verify(parkingSpotDAO).getSpotChecksAfter(100, 100);
+        assertEquals(100, spotReconciler.getChunkSize());
+        assertEquals(0, spotReconciler.getThrottles());
+    }
+
+    @Test
+    public void reconcileIsSkippedInDegradedMode() {
+        when(dataBaseConfig.isDegraded()).thenReturn(true);
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 10, 100, 1000, 0, 0, 10000, clock);
+
+        assertEquals(-1, spotReconciler.reconcile());
+
+        verify(parkingSpotDAO, never()).getSpotChecksAfter(anyInt(), anyInt());
+    }
+}
@@ -0,0 +1,77 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.constants.DBConstants;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTypeDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingLotState;
+import com.parkit.parkingsystem.service.StartupService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@ExtendWith(MockitoExtension.class)
+public class StartupServiceTest {
+
+    @Mock
+    private static DataBaseConfig dataBaseConfig;
+    @Mock
+    private static ParkingSpotDAO parkingSpotDAO;
+    @Mock
+    private static TicketDAO ticketDAO;
+    @Mock
+    private static ParkingTypeDAO parkingTypeDAO;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warmUpPreparesEveryStatementAndLoadsState() throws Exception {
+        Ticket openTicket = new Ticket();
+        openTicket.setVehicleRegNumber("ABCDEF");
+        openTicket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        when(parkingSpotDAO.getParkingSpots()).thenReturn(Arrays.asList(
+                new ParkingSpot(1, ParkingType.CAR, false), new ParkingSpot(2, ParkingType.CAR, true), new ParkingSpot(3, ParkingType.BIKE, true)));
+        when(ticketDAO.getOpenTickets()).thenReturn(Collections.singletonList(openTicket));
+        StartupService startupService = new StartupService(dataBaseConfig, parkingSpotDAO, ticketDAO, parkingTypeDAO);
+
+        ParkingLotState parkingLotState = startupService.warmUp();
+
+        ArgumentCaptor<List<String>> statements = ArgumentCaptor.forClass(List.class);
+        verify(dataBaseConfig).loadDriver();
+        verify(dataBaseConfig).openPool(anyInt());
+        verify(dataBaseConfig).prepareStatements(statements.capture());
+        assertTrue(statements.getValue().contains(DBConstants.GET_TICKET));
+        assertTrue(statements.getValue().contains(DBConstants.GET_NEXT_PARKING_SPOT));
+        verify(parkingTypeDAO).loadParkingTypes();
+        assertEquals(1, parkingLotState.getAvailableSpots(ParkingType.CAR));
+        assertEquals(1, parkingLotState.getAvailableSpots(ParkingType.BIKE));
+        assertSame(openTicket, parkingLotState.getOpenTicket("ABCDEF"));
+        assertEquals(Arrays.asList("load driver", "open connection pool", "prepare statements", "load parking types", "load parking state", "total"),
+                Arrays.asList(startupService.getPhaseTimings().keySet().toArray()));
+    }
+
+    @Test
+    public void warmUpContinuesAfterFailedPhase() throws Exception {
+        when(dataBaseConfig.openPool(anyInt())).thenThrow(new SQLException("Connection refused"));
+        StartupService startupService = new StartupService(dataBaseConfig, parkingSpotDAO, ticketDAO, parkingTypeDAO);
+
+        startupService.warmUp();
+
+        verify(dataBaseConfig).prepareStatements(anyList());
+        verify(parkingSpotDAO).getParkingSpots();
+        verify(ticketDAO).getOpenTickets();
+    }
+}
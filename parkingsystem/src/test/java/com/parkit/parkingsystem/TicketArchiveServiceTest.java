@@ -0,0 +1,53 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.service.TicketArchiveService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Date;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketArchiveServiceTest {
+
+    @Mock
+    private static TicketArchiveDAO ticketArchiveDAO;
+
+    @Test
+    public void archiveClosedTicketsMovesChunksUntilLastPartialChunk() {
+        when(ticketArchiveDAO.archiveClosedTickets(any(Date.class), eq(10))).thenReturn(10, 10, 3);
+        TicketArchiveService ticketArchiveService = new TicketArchiveService(ticketArchiveDAO, 30, 10, 0);
+
+        int archived = ticketArchiveService.archiveClosedTickets();
+
+        verify(ticketArchiveDAO, times(3)).archiveClosedTickets(any(Date.class), eq(10));
+        assertEquals(23, archived);
+    }
+
+    @Test
+    public void archiveClosedTicketsStopsOnFailedChunk() {
+        when(ticketArchiveDAO.archiveClosedTickets(any(Date.class), eq(10))).thenReturn(10, -1);
+        TicketArchiveService ticketArchiveService = new TicketArchiveService(ticketArchiveDAO, 30, 10, 0);
+
+        int archived = ticketArchiveService.archiveClosedTickets();
+
+        verify(ticketArchiveDAO, times(2)).archiveClosedTickets(any(Date.class), eq(10));
+        assertEquals(10, archived);
+    }
+
+    @Test
+    public void archiveClosedTicketsOnlyTargetsTicketsOutsideRetention() {
+        when(ticketArchiveDAO.archiveClosedTickets(any(Date.class), anyInt())).thenReturn(0);
+        TicketArchiveService ticketArchiveService = new TicketArchiveService(ticketArchiveDAO, 30, 10, 0);
+        long before = System.currentTimeMillis();
+
+        ticketArchiveService.archiveClosedTickets();
+
+        verify(ticketArchiveDAO).archiveClosedTickets(argThat(cutoff -> cutoff.getTime() <= before - 30L*24*60*60*1000 + 1000), eq(10));
+    }
+}
@@ -0,0 +1,151 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.TicketHistoryService;
+import com.parkit.parkingsystem.util.ColumnarTicketReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+public class TicketHistoryServiceTest {
+
+    @Mock
+    private static TicketDAO ticketDAO;
+
+    @TempDir
+    Path tempDir;
+
+    private static Ticket closedTicket(int id, String plate, ParkingType parkingType, ZonedDateTime inTime, int minutes, double price){
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setVehicleRegNumber(plate);
+        ticket.setParkingSpot(new ParkingSpot(id % 5 + 1, parkingType, true));
+        ticket.setInTime(Date.from(inTime.toInstant()));
+        ticket.setOutTime(Date.from(inTime.plusMinutes(minutes).toInstant()));
+        ticket.setPrice(price);
+        return ticket;
+    }
+
+    private Path exportTickets(List<Ticket> tickets) throws Exception {
+        List<Ticket> firstPage = tickets.subList(0, tickets.size() / 2);
+        List<Ticket> secondPage = tickets.subList(tickets.size() / 2, tickets.size());
+        when(ticketDAO.getClosedTicketsAfter(anyInt(), eq(TicketHistoryService.EXPORT_BATCH_SIZE)))
+                .thenReturn(firstPage).thenReturn(secondPage).thenReturn(Collections.emptyList());
+        Path file = tempDir.resolve("tickets.pkth");
+        long exported = new TicketHistoryService(ticketDAO).exportClosedTickets(file);
+        assertEquals(tickets.size(), exported);
+        return file;
+    }
+
+    @Test
+    public void exportFailingPartwayThrowsAndLeavesNoFile() {
+        ZonedDateTime start = ZonedDateTime.of(2023, 1, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+        when(ticketDAO.getClosedTicketsAfter(anyInt(), eq(TicketHistoryService.EXPORT_BATCH_SIZE)))
+                .thenReturn(Collections.singletonList(closedTicket(1, "AAA", ParkingType.CAR, start, 60, 1.5))).thenReturn(null);
+        Path file = tempDir.resolve("tickets.pkth");
+
+        assertThrows(IOException.class, () -> new TicketHistoryService(ticketDAO).exportClosedTickets(file));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void exportedFileReadsBackEveryColumn() throws Exception {
+        ZonedDateTime start = ZonedDateTime.of(2023, 1, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 1; i <= 20000; i++){
+            tickets.add(closedTicket(i, "PLATE"+(i % 37), i % 3 == 0 ? ParkingType.BIKE : ParkingType.CAR, start.plusMinutes(i * 7L), i % 300, (i % 300) * 0.25));
+        }
+        Path file = exportTickets(tickets);
+
+        int row = 0;
+        try(InputStream in = Files.newInputStream(file);
+            ColumnarTicketReader reader = new ColumnarTicketReader(in, ColumnarTicketReader.ALL)){
+            while(reader.nextRowGroup()){
+                for(int i = 0; i < reader.getRowCount(); i++){
+                    Ticket expected = tickets.get(row++);
+                    assertEquals(expected.getId(), reader.getIds()[i]);
+                    assertEquals(expected.getVehicleRegNumber(), reader.getPlates()[reader.getPlateIndexes()[i]]);
+                    assertEquals(expected.getParkingSpot().getParkingType().toString(), reader.getTypes()[reader.getTypeIndexes()[i]]);
+                    assertEquals(expected.getInTime().getTime() / 1000, reader.getInTimes()[i]);
+                    assertEquals((expected.getOutTime().getTime() - expected.getInTime().getTime()) / 1000, reader.getStaySeconds()[i]);
+                    assertEquals(Math.round(expected.getPrice() * 100), reader.getPriceCents()[i]);
+                }
+            }
+        }
+        assertEquals(tickets.size(), row);
+        assertTrue(Files.size(file) < tickets.size() * 12L);
+    }
+
+    @Test
+    public void getMonthlyRevenueByTypeSumsFaresPerMonth() throws Exception {
+        List<Ticket> tickets = new ArrayList<>();
+        tickets.add(closedTicket(1, "AAA", ParkingType.CAR, ZonedDateTime.of(2023, 1, 10, 8, 0, 0, 0, ZoneOffset.UTC), 60, 1.5));
+        tickets.add(closedTicket(2, "BBB", ParkingType.CAR, ZonedDateTime.of(2023, 1, 31, 23, 0, 0, 0, ZoneOffset.UTC), 120, 3.0));
+        tickets.add(closedTicket(3, "CCC", ParkingType.BIKE, ZonedDateTime.of(2023, 2, 1, 0, 0, 0, 0, ZoneOffset.UTC), 60, 1.0));
+        tickets.add(closedTicket(4, "AAA", ParkingType.CAR, ZonedDateTime.of(2023, 2, 3, 9, 0, 0, 0, ZoneOffset.UTC), 60, 1.43));
+        Path file = exportTickets(tickets);
+
+        Map<YearMonth, Map<String, Double>> revenue = new TicketHistoryService(ticketDAO).getMonthlyRevenueByType(file);
+
+        assertEquals(4.5, revenue.get(YearMonth.of(2023, 1)).get("CAR"));
+        assertNull(revenue.get(YearMonth.of(2023, 1)).get("BIKE"));
+        assertEquals(1.43, revenue.get(YearMonth.of(2023, 2)).get("CAR"));
+        assertEquals(1.0, revenue.get(YearMonth.of(2023, 2)).get("BIKE"));
+    }
+
+    @Test
+    public void getLengthOfStayHistogramBucketsStaysOfOneType() throws Exception {
+        ZonedDateTime start = ZonedDateTime.of(2023, 3, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+        List<Ticket> tickets = new ArrayList<>();
+        tickets.add(closedTicket(1, "AAA", ParkingType.CAR, start, 10, 0));
+        tickets.add(closedTicket(2, "BBB", ParkingType.CAR, start, 45, 1.0));
+        tickets.add(closedTicket(3, "CCC", ParkingType.BIKE, start, 45, 0.75));
+        tickets.add(closedTicket(4, "DDD", ParkingType.CAR, start, 600, 15.0));
+        Path file = exportTickets(tickets);
+
+        long[] histogram = new TicketHistoryService(ticketDAO).getLengthOfStayHistogram(file, "CAR", 30, 4);
+
+        assertArrayEquals(new long[]{1, 1, 0, 1}, histogram);
+    }
+
+    @Test
+    public void forEachVisitReadsPagesFromTheLastTicketOfThePreviousOne() {
+        ZonedDateTime start = ZonedDateTime.of(2023, 3, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+        List<Ticket> firstPage = new ArrayList<>();
+        for(int i = TicketHistoryService.PLATE_HISTORY_PAGE_SIZE + 1; i > 1; i--){
+            firstPage.add(closedTicket(i, "AAA", ParkingType.CAR, start.plusDays(i), 60, 1.5));
+        }
+        Ticket last = firstPage.get(firstPage.size() - 1);
+        when(ticketDAO.getTicketHistory("AAA", null, null, null, TicketHistoryService.PLATE_HISTORY_PAGE_SIZE)).thenReturn(firstPage);
+        when(ticketDAO.getTicketHistory("AAA", null, null, last, TicketHistoryService.PLATE_HISTORY_PAGE_SIZE))
+                .thenReturn(Collections.singletonList(closedTicket(1, "AAA", ParkingType.CAR, start, 60, 1.5)));
+        List<Integer> ids = new ArrayList<>();
+
+        long count = new TicketHistoryService(ticketDAO).forEachVisit("AAA", null, null, ticket -> ids.add(ticket.getId()));
+
+        assertEquals(TicketHistoryService.PLATE_HISTORY_PAGE_SIZE + 1, count);
+        assertEquals(1, ids.get(ids.size() - 1));
+    }
+}
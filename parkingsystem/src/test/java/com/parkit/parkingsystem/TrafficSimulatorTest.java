@@ -0,0 +1,127 @@
+package com.parkit.parkingsystem;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import com.parkit.parkingsystem.simulation.SimulationReport;
+import com.parkit.parkingsystem.simulation.TrafficProfile;
+import com.parkit.parkingsystem.simulation.TrafficSimulator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TrafficSimulatorTest {
+
+    private static class InMemoryParkingSpotDAO extends ParkingSpotDAO {
+        private final Map<Integer, ParkingSpot> spots = new TreeMap<>();
+
+        InMemoryParkingSpotDAO(int cars, int bikes){
+            for(int i = 1; i <= cars + bikes; i++){
+                spots.put(i, new ParkingSpot(i, i <= cars ? ParkingType.CAR : ParkingType.BIKE, true));
+            }
+        }
+
+        @Override
+        public int getNextAvailableSlot(ParkingType parkingType){
+            for(ParkingSpot spot : spots.values()){
+                if(spot.isAvailable() && spot.getParkingType() == parkingType){
+                    return spot.getId();
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean updateParking(ParkingSpot parkingSpot){
+            spots.get(parkingSpot.getId()).setAvailable(parkingSpot.isAvailable());
+            return true;
+        }
+
+        @Override
+        public int occupyParkingSpot(ParkingSpot parkingSpot){
+            ParkingSpot spot = spots.get(parkingSpot.getId());
+            if(!spot.isAvailable()){
+                return 0;
+            }
+            spot.setAvailable(false);
+            return 1;
+        }
+    }
+
+    private static class InMemoryTicketDAO extends TicketDAO {
+        private final List<Ticket> tickets = new ArrayList<>();
+        private final Map<String, Ticket> openTickets = new HashMap<>();
+
+        @Override
+        public boolean saveTicket(Ticket ticket){
+            ticket.setId(tickets.size() + 1);
+            tickets.add(ticket);
+            openTickets.put(ticket.getVehicleRegNumber(), ticket);
+            return true;
+        }
+
+        @Override
+        public Ticket getTicket(String vehicleRegNumber){
+            return openTickets.get(vehicleRegNumber);
+        }
+
+        @Override
+        public boolean updateTicket(Ticket ticket){
+            openTickets.remove(ticket.getVehicleRegNumber());
+            return true;
+        }
+
+        @Override
+        public int getNbTicket(String vehicleRegNumber){
+            return 0;
+        }
+
+        @Override
+        public boolean isAlreadyInParking(String vehicleRegNumber){
+            return openTickets.containsKey(vehicleRegNumber);
+        }
+    }
+
+    @Test
+    public void runReplaysSeveralDaysOfTrafficWithRealisticFares() {
+        SimulationClock clock = new SimulationClock(Instant.parse("2023-06-01T00:00:00Z"));
+        InMemoryTicketDAO ticketDAO = new InMemoryTicketDAO();
+        ParkingService parkingService = new ParkingService(null, new InMemoryParkingSpotDAO(50, 20), ticketDAO, clock);
+        TrafficSimulator simulator = new TrafficSimulator(parkingService, clock, 42)
+                .addTraffic(new TrafficProfile(ParkingType.CAR, 12).addStay(0.7, Duration.ofMinutes(40)).addStay(0.3, Duration.ofHours(9)))
+                .addTraffic(new TrafficProfile(ParkingType.BIKE, 4).addStay(1, Duration.ofHours(2)))
+                .setSampleInterval(Duration.ofHours(1));
+
+        SimulationReport report = simulator.run(Duration.ofDays(3));
+
+        assertEquals(Instant.parse("2023-06-04T00:00:00Z"), clock.instant());
+        assertTrue(report.getAdmitted() > 1000);
+        assertEquals(report.getAdmitted() - report.getExited(), ticketDAO.openTickets.size());
+        assertEquals(72, report.getOccupancyCurve().size());
+        for(SimulationReport.OccupancySample sample : report.getOccupancyCurve()){
+            assertTrue(sample.getOccupancy().get(ParkingType.CAR) <= 50);
+            assertTrue(sample.getOccupancy().get(ParkingType.BIKE) <= 20);
+        }
+        for(Ticket ticket : ticketDAO.tickets){
+            if(ticket.getOutTime() != null){
+                double hours = (ticket.getOutTime().getTime() - ticket.getInTime().getTime()) / 3_600_000d;
+                double rate = ticket.getParkingSpot().getParkingType() == ParkingType.CAR ? 1.5 : 1.0;
+                assertEquals(hours < 0.5 ? 0 : hours * rate, ticket.getPrice(), 0.01);
+            }
+        }
+        assertTrue(report.getThroughput() > 0);
+        assertTrue(report.getEntryLatencyPercentile(99) <= report.getEntryLatencyPercentile(100));
+    }
+}
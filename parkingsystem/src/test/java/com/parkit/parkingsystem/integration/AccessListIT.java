@@ -0,0 +1,89 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.AccessListDAO;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.AccessListService;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+public class AccessListIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("AccessListIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static AccessListDAO accessListDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        accessListDAO = new AccessListDAO();
+        accessListDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static void parkedFor(String vehicleRegNumber, long hours){
+        Ticket ticket = ticketDAO.getTicket(vehicleRegNumber);
+        ticket.setInTime(new Date(ticket.getInTime().getTime() - TimeUnit.HOURS.toMillis(hours)));
+        ticketDAO.updateTicketIntime(ticket);
+    }
+
+    @Test
+    public void blockedVehiclesAreRefusedAndPassHoldersParkForFree() {
+        long nextMonth = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(30);
+        assertTrue(accessListDAO.saveSeasonPass("PASS-1", new Date(nextMonth)));
+        assertTrue(accessListDAO.saveBlocklistEntry("BLOCK-1", null));
+        AccessListService accessListService = new AccessListService(accessListDAO);
+        assertTrue(accessListService.refresh());
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+        parkingService.setAccessListService(accessListService);
+
+        assertNull(parkingService.enterVehicle(ParkingType.CAR, "BLOCK-1"));
+        assertFalse(ticketDAO.isAlreadyInParking("BLOCK-1"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "PASS-1"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "VISIT-1"));
+        parkedFor("PASS-1", 2);
+        parkedFor("VISIT-1", 2);
+
+        assertEquals(0, parkingService.exitVehicle("PASS-1").getPrice());
+        assertTrue(parkingService.exitVehicle("VISIT-1").getPrice() > 0);
+    }
+
+    @Test
+    public void rowsAddedAfterTheLoadAreAppliedByTheNextRefresh() {
+        assertTrue(accessListDAO.saveBlocklistEntry("BLOCK-1", null));
+        AccessListService accessListService = new AccessListService(accessListDAO, 1, 0.01, Clock.systemDefaultZone());
+        assertTrue(accessListService.refresh());
+        assertTrue(accessListService.isBlocked("BLOCK-1"));
+
+        assertTrue(accessListDAO.saveBlocklistEntry("BLOCK-2", null));
+        assertTrue(accessListDAO.saveBlocklistEntry("BLOCK-1", new Date(System.currentTimeMillis() - 1000)));
+        assertTrue(accessListService.refresh());
+
+        assertFalse(accessListService.isBlocked("BLOCK-1"));
+        assertTrue(accessListService.isBlocked("BLOCK-2"));
+        assertEquals(3, accessListService.getBlocklist().getHighWaterId());
+        assertEquals(1, accessListService.getBlocklist().size());
+    }
+}
@@ -0,0 +1,65 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.AdmissionQueue;
+import com.parkit.parkingsystem.service.ParkingService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+
+public class AdmissionQueueIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("AdmissionQueueIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        new DataBasePrepareService(dataBaseTestConfig).clearDataBaseEntries();
+    }
+
+    @Test
+    public void exitsHandTheirSpotToTheVehiclesWaitingForIt() throws Exception {
+        AdmissionQueue admissionQueue = new AdmissionQueue(10, 60000, Clock.systemDefaultZone());
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+        parkingService.setAdmissionQueue(admissionQueue);
+        for(int car = 1; car <= 3; car++){
+            assertNotNull(parkingService.enterVehicleOrWait(null, ParkingType.CAR, "FULL-"+car).getNow(null));
+        }
+        assertNotNull(parkingService.enterVehicleOrWait(null, ParkingType.BIKE, "BIKE-1").getNow(null));
+
+        CompletableFuture<Ticket> first = parkingService.enterVehicleOrWait(null, ParkingType.CAR, "WAIT-1");
+        CompletableFuture<Ticket> second = parkingService.enterVehicleOrWait(null, ParkingType.CAR, "WAIT-2");
+        assertFalse(first.isDone());
+        assertEquals(2, admissionQueue.getQueueLength(ParkingType.CAR));
+
+        assertNotNull(parkingService.exitVehicle("BIKE-1"));
+        assertFalse(first.isDone());
+        assertNotNull(parkingService.exitVehicle("FULL-2"));
+
+        Ticket ticket = first.getNow(null);
+        assertNotNull(ticket);
+        assertEquals(2, ticket.getParkingSpot().getId());
+        assertTrue(ticketDAO.isAlreadyInParking("WAIT-1"));
+        assertFalse(parkingSpotDAO.getAvailableSlots(ParkingType.CAR).contains(2));
+        assertFalse(second.isDone());
+
+        assertNotNull(parkingService.exitVehicle("WAIT-1"));
+        assertEquals(2, second.getNow(null).getParkingSpot().getId());
+        assertEquals(0, admissionQueue.getQueueLength());
+        assertEquals(2, admissionQueue.getAdmitted());
+    }
+}
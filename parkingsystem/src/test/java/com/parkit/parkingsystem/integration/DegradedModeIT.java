@@ -0,0 +1,166 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.config.CircuitBreaker;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.SlowDataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.DeferredWriteQueue;
+import com.parkit.parkingsystem.service.ParkingLotState;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DegradedModeIT {
+
+    private static SlowDataBaseTestConfig dataBaseTestConfig = new SlowDataBaseTestConfig("DegradedModeIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    private SimulationClock clock;
+    private DeferredWriteQueue deferredWriteQueue;
+    private ParkingService parkingService;
+
+    @BeforeAll
+    private static void setUp() {
+        assumeFalse(SlowDataBaseTestConfig.isMySql(), "latency is injected in the embedded database");
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO.queryTimeoutSeconds = 1;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO.queryTimeoutSeconds = 1;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBaseTestConfig.setLatencyMillis(0);
+        dataBasePrepareService.clearDataBaseEntries();
+        clock = new SimulationClock(Instant.parse("2023-06-01T08:00:00Z"));
+        dataBaseTestConfig.setCircuitBreaker(new CircuitBreaker(2, 10_000, clock));
+
+        ParkingLotState parkingLotState = new ParkingLotState();
+        parkingLotState.load(parkingSpotDAO.getParkingSpots(), ticketDAO.getOpenTickets());
+        deferredWriteQueue = new DeferredWriteQueue(dataBaseTestConfig, parkingSpotDAO, ticketDAO);
+        parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        parkingService.setParkingLotState(parkingLotState);
+        parkingService.setDeferredWriteQueue(deferredWriteQueue);
+    }
+
+    private static long millisSince(long start){
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    public void gatesKeepWorkingOnASlowDatabaseAndCatchUpWhenItRecovers() {
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "HEALTHY"));
+        assertTrue(ticketDAO.isAlreadyInParking("HEALTHY"));
+
+        dataBaseTestConfig.setLatencyMillis(5_000);
+        //the first entry pays two query timeouts, which open the circuit
+        Ticket first = parkingService.enterVehicle(ParkingType.CAR, "SLOW1");
+        assertNotNull(first);
+        assertEquals(2, first.getParkingSpot().getId());
+        assertEquals(CircuitBreaker.State.OPEN, dataBaseTestConfig.getCircuitBreaker().getState());
+
+        long start = System.nanoTime();
+        Ticket second = parkingService.enterVehicle(ParkingType.CAR, "SLOW2");
+        assertNull(parkingService.enterVehicle(ParkingType.CAR, "SLOW3"));
+        assertNull(parkingService.enterVehicle(ParkingType.CAR, "SLOW2"));
+        assertNotNull(second);
+        assertEquals(3, second.getParkingSpot().getId());
+        assertTrue(millisSince(start) < 500, "degraded entries must not wait on the database");
+        assertEquals(2, deferredWriteQueue.size());
+        assertEquals(0, deferredWriteQueue.flush());
+
+        clock.advance(Duration.ofHours(1));
+        start = System.nanoTime();
+        Ticket exited = parkingService.exitVehicle("SLOW1");
+        assertTrue(millisSince(start) < 500);
+        assertNotNull(exited);
+        assertEquals(1.5, exited.getPrice(), 0.001);
+        assertEquals(3, deferredWriteQueue.size());
+
+        dataBaseTestConfig.setLatencyMillis(0);
+        assertEquals(3, deferredWriteQueue.flush());
+        assertEquals(0, deferredWriteQueue.size());
+        assertEquals(CircuitBreaker.State.CLOSED, dataBaseTestConfig.getCircuitBreaker().getState());
+
+        assertFalse(ticketDAO.isAlreadyInParking("SLOW1"));
+        assertEquals(1.5, ticketDAO.getTicket("SLOW1").getPrice(), 0.001);
+        assertTrue(ticketDAO.isAlreadyInParking("SLOW2"));
+        Map<Integer, Boolean> availability = new HashMap<>();
+        for(ParkingSpot parkingSpot : parkingSpotDAO.getParkingSpots()){
+            availability.put(parkingSpot.getId(), parkingSpot.isAvailable());
+        }
+        assertFalse(availability.get(1));
+        assertTrue(availability.get(2));
+        assertFalse(availability.get(3));
+
+        //back to normal operation
+        assertNotNull(parkingService.exitVehicle("SLOW2"));
+        assertEquals(0, deferredWriteQueue.size());
+        assertFalse(ticketDAO.isAlreadyInParking("SLOW2"));
+    }
+
+    @Test
+    public void refusedDeferredEntryIsDeadLetteredWithoutHoldingTheQueue() {
+        Ticket refused = new Ticket();
+        refused.setParkingSpot(new ParkingSpot(3, ParkingType.CAR, false));
+        refused.setVehicleRegNumber("PLATE-TOO-LONG");
+        refused.setInTime(new Date(clock.millis()));
+        assertTrue(deferredWriteQueue.deferEntry(refused));
+        //the queued write keeps the gates on the in-memory state
+        Ticket queued = parkingService.enterVehicle(ParkingType.CAR, "QUEUED");
+        assertNotNull(queued);
+        assertEquals(2, deferredWriteQueue.size());
+
+        assertEquals(1, deferredWriteQueue.flush());
+
+        assertEquals(0, deferredWriteQueue.size());
+        assertEquals(1, deferredWriteQueue.getDeadLettered());
+        assertEquals("PLATE-TOO-LONG", deferredWriteQueue.getDeadLetters().get(0).getVehicleRegNumber());
+        assertTrue(ticketDAO.isAlreadyInParking("QUEUED"));
+        assertTrue(parkingSpotDAO.getAvailableSlots(ParkingType.CAR).contains(3));
+    }
+
+    @Test
+    public void tooLongPlateIsRefusedBeforeAnyWrite() {
+        assertNull(parkingService.enterVehicle(ParkingType.CAR, "PLATE-TOO-LONG"));
+
+        assertEquals(0, deferredWriteQueue.size());
+        assertFalse(deferredWriteQueue.isDegraded());
+    }
+
+    @Test
+    public void fullQueueRefusesTheEntryAndFreesTheSpot() {
+        deferredWriteQueue = new DeferredWriteQueue(dataBaseTestConfig, parkingSpotDAO, ticketDAO, 1);
+        ParkingLotState parkingLotState = new ParkingLotState();
+        parkingLotState.load(parkingSpotDAO.getParkingSpots(), ticketDAO.getOpenTickets());
+        parkingService.setParkingLotState(parkingLotState);
+        parkingService.setDeferredWriteQueue(deferredWriteQueue);
+        dataBaseTestConfig.getCircuitBreaker().recordFailure();
+        dataBaseTestConfig.getCircuitBreaker().recordFailure();
+
+        assertNotNull(parkingService.enterVehicle(ParkingType.BIKE, "BIKE1"));
+        assertNull(parkingService.enterVehicle(ParkingType.BIKE, "BIKE2"));
+
+        assertEquals(1, parkingLotState.getAvailableSpots(ParkingType.BIKE));
+    }
+}
@@ -0,0 +1,124 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.monitoring.ConnectionAcquireEvent;
+import com.parkit.parkingsystem.monitoring.DaoCallEvent;
+import com.parkit.parkingsystem.monitoring.GateEvent;
+import com.parkit.parkingsystem.service.ParkingService;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class GateEventsIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("GateEventsIT");
+    private static ParkingService parkingService;
+
+    @BeforeAll
+    private static void setUp() {
+        ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        TicketDAO ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        new DataBasePrepareService(dataBaseTestConfig).clearDataBaseEntries();
+        parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+    }
+
+    private static Configuration shippedConfiguration() throws Exception {
+        try(Reader reader = new InputStreamReader(GateEventsIT.class.getResourceAsStream("/parkit.jfc"), StandardCharsets.UTF_8)){
+            return Configuration.create(reader);
+        }
+    }
+
+    @Test
+    public void shippedProfileEnablesTheGateEvents() throws Exception {
+        Configuration configuration = shippedConfiguration();
+
+        for(String event : new String[]{GateEvent.NAME, DaoCallEvent.NAME, ConnectionAcquireEvent.NAME}){
+            assertEquals("true", configuration.getSettings().get(event+"#enabled"));
+            assertEquals("false", configuration.getSettings().get(event+"#stackTrace"));
+        }
+        assertEquals("0 ms", configuration.getSettings().get(GateEvent.NAME+"#threshold"));
+    }
+
+    @Test
+    public void gateOperationsAreRecordedWithTheirDatabaseRoundTrips(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("gate.jfr");
+        try(Recording recording = new Recording(shippedConfiguration())){
+            recording.enable(DaoCallEvent.NAME).withoutThreshold();
+            recording.enable(ConnectionAcquireEvent.NAME).withoutThreshold();
+            recording.start();
+            assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "JFR-1"));
+            assertNotNull(parkingService.exitVehicle("JFR-1"));
+            assertNull(parkingService.exitVehicle("JFR-1"));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> gates = new ArrayList<>();
+        List<RecordedEvent> others = new ArrayList<>();
+        for(RecordedEvent event : RecordingFile.readAllEvents(file)){
+            if(event.getEventType().getName().equals(GateEvent.NAME)){
+                //the recording is JVM-wide and other test classes run alongside this one
+                if(event.getInt("plateHash") == "JFR-1".hashCode()){
+                    gates.add(event);
+                }
+            }else if(event.getEventType().getName().startsWith("com.parkit.")){
+                others.add(event);
+            }
+        }
+        gates.sort((a, b) -> Long.compare(a.getLong("operationId"), b.getLong("operationId")));
+        assertEquals(3, gates.size());
+        RecordedEvent entry = gates.get(0);
+        assertEquals(GateEvent.ENTRY, entry.getString("direction"));
+        assertEquals("JFR-1".hashCode(), entry.getInt("plateHash"));
+        assertEquals("CAR", entry.getString("parkingType"));
+        assertEquals(1, entry.getInt("parkingNumber"));
+        assertTrue(entry.getBoolean("success"));
+        RecordedEvent exit = gates.get(1);
+        assertEquals(GateEvent.EXIT, exit.getString("direction"));
+        assertEquals(1, exit.getInt("parkingNumber"));
+        assertEquals(0, exit.getDouble("fare"));
+        assertTrue(exit.getBoolean("success"));
+        assertFalse(gates.get(2).getBoolean("success"));
+
+        Set<String> entryCalls = new HashSet<>();
+        boolean entryConnection = false;
+        for(RecordedEvent event : others){
+            if(event.getLong("operationId") != entry.getLong("operationId")){
+                continue;
+            }
+            if(event.getEventType().getName().equals(DaoCallEvent.NAME)){
+                entryCalls.add(event.getString("dao")+"."+event.getString("method"));
+                assertTrue(event.getBoolean("success"));
+                assertFalse(event.getStartTime().isBefore(entry.getStartTime()));
+                assertFalse(event.getEndTime().isAfter(entry.getEndTime()));
+            }else{
+                entryConnection = true;
+            }
+        }
+        assertTrue(entryCalls.contains("ParkingSpotDAO.getNextAvailableSlot"));
+        assertTrue(entryCalls.contains("ParkingSpotDAO.occupyParkingSpot"));
+        assertTrue(entryCalls.contains("TicketDAO.saveTicket"));
+        assertTrue(entryConnection);
+    }
+}
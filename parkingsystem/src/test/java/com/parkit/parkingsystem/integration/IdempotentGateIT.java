@@ -0,0 +1,104 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class IdempotentGateIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("IdempotentGateIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    private SimulationClock clock;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+        clock = new SimulationClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private static int availableSpots(ParkingType parkingType){
+        int available = 0;
+        for(ParkingSpot parkingSpot : parkingSpotDAO.getParkingSpots()){
+            if(parkingSpot.getParkingType() == parkingType && parkingSpot.isAvailable()){
+                available++;
+            }
+        }
+        return available;
+    }
+
+    @Test
+    public void concurrentRetriesOfOneEntryCreateOneTicket() throws Exception {
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Ticket>> attempts = new ArrayList<>();
+            for(int i = 0; i < 8; i++){
+                attempts.add(executor.submit(() -> parkingService.enterVehicle("gate-1-42", ParkingType.CAR, "ABCDEF")));
+            }
+            Ticket first = attempts.get(0).get();
+            for(Future<Ticket> attempt : attempts){
+                assertSame(first, attempt.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+        assertEquals(2, availableSpots(ParkingType.CAR));
+    }
+
+    @Test
+    public void retriesAfterARestartReturnTheFirstResult() {
+        Ticket entered = new ParkingService(null, parkingSpotDAO, ticketDAO, clock).enterVehicle("gate-1-42", ParkingType.CAR, "ABCDEF");
+        assertNotNull(entered);
+
+        //a new service has an empty cache, the unique request key in the DB answers instead
+        ParkingService restarted = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        Ticket retriedEntry = restarted.enterVehicle("gate-1-42", ParkingType.CAR, "ABCDEF");
+        assertNotNull(retriedEntry);
+        assertEquals(entered.getParkingSpot().getId(), retriedEntry.getParkingSpot().getId());
+        assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+
+        clock.advance(Duration.ofHours(2));
+        Ticket exited = restarted.exitVehicle("gate-2-43", "ABCDEF");
+        assertNotNull(exited);
+        Ticket retriedExit = new ParkingService(null, parkingSpotDAO, ticketDAO, clock).exitVehicle("gate-2-43", "ABCDEF");
+        assertNotNull(retriedExit);
+        assertEquals(exited.getId(), retriedExit.getId());
+        assertEquals(exited.getPrice(), retriedExit.getPrice(), 0.001);
+        assertEquals(3, availableSpots(ParkingType.CAR));
+        assertNull(restarted.exitVehicle("gate-2-44", "ABCDEF"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.dao.TicketEventDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.model.TicketEvent;
+import com.parkit.parkingsystem.outbox.FileTicketEventSink;
+import com.parkit.parkingsystem.outbox.InProcessTicketEventSink;
+import com.parkit.parkingsystem.outbox.OutboxRelay;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class OutboxIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("OutboxIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static TicketEventDAO ticketEventDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp() {
+        ticketEventDAO = new TicketEventDAO();
+        ticketEventDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO.setTicketEventDAO(ticketEventDAO);
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO.setTicketEventDAO(ticketEventDAO);
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static OutboxRelay relay(InProcessTicketEventSink inProcessSink, Path file){
+        return new OutboxRelay(ticketEventDAO, "OutboxIT", Arrays.asList(inProcessSink, new FileTicketEventSink(file)),
+                2, OutboxRelay.DEFAULT_GAP_TIMEOUT_MILLIS, OutboxRelay.DEFAULT_RETENTION_MILLIS, Clock.systemDefaultZone());
+    }
+
+    @Test
+    public void aStayIsStreamedInOrderToEverySink(@TempDir Path directory) throws Exception {
+        ParkingSpot parkingSpot = new ParkingSpot(2, ParkingType.CAR, false);
+        parkingSpotDAO.updateParking(parkingSpot);
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber("OUTBOX-1");
+        ticket.setInTime(new Date(System.currentTimeMillis() - 3600 * 1000));
+        ticketDAO.saveTicket(ticket);
+        Ticket saved = ticketDAO.getTicket("OUTBOX-1");
+        assertEquals(saved.getId(), ticket.getId());
+        saved.setPrice(1.5);
+        saved.setOutTime(new Date());
+        ticketDAO.updateTicket(saved);
+        parkingSpot.setAvailable(true);
+        parkingSpotDAO.updateParking(parkingSpot);
+        InProcessTicketEventSink inProcessSink = new InProcessTicketEventSink();
+        List<TicketEvent> received = new ArrayList<>();
+        inProcessSink.subscribe(received::add);
+        Path file = directory.resolve("events.csv");
+
+        assertEquals(4, relay(inProcessSink, file).relay());
+
+        assertEquals(TicketEvent.Type.SPOT, received.get(0).getType());
+        assertFalse(received.get(0).isAvailable());
+        assertEquals(TicketEvent.Type.ENTRY, received.get(1).getType());
+        assertEquals(saved.getId(), received.get(1).getTicketId());
+        assertEquals("OUTBOX-1", received.get(1).getVehicleRegNumber());
+        assertEquals(TicketEvent.Type.EXIT, received.get(2).getType());
+        assertEquals(1.5, received.get(2).getPrice());
+        assertEquals(TicketEvent.Type.SPOT, received.get(3).getType());
+        assertTrue(received.get(3).isAvailable());
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(2).startsWith(received.get(2).getId()+",EXIT,"+saved.getId()+",2,true,OUTBOX-1,1.5,"));
+        //a new relay of the same name carries on from the saved cursor
+        OutboxRelay restarted = relay(new InProcessTicketEventSink(), file);
+        assertEquals(0, restarted.relay());
+        assertEquals(received.get(3).getId(), restarted.getCursor());
+    }
+
+    @Test
+    public void aRolledBackWriteLeavesNoEvent(@TempDir Path directory) {
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber("OUTBOX-2");
+        ticket.setInTime(new Date());
+        ticket.setRequestKey("outbox-key");
+        assertTrue(ticketDAO.saveTicket(ticket));
+        //the retried request hits the request key constraint
+        assertFalse(ticketDAO.saveTicket(ticket));
+        InProcessTicketEventSink inProcessSink = new InProcessTicketEventSink();
+        List<TicketEvent> received = new ArrayList<>();
+        inProcessSink.subscribe(received::add);
+
+        relay(inProcessSink, directory.resolve("events.csv")).relay();
+
+        assertEquals(1, received.size());
+        assertEquals(TicketEvent.Type.ENTRY, received.get(0).getType());
+    }
+}
@@ -0,0 +1,79 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.monitoring.OverstayMonitor;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class OverstayMonitorIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("OverstayMonitorIT");
+    private ParkingSpotDAO parkingSpotDAO;
+    private TicketDAO ticketDAO;
+
+    @BeforeEach
+    private void setUpPerTest() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        new DataBasePrepareService(dataBaseTestConfig).clearDataBaseEntries();
+    }
+
+    @Test
+    public void savedTicketsAreWatchedUntilTheyAreClosed() {
+        OverstayMonitor overstayMonitor = new OverstayMonitor(OverstayMonitor.DEFAULT_TICK_MILLIS, 1000, 2000, 3000, Clock.systemDefaultZone());
+        overstayMonitor.load(ticketDAO.getOpenTickets());
+        ticketDAO.setOverstayMonitor(overstayMonitor);
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "STAY-1"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "STAY-2"));
+        assertEquals(2, overstayMonitor.getWatched());
+        assertNotNull(parkingService.exitVehicle("STAY-1"));
+
+        assertEquals(1, overstayMonitor.getWatched());
+        assertEquals(1, overstayMonitor.getCancelled());
+    }
+
+    @Test
+    public void ticketsClosedThroughAnotherNodeAreNotFired() {
+        SimulationClock clock = new SimulationClock(Instant.parse("2023-06-01T08:00:00Z"));
+        OverstayMonitor overstayMonitor = new OverstayMonitor(1000, 60_000, 120_000, 180_000, clock);
+        overstayMonitor.setTicketDAO(ticketDAO);
+        ticketDAO.setOverstayMonitor(overstayMonitor);
+        List<String> fired = Collections.synchronizedList(new ArrayList<>());
+        overstayMonitor.addListener((stage, ticket) -> fired.add(ticket.getVehicleRegNumber()+" "+stage));
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        //another node shares the database, not the monitor
+        TicketDAO otherTicketDAO = new TicketDAO();
+        otherTicketDAO.dataBaseConfig = dataBaseTestConfig;
+        ParkingService otherNode = new ParkingService(null, parkingSpotDAO, otherTicketDAO, clock);
+
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "STAY-1"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "LEFT-1"));
+        clock.advance(Duration.ofSeconds(30));
+        assertNotNull(otherNode.exitVehicle("LEFT-1"));
+        clock.advance(Duration.ofSeconds(31));
+
+        assertEquals(1, overstayMonitor.tick());
+        assertEquals(Collections.singletonList("STAY-1 OVERSTAY"), fired);
+        assertEquals(1, overstayMonitor.getClosedElsewhere());
+        assertEquals(1, overstayMonitor.getWatched());
+    }
+}
@@ -6,6 +6,7 @@ import com.parkit.parkingsystem.dao.TicketDAO;
 import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
 import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
 import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
 import com.parkit.parkingsystem.util.InputReaderUtil;
 import com.parkit.parkingsystem.model.Ticket;
 import org.junit.jupiter.api.AfterAll;
@@ -13,6 +14,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.ResourceAccessMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
+import org.junit.jupiter.api.parallel.Resources;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import static org.mockito.Mockito.when;
@@ -20,18 +24,22 @@ import static org.mockito.Mockito.when;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Date;
-import java.lang.Thread;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 
 @ExtendWith(MockitoExtension.class)
+@ResourceLock(value = Resources.SYSTEM_OUT, mode = ResourceAccessMode.READ)
 public class ParkingDataBaseIT {
 
-    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("ParkingDataBaseIT");
     private static ParkingSpotDAO parkingSpotDAO;
     private static TicketDAO ticketDAO;
     private static DataBasePrepareService dataBasePrepareService;
+    private static SimulationClock clock;
 
     @Mock
     private static InputReaderUtil inputReaderUtil;
@@ -42,7 +50,7 @@ public class ParkingDataBaseIT {
         parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
         ticketDAO = new TicketDAO();
         ticketDAO.dataBaseConfig = dataBaseTestConfig;
-        dataBasePrepareService = new DataBasePrepareService();
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
     }
 
     @BeforeEach
@@ -50,6 +58,7 @@ public class ParkingDataBaseIT {
         lenient().when(inputReaderUtil.readSelection()).thenReturn(1);
         lenient().when(inputReaderUtil.readVehicleRegistrationNumber()).thenReturn("ABCDEF");
         dataBasePrepareService.clearDataBaseEntries();
+        clock = new SimulationClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
     }
 
     @AfterAll
@@ -59,7 +68,7 @@ public class ParkingDataBaseIT {
 
     @Test
     public void testParkingACar(){
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, clock);
         parkingService.processIncomingVehicle();
         assertNotNull(ticketDAO.getTicket("ABCDEF"));
         assertEquals("ABCDEF", ticketDAO.getTicket("ABCDEF").getVehicleRegNumber());
@@ -70,11 +79,10 @@ public class ParkingDataBaseIT {
 
     @Test
     public void testParkingLotExit() throws Exception {
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, clock);
         parkingService.processIncomingVehicle();
-        Thread.sleep(1000);
+        clock.advance(Duration.ofSeconds(1));
         parkingService.processExitingVehicle();
-        Thread.sleep(1000);
         assertEquals(0, ticketDAO.getTicket("ABCDEF").getPrice());
         assertTrue(ticketDAO.getTicket("ABCDEF").getOutTime().getTime() > ticketDAO.getTicket("ABCDEF").getInTime().getTime());
         assertNotNull(ticketDAO.getTicket("ABCDEF").getOutTime());
@@ -82,7 +90,7 @@ public class ParkingDataBaseIT {
 
     @Test
     public void testParkingLotExitRecurringUser() throws Exception {
-        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO);
+        ParkingService parkingService = new ParkingService(inputReaderUtil, parkingSpotDAO, ticketDAO, clock);
         parkingService.processIncomingVehicle();
         Ticket ticket1 = ticketDAO.getTicket("ABCDEF");
         ticket1.setInTime(new Date(ticketDAO.getTicket("ABCDEF").getInTime().getTime() - (60*60*1000)));
@@ -92,7 +100,6 @@ public class ParkingDataBaseIT {
         Ticket ticket2 = ticketDAO.getTicket("ABCDEF");
         ticket2.setInTime(new Date(ticketDAO.getTicket("ABCDEF").getInTime().getTime() - (30*60*1000)));
         ticketDAO.updateTicketIntime(ticket2);
-        Thread.sleep(500);
         parkingService.processExitingVehicle();
         BigDecimal expectedPrice = BigDecimal.valueOf((30/(double)60) * Fare.CAR_RATE_PER_HOUR * 0.95).setScale(2, RoundingMode.HALF_UP);
         BigDecimal ticketPrice = BigDecimal.valueOf(ticketDAO.getTicket("ABCDEF").getPrice()).setScale(2, RoundingMode.HALF_UP);
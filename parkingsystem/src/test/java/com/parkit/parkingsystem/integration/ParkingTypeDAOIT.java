@@ -0,0 +1,58 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ParkingTypeDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.service.ParkingLotState;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ParkingTypeDAOIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("ParkingTypeDAOIT");
+    private static ParkingTypeDAO parkingTypeDAO;
+    private static ParkingSpotDAO parkingSpotDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingTypeDAO = new ParkingTypeDAO();
+        parkingTypeDAO.dataBaseConfig = dataBaseTestConfig;
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+    }
+
+    @Test
+    public void loadParkingTypesRegistersTheCatalogue() {
+        List<ParkingType> parkingTypes = parkingTypeDAO.loadParkingTypes();
+
+        assertEquals(6, parkingTypes.size());
+        assertSame(ParkingType.CAR, parkingTypes.get(0));
+        ParkingType ev = ParkingType.valueOf("EV");
+        assertEquals(3, ev.getId());
+        assertEquals(2.0, ev.getRatePerHour());
+        assertSame(ev, ParkingType.fromId(3));
+        assertEquals(6, ParkingType.valueOf("MOTORBIKE").getId());
+    }
+
+    @Test
+    public void spotsAreReadWithTheirTypeAndCountedPerType() {
+        parkingTypeDAO.loadParkingTypes();
+        List<ParkingSpot> parkingSpots = parkingSpotDAO.getParkingSpots();
+        ParkingLotState parkingLotState = new ParkingLotState();
+        parkingLotState.load(parkingSpots, Collections.emptyList());
+
+        assertSame(ParkingType.CAR, parkingSpots.get(0).getParkingType());
+        assertSame(ParkingType.BIKE, parkingSpots.get(4).getParkingType());
+        assertEquals(3, parkingLotState.getAvailableSpots(ParkingType.CAR));
+        assertEquals(2, parkingLotState.getAvailableSpots(ParkingType.BIKE));
+        assertEquals(0, parkingLotState.getAvailableSpots(ParkingType.valueOf("VAN")));
+        assertEquals(4, parkingSpotDAO.getNextAvailableSlot(ParkingType.BIKE));
+    }
+}
@@ -0,0 +1,86 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.util.Date;
+
+/**
+ * Two embedded databases stand for the primary and its replica. Nothing replicates between them,
+ * so a row is only visible through the data source the query was routed to.
+ */
+public class ReadReplicaIT {
+
+    private static DataBaseTestConfig primaryConfig = new DataBaseTestConfig("ReadReplicaIT");
+    private static DataBaseTestConfig replicaConfig = new DataBaseTestConfig("ReadReplicaIT_replica");
+    private static TicketDAO ticketDAO;
+    private static TicketDAO replicaTicketDAO;
+
+    @BeforeAll
+    private static void setUp() {
+        assumeFalse(DataBaseTestConfig.isMySql(), "needs two separate databases");
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = primaryConfig;
+        replicaTicketDAO = new TicketDAO();
+        replicaTicketDAO.dataBaseConfig = replicaConfig;
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        new DataBasePrepareService(primaryConfig).clearDataBaseEntries();
+        new DataBasePrepareService(replicaConfig).clearDataBaseEntries();
+    }
+
+    private static Ticket ticket(String vehicleRegNumber, boolean closed){
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(System.currentTimeMillis() - 3_600_000));
+        ticket.setOutTime(closed ? new Date() : null);
+        ticket.setPrice(closed ? 1.5 : 0);
+        return ticket;
+    }
+
+    @Test
+    public void readOnlyQueriesGoToTheReplica() {
+        primaryConfig.setReadReplica(replicaConfig, 0);
+        ticketDAO.saveTicket(ticket("ABCDEF", false));
+
+        assertFalse(ticketDAO.isAlreadyInParking("ABCDEF"));
+        assertEquals(0, ticketDAO.getNbTicket("ABCDEF"));
+        assertNotNull(ticketDAO.getTicket("ABCDEF"));
+
+        replicaTicketDAO.saveTicket(ticket("ABCDEF", true));
+        assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+        assertEquals(1, ticketDAO.getClosedTicketsAfter(0, 10).size());
+    }
+
+    @Test
+    public void readsFollowRecentWritesToThePrimary() {
+        primaryConfig.setReadReplica(replicaConfig, 60_000);
+        ticketDAO.saveTicket(ticket("ABCDEF", false));
+        replicaTicketDAO.saveTicket(ticket("GHIJKL", false));
+
+        assertTrue(ticketDAO.isAlreadyInParking("ABCDEF"));
+        assertEquals(1, ticketDAO.getNbTicket("ABCDEF"));
+        assertTrue(ticketDAO.isAlreadyInParking("GHIJKL"));
+    }
+
+    @Test
+    public void withoutReplicaEverythingReadsThePrimary() {
+        primaryConfig.setReadReplica(null, 0);
+        ticketDAO.saveTicket(ticket("ABCDEF", false));
+
+        assertTrue(ticketDAO.isAlreadyInParking("ABCDEF"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.ReservationDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Reservation;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.ReservationService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public class ReservationIT {
+
+    private static final long HORIZON = Duration.ofHours(2).toMillis();
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("ReservationIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static ReservationDAO reservationDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    private SimulationClock clock;
+    private ReservationService reservationService;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        reservationDAO = new ReservationDAO();
+        reservationDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+        clock = new SimulationClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        reservationService = new ReservationService(reservationDAO, HORIZON, clock);
+        reservationService.load(parkingSpotDAO.getParkingSpots());
+    }
+
+    private Date inHours(double hours){
+        return new Date(clock.millis() + (long) (hours * 3600 * 1000));
+    }
+
+    @Test
+    public void reservationsAreSavedAndLoadedBackUntilTheyEnd() {
+        Reservation first = reservationService.reserve(ParkingType.CAR, "AAA", inHours(1), inHours(3));
+        Reservation second = reservationService.reserve(ParkingType.CAR, "BBB", inHours(2), inHours(4));
+        assertEquals(1, first.getParkingSpot().getId());
+        assertEquals(2, second.getParkingSpot().getId());
+        assertTrue(first.getId() > 0);
+        assertNull(reservationService.reserve(ParkingType.CAR, "AAA", inHours(2), inHours(5)));
+
+        ReservationService reloaded = new ReservationService(reservationDAO, HORIZON, clock);
+        assertEquals(2, reloaded.load(parkingSpotDAO.getParkingSpots()));
+        assertEquals(3, reloaded.reserve(ParkingType.CAR, "CCC", inHours(2), inHours(3)).getParkingSpot().getId());
+        assertNull(reloaded.reserve(ParkingType.CAR, "DDD", inHours(2), inHours(3)));
+
+        assertTrue(reservationService.cancel(first));
+        clock.advance(Duration.ofHours(3));
+        assertEquals(1, new ReservationService(reservationDAO, HORIZON, clock).load(parkingSpotDAO.getParkingSpots()));
+    }
+
+    @Test
+    public void walkInSkipsSpotsReservedSoonAndReservedVehicleGetsItsSpot() {
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        parkingService.setReservationService(reservationService);
+        reservationService.reserve(ParkingType.CAR, "RESERVED", inHours(1), inHours(3));
+        reservationService.reserve(ParkingType.CAR, "LATER", inHours(5), inHours(6));
+
+        Ticket walkIn = parkingService.enterVehicle(ParkingType.CAR, "WALKIN");
+        assertEquals(2, walkIn.getParkingSpot().getId());
+
+        Ticket reserved = parkingService.enterVehicle(ParkingType.CAR, "RESERVED");
+        assertEquals(1, reserved.getParkingSpot().getId());
+
+        Ticket lastWalkIn = parkingService.enterVehicle(ParkingType.CAR, "WALKIN2");
+        assertEquals(3, lastWalkIn.getParkingSpot().getId());
+        assertNull(parkingService.enterVehicle(ParkingType.CAR, "WALKIN3"));
+    }
+
+    @Test
+    public void endedReservationsAreDroppedFromTheIndex() {
+        assertNotNull(reservationService.reserve(ParkingType.CAR, "AAA", inHours(1), inHours(2)));
+        assertNotNull(reservationService.reserve(ParkingType.CAR, "BBB", inHours(1), inHours(5)));
+
+        clock.advance(Duration.ofHours(3));
+
+        assertEquals(1, reservationService.removeEnded());
+        assertEquals(1, reservationService.getReservationIndex().size());
+        assertEquals(0, reservationService.removeEnded());
+        assertNotNull(reservationService.reserve(ParkingType.CAR, "AAA", inHours(1), inHours(2)));
+    }
+}
@@ -0,0 +1,203 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.assignment.LeasedRangeStrategy;
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.SpotLeaseDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.simulation.SimulationClock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Several gate controllers, each with its own DAOs and leased ranges, sharing one database.
+ * The lot gets 30 more CAR spots for a total of 33, cut into 11 ranges of 3 spots.
+ */
+public class SpotLeaseIT {
+
+    private static final int RANGE_SIZE = 3;
+    private static final long LEASE_MILLIS = 30_000;
+    private static final int CAR_SPOTS = 33;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("SpotLeaseIT");
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    private SimulationClock clock;
+
+    private class Node {
+        final LeasedRangeStrategy strategy;
+        final ParkingService parkingService;
+
+        Node(String nodeId){
+            SpotLeaseDAO spotLeaseDAO = new SpotLeaseDAO();
+            spotLeaseDAO.dataBaseConfig = dataBaseTestConfig;
+            ParkingSpotDAO parkingSpotDAO = new ParkingSpotDAO();
+            parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+            strategy = new LeasedRangeStrategy(spotLeaseDAO, nodeId, RANGE_SIZE, LEASE_MILLIS, clock);
+            strategy.load(parkingSpotDAO.getParkingSpots());
+            parkingSpotDAO.setSpotAssignmentStrategy(strategy);
+            parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO, clock);
+        }
+
+        Ticket park(String vehicleRegNumber){
+            return parkingService.enterVehicle(ParkingType.CAR, vehicleRegNumber);
+        }
+    }
+
+    @BeforeAll
+    private static void setUp() throws Exception {
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            for(int parkingNumber = 101; parkingNumber <= 130; parkingNumber++){
+                con.prepareStatement("insert into parking(PARKING_NUMBER,AVAILABLE,TYPE_ID) values("+parkingNumber+",true,1)").execute();
+            }
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    @AfterAll
+    private static void tearDown() throws Exception {
+        dataBasePrepareService.clearDataBaseEntries();
+        Connection con = dataBaseTestConfig.getConnection();
+        try {
+            con.prepareStatement("delete from parking where PARKING_NUMBER > 100").execute();
+        } finally {
+            dataBaseTestConfig.closeConnection(con);
+        }
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+        clock = new SimulationClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+    }
+
+    private static void renew(Node... nodes){
+        for(int round = 0; round < 2; round++){
+            for(Node node : nodes){
+                node.strategy.renew();
+            }
+        }
+    }
+
+    private static int parkUntilFull(Node node, String prefix, List<Ticket> tickets){
+        int parked = 0;
+        Ticket ticket;
+        while((ticket = node.park(prefix+parked)) != null){
+            tickets.add(ticket);
+            parked++;
+        }
+        return parked;
+    }
+
+    @Test
+    public void nodesShareTheRangesAndNeverHandOutTheSameSpot() throws Exception {
+        Node[] nodes = {new Node("node-1"), new Node("node-2"), new Node("node-3")};
+        renew(nodes);
+
+        int leased = 0;
+        for(Node node : nodes){
+            assertTrue(node.strategy.countLeasedRanges(ParkingType.CAR) >= 3);
+            leased += node.strategy.countLeasedRanges(ParkingType.CAR);
+        }
+        assertEquals(11, leased);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.length);
+        try {
+            List<Future<List<Ticket>>> results = new ArrayList<>();
+            for(int n = 0; n < nodes.length; n++){
+                Node node = nodes[n];
+                String prefix = "N"+n+"-";
+                results.add(executor.submit(() -> {
+                    List<Ticket> tickets = new ArrayList<>();
+                    for(int i = 0; i < 9; i++){
+                        tickets.add(node.park(prefix+i));
+                    }
+                    return tickets;
+                }));
+            }
+            Set<Integer> spots = new HashSet<>();
+            for(int n = 0; n < nodes.length; n++){
+                for(Ticket ticket : results.get(n).get()){
+                    assertNotNull(ticket);
+                    assertTrue(nodes[n].strategy.isLeased(ticket.getParkingSpot()));
+                    assertTrue(spots.add(ticket.getParkingSpot().getId()));
+                }
+            }
+            assertEquals(27, spots.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rangesOfAStoppedNodeGoToTheOthers() {
+        Node first = new Node("node-1");
+        Node second = new Node("node-2");
+        Node stopped = new Node("node-3");
+        renew(first, second, stopped);
+        assertNotNull(stopped.park("STOPPED"));
+
+        clock.advance(Duration.ofMillis(LEASE_MILLIS / 2));
+        renew(first, second);
+        clock.advance(Duration.ofMillis(LEASE_MILLIS / 2 + 1000));
+        renew(first, second);
+
+        assertEquals(11, first.strategy.countLeasedRanges(ParkingType.CAR) + second.strategy.countLeasedRanges(ParkingType.CAR));
+        assertNull(stopped.park("LATE"));
+        List<Ticket> tickets = new ArrayList<>();
+        assertEquals(CAR_SPOTS - 1, parkUntilFull(first, "A", tickets) + parkUntilFull(second, "B", tickets));
+    }
+
+    @Test
+    public void exhaustedNodeGetsARangeAndFindsSpotsFreedThroughOtherNodes() {
+        Node first = new Node("node-1");
+        Node second = new Node("node-2");
+        renew(first, second);
+        assertEquals(6, first.strategy.countLeasedRanges(ParkingType.CAR));
+        assertEquals(5, second.strategy.countLeasedRanges(ParkingType.CAR));
+
+        Ticket leavingEarly = first.park("EARLY");
+        assertEquals(1, leavingEarly.getParkingSpot().getId());
+        assertNotNull(second.parkingService.exitVehicle("EARLY"));
+
+        List<Ticket> tickets = new ArrayList<>();
+        assertEquals(15, parkUntilFull(second, "B", tickets));
+        //the second node ran out of CAR spots, the first one hands over one of its ranges
+        renew(second, first);
+        assertEquals(6, second.strategy.countLeasedRanges(ParkingType.CAR));
+        Ticket extra = second.park("EXTRA");
+        assertNotNull(extra);
+        assertTrue(second.strategy.isLeased(extra.getParkingSpot()));
+
+        //spot 1 was freed through the second node, the first one finds it once its other spots are gone
+        tickets.clear();
+        assertEquals(15, parkUntilFull(first, "A", tickets));
+        assertEquals(1, tickets.get(tickets.size() - 1).getParkingSpot().getId());
+    }
+}
@@ -0,0 +1,134 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.SpotCheck;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.SpotReconciler;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class SpotReconcilerIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("SpotReconcilerIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static void saveOpenTicket(String vehicleRegNumber, ParkingSpot parkingSpot){
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(parkingSpot);
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date());
+        ticketDAO.saveTicket(ticket);
+    }
+
+    private static boolean isAvailable(int parkingNumber){
+        for(ParkingSpot parkingSpot : parkingSpotDAO.getParkingSpots()){
+            if(parkingSpot.getId() == parkingNumber){
+                return parkingSpot.isAvailable();
+            }
+        }
+        throw new IllegalArgumentException("No spot "+parkingNumber);
+    }
+
+    @Test
+    public void getSpotChecksAfterWalksTheSpotsWithTheirOpenTickets() {
+        ParkingSpot parkingSpot = new ParkingSpot(2, ParkingType.CAR, false);
+        parkingSpotDAO.updateParking(parkingSpot);
+        saveOpenTicket("CHECK-1", parkingSpot);
+
+        List<SpotCheck> firstChunk = parkingSpotDAO.getSpotChecksAfter(0, 2);
+        List<SpotCheck> secondChunk = parkingSpotDAO.getSpotChecksAfter(2, 2);
+
+        assertEquals(2, firstChunk.size());
+        assertEquals(1, firstChunk.get(0).getParkingSpot().getId());
+        assertFalse(firstChunk.get(0).hasOpenTicket());
+        assertTrue(firstChunk.get(1).hasOpenTicket());
+        assertTrue(firstChunk.get(1).isConsistent());
+        assertEquals(3, secondChunk.get(0).getParkingSpot().getId());
+    }
+
+    @Test
+    public void reconcileRepairsBothKindsOfMismatch() {
+        //spot 1 was left occupied by an exit that failed before freeing it
+        parkingSpotDAO.updateParking(new ParkingSpot(1, ParkingType.CAR, false));
+        //spot 2 holds a vehicle but its update was lost
+        saveOpenTicket("RECON-2", new ParkingSpot(2, ParkingType.CAR, false));
+        SpotReconciler spotReconciler = new SpotReconciler(parkingSpotDAO, 1, 2, 1000, 0, 0, 0, Clock.systemDefaultZone());
+
+        assertEquals(0, spotReconciler.reconcile());
+        assertFalse(isAvailable(1));
+        assertEquals(2, spotReconciler.reconcile());
+
+        assertTrue(isAvailable(1));
+        assertFalse(isAvailable(2));
+        assertEquals(0, spotReconciler.reconcile());
+        assertEquals(4, spotReconciler.getMismatches());
+    }
+
+    @Test
+    public void repairParkingSpotsSkipsASpotWhoseTicketsChangedSinceTheCheck() {
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        parkingSpotDAO.updateParking(parkingSpot);
+        //the entry saves its ticket between the check and the repair
+        saveOpenTicket("RECON-1", parkingSpot);
+
+        List<ParkingSpot> repaired = parkingSpotDAO.repairParkingSpots(Arrays.asList(
+                new SpotCheck(new ParkingSpot(1, ParkingType.CAR, false), false), new SpotCheck(new ParkingSpot(3, ParkingType.CAR, true), true)));
+
+        assertTrue(repaired.isEmpty());
+        assertFalse(isAvailable(1));
+        assertTrue(isAvailable(3));
+    }
+
+    @Test
+    public void repairParkingSpotsSkipsASpotWithATicketSavedSinceTheCheck() {
+        ParkingSpot parkingSpot = new ParkingSpot(1, ParkingType.CAR, false);
+        saveOpenTicket("RECON-1", parkingSpot);
+        ticketDAO.updateTicket(closed(ticketDAO.getTicket("RECON-1")));
+        parkingSpotDAO.updateParking(parkingSpot);
+        SpotCheck leftOccupied = parkingSpotDAO.getSpotChecksAfter(0, 1).get(0);
+        assertFalse(leftOccupied.isConsistent());
+        //the next vehicle takes the spot and saves its ticket, then leaves, all between the check and the repair
+        saveOpenTicket("RECON-2", parkingSpot);
+        ticketDAO.updateTicket(closed(ticketDAO.getTicket("RECON-2")));
+
+        assertTrue(parkingSpotDAO.repairParkingSpots(Collections.singletonList(leftOccupied)).isEmpty());
+        assertFalse(isAvailable(1));
+        assertEquals(1, parkingSpotDAO.repairParkingSpots(parkingSpotDAO.getSpotChecksAfter(0, 1)).size());
+        assertTrue(isAvailable(1));
+    }
+
+    private static Ticket closed(Ticket ticket){
+        ticket.setOutTime(new Date());
+        return ticket;
+    }
+}
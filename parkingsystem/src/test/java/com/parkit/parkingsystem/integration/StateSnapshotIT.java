@@ -0,0 +1,142 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.ParkingSpotDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import com.parkit.parkingsystem.service.DeferredWriteQueue;
+import com.parkit.parkingsystem.service.DemandStatistics;
+import com.parkit.parkingsystem.service.ParkingLotState;
+import com.parkit.parkingsystem.service.ParkingService;
+import com.parkit.parkingsystem.service.StartupService;
+import com.parkit.parkingsystem.service.StateSnapshot;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+public class StateSnapshotIT {
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("StateSnapshotIT");
+    private static ParkingSpotDAO parkingSpotDAO;
+    private static TicketDAO ticketDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp() {
+        parkingSpotDAO = new ParkingSpotDAO();
+        parkingSpotDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static DemandStatistics demandStatistics(){
+        return new DemandStatistics(0.5, 0.8, 1.5, DemandStatistics.DEFAULT_HALF_LIFE_MILLIS, 1, ZoneOffset.UTC);
+    }
+
+    private static ParkingLotState warmUp(DemandStatistics demandStatistics){
+        StartupService startupService = new StartupService(dataBaseTestConfig, parkingSpotDAO, ticketDAO);
+        startupService.setDemandStatistics(demandStatistics);
+        return startupService.warmUp();
+    }
+
+    @Test
+    public void restoreReplaysTheTicketsChangedSinceTheSnapshot(@TempDir Path directory) {
+        Path file = directory.resolve("state.snapshot");
+        DemandStatistics demandStatistics = demandStatistics();
+        ParkingLotState parkingLotState = warmUp(demandStatistics);
+        ParkingService parkingService = new ParkingService(null, parkingSpotDAO, ticketDAO);
+        parkingService.setParkingLotState(parkingLotState);
+        parkingService.setDemandStatistics(demandStatistics);
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "SNAP-A"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "SNAP-B"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.BIKE, "SNAP-C"));
+        assertNotNull(parkingService.exitVehicle("SNAP-A"));
+        StateSnapshot stateSnapshot = new StateSnapshot(file, ticketDAO);
+        assertTrue(stateSnapshot.write(parkingLotState, demandStatistics));
+
+        assertNotNull(parkingService.exitVehicle("SNAP-B"));
+        assertNotNull(parkingService.enterVehicle(ParkingType.CAR, "SNAP-D"));
+
+        DemandStatistics restoredStatistics = demandStatistics();
+        StartupService startupService = new StartupService(dataBaseTestConfig, parkingSpotDAO, ticketDAO);
+        startupService.setDemandStatistics(restoredStatistics);
+        startupService.setStateSnapshot(stateSnapshot);
+        ParkingLotState restoredState = startupService.warmUp();
+
+        assertTrue(startupService.isRestored());
+        assertFalse(startupService.getPhaseTimings().containsKey("load parking state"));
+        assertNull(restoredState.getOpenTicket("SNAP-A"));
+        assertNull(restoredState.getOpenTicket("SNAP-B"));
+        assertNotNull(restoredState.getOpenTicket("SNAP-C"));
+        assertNotNull(restoredState.getOpenTicket("SNAP-D"));
+        assertEquals(parkingLotState.getAvailableSpots(ParkingType.CAR), restoredState.getAvailableSpots(ParkingType.CAR));
+        assertEquals(parkingLotState.getAvailableSpots(ParkingType.BIKE), restoredState.getAvailableSpots(ParkingType.BIKE));
+        //SNAP-A is both in the snapshot and in the replay window, it must be counted once
+        assertArrayEquals(demandStatistics.getOccupancyForecast(ParkingType.CAR), restoredStatistics.getOccupancyForecast(ParkingType.CAR), 1e-9);
+        assertArrayEquals(warmUp(demandStatistics()).getOpenTickets().stream().map(t -> t.getVehicleRegNumber()).sorted().toArray(),
+                restoredState.getOpenTickets().stream().map(t -> t.getVehicleRegNumber()).sorted().toArray());
+    }
+
+    @Test
+    public void restoreRejectsACorruptedOrMismatchedSnapshot(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("state.snapshot");
+        ParkingLotState parkingLotState = warmUp(null);
+        StateSnapshot stateSnapshot = new StateSnapshot(file, ticketDAO);
+        assertTrue(stateSnapshot.write(parkingLotState, null));
+        assertFalse(stateSnapshot.restore(new ParkingLotState(), demandStatistics()));
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer flipped = ByteBuffer.allocate(1);
+            channel.read(flipped, StateSnapshot.HEADER_BYTES + 5);
+            flipped.put(0, (byte) (flipped.get(0) ^ 1));
+            flipped.rewind();
+            channel.write(flipped, StateSnapshot.HEADER_BYTES + 5);
+        }
+        ParkingLotState restoredState = new ParkingLotState();
+
+        assertFalse(stateSnapshot.restore(restoredState, null));
+        assertTrue(restoredState.getParkingSpots().isEmpty());
+        assertFalse(new StateSnapshot(directory.resolve("missing.snapshot"), ticketDAO).restore(restoredState, null));
+    }
+
+    @Test
+    public void writeIsSkippedWhileWritesAreDeferred(@TempDir Path directory) {
+        Path file = directory.resolve("state.snapshot");
+        ParkingLotState parkingLotState = warmUp(null);
+        DeferredWriteQueue deferredWriteQueue = new DeferredWriteQueue(dataBaseTestConfig, parkingSpotDAO, ticketDAO);
+        StateSnapshot stateSnapshot = new StateSnapshot(file, ticketDAO);
+        stateSnapshot.setDeferredWriteQueue(deferredWriteQueue);
+        Ticket deferred = new Ticket();
+        deferred.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        deferred.setVehicleRegNumber("SNAP-E");
+        deferred.setInTime(new Date());
+        assertTrue(deferredWriteQueue.deferEntry(deferred));
+
+        assertFalse(stateSnapshot.write(parkingLotState, null));
+        assertFalse(Files.exists(file));
+
+        assertEquals(1, deferredWriteQueue.flush());
+        assertTrue(stateSnapshot.write(parkingLotState, null));
+        assertTrue(Files.exists(file));
+    }
+}
@@ -0,0 +1,130 @@
+package com.parkit.parkingsystem.integration;
+
+import com.parkit.parkingsystem.constants.ParkingType;
+import com.parkit.parkingsystem.dao.TicketArchiveDAO;
+import com.parkit.parkingsystem.dao.TicketDAO;
+import com.parkit.parkingsystem.integration.config.DataBaseTestConfig;
+import com.parkit.parkingsystem.integration.service.DataBasePrepareService;
+import com.parkit.parkingsystem.model.ParkingSpot;
+import com.parkit.parkingsystem.model.Ticket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class TicketArchiveDAOIT {
+
+    private static final long NOW = System.currentTimeMillis() / 1000 * 1000;
+
+    private static DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig("TicketArchiveDAOIT");
+    private static TicketDAO ticketDAO;
+    private static TicketArchiveDAO ticketArchiveDAO;
+    private static DataBasePrepareService dataBasePrepareService;
+
+    @BeforeAll
+    private static void setUp() {
+        ticketDAO = new TicketDAO();
+        ticketDAO.dataBaseConfig = dataBaseTestConfig;
+        ticketArchiveDAO = new TicketArchiveDAO();
+        ticketArchiveDAO.dataBaseConfig = dataBaseTestConfig;
+        dataBasePrepareService = new DataBasePrepareService(dataBaseTestConfig);
+    }
+
+    @BeforeEach
+    private void setUpPerTest() {
+        dataBasePrepareService.clearDataBaseEntries();
+    }
+
+    private static void saveTicket(String vehicleRegNumber, int daysAgo, boolean closed){
+        Ticket ticket = new Ticket();
+        ticket.setParkingSpot(new ParkingSpot(1, ParkingType.CAR, false));
+        ticket.setVehicleRegNumber(vehicleRegNumber);
+        ticket.setInTime(new Date(NOW - TimeUnit.DAYS.toMillis(daysAgo) - TimeUnit.HOURS.toMillis(2)));
+        ticket.setOutTime(closed ? new Date(NOW - TimeUnit.DAYS.toMillis(daysAgo)) : null);
+        ticket.setPrice(closed ? 3.0 : 0);
+        ticketDAO.saveTicket(ticket);
+    }
+
+    @Test
+    public void archiveClosedTicketsMovesOnlyOldClosedTicketsAndKeepsLoyaltyCount() {
+        for(int day = 40; day < 45; day++){
+            saveTicket("ABCDEF", day, true);
+        }
+        saveTicket("ABCDEF", 2, true);
+        saveTicket("ABCDEF", 35, false);
+        Date cutoff = new Date(NOW - TimeUnit.DAYS.toMillis(30));
+
+        assertEquals(3, ticketArchiveDAO.archiveClosedTickets(cutoff, 3));
+        assertEquals(2, ticketArchiveDAO.archiveClosedTickets(cutoff, 3));
+        assertEquals(0, ticketArchiveDAO.archiveClosedTickets(cutoff, 3));
+
+        assertEquals(7, ticketDAO.getNbTicket("ABCDEF"));
+        assertTrue(ticketDAO.isAlreadyInParking("ABCDEF"));
+        assertEquals(6, ticketDAO.getClosedTicketsAfter(0, 100).size());
+    }
+
+    @Test
+    public void getClosedTicketsAfterReadsBothTiersInIdOrder() {
+        for(int day = 1; day <= 6; day++){
+            saveTicket("PLATE"+day, day * 10, true);
+        }
+        saveTicket("OPEN", 0, false);
+        ticketArchiveDAO.archiveClosedTickets(new Date(NOW - TimeUnit.DAYS.toMillis(30)), 100);
+
+        List<Ticket> firstPage = ticketDAO.getClosedTicketsAfter(0, 4);
+        List<Ticket> secondPage = ticketDAO.getClosedTicketsAfter(firstPage.get(firstPage.size() - 1).getId(), 4);
+
+        assertEquals(4, firstPage.size());
+        assertEquals(2, secondPage.size());
+        int previousId = 0;
+        for(List<Ticket> page : List.of(firstPage, secondPage)){
+            for(Ticket ticket : page){
+                assertTrue(ticket.getId() > previousId);
+                assertNotNull(ticket.getOutTime());
+                assertEquals(ParkingType.CAR, ticket.getParkingSpot().getParkingType());
+                previousId = ticket.getId();
+            }
+        }
+    }
+
+    @Test
+    public void getTicketHistoryPagesBothTiersNewestFirst() {
+        for(int day = 40; day < 45; day++){
+            saveTicket("HIST", day, true);
+        }
+        //two visits entered in the same second, the ID breaks the tie
+        saveTicket("HIST", 10, true);
+        saveTicket("HIST", 10, true);
+        saveTicket("HIST", 0, false);
+        saveTicket("OTHER", 5, true);
+        ticketArchiveDAO.archiveClosedTickets(new Date(NOW - TimeUnit.DAYS.toMillis(30)), 100);
+
+        List<Ticket> visits = new ArrayList<>();
+        Ticket last = null;
+        List<Ticket> page;
+        do {
+            page = ticketDAO.getTicketHistory("HIST", null, null, last, 3);
+            visits.addAll(page);
+            last = page.isEmpty() ? last : page.get(page.size() - 1);
+        } while(page.size() == 3);
+        List<Ticket> range = ticketDAO.getTicketHistory("HIST", new Date(NOW - TimeUnit.DAYS.toMillis(43)),
+                new Date(NOW - TimeUnit.DAYS.toMillis(5)), null, 100);
+
+        assertEquals(8, visits.size());
+        assertNull(visits.get(0).getOutTime());
+        for(int i = 1; i < visits.size(); i++){
+            Ticket previous = visits.get(i - 1);
+            Ticket ticket = visits.get(i);
+            assertTrue(previous.getInTime().after(ticket.getInTime())
+                    || previous.getInTime().equals(ticket.getInTime()) && previous.getId() > ticket.getId());
+        }
+        assertEquals(5, range.size());
+        assertEquals(NOW - TimeUnit.DAYS.toMillis(42) - TimeUnit.HOURS.toMillis(2), range.get(4).getInTime().getTime());
+    }
+}
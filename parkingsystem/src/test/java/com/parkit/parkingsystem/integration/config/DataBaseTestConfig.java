@@ -1,51 +1,79 @@
 package com.parkit.parkingsystem.integration.config;
 
+import com.parkit.parkingsystem.config.ConfigLoader;
 import com.parkit.parkingsystem.config.DataBaseConfig;
+import com.parkit.parkingsystem.config.DataBaseSettings;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
+/**
+ * Connects the DAOs to an embedded in-memory database in MySQL mode, one database per schema name,
+ * so every test class gets its own isolated data. With -Dparkit.test.db=mysql (mysql-it profile)
+ * it connects to the shared MySQL test schema from Data.sql instead, with the driver tuning of
+ * parkingsystem.properties.
+ */
 public class DataBaseTestConfig extends DataBaseConfig {
 
     private static final Logger logger = LogManager.getLogger("DataBaseTestConfig");
 
-    public Connection getConnection() throws ClassNotFoundException, SQLException {
-        logger.info("Create DB connection");
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        return DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/test?serverTimezone=UTC&enabledTLSProtocols=TLSv1.2","root","codio");
+    private static final Set<String> initializedSchemas = Collections.synchronizedSet(new HashSet<>());
+
+    private final String schemaName;
+
+    public DataBaseTestConfig(){
+        this("test");
     }
 
-    public void closeConnection(Connection con){
-        if(con!=null){
-            try {
-                con.close();
-                logger.info("Closing DB connection");
-            } catch (SQLException e) {
-                logger.error("Error while closing connection",e);
-            }
+    public DataBaseTestConfig(String schemaName){
+        super(settingsFor(schemaName));
+        this.schemaName = schemaName;
+    }
+
+    private static DataBaseSettings settingsFor(String schemaName){
+        if(isMySql()){
+            Properties properties = ConfigLoader.load();
+            properties.setProperty("db.url", "jdbc:mysql://localhost:3306/test");
+            return DataBaseSettings.fromProperties(properties, "db");
         }
+        return new DataBaseSettings("jdbc:h2:mem:"+schemaName+";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "",
+                "org.h2.Driver", 10, 5, 5000, new Properties());
     }
 
-    public void closePreparedStatement(PreparedStatement ps) {
-        if(ps!=null){
-            try {
-                ps.close();
-                logger.info("Closing Prepared Statement");
-            } catch (SQLException e) {
-                logger.error("Error while closing prepared statement",e);
-            }
+    public static boolean isMySql(){
+        return "mysql".equals(System.getProperty("parkit.test.db"));
+    }
+
+    @Override
+    protected Connection createConnection() throws ClassNotFoundException, SQLException {
+        Connection con = super.createConnection();
+        if(!isMySql() && initializedSchemas.add(schemaName)){
+            logger.info("Create embedded schema "+schemaName);
+            createSchema(con);
         }
+        return con;
     }
 
-    public void closeResultSet(ResultSet rs) {
-        if(rs!=null){
-            try {
-                rs.close();
-                logger.info("Closing Result Set");
-            } catch (SQLException e) {
-                logger.error("Error while closing result set",e);
+    private static void createSchema(Connection con) throws SQLException {
+        String script;
+        try(InputStream in = DataBaseTestConfig.class.getResourceAsStream("/schema.sql")){
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }catch(IOException e){
+            throw new SQLException("Unable to read schema.sql", e);
+        }
+        try(Statement statement = con.createStatement()){
+            for(String sql : script.split(";")){
+                if(!sql.trim().isEmpty()){
+                    statement.execute(sql);
+                }
             }
         }
     }
@@ -0,0 +1,74 @@
+package com.parkit.parkingsystem.integration.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+/**
+ * Embedded test database that can be made slow: every statement execution waits for the configured
+ * latency. When the latency is longer than the statement query timeout it waits for the timeout
+ * then throws {@link SQLTimeoutException}, like a driver facing a sick server would.
+ */
+public class SlowDataBaseTestConfig extends DataBaseTestConfig {
+
+    private volatile long latencyMillis;
+
+    public SlowDataBaseTestConfig(String schemaName){
+        super(schemaName);
+    }
+
+    public void setLatencyMillis(long latencyMillis){
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    protected Connection createConnection() throws ClassNotFoundException, SQLException {
+        Connection con = super.createConnection();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(con, method, args);
+                    if(result instanceof PreparedStatement){
+                        return slowStatement((PreparedStatement) result);
+                    }
+                    return result;
+                });
+    }
+
+    private PreparedStatement slowStatement(PreparedStatement ps){
+        int[] queryTimeoutSeconds = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("setQueryTimeout")){
+                        queryTimeoutSeconds[0] = (Integer) args[0];
+                    }else if(method.getName().startsWith("execute")){
+                        delay(queryTimeoutSeconds[0]);
+                    }
+                    return invoke(ps, method, args);
+                });
+    }
+
+    private void delay(int queryTimeoutSeconds) throws SQLException, InterruptedException {
+        long latency = latencyMillis;
+        if(latency <= 0){
+            return;
+        }
+        long timeoutMillis = queryTimeoutSeconds * 1000L;
+        if(timeoutMillis > 0 && latency > timeoutMillis){
+            Thread.sleep(timeoutMillis);
+            throw new SQLTimeoutException("Statement cancelled after "+queryTimeoutSeconds+"s");
+        }
+        Thread.sleep(latency);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -6,7 +6,15 @@ import java.sql.Connection;
 
 public class DataBasePrepareService {
 
-    DataBaseTestConfig dataBaseTestConfig = new DataBaseTestConfig();
+    DataBaseTestConfig dataBaseTestConfig;
+
+    public DataBasePrepareService(){
+        this(new DataBaseTestConfig());
+    }
+
+    public DataBasePrepareService(DataBaseTestConfig dataBaseTestConfig){
+        this.dataBaseTestConfig = dataBaseTestConfig;
+    }
 
     public void clearDataBaseEntries(){
         Connection connection = null;
@@ -18,6 +26,14 @@ public class DataBasePrepareService {
 
             //clear ticket entries;
             connection.prepareStatement("truncate table ticket").execute();
+            connection.prepareStatement("truncate table ticket_archive").execute();
+            connection.prepareStatement("truncate table reservation").execute();
+            connection.prepareStatement("truncate table spot_lease").execute();
+            connection.prepareStatement("truncate table lease_node").execute();
+            connection.prepareStatement("truncate table season_pass").execute();
+            connection.prepareStatement("truncate table blocklist").execute();
+            connection.prepareStatement("truncate table ticket_event").execute();
+            connection.prepareStatement("truncate table ticket_event_cursor").execute();
 
         }catch(Exception e){
             e.printStackTrace();